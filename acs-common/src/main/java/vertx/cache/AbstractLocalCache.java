@@ -1,31 +1,158 @@
 package vertx.cache;
 
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.WorkerExecutor;
 import io.vertx.ext.mongo.MongoClient;
 import vertx.VertxException;
 import vertx.VertxMongoUtils;
 import vertx.model.AcsApiCrudTypeEnum;
+import vertx.util.AcsConfigProperties;
 import vertx.util.AcsConstants;
 import vertx.util.AcsMiscUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Project:  cwmp
- * 
+ *
  * Abstract Local Cache which can be extended to implement any type of local cache.
  *
+ * The content of the cache is published as an immutable Snapshot through a volatile reference, so readers on any
+ * event loop (see AcsSharedCaches) always see a consistent view without locking.
+ *
+ * All the updates (CRUD events, full refreshes and delta refreshes) build a new snapshot from the current one. The
+ * builds are performed one at a time, in the order they are submitted, by a single worker thread (shared by all
+ * caches), so converting the DB objects to POJOs never blocks an event loop. Since copying the snapshot maps is O(n),
+ * the updates that are submitted while a build is pending are applied together by a single build (i.e. a burst of
+ * CRUD events costs one copy instead of one copy per event).
+ *
+ * Besides the CRUD events, the cache is kept up to date by a frequent delta refresh, which only re-reads the documents
+ * recorded in the CacheChangeLog since the last refresh, and by an infrequent (jittered) full refresh as the safety
+ * net for changes made without going through the NBI.
+ *
+ * The raw JSON Objects are also saved periodically into a local disk snapshot (see LocalCacheDiskSnapshot), which is
+ * loaded at startup so the cache can serve right away and only needs a delta refresh to catch up.
+ *
  * @author: ronyang
  */
 public abstract class AbstractLocalCache {
     public final Logger log = LoggerFactory.getLogger(this.getClass());
 
+    /**
+     * Name of the worker pool for building the snapshots
+     */
+    public static final String SNAPSHOT_BUILDER_POOL_NAME = "local-cache-snapshot-builder";
+
+    /**
+     * Immutable Snapshot of the cache content.
+     *
+     * The cached JSON Objects and POJOs themselves must not be modified either.
+     */
+    public static class Snapshot {
+        /**
+         * All the raw JSON Objects.
+         *
+         * The Index is a string, which could be the org id or name or URL.
+         */
+        public final Map<String, JsonObject> rawJsonObjects;
+
+        /**
+         * All the POJOs (with the same index).
+         */
+        public final Map<String, Object> pojos;
+
+        /**
+         * Constructor.
+         *
+         * The given maps must not be modified afterwards.
+         *
+         * @param rawJsonObjects
+         * @param pojos
+         */
+        public Snapshot(Map<String, JsonObject> rawJsonObjects, Map<String, Object> pojos) {
+            this.rawJsonObjects = Collections.unmodifiableMap(rawJsonObjects);
+            this.pojos = Collections.unmodifiableMap(pojos);
+        }
+    }
+
+    /**
+     * Builder of a new Snapshot, which starts with a (modifiable) copy of the current snapshot.
+     */
+    public class SnapshotBuilder {
+        public final HashMap<String, JsonObject> rawJsonObjects;
+        public final HashMap<String, Object> pojos;
+
+        /**
+         * Has anything been changed?
+         */
+        public boolean bChanged = false;
+
+        /**
+         * Constructor.
+         *
+         * @param base
+         */
+        public SnapshotBuilder(Snapshot base) {
+            rawJsonObjects = new HashMap<>(base.rawJsonObjects);
+            pojos = new HashMap<>(base.pojos);
+        }
+
+        /**
+         * Add or replace an object.
+         *
+         * @param index
+         * @param rawJsonObject
+         * @param pojo
+         */
+        public void put(String index, JsonObject rawJsonObject, Object pojo) {
+            rawJsonObjects.put(index, rawJsonObject);
+            pojos.put(index, pojo);
+            bChanged = true;
+        }
+
+        /**
+         * Remove an object (if present).
+         *
+         * @param index
+         */
+        public void remove(String index) {
+            if (rawJsonObjects.remove(index) != null) {
+                bChanged = true;
+            }
+            if (pojos.remove(index) != null) {
+                bChanged = true;
+            }
+        }
+
+        /**
+         * Build the new Snapshot.
+         *
+         * The builder must not be used afterwards.
+         */
+        public Snapshot build() {
+            return new Snapshot(rawJsonObjects, pojos);
+        }
+    }
+
     /**
      * The Type (Class) of the cached objects
      */
@@ -37,33 +164,48 @@ public abstract class AbstractLocalCache {
     public String dbCollectionName;
 
     /**
-     * A HashMap that contains all the raw JSON Objects.
-     *
-     * The Index is a string, which could be the org id or name or URL.
+     * The Current Snapshot
      */
-    public HashMap<String, JsonObject> rawJsonObjectHashMap;
+    public volatile Snapshot snapshot;
 
     /**
-     * A HashMap that contains all POJOs.
-     * 
-     * The Index is a string, which could be the org id or name or URL.
+     * Static Vertx Instance
      */
-    public HashMap<String, Object> hashMap;
+    public Vertx vertx;
+
+    MongoClient client;
 
     /**
-     * A tmp hash map used when doing refresh.
+     * Single-threaded worker pool for building the snapshots
      */
-    public HashMap<String, JsonObject> tmpHashMap;
+    WorkerExecutor snapshotBuilderExecutor;
 
     /**
-     * Static Vertx Instance
+     * Delta Refresh Watermark (in ms).
+     *
+     * All the changes before this time are known to be reflected in the cache. 0 means no successful refresh yet.
      */
-    public Vertx vertx;
+    public volatile long changeLogWatermark = 0;
 
-    public Handler mongoQueryResultHandler;
+    /**
+     * Is a Delta Refresh in progress?
+     */
+    public boolean bDeltaRefreshInProgress = false;
 
-    MongoClient client;
+    /**
+     * Local Disk Snapshot File (null if disabled)
+     */
+    File diskSnapshotFile;
 
+    /**
+     * Has the cache changed since the last disk snapshot was saved?
+     */
+    volatile boolean bDiskSnapshotDirty = false;
+
+    /**
+     * The Change Log Watermark of the last disk snapshot
+     */
+    long diskSnapshotWatermark = 0;
 
     /**
      * Constructor.
@@ -79,11 +221,10 @@ public abstract class AbstractLocalCache {
             final String dbCollectionName,
             final String cachedObjectType) {
         this.vertx = vertx;
-        this.rawJsonObjectHashMap = new HashMap<>();
-        this.tmpHashMap = new HashMap<>();
         this.cachedObjectType = cachedObjectType;
         this.dbCollectionName = dbCollectionName;
-        this.hashMap = new HashMap<>();
+        this.snapshot = newEmptySnapshot();
+        this.snapshotBuilderExecutor = vertx.createSharedWorkerExecutor(SNAPSHOT_BUILDER_POOL_NAME, 1);
 
         /**
          * Register Group CRUD Event Handler
@@ -91,20 +232,39 @@ public abstract class AbstractLocalCache {
         log.info("Registering event handler for " + crudEventAddress);
         vertx.eventBus().consumer(crudEventAddress, getCrudEventHandler());
 
-        // Initialize DB Query Result Handler
-        mongoQueryResultHandler = getMongoQueryResultHandler();
         client = MongoClient.createShared(vertx, VertxMongoUtils.getModMongoPersistorConfig());
 
-        // Initialize the cache by querying the DB
-        refresh();
+        // Initialize the cache from the local disk snapshot (if any) or by querying the DB
+        diskSnapshotFile = LocalCacheDiskSnapshot.getFile(
+                AcsConfigProperties.CACHE_SNAPSHOT_DIR,
+                getClass().getSimpleName() + "-" + dbCollectionName
+        );
+        if (diskSnapshotFile != null && !isDiskSnapshotAllowed()) {
+            // Remove the snapshot saved by an older version (if any)
+            LocalCacheDiskSnapshot.delete(diskSnapshotFile);
+            diskSnapshotFile = null;
+        }
+        loadDiskSnapshot();
+        if (diskSnapshotFile != null) {
+            vertx.setPeriodic(
+                    DISK_SNAPSHOT_SAVE_INTERVAL,
+                    new Handler<Long>() {
+                        @Override
+                        public void handle(Long event) {
+                            saveDiskSnapshot();
+                        }
+                    }
+            );
+        }
 
-        // Also start a timer to refresh the whole cache every 10 minutes
+        // Also schedule the periodical full refresh and delta refresh
+        scheduleRefresh();
         vertx.setPeriodic(
-                getRefreshInterval(),
+                getDeltaRefreshInterval(),
                 new Handler<Long>() {
                     @Override
                     public void handle(Long event) {
-                        refresh();
+                        deltaRefresh();
                     }
                 }
         );
@@ -124,16 +284,279 @@ public abstract class AbstractLocalCache {
      */
     public abstract Object getPojoByJsonObject(JsonObject jsonObject) throws Exception;
 
+    /**
+     * Get the key of a raw JSON Object within the snapshot maps.
+     *
+     * Default to the index string.
+     *
+     * @param jsonObject
+     */
+    public String getSnapshotKey(JsonObject jsonObject) {
+        return getIndexString(jsonObject);
+    }
+
+    /**
+     * Create an empty Snapshot.
+     */
+    public Snapshot newEmptySnapshot() {
+        return new Snapshot(new HashMap<String, JsonObject>(), new HashMap<String, Object>());
+    }
+
+    /**
+     * Create a Snapshot Builder.
+     *
+     * @param base
+     */
+    public SnapshotBuilder newSnapshotBuilder(Snapshot base) {
+        return new SnapshotBuilder(base);
+    }
+
+    /**
+     * A Pending Update
+     */
+    static class PendingUpdate {
+        final Handler<SnapshotBuilder> updater;
+        final Handler<Boolean> doneHandler;
+        final Context context;
+
+        PendingUpdate(Handler<SnapshotBuilder> updater, Handler<Boolean> doneHandler, Context context) {
+            this.updater = updater;
+            this.doneHandler = doneHandler;
+            this.context = context;
+        }
+
+        /**
+         * Call the done handler (if any) on the caller's context.
+         *
+         * @param bSucceeded
+         */
+        void done(final boolean bSucceeded) {
+            if (doneHandler == null) {
+                return;
+            }
+            if (context == null) {
+                doneHandler.handle(bSucceeded);
+            } else {
+                context.runOnContext(new Handler<Void>() {
+                    @Override
+                    public void handle(Void event) {
+                        doneHandler.handle(bSucceeded);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * The updates to be applied by the next build
+     */
+    final ConcurrentLinkedQueue<PendingUpdate> pendingUpdates = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Has a build been submitted to the snapshot builder thread (and not started yet)?
+     */
+    final AtomicBoolean bBuildPending = new AtomicBoolean(false);
+
+    /**
+     * Update the cache by building a new snapshot (on the snapshot builder thread) and publishing it.
+     *
+     * The updates submitted while a build is pending are applied by the same build, in the order of submission.
+     *
+     * @param updater       Applies the changes to the builder
+     * @param doneHandler   Optional handler to be called (on the caller's context) with true if succeeded
+     */
+    public void update(final Handler<SnapshotBuilder> updater, final Handler<Boolean> doneHandler) {
+        pendingUpdates.add(new PendingUpdate(updater, doneHandler, Vertx.currentContext()));
+        if (!bBuildPending.compareAndSet(false, true)) {
+            // Will be picked up by the pending build
+            return;
+        }
+
+        snapshotBuilderExecutor.executeBlocking(
+                new Handler<Future<Void>>() {
+                    @Override
+                    public void handle(Future<Void> future) {
+                        // The updates submitted from now on need another build
+                        bBuildPending.set(false);
+
+                        List<PendingUpdate> batch = new ArrayList<>();
+                        for (PendingUpdate pendingUpdate = pendingUpdates.poll();
+                             pendingUpdate != null;
+                             pendingUpdate = pendingUpdates.poll()) {
+                            batch.add(pendingUpdate);
+                        }
+                        if (batch.size() == 0) {
+                            future.complete();
+                            return;
+                        }
+
+                        boolean bSucceeded = true;
+                        try {
+                            SnapshotBuilder builder = newSnapshotBuilder(snapshot);
+                            for (PendingUpdate pendingUpdate : batch) {
+                                pendingUpdate.updater.handle(builder);
+                            }
+                            if (builder.bChanged) {
+                                snapshot = builder.build();
+                                bDiskSnapshotDirty = true;
+                            }
+                        } catch (Exception e) {
+                            log.error("Failed to update " + cachedObjectType + " cache due to " + e.getMessage()
+                                    + "! (" + batch.size() + " update(s) discarded)", e);
+                            bSucceeded = false;
+                        }
+
+                        for (PendingUpdate pendingUpdate : batch) {
+                            pendingUpdate.done(bSucceeded);
+                        }
+                        future.complete();
+                    }
+                },
+                true,
+                null
+        );
+    }
+
+    /**
+     * Whether this cache may save its objects into a local disk snapshot.
+     *
+     * To be overridden (with false) by the caches whose objects contain credentials.
+     */
+    public boolean isDiskSnapshotAllowed() {
+        return true;
+    }
+
+    /**
+     * Get the Cache Id, which tells whether a disk snapshot was saved by the same kind of cache.
+     */
+    public String getCacheId() {
+        return getClass().getName() + "|" + dbCollectionName + "|" + getDbQueryMatcher().encode();
+    }
+
+    /**
+     * Initialize the cache from the local disk snapshot, and then catch up with a delta refresh.
+     *
+     * Perform a full refresh instead if there is no usable disk snapshot.
+     */
+    public void loadDiskSnapshot() {
+        if (diskSnapshotFile == null) {
+            refresh();
+            return;
+        }
+
+        final long[] loadedWatermark = {0};
+        update(
+                new Handler<SnapshotBuilder>() {
+                    @Override
+                    public void handle(SnapshotBuilder builder) {
+                        LocalCacheDiskSnapshot diskSnapshot;
+                        try {
+                            diskSnapshot = LocalCacheDiskSnapshot.read(diskSnapshotFile, getCacheId());
+                        } catch (IOException e) {
+                            log.error("Failed to load " + cachedObjectType + " cache from disk snapshot due to "
+                                    + e.getMessage() + "!");
+                            return;
+                        }
+                        if (diskSnapshot == null || diskSnapshot.changeLogWatermark <= 0) {
+                            return;
+                        }
+
+                        for (Map.Entry<String, JsonObject> entry : diskSnapshot.rawJsonObjects.entrySet()) {
+                            try {
+                                Object pojo = getPojoByJsonObject(entry.getValue());
+                                if (pojo != null) {
+                                    builder.put(entry.getKey(), entry.getValue(), pojo);
+                                }
+                            } catch (Exception e) {
+                                log.error("Failed to convert disk snapshot object to a " + cachedObjectType
+                                        + " POJO due to " + e.getMessage() + "!");
+                            }
+                        }
+                        log.info("Loaded " + builder.rawJsonObjects.size() + " " + cachedObjectType
+                                + "(s) from disk snapshot saved at " + diskSnapshot.saveTime + ".");
+                        loadedWatermark[0] = diskSnapshot.changeLogWatermark;
+                    }
+                },
+                new Handler<Boolean>() {
+                    @Override
+                    public void handle(Boolean bSucceeded) {
+                        if (bSucceeded && loadedWatermark[0] > 0) {
+                            // Catch up (a full refresh is triggered if the snapshot is too old)
+                            diskSnapshotWatermark = loadedWatermark[0];
+                            changeLogWatermark = loadedWatermark[0];
+                            bDiskSnapshotDirty = false;
+                            deltaRefresh();
+                        } else {
+                            refresh();
+                        }
+                    }
+                }
+        );
+    }
+
+    /**
+     * Save the current snapshot to the local disk if it has changed (or the saved watermark is getting old).
+     */
+    public void saveDiskSnapshot() {
+        // Read the watermark before the snapshot, so the saved watermark never claims more than the saved content
+        final long watermark = changeLogWatermark;
+        if (watermark == 0 || diskSnapshotFile == null) {
+            // Not initialized yet
+            return;
+        }
+        if (!bDiskSnapshotDirty && watermark - diskSnapshotWatermark < DISK_SNAPSHOT_MAX_WATERMARK_AGE) {
+            return;
+        }
+
+        bDiskSnapshotDirty = false;
+        final Snapshot current = snapshot;
+        snapshotBuilderExecutor.executeBlocking(
+                new Handler<Future<Void>>() {
+                    @Override
+                    public void handle(Future<Void> future) {
+                        try {
+                            if (!LocalCacheDiskSnapshot.write(
+                                    diskSnapshotFile,
+                                    getCacheId(),
+                                    watermark,
+                                    current.rawJsonObjects)) {
+                                // Another server on this host is saving the same snapshot
+                                log.debug("Skipped saving " + cachedObjectType + " cache to "
+                                        + diskSnapshotFile.getPath() + " (locked by another writer).");
+                            }
+                            future.complete();
+                        } catch (Exception e) {
+                            future.fail(e);
+                        }
+                    }
+                },
+                true,
+                new Handler<AsyncResult<Void>>() {
+                    @Override
+                    public void handle(AsyncResult<Void> result) {
+                        if (result.succeeded()) {
+                            diskSnapshotWatermark = watermark;
+                        } else {
+                            log.error("Failed to save " + cachedObjectType + " cache to "
+                                    + diskSnapshotFile.getPath() + " due to " + result.cause().getMessage() + "!");
+                            bDiskSnapshotDirty = true;
+                        }
+                    }
+                }
+        );
+    }
+
     /**
      * Refresh the Cache
      */
     public void refresh() {
         //Make the query batch size large enough to return all results in one batch
         Integer batchSize = null;
-        if (rawJsonObjectHashMap.size() > 0) {
-            batchSize = Math.max(100, rawJsonObjectHashMap.size() * 2);
+        if (snapshot.rawJsonObjects.size() > 0) {
+            batchSize = Math.max(100, snapshot.rawJsonObjects.size() * 2);
         }
 
+        final long queryTime = System.currentTimeMillis();
         try {
             VertxMongoUtils.find(
                     client,
@@ -142,7 +565,32 @@ public abstract class AbstractLocalCache {
                     null,
                     0,
                     -1,
-                    mongoQueryResultHandler,
+                    new Handler<List<JsonObject>>() {
+                        @Override
+                        public void handle(final List<JsonObject> queryResults) {
+                            // Do nothing if MongoDB timed out
+                            if (queryResults == null || VertxMongoUtils.FIND_TIMED_OUT.equals(queryResults)) {
+                                return;
+                            }
+
+                            update(
+                                    new Handler<SnapshotBuilder>() {
+                                        @Override
+                                        public void handle(SnapshotBuilder builder) {
+                                            applyRefresh(builder, queryResults);
+                                        }
+                                    },
+                                    new Handler<Boolean>() {
+                                        @Override
+                                        public void handle(Boolean bSucceeded) {
+                                            if (bSucceeded) {
+                                                advanceChangeLogWatermark(queryTime);
+                                            }
+                                        }
+                                    }
+                            );
+                        }
+                    },
                     null,
                     batchSize,
                     false);
@@ -151,6 +599,241 @@ public abstract class AbstractLocalCache {
         }
     }
 
+    /**
+     * Apply the result of a full refresh, i.e. compare the cache with all the DB objects.
+     *
+     * @param builder
+     * @param queryResults
+     */
+    public void applyRefresh(SnapshotBuilder builder, List<JsonObject> queryResults) {
+        //log.debug("Refreshing cache with DB query result from collection " + dbCollectionName + "...");
+        HashMap<String, JsonObject> dbObjects = new HashMap<>();
+        for (JsonObject jsonObject : queryResults) {
+            String key = getSnapshotKey(jsonObject);
+            if (key == null) {
+                log.error("Cannot get index string out of Query Result!\n" + jsonObject.encodePrettily());
+            } else {
+                dbObjects.put(key, convertRawJsonObject(jsonObject));
+            }
+        }
+
+        // Check for unexpected deletion
+        for (String key : builder.rawJsonObjects.keySet().toArray(new String[0])) {
+            if (dbObjects.containsKey(key) == false) {
+                log.info("Deleting key " + key + " from cache..");
+                builder.remove(key);
+            }
+        }
+
+        // Check for unexpected creates and updates
+        for (String key : dbObjects.keySet()) {
+            JsonObject dbObject = dbObjects.get(key);
+            JsonObject cacheObject = builder.rawJsonObjects.get(key);
+            if (cacheObject == null) {
+                log.info("Adding key " + key + " to cache..");
+            } else if (!cacheObject.equals(dbObject)) {
+                log.info("Replacing key " + key + " ..");
+            } else {
+                continue;
+            }
+
+            try {
+                Object pojo = getPojoByJsonObject(dbObject);
+                if (pojo != null) {
+                    builder.put(key, dbObject, pojo);
+                }
+            } catch (Exception e) {
+                log.error("Failed to convert DB object to a " + cachedObjectType + " POJO due to "
+                        + e.getMessage() + "! DB Object Details:\n" + dbObject.encodePrettily());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Schedule the next full refresh.
+     *
+     * A new random interval is used every time so the caches of all the vertices/servers do not stay aligned.
+     */
+    public void scheduleRefresh() {
+        vertx.setTimer(
+                getRefreshInterval(),
+                new Handler<Long>() {
+                    @Override
+                    public void handle(Long event) {
+                        refresh();
+                        scheduleRefresh();
+                    }
+                }
+        );
+    }
+
+    /**
+     * Delta Refresh, i.e. only re-read the documents that have changed since the watermark according to the change
+     * log.
+     */
+    public void deltaRefresh() {
+        if (bDeltaRefreshInProgress || changeLogWatermark == 0) {
+            // The initial full refresh has not completed yet
+            return;
+        }
+
+        final long queryTime = System.currentTimeMillis();
+        if (queryTime - changeLogWatermark > CacheChangeLog.RETENTION - MAX_DELTA_REFRESH_INTERVAL) {
+            /**
+             * Some of the changes may have been pruned from the change log already (for example MongoDB was down
+             * for a long time).
+             */
+            log.info(cachedObjectType + " cache is too far behind the change log. Performing a full refresh...");
+            refresh();
+            return;
+        }
+
+        bDeltaRefreshInProgress = true;
+        CacheChangeLog.query(
+                client,
+                dbCollectionName,
+                changeLogWatermark,
+                new Handler<List<JsonObject>>() {
+                    @Override
+                    public void handle(List<JsonObject> changes) {
+                        if (changes == null) {
+                            bDeltaRefreshInProgress = false;
+                            return;
+                        }
+
+                        /**
+                         * Collect the changed document ids
+                         */
+                        final Set<String> changedIds = new HashSet<>();
+                        for (JsonObject aChange : changes) {
+                            String docId = aChange.getString(CacheChangeLog.FIELD_NAME_DOC_ID);
+                            if (CacheChangeLog.ALL_DOCS.equals(docId)) {
+                                log.info("Found a bulk change of " + cachedObjectType + ". Performing a full refresh...");
+                                bDeltaRefreshInProgress = false;
+                                refresh();
+                                return;
+                            }
+                            if (docId != null) {
+                                changedIds.add(docId);
+                            }
+                        }
+                        if (changedIds.size() == 0) {
+                            advanceChangeLogWatermark(queryTime);
+                            bDeltaRefreshInProgress = false;
+                            return;
+                        }
+
+                        /**
+                         * Re-read the changed documents (the deleted ones or the ones no longer matching the
+                         * cache's query matcher will not be returned)
+                         */
+                        JsonObject matcher = new JsonObject().put(
+                                AcsConstants.FIELD_NAME_ID,
+                                new JsonObject().put("$in", new JsonArray(new ArrayList<>(changedIds)))
+                        );
+                        if (getDbQueryMatcher().size() > 0) {
+                            matcher = new JsonObject().put(
+                                    "$and",
+                                    new JsonArray().add(getDbQueryMatcher()).add(matcher)
+                            );
+                        }
+                        try {
+                            VertxMongoUtils.find(
+                                    client,
+                                    dbCollectionName,
+                                    matcher,
+                                    new Handler<List<JsonObject>>() {
+                                        @Override
+                                        public void handle(final List<JsonObject> queryResults) {
+                                            if (queryResults == null
+                                                    || VertxMongoUtils.FIND_TIMED_OUT.equals(queryResults)) {
+                                                bDeltaRefreshInProgress = false;
+                                                return;
+                                            }
+
+                                            log.info("Applying " + changedIds.size() + " change(s) to "
+                                                    + cachedObjectType + " cache..");
+                                            update(
+                                                    new Handler<SnapshotBuilder>() {
+                                                        @Override
+                                                        public void handle(SnapshotBuilder builder) {
+                                                            applyChanges(builder, changedIds, queryResults);
+                                                        }
+                                                    },
+                                                    new Handler<Boolean>() {
+                                                        @Override
+                                                        public void handle(Boolean bSucceeded) {
+                                                            if (bSucceeded) {
+                                                                advanceChangeLogWatermark(queryTime);
+                                                            }
+                                                            bDeltaRefreshInProgress = false;
+                                                        }
+                                                    }
+                                            );
+                                        }
+                                    },
+                                    null,
+                                    null
+                            );
+                        } catch (VertxException e) {
+                            e.printStackTrace();
+                            bDeltaRefreshInProgress = false;
+                        }
+                    }
+                }
+        );
+    }
+
+    /**
+     * Apply the result of a delta refresh.
+     *
+     * @param builder
+     * @param changedIds    The "_id" of all the changed documents
+     * @param dbObjects     The current version of the changed documents (deleted documents are not included)
+     */
+    public void applyChanges(SnapshotBuilder builder, Set<String> changedIds, List<JsonObject> dbObjects) {
+        // Remove the old versions first as the index may have changed (for example a new URL)
+        for (String key : builder.rawJsonObjects.keySet().toArray(new String[0])) {
+            if (changedIds.contains(builder.rawJsonObjects.get(key).getString(AcsConstants.FIELD_NAME_ID))) {
+                builder.remove(key);
+            }
+        }
+
+        // Add the current versions
+        for (JsonObject dbObject : dbObjects) {
+            JsonObject rawJsonObject = convertRawJsonObject(dbObject);
+            String key = getSnapshotKey(rawJsonObject);
+            if (key == null) {
+                log.error("Cannot get index string out of Query Result!\n" + dbObject.encodePrettily());
+                continue;
+            }
+
+            try {
+                Object pojo = getPojoByJsonObject(rawJsonObject);
+                if (pojo != null) {
+                    builder.put(key, rawJsonObject, pojo);
+                }
+            } catch (Exception e) {
+                log.error("Failed to convert DB object to a " + cachedObjectType + " POJO due to "
+                        + e.getMessage() + "! DB Object Details:\n" + dbObject.encodePrettily());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Advance the delta refresh watermark after a successful (full or delta) refresh.
+     *
+     * The watermark is set a bit before the time the query was sent, to cover the clock differences between the
+     * servers and the changes that were being written while querying.
+     *
+     * @param queryTime
+     */
+    public void advanceChangeLogWatermark(long queryTime) {
+        changeLogWatermark = Math.max(changeLogWatermark, queryTime - DELTA_REFRESH_OVERLAP);
+    }
+
     /**
      * Get DB Query Matcher
      */
@@ -160,16 +843,39 @@ public abstract class AbstractLocalCache {
     }
 
     /**
-     * Get Cache Refresh Interval which is between 10-20 minutes.
+     * Get (Full) Cache Refresh Interval which is between 30-60 minutes.
+     *
+     * The full refresh is only a safety net now that the cache is kept up to date by the delta refresh.
      */
-    public static final int MAX_REFRESH_INTERVAL = 1200000;
-    public static final int MIN_REFRESH_INTERVAL = 600000;
+    public static final int MAX_REFRESH_INTERVAL = 3600000;
+    public static final int MIN_REFRESH_INTERVAL = 1800000;
     public long getRefreshInterval() {
         long interval = AcsMiscUtils.randInt(MIN_REFRESH_INTERVAL, MAX_REFRESH_INTERVAL);
         log.info("Refresh Interval: " + interval + " milliseconds.");
         return interval;
     }
 
+    /**
+     * Get Delta Refresh Interval which is between 45-75 seconds.
+     */
+    public static final int MAX_DELTA_REFRESH_INTERVAL = 75000;
+    public static final int MIN_DELTA_REFRESH_INTERVAL = 45000;
+    public long getDeltaRefreshInterval() {
+        return AcsMiscUtils.randInt(MIN_DELTA_REFRESH_INTERVAL, MAX_DELTA_REFRESH_INTERVAL);
+    }
+
+    /**
+     * The delta refresh re-reads the changes of the last 60 seconds before the previous refresh
+     */
+    public static final long DELTA_REFRESH_OVERLAP = 60000;
+
+    /**
+     * Check for saving the disk snapshot every minute, and save it at least every 10 minutes (to keep the saved
+     * watermark within the change log retention)
+     */
+    public static final long DISK_SNAPSHOT_SAVE_INTERVAL = 60000;
+    public static final long DISK_SNAPSHOT_MAX_WATERMARK_AGE = 600000;
+
     /**
      * Return the Default CRUD Event Handler
      * @return
@@ -178,7 +884,7 @@ public abstract class AbstractLocalCache {
         return  new Handler<Message<JsonObject>>() {
             @Override
             public void handle(Message<JsonObject> event) {
-                JsonObject crudEvent = event.body();
+                final JsonObject crudEvent = event.body();
 
                 /**
                  * Extract CRUD Type
@@ -189,127 +895,62 @@ public abstract class AbstractLocalCache {
                             + " CRUD Event:\n" + crudEvent.encodePrettily());
                     return;
                 }
-                AcsApiCrudTypeEnum crudType = AcsApiCrudTypeEnum.getCrudTypeEnumByNameString(crudTypeString);
+                final AcsApiCrudTypeEnum crudType = AcsApiCrudTypeEnum.getCrudTypeEnumByNameString(crudTypeString);
                 log.info("Received a " + cachedObjectType + " " + crudType.name() + " Event:\n"
                         + crudEvent.encodePrettily());
                 crudEvent.remove(AcsConstants.FIELD_NAME_ACS_CRUD_TYPE);
 
                 // Get index value
-                String index = getIndexString(crudEvent);
+                final String key = getSnapshotKey(crudEvent);
+                if (key == null) {
+                    if (AcsApiCrudTypeEnum.Delete.equals(crudType)) {
+                        /**
+                         * Bulk delete or delete by orgId+name
+                         *
+                         * Simply refresh the entire cache
+                         */
+                        refresh();
+                    }
+                    return;
+                }
 
                 /**
                  * Check CRUD Type
                  */
-                switch (crudType) {
-                    case Create:
-                    case Update:
-                        try {
-                            Object pojo = getPojoByJsonObject(crudEvent);
-                            if (pojo != null) {
-                                hashMap.put(index, pojo);
-                                rawJsonObjectHashMap.put(index, convertRawJsonObject(crudEvent));
+                update(
+                        new Handler<SnapshotBuilder>() {
+                            @Override
+                            public void handle(SnapshotBuilder builder) {
+                                switch (crudType) {
+                                    case Create:
+                                    case Update:
+                                        try {
+                                            Object pojo = getPojoByJsonObject(crudEvent);
+                                            if (pojo != null) {
+                                                builder.put(key, convertRawJsonObject(crudEvent), pojo);
+                                            }
+                                        } catch (Exception e) {
+                                            log.error("Failed to create a new cached object due to exception "
+                                                    + e.getMessage() + "! CRUD Event Details:\n"
+                                                    + crudEvent.encodePrettily());
+                                            e.printStackTrace();
+                                        }
+                                        break;
+
+                                    case Delete:
+                                        builder.remove(key);
+                                        break;
+                                }
                             }
-                        } catch (Exception e) {
-                            log.error("Failed to create a new cached object due to exception "
-                                    + e.getMessage() + "! CRUD Event Details:\n" + crudEvent.encodePrettily());
-                            e.printStackTrace();
-                        }
-                        break;
-
-                    case Delete:
-                        if (index != null) {
-                            hashMap.remove(index);
-                            rawJsonObjectHashMap.remove(index);
-                        } else {
-                            /**
-                             * Bulk delete or delete by orgId+name
-                             *
-                             * Simply refresh the entire cache
-                             */
-                            refresh();
-                        }
-                }
+                        },
+                        null
+                );
             }
         };
     }
 
     /**
-     * Get an instance of MongoDB Query Result Handler
-     * @return
-     */
-    public Handler getMongoQueryResultHandler() {
-        return new MongoQueryResultHandler();
-    }
-
-    /**
-     * Inner Class for MongoDB Query Result Handler
-     */
-    public class MongoQueryResultHandler implements Handler<List<JsonObject>> {
-        @Override
-        public void handle(List<JsonObject> queryResults) {
-
-            // Do nothing if MongoDB timed out
-            if (queryResults == null || VertxMongoUtils.FIND_TIMED_OUT.equals(queryResults)) {
-                return;
-            }
-
-            //log.debug("Refreshing cache with DB query result from collection " + dbCollectionName + "...");
-            for (int i = 0; i < queryResults.size(); i++) {
-                JsonObject jsonObject = queryResults.get(i);
-                String index = getIndexString(jsonObject);
-                if (index == null) {
-                    log.error("Cannot get index string out of Query Result!\n"
-                            + jsonObject.encodePrettily());
-                } else {
-                    tmpHashMap.put(index, convertRawJsonObject(jsonObject));
-                }
-            }
-
-            // Compare hashMap and tmpHashMap
-            // Check for unexpected deletion
-            for (String index : hashMap.keySet().toArray(new String[0])) {
-                if (tmpHashMap.containsKey(index) == false) {
-                    log.info("Deleting key " + index + " from cache..");
-                    hashMap.remove(index);
-                }
-            }
-            // Check for unexpected creation
-            for (String index : tmpHashMap.keySet().toArray(new String[0])) {
-                if (hashMap.containsKey(index) == false) {
-                    log.info("Adding key " + index + " to cache..");
-                    try {
-                        hashMap.put(index, getPojoByJsonObject(tmpHashMap.get(index)));
-                        rawJsonObjectHashMap.put(index, tmpHashMap.get(index));
-                    } catch (Exception e) {
-                        log.error("Failed to convert DB object to a " + cachedObjectType + " POJO due to "
-                                + e.getMessage() + "! DB Object Details:\n"
-                                + tmpHashMap.get(index).encodePrettily());
-                        e.printStackTrace();
-                    }
-                } else {
-                    // Replace if changed
-                    if(!tmpHashMap.get(index).equals(rawJsonObjectHashMap.get(index))) {
-                        log.info("Replacing key " + index + " ..");
-                        log.info("Old record: \n" + rawJsonObjectHashMap.get(index).encodePrettily());
-                        log.info("New record: \n" + tmpHashMap.get(index).encodePrettily());
-                        try {
-                            hashMap.put(index, getPojoByJsonObject(tmpHashMap.get(index)));
-                            rawJsonObjectHashMap.put(index, tmpHashMap.get(index));
-                        } catch (Exception e) {
-                            log.error("Failed to convert DB object to a " + cachedObjectType + " POJO!\n"
-                                    + tmpHashMap.get(index).encodePrettily());
-                        }
-                    }
-                }
-            }
-
-            // clean up as tmpHashMap is no longer needed
-            tmpHashMap.clear();
-        }
-    }
-
-    /**
-     * Convert raw JSON Objects before saving into rawJsonObjectHashMap.
+     * Convert raw JSON Objects before saving into the snapshot.
      *
      * Default to no action.
      *
@@ -319,6 +960,15 @@ public abstract class AbstractLocalCache {
        return rawJsonObject;
     }
 
+    /**
+     * Get the current Snapshot.
+     *
+     * Callers that need to read multiple objects consistently should get the snapshot once and read from it.
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
     /**
      * Continent Get Method.
      * @param index
@@ -326,6 +976,17 @@ public abstract class AbstractLocalCache {
      * @return
      */
     public <T> T get(String index) {
-        return (T)hashMap.get(index);
+        return index == null? null : (T) snapshot.pojos.get(index);
+    }
+
+    /**
+     * Get a raw JSON Object.
+     *
+     * The returned JSON Object must not be modified.
+     *
+     * @param index
+     */
+    public JsonObject getRawJsonObject(String index) {
+        return index == null? null : snapshot.rawJsonObjects.get(index);
     }
 }
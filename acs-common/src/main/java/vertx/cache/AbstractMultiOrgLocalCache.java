@@ -1,33 +1,164 @@
 package vertx.cache;
 
-import vertx.VertxMongoUtils;
-import vertx.model.AcsApiCrudTypeEnum;
 import vertx.util.AcsConstants;
-import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
-import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonObject;
 
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
 import java.util.TreeMap;
 
 /**
  * Project:  cwmp
- * 
+ *
  * Abstract Local Cache where each org has its own tree map.
  *
+ * The raw JSON Objects and POJOs in the snapshot are indexed by "_id", and the snapshot also contains one (read-only)
+ * sorted map per org. When building a new snapshot, only the sorted maps of the orgs that have changed are rebuilt.
+ *
  * @author: ronyang
  */
 public abstract class AbstractMultiOrgLocalCache extends AbstractLocalCache{
 
     /**
-     * A TreeMap that contains all all the child hash maps (one per org).
-     *
-     * The Index is the orgId.
+     * Immutable Snapshot with the per-org sorted maps
      */
-    public HashMap<String, TreeMap<String, Object>> allPerOrgTreeMaps;
+    public static class MultiOrgSnapshot extends Snapshot {
+        /**
+         * All the per-org sorted maps.
+         *
+         * The Index is the orgId.
+         */
+        public final Map<String, SortedMap<String, Object>> allPerOrgTreeMaps;
+
+        /**
+         * Constructor.
+         *
+         * The given maps must not be modified afterwards.
+         *
+         * @param rawJsonObjects
+         * @param pojos
+         * @param allPerOrgTreeMaps
+         */
+        public MultiOrgSnapshot(
+                Map<String, JsonObject> rawJsonObjects,
+                Map<String, Object> pojos,
+                Map<String, SortedMap<String, Object>> allPerOrgTreeMaps) {
+            super(rawJsonObjects, pojos);
+            this.allPerOrgTreeMaps = Collections.unmodifiableMap(allPerOrgTreeMaps);
+        }
+    }
+
+    /**
+     * Snapshot Builder that also maintains the per-org sorted maps
+     */
+    public class MultiOrgSnapshotBuilder extends SnapshotBuilder {
+        HashMap<String, SortedMap<String, Object>> allPerOrgTreeMaps;
+
+        /**
+         * The per-org tree maps that have been copied (and modified) by this builder
+         */
+        HashMap<String, TreeMap<String, Object>> modifiedPerOrgTreeMaps = new HashMap<>();
+
+        /**
+         * The comparator (if any) works on the raw JSON Objects of this builder
+         */
+        Comparator comparator;
+
+        /**
+         * Constructor.
+         *
+         * @param base
+         */
+        public MultiOrgSnapshotBuilder(MultiOrgSnapshot base) {
+            super(base);
+            allPerOrgTreeMaps = new HashMap<>(base.allPerOrgTreeMaps);
+            comparator = getComparator(rawJsonObjects);
+        }
+
+        /**
+         * Get a modifiable copy of the tree map of a given org.
+         *
+         * @param orgId
+         */
+        TreeMap<String, Object> getModifiablePerOrgTreeMap(String orgId) {
+            TreeMap<String, Object> perOrgTreeMap = modifiedPerOrgTreeMaps.get(orgId);
+            if (perOrgTreeMap == null) {
+                perOrgTreeMap = new TreeMap<>(comparator);
+                SortedMap<String, Object> existing = allPerOrgTreeMaps.get(orgId);
+                if (existing != null) {
+                    perOrgTreeMap.putAll(existing);
+                }
+                modifiedPerOrgTreeMaps.put(orgId, perOrgTreeMap);
+            }
+            return perOrgTreeMap;
+        }
+
+        /**
+         * Add or replace an object.
+         *
+         * @param rawId
+         * @param rawJsonObject
+         * @param pojo
+         */
+        @Override
+        public void put(String rawId, JsonObject rawJsonObject, Object pojo) {
+            String orgId = rawJsonObject.getString(AcsConstants.FIELD_NAME_ORG_ID);
+            if (orgId == null) {
+                // Skip saving this object in cache
+                log.error("Cannot get orgId out of " + cachedObjectType + " " + rawId + "!");
+                return;
+            }
+
+            // The old version may belong to a different org
+            remove(rawId);
+
+            // The comparator (if any) may need the new raw JSON Object
+            super.put(rawId, rawJsonObject, pojo);
+            getModifiablePerOrgTreeMap(orgId).put(getIndexString(rawJsonObject), pojo);
+        }
+
+        /**
+         * Remove an object (if present).
+         *
+         * @param rawId
+         */
+        @Override
+        public void remove(String rawId) {
+            JsonObject toBeDeleted = rawJsonObjects.get(rawId);
+            if (toBeDeleted != null) {
+                String orgId = toBeDeleted.getString(AcsConstants.FIELD_NAME_ORG_ID);
+                if (orgId != null) {
+                    // Remove from the per-org tree map before the comparator loses the raw JSON Object
+                    getModifiablePerOrgTreeMap(orgId).remove(getIndexString(toBeDeleted));
+                }
+            }
+
+            super.remove(rawId);
+        }
+
+        /**
+         * Build the new Snapshot.
+         */
+        @Override
+        public Snapshot build() {
+            for (String orgId : modifiedPerOrgTreeMaps.keySet()) {
+                TreeMap<String, Object> perOrgTreeMap = modifiedPerOrgTreeMaps.get(orgId);
+                if (perOrgTreeMap.size() == 0) {
+                    if (allPerOrgTreeMaps.remove(orgId) != null) {
+                        log.info("Deleted the last " + cachedObjectType + " from org " + orgId);
+                    }
+                } else {
+                    allPerOrgTreeMaps.put(orgId, Collections.unmodifiableSortedMap(perOrgTreeMap));
+                }
+            }
+
+            return new MultiOrgSnapshot(rawJsonObjects, pojos, allPerOrgTreeMaps);
+        }
+    }
 
     /**
      * Constructor.
@@ -43,8 +174,6 @@ public abstract class AbstractMultiOrgLocalCache extends AbstractLocalCache{
             final String dbCollectionName,
             final String cachedObjectType) {
         super(vertx, crudEventAddress, dbCollectionName, cachedObjectType);
-        this.allPerOrgTreeMaps = new HashMap();
-        this.hashMap = null;
     }
 
     /**
@@ -57,198 +186,43 @@ public abstract class AbstractMultiOrgLocalCache extends AbstractLocalCache{
     }
 
     /**
-     * Override the default CRUD Event Handler
-     * @return
+     * The raw JSON Objects and POJOs are indexed by "_id".
+     *
+     * @param jsonObject
      */
     @Override
-    public Handler<Message<JsonObject>> getCrudEventHandler() {
-        return  new Handler<Message<JsonObject>>() {
-            @Override
-            public void handle(Message<JsonObject> event) {
-                JsonObject crudEvent = event.body();
-
-                /**
-                 * Extract CRUD Type
-                 */
-                String crudTypeString = crudEvent.getString(AcsConstants.FIELD_NAME_ACS_CRUD_TYPE);
-                if (crudTypeString == null) {
-                    log.error("No CRUD Type Found! Invalid " + cachedObjectType
-                            + " CRUD Event:\n" + crudEvent.encodePrettily());
-                    return;
-                }
-                AcsApiCrudTypeEnum crudType = AcsApiCrudTypeEnum.getCrudTypeEnumByNameString(crudTypeString);
-                log.info("Received a " + cachedObjectType + " " + crudType.name() + " Event:\n"
-                        + crudEvent.encodePrettily());
-                crudEvent.remove(AcsConstants.FIELD_NAME_ACS_CRUD_TYPE);
-
-                // Get Org Id
-                String orgId = crudEvent.getString(AcsConstants.FIELD_NAME_ORG_ID);
-                // Get Raw _id string
-                String rawId = crudEvent.getString(AcsConstants.FIELD_NAME_ID);
-                // Get index value
-                String index = crudEvent.getString(AcsConstants.FIELD_NAME_ID);
-                TreeMap<String, Object> thisOrg = orgId == null ? null : getPerOrgTreeMap(orgId);
-
-                /**
-                 * Check CRUD Type
-                 */
-                switch (crudType) {
-                    case Create:
-                    case Update:
-                        try {
-                            Object pojo = getPojoByJsonObject(crudEvent);
-                            if (pojo != null) {
-                                thisOrg.put(index, pojo);
-                                rawJsonObjectHashMap.put(rawId, convertRawJsonObject(crudEvent));
-                            } else {
-                                // Skip saving this object in cache
-                            }
-                        } catch (Exception e) {
-                            log.error("Failed to create a new cached object due to exception "
-                                    + e.getMessage() + "! CRUD Event Details:\n" + crudEvent.encodePrettily());
-                            e.printStackTrace();
-                        }
-                        break;
-
-                    case Delete:
-                        if (index != null) {
-                            if (orgId != null && thisOrg != null) {
-                                thisOrg.remove(index);
-                            } else {
-                                /**
-                                 * Will have to traverse all per-org hash maps  to find it
-                                 */
-                                for (String anOrgId : allPerOrgTreeMaps.keySet())  {
-                                    TreeMap<String, Object> aPerOrgTreeMap = allPerOrgTreeMaps.get(anOrgId);
-                                    if (aPerOrgTreeMap.containsKey(index)) {
-                                        log.info("Removing key " + index + " from org " + anOrgId);
-                                        orgId = anOrgId;
-                                        thisOrg = aPerOrgTreeMap;
-                                        aPerOrgTreeMap.remove(index);
-                                        break;
-                                    }
-                                }
-
-                                // Remove this org if empty
-                                if (orgId != null && thisOrg != null && thisOrg.size() == 0) {
-                                    log.info("Deleting the last " + cachedObjectType + " from org " + orgId);
-                                    allPerOrgTreeMaps.remove(orgId);
-                                }
-                            }
-                            rawJsonObjectHashMap.remove(rawId);
-                        } else {
-                            /**
-                             * Bulk delete or delete by orgId+name
-                             *
-                             * Simply refresh the entire cache
-                             */
-                            refresh();
-                        }
-                }
-            }
-        };
+    public String getSnapshotKey(JsonObject jsonObject) {
+        return jsonObject.getString(AcsConstants.FIELD_NAME_ID);
     }
 
     /**
-     * Get an instance of MongoDB Query Result Handler
-     * @return
+     * Create an empty Snapshot.
      */
-    public Handler getMongoQueryResultHandler() {
-        return new MultiOrgMongoQueryResultHandler();
+    @Override
+    public Snapshot newEmptySnapshot() {
+        return new MultiOrgSnapshot(
+                new HashMap<String, JsonObject>(),
+                new HashMap<String, Object>(),
+                new HashMap<String, SortedMap<String, Object>>()
+        );
     }
 
     /**
-     * Inner Class for MongoDB Query Result Handler
+     * Create a Snapshot Builder.
+     *
+     * @param base
      */
-    public class MultiOrgMongoQueryResultHandler implements Handler<List<JsonObject>> {
-        @Override
-        public void handle(List<JsonObject> queryResults) {
-
-            // Do nothing if MongoDB timed out
-            if (queryResults == null || VertxMongoUtils.FIND_TIMED_OUT.equals(queryResults)) {
-                return;
-            }
-
-            //log.debug("Refreshing cache with DB query result from collection " + dbCollectionName + "...");
-            for (int i = 0; i < queryResults.size(); i++) {
-                JsonObject jsonObject = queryResults.get(i);
-                String rawId = jsonObject.getString(AcsConstants.FIELD_NAME_ID);
-                if (rawId == null) {
-                    log.error("Cannot get internal _id string out of Query Result!\n"
-                            + jsonObject.encodePrettily());
-                } else {
-                    tmpHashMap.put(rawId, convertRawJsonObject(jsonObject));
-                }
-            }
-
-            // Compare treeMap and tmpHashMap
-
-            // Check for unexpected deletion
-            for (String index : rawJsonObjectHashMap.keySet()) {
-                if (tmpHashMap.containsKey(index) == false) {
-                    log.info("Deleting key " + index + " from cache..");
-                    JsonObject toBeDeleted = rawJsonObjectHashMap.get(index);
-                    String orgId = toBeDeleted.getString(AcsConstants.FIELD_NAME_ORG_ID);
-                    TreeMap<String, Object> anOrg = allPerOrgTreeMaps.get(orgId);
-
-                    // Remove from per-prg hash map
-                    if (anOrg != null) {
-                        anOrg.remove(getIndexString(toBeDeleted));
-                        if (anOrg.size() == 0) {
-                            log.info("Deleting the last " + cachedObjectType + " from org " + orgId);
-                            allPerOrgTreeMaps.remove(orgId);
-                        }
-                    }
-
-                    rawJsonObjectHashMap.remove(index);
-                }
-            }
-
-            // Check for unexpected creates and updates
-            for (String index : tmpHashMap.keySet()) {
-                boolean bSaveDbObject = false;
-                JsonObject dbObject = tmpHashMap.get(index);
-                JsonObject cacheObject = rawJsonObjectHashMap.get(index);
-
-                if (cacheObject == null) {
-                    log.info("Adding key " + index + " to cache..");
-                    bSaveDbObject = true;
-                } else {
-                    // Replace if changed
-                    if(!cacheObject.equals(dbObject)) {
-                        log.info("Replacing key " + index + " ..");
-                        bSaveDbObject = true;
-                    }
-                }
-
-                if (bSaveDbObject) {
-                    // Add new object or Overwrite existing object
-                    String orgId = dbObject.getString(AcsConstants.FIELD_NAME_ORG_ID);
-                    TreeMap<String, Object> thisOrg = getPerOrgTreeMap(orgId);
-                    try {
-                        Object pojo = getPojoByJsonObject(dbObject);
-                        if (pojo != null) {
-                            rawJsonObjectHashMap.put(index, dbObject);
-                            thisOrg.put(getIndexString(dbObject), pojo);
-                        }
-                    } catch (Exception e) {
-                        log.error("Failed to convert DB object to a " + cachedObjectType
-                                + " POJO due to exception " + e.getMessage() + "!\n"
-                                + dbObject.encodePrettily());
-                        e.printStackTrace();
-                    }
-                }
-            }
-
-            // Clean up
-            tmpHashMap.clear();
-        }
+    @Override
+    public SnapshotBuilder newSnapshotBuilder(Snapshot base) {
+        return new MultiOrgSnapshotBuilder((MultiOrgSnapshot) base);
     }
 
     /**
      * Get a comparator if the implementing class want to sort by a custom comparator.
+     *
+     * @param rawJsonObjects    The raw JSON Objects (indexed by "_id") of the snapshot being built
      */
-    public Comparator getComparator(){
+    public Comparator getComparator(Map<String, JsonObject> rawJsonObjects){
         return null;
     }
 
@@ -261,7 +235,7 @@ public abstract class AbstractMultiOrgLocalCache extends AbstractLocalCache{
      */
     public <T> T get(String orgId, String index) {
         //dumpAll();
-        TreeMap<String, Object> aPerOrgTreeMap = allPerOrgTreeMaps.get(orgId);
+        SortedMap<String, Object> aPerOrgTreeMap = getPerOrgTreeMap(orgId);
 
         if (aPerOrgTreeMap == null) {
             return null;
@@ -271,17 +245,14 @@ public abstract class AbstractMultiOrgLocalCache extends AbstractLocalCache{
     }
 
     /**
-     * Get all the cached objects for a given org
+     * Get all the cached objects for a given org.
+     *
+     * The returned map is read-only, and will not change even if the cache is updated while traversing it.
+     *
      * @param orgId
-     * @return
+     * @return  The sorted map, or null if no object is cached for this org.
      */
-    public TreeMap getPerOrgTreeMap(String orgId) {
-        TreeMap perOrgTreeMap = allPerOrgTreeMaps.get(orgId);
-        if (perOrgTreeMap == null) {
-            perOrgTreeMap = new TreeMap(getComparator());
-            allPerOrgTreeMaps.put(orgId, perOrgTreeMap);
-        }
-
-        return perOrgTreeMap;
+    public SortedMap<String, Object> getPerOrgTreeMap(String orgId) {
+        return orgId == null? null : ((MultiOrgSnapshot) snapshot).allPerOrgTreeMaps.get(orgId);
     }
 }
@@ -0,0 +1,141 @@
+package vertx.cache;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
+import vertx.VertxException;
+import vertx.VertxMongoUtils;
+import vertx.util.AcsMongoIndexes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Project:  cwmp
+ *
+ * Change Log of the Cached Collections.
+ *
+ * Every time the NBI creates/updates/deletes a document in a cached collection (i.e. publishes a CRUD event), it also
+ * records the collection name, the document "_id" and the time in this (small) collection. The local caches then
+ * only need to query the change log since their last refresh and re-read the changed documents, instead of
+ * reloading the whole collection. Deleted documents simply no longer come back when re-read, so the change log entries
+ * also serve as the tombstones.
+ *
+ * When the "_id" is unknown (for example bulk deletes), the special document id ALL_DOCS is recorded, which tells the
+ * caches to perform a full refresh.
+ *
+ * The entries are removed after RETENTION by a MongoDB TTL index (i.e. by the TTL monitor of the server instead of
+ * the NBI requests), so that recording a change is a single fire-and-forget insert.
+ *
+ * @author: ronyang
+ */
+public class CacheChangeLog {
+    private static final Logger log = LoggerFactory.getLogger(CacheChangeLog.class.getName());
+
+    /**
+     * DB Collection Name
+     */
+    public static final String DB_COLLECTION_NAME = "CWMP-cache-changes";
+
+    /**
+     * Field Names
+     */
+    public static final String FIELD_NAME_COLLECTION = "collection";
+    public static final String FIELD_NAME_DOC_ID = "docId";
+    public static final String FIELD_NAME_TIME = "time";
+
+    /**
+     * Special Document Id which means "any document may have changed"
+     */
+    public static final String ALL_DOCS = "*";
+
+    /**
+     * Keep the entries for 1 hour.
+     *
+     * Caches that have not caught up with the change log within this period must perform a full refresh.
+     */
+    public static final long RETENTION = 3600000;
+
+    /**
+     * MongoDB Indexes required by the change log queries, and the TTL index that expires the entries
+     */
+    public static final JsonArray DB_INDEXES = new JsonArray()
+            .add(AcsMongoIndexes.index(new JsonObject()
+                    .put(CacheChangeLog.FIELD_NAME_COLLECTION, 1)
+                    .put(CacheChangeLog.FIELD_NAME_TIME, 1)))
+            .add(AcsMongoIndexes.ttlIndex(CacheChangeLog.FIELD_NAME_TIME, RETENTION / 1000));
+
+    /**
+     * Query Keys (only the document id is needed)
+     */
+    public static final JsonObject QUERY_KEYS = new JsonObject()
+            .put(FIELD_NAME_DOC_ID, 1);
+
+    /**
+     * Record a change.
+     *
+     * @param mongoClient
+     * @param collectionName    Name of the cached collection
+     * @param docId             The "_id" of the changed document, or ALL_DOCS if unknown
+     */
+    public static void record(MongoClient mongoClient, String collectionName, String docId) {
+        try {
+            VertxMongoUtils.save(
+                    mongoClient,
+                    DB_COLLECTION_NAME,
+                    new JsonObject()
+                            .put(FIELD_NAME_COLLECTION, collectionName)
+                            .put(FIELD_NAME_DOC_ID, docId == null? ALL_DOCS : docId)
+                            .put(FIELD_NAME_TIME, VertxMongoUtils.getDateObject()),
+                    null
+            );
+        } catch (VertxException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Query the changes of a collection since a given time.
+     *
+     * The handler is called with the list of "{docId}", or null if the query failed.
+     *
+     * @param mongoClient
+     * @param collectionName
+     * @param since             Time in ms
+     * @param handler
+     */
+    public static void query(
+            MongoClient mongoClient,
+            String collectionName,
+            long since,
+            final Handler<List<JsonObject>> handler) {
+        JsonObject matcher = new JsonObject()
+                .put(FIELD_NAME_COLLECTION, collectionName)
+                .put(FIELD_NAME_TIME, new JsonObject().put("$gt", VertxMongoUtils.getDateObject(since)));
+
+        try {
+            VertxMongoUtils.find(
+                    mongoClient,
+                    DB_COLLECTION_NAME,
+                    matcher,
+                    new Handler<List<JsonObject>>() {
+                        @Override
+                        public void handle(List<JsonObject> changes) {
+                            if (changes == null || VertxMongoUtils.FIND_TIMED_OUT.equals(changes)) {
+                                handler.handle(null);
+                            } else {
+                                handler.handle(changes);
+                            }
+                        }
+                    },
+                    QUERY_KEYS,
+                    null
+            );
+        } catch (VertxException e) {
+            e.printStackTrace();
+            handler.handle(null);
+        }
+    }
+}
@@ -35,7 +35,7 @@ public class ConfigurationCategoryCache extends AbstractLocalCache{
     }
 
     /**
-     * Convert raw JSON Objects before saving into rawJsonObjectHashMap.
+     * Convert raw JSON Objects before saving into the snapshot.
      *
      * Default to no action.
      *
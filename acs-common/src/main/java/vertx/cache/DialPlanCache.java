@@ -64,6 +64,6 @@ public class DialPlanCache extends AbstractLocalCache{
             return DialPlan.SYSTEM_DEFAULT_DIAL_PLAN;
         }
 
-        return (JsonObject)hashMap.get(id);
+        return get(id);
     }
 }
@@ -55,6 +55,6 @@ public class GroupCache extends AbstractLocalCache {
      * @return
      */
     public CpeGroup getGroupById(String groupId) {
-        return (CpeGroup)hashMap.get(groupId);
+        return get(groupId);
     }
 }
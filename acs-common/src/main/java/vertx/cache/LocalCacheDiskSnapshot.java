@@ -0,0 +1,316 @@
+package vertx.cache;
+
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Project:  cwmp
+ *
+ * Local Disk Snapshot of a Local Cache.
+ *
+ * The raw JSON Objects of a cache are saved periodically into a local file, so that after a restart the cache can
+ * serve from the file right away (and then catch up via the delta refresh) instead of waiting for a full reload from
+ * MongoDB, which every server of the cluster would otherwise issue at the same moment.
+ *
+ * File Format (all integers are big endian, all strings are an int length followed by UTF-8 bytes):
+ *
+ *  int     MAGIC
+ *  int     FORMAT_VERSION
+ *  string  Cache Id (the snapshot is ignored if the cache id does not match)
+ *  long    Save Time (in ms)
+ *  long    Change Log Watermark (in ms)
+ *  int     # of entries
+ *  entries (string key, string raw JSON Object)
+ *
+ * The file is written into a per-writer temp file first and then atomically renamed, by a single writer at a time
+ * (i.e. the holder of an exclusive lock on the ".lock" file next to it, as all the servers on the same host share
+ * the same snapshot directory). The file is read into a heap buffer (instead of being memory-mapped, which would keep
+ * the mapping until the buffer is garbage collected).
+ *
+ * The caches whose objects contain credentials (for example the organizations) do not save any disk snapshots (see
+ * AbstractLocalCache.isDiskSnapshotAllowed()). The files are still created as only readable by the owner (if
+ * supported by the file system).
+ *
+ * @author: ronyang
+ */
+public class LocalCacheDiskSnapshot {
+    private static final Logger log = LoggerFactory.getLogger(LocalCacheDiskSnapshot.class.getName());
+
+    /**
+     * File Format Magic Number and Version
+     */
+    public static final int MAGIC = 0x43574353;
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * File Name Suffixes
+     */
+    public static final String FILE_NAME_SUFFIX = ".snapshot";
+    public static final String LOCK_FILE_NAME_SUFFIX = ".lock";
+
+    /**
+     * Owner-Only File Permissions
+     */
+    public static final String OWNER_ONLY_PERMISSIONS = "rw-------";
+
+    /**
+     * Save Time
+     */
+    public long saveTime;
+
+    /**
+     * Change Log Watermark at the time of saving
+     */
+    public long changeLogWatermark;
+
+    /**
+     * The raw JSON Objects (by key)
+     */
+    public Map<String, JsonObject> rawJsonObjects;
+
+    /**
+     * Get the snapshot file of a cache.
+     *
+     * @param dir
+     * @param cacheName
+     * @return  The file, or null if the disk snapshots are disabled.
+     */
+    public static File getFile(String dir, String cacheName) {
+        if (dir == null || dir.length() == 0) {
+            return null;
+        }
+
+        return new File(dir, cacheName.replaceAll("[^A-Za-z0-9._-]", "_") + FILE_NAME_SUFFIX);
+    }
+
+    /**
+     * Save a snapshot.
+     *
+     * @param file
+     * @param cacheId
+     * @param changeLogWatermark
+     * @param rawJsonObjects
+     * @return  false if skipped because another writer is saving the same snapshot file.
+     * @throws IOException
+     */
+    public static boolean write(
+            File file,
+            String cacheId,
+            long changeLogWatermark,
+            Map<String, JsonObject> rawJsonObjects) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir.getPath() + "!");
+        }
+
+        Path lockFile = new File(dir, file.getName() + LOCK_FILE_NAME_SUFFIX).toPath();
+        if (!Files.exists(lockFile)) {
+            try {
+                createOwnerOnlyFile(lockFile);
+            } catch (FileAlreadyExistsException ex) {
+                // Created by another writer in the meantime
+            }
+        }
+
+        try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.WRITE)) {
+            FileLock lock;
+            try {
+                lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException ex) {
+                // Held by another cache instance within this JVM
+                lock = null;
+            }
+            if (lock == null) {
+                return false;
+            }
+
+            try {
+                writeLocked(file, dir, cacheId, changeLogWatermark, rawJsonObjects);
+            } finally {
+                lock.release();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Save a snapshot while holding the lock.
+     *
+     * @param file
+     * @param dir
+     * @param cacheId
+     * @param changeLogWatermark
+     * @param rawJsonObjects
+     * @throws IOException
+     */
+    static void writeLocked(
+            File file,
+            File dir,
+            String cacheId,
+            long changeLogWatermark,
+            Map<String, JsonObject> rawJsonObjects) throws IOException {
+        Path tmpFile;
+        try {
+            tmpFile = Files.createTempFile(
+                    dir.toPath(),
+                    file.getName(),
+                    ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(OWNER_ONLY_PERMISSIONS))
+            );
+        } catch (UnsupportedOperationException ex) {
+            // Not a POSIX file system
+            tmpFile = Files.createTempFile(dir.toPath(), file.getName(), ".tmp");
+        }
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmpFile.toFile()), 65536))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, cacheId);
+                out.writeLong(System.currentTimeMillis());
+                out.writeLong(changeLogWatermark);
+                out.writeInt(rawJsonObjects.size());
+                for (Map.Entry<String, JsonObject> entry : rawJsonObjects.entrySet()) {
+                    writeString(out, entry.getKey());
+                    writeString(out, entry.getValue().encode());
+                }
+            }
+
+            Files.move(tmpFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /**
+     * Load a snapshot.
+     *
+     * @param file
+     * @param cacheId
+     * @return  The snapshot, or null if the file does not exist or was saved by a different cache/format version.
+     * @throws IOException  if the file is corrupted
+     */
+    public static LocalCacheDiskSnapshot read(File file, String cacheId) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot file " + file.getPath() + " is too large!");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Snapshot file " + file.getPath() + " was truncated while being read!");
+                }
+            }
+            buffer.flip();
+
+            try {
+                if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                    log.info("Ignoring " + file.getPath() + " (unknown format).");
+                    return null;
+                }
+                if (!cacheId.equals(readString(buffer))) {
+                    log.info("Ignoring " + file.getPath() + " (saved by a different cache).");
+                    return null;
+                }
+
+                LocalCacheDiskSnapshot snapshot = new LocalCacheDiskSnapshot();
+                snapshot.saveTime = buffer.getLong();
+                snapshot.changeLogWatermark = buffer.getLong();
+                int nbrOfEntries = buffer.getInt();
+                snapshot.rawJsonObjects = new LinkedHashMap<>();
+                for (int i = 0; i < nbrOfEntries; i ++) {
+                    String key = readString(buffer);
+                    snapshot.rawJsonObjects.put(key, new JsonObject(readString(buffer)));
+                }
+                return snapshot;
+            } catch (RuntimeException ex) {
+                // Buffer underflow or malformed JSON
+                throw new IOException("Corrupted snapshot file " + file.getPath() + "! " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Delete the snapshot file of a cache (if any), for example when the cache is no longer allowed to save one.
+     *
+     * @param file
+     */
+    public static void delete(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            log.error("Failed to delete " + file.getPath() + " due to " + e.getMessage() + "!");
+        }
+    }
+
+    /**
+     * Create an empty file that is only readable by the owner (if supported by the file system).
+     *
+     * @param path
+     * @throws IOException
+     */
+    static void createOwnerOnlyFile(Path path) throws IOException {
+        try {
+            Files.createFile(
+                    path,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(OWNER_ONLY_PERMISSIONS))
+            );
+        } catch (UnsupportedOperationException ex) {
+            // Not a POSIX file system
+            Files.createFile(path);
+        }
+    }
+
+    /**
+     * Write a string as an int length followed by the UTF-8 bytes.
+     *
+     * @param out
+     * @param string
+     */
+    static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string written by writeString().
+     *
+     * @param buffer
+     */
+    static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalStateException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
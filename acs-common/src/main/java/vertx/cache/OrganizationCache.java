@@ -25,6 +25,14 @@ public class OrganizationCache extends AbstractLocalCache {
         super(vertx, crudEventAddress, dbCollectionName, cachedObjectType);
     }
 
+    /**
+     * The organizations contain the ACS/API credentials, which shall not be saved into local disk snapshots.
+     */
+    @Override
+    public boolean isDiskSnapshotAllowed() {
+        return false;
+    }
+
     /**
      * Build actual index String by the raw JSON Object.
      *
@@ -52,6 +60,6 @@ public class OrganizationCache extends AbstractLocalCache {
      * @return
      */
     public Organization getOrgById(String orgId) {
-        return (Organization)hashMap.get(orgId);
+        return get(orgId);
     }
 }
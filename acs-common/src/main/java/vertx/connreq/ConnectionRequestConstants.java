@@ -19,6 +19,7 @@ public class ConnectionRequestConstants {
     public static final String USERNAME = "username";
     public static final String PASSWORD = "password";
     public static final String PROXY = "proxy";
+    public static final String UDP_ADDRESS = "udpAddress";
     public static final String TIMEOUT = "timeout";
     public static final String MAX_RETRIES = "maxRetries";
 
@@ -38,6 +39,39 @@ public class ConnectionRequestConstants {
      */
     public static final long DEFAULT_FAILURE_SOAKING_TIMEOUT = 10000;
 
+    /**
+     * TCP Connect Timeout (5 seconds)
+     *
+     * A reachable CPE accepts the TCP connection right away, while the SYNs towards a CPE behind NAT are silently
+     * dropped, so there is no point holding the HTTP client for the whole conn-req timeout.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+
+    /**
+     * Conn-Req Timeout when probing an unreachable CPE (10 seconds)
+     */
+    public static final long PROBE_CONN_REQ_TIMEOUT = 10000;
+
+    /**
+     * # of consecutive conn-req failures that makes a CPE behind NAT unreachable
+     */
+    public static final long NAT_UNREACHABLE_FAILURES = 2;
+
+    /**
+     * Keep the reachability record of a CPE for 7 days since the last update
+     */
+    public static final long REACHABILITY_RECORD_TTL = 7 * 24 * 3600 * 1000L;
+
+    /**
+     * UDP Conn-Req (TR-069 Annex G) Retransmissions
+     *
+     * The same message is sent up to 3 times (1, 2 seconds apart), then the ACS falls back to HTTP if the CPE has not
+     * started a session 4 seconds after the last copy, i.e. the HTTP fallback (up to DEFAULT_CONNECT_TIMEOUT) still
+     * completes well within the default device op timeout.
+     */
+    public static final int UDP_CONN_REQ_MAX_COPIES = 3;
+    public static final long UDP_CONN_REQ_RETRANSMISSION_INTERVAL = 1000;
+
     /**
      * Proxy Port
      */
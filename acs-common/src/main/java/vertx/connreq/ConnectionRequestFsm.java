@@ -21,14 +21,18 @@ import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.message.BasicHeader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.datagram.DatagramSocket;
 import io.vertx.core.http.HttpClient;
 import io.vertx.core.http.HttpClientRequest;
 import io.vertx.core.http.HttpClientResponse;
 import io.vertx.core.json.JsonObject;
 import redis.clients.jedis.Jedis;
 
+import java.security.SecureRandom;
+
 /**
  * Project:  cwmp
  *
@@ -62,6 +66,7 @@ public class ConnectionRequestFsm {
      */
     public static final JsonObject RESULT_SUCCEEDED = new JsonObject().put("status", "Succeeded");
     public static final JsonObject RESULT_AUTH_FAILURE = new JsonObject().put("status", "Authentication Failure");
+    public static final JsonObject RESULT_SUCCEEDED_VIA_UDP = new JsonObject().put("status", "Succeeded (UDP)");
 
     /**
      * New State Machine String
@@ -71,6 +76,11 @@ public class ConnectionRequestFsm {
             .put(ConnectionRequestConstants.CONN_REQ_MANAGER,VertxUtils.getHostnameAndPid());
     public static final String NEW_CONN_REQ_FSM_STATE_STRING = NEW_CONN_REQ_FSM_STATE.encode();
 
+    /**
+     * Random Number Generator for the UDP conn-req message ids and nonces
+     */
+    private static final SecureRandom random = new SecureRandom();
+
     /**
      * TODO: add soaking period after failures
      */
@@ -98,6 +108,12 @@ public class ConnectionRequestFsm {
     // Proxy
     String proxy;
 
+    // Timeout (in ms)
+    long timeout = ConnectionRequestConstants.DEFAULT_CONN_REQ_TIMEOUT;
+
+    // UDP Conn-Req Message (if sent via UDP)
+    String udpMessage;
+
     /**
      * Two steps:
      * 1. Send an empty HTTP, and wait for challenge
@@ -143,7 +159,8 @@ public class ConnectionRequestFsm {
         this.password = password;
         redisKey = ConnectionRequestUtils.getConnReqRedisKeyByCpeId(cpeId);
         fsmInfo = NEW_CONN_REQ_FSM_STATE.copy();
-        httpGet = new HttpGet(url);
+        // The CPEs that are only reachable via UDP may not have a ConnectionRequestURL
+        httpGet = url == null? null : new HttpGet(url);
 
         mongoClient = MongoClient.createShared(vertx, VertxMongoUtils.getModMongoPersistorConfig());
 
@@ -231,6 +248,9 @@ public class ConnectionRequestFsm {
                 // Close the HTTP Client either way
                 httpClient.close();
 
+                // The CPE has answered (even if with an error) thus is reachable
+                ConnectionRequestReachability.recordConnReqResult(redisClient, cpeId, true);
+
                 // Update Redis
                 if (resultString == null) {
                     // sent successfully
@@ -287,6 +307,9 @@ public class ConnectionRequestFsm {
             // Save communication logs
             saveCommunicationLog(result);
 
+            // Track the reachability of the CPE
+            ConnectionRequestReachability.recordConnReqResult(redisClient, cpeId, false);
+
             updateRedis(
                     STATE_FAILED,
                     ex.getMessage(),
@@ -365,7 +388,7 @@ public class ConnectionRequestFsm {
         clientRequest.headers().set("User-Agent", "cwmp");
         clientRequest.headers().set("Accept", "*/*");
         // Set timeout (in ms)
-        clientRequest.setTimeout(ConnectionRequestConstants.DEFAULT_CONN_REQ_TIMEOUT);
+        clientRequest.setTimeout(timeout);
 
         // Auth Header
         if (authHeader != null) {
@@ -376,6 +399,140 @@ public class ConnectionRequestFsm {
         clientRequest.end();
     }
 
+    /**
+     * Send a UDP conn-req (TR-069 Annex G) to the UDPConnectionRequestAddress, and fall back to HTTP if the CPE does
+     * not start a session after the retransmissions.
+     *
+     * @param udpSocket
+     * @param udpAddress
+     */
+    public void sendUdp(DatagramSocket udpSocket, String udpAddress) {
+        String host = UdpConnectionRequest.getHost(udpAddress);
+        int port = UdpConnectionRequest.getPort(udpAddress);
+        if (host.length() == 0 || port <= 0) {
+            log.error(cpeId + ": Invalid UDPConnectionRequestAddress " + udpAddress + "!");
+            fallbackFromUdp();
+            return;
+        }
+
+        // All the copies are identical so the CPE can discard the duplicates
+        udpMessage = UdpConnectionRequest.buildMessage(
+                udpAddress,
+                username,
+                password,
+                System.currentTimeMillis() / 1000,
+                random.nextInt(Integer.MAX_VALUE),
+                Long.toHexString(random.nextLong())
+        );
+        log.info(cpeId + ": Sending UDP conn-req to " + udpAddress);
+        sendUdpCopy(udpSocket, host, port, 0);
+    }
+
+    /**
+     * Send a copy of the UDP conn-req, and check the result after the retransmission interval.
+     *
+     * @param udpSocket
+     * @param host
+     * @param port
+     * @param copyIndex
+     */
+    void sendUdpCopy(final DatagramSocket udpSocket, final String host, final int port, final int copyIndex) {
+        udpSocket.send(udpMessage, port, host, new Handler<AsyncResult<DatagramSocket>>() {
+            @Override
+            public void handle(AsyncResult<DatagramSocket> result) {
+                if (result.failed()) {
+                    log.error(cpeId + ": Failed to send UDP conn-req due to " + result.cause() + "!");
+                }
+            }
+        });
+
+        vertx.setTimer(
+                ConnectionRequestConstants.UDP_CONN_REQ_RETRANSMISSION_INTERVAL << copyIndex,
+                new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        checkUdpResult(udpSocket, host, port, copyIndex);
+                    }
+                }
+        );
+    }
+
+    /**
+     * Check whether the CPE has started a session (i.e. the conn-req info in Redis is no longer "sending").
+     *
+     * @param udpSocket
+     * @param host
+     * @param port
+     * @param copyIndex
+     */
+    void checkUdpResult(final DatagramSocket udpSocket, final String host, final int port, final int copyIndex) {
+        ConnectionRequestUtils.getConnReqStateByCpeId(
+                redisClient,
+                cpeId,
+                new Handler<String>() {
+                    @Override
+                    public void handle(String fsmInfoString) {
+                        if (bDone) {
+                            return;
+                        }
+
+                        String state = null;
+                        if (fsmInfoString != null) {
+                            try {
+                                state = new JsonObject(fsmInfoString).getString(ConnectionRequestConstants.STATE);
+                            } catch (Exception ex) {
+                                log.error(cpeId + ": Invalid conn-req info " + fsmInfoString);
+                            }
+                        }
+
+                        if (STATE_SENDING.equals(state)) {
+                            if (copyIndex + 1 < ConnectionRequestConstants.UDP_CONN_REQ_MAX_COPIES) {
+                                sendUdpCopy(udpSocket, host, port, copyIndex + 1);
+                            } else {
+                                log.info(cpeId + ": No session after " + (copyIndex + 1)
+                                        + " UDP conn-req(s). Falling back to HTTP.");
+                                fallbackFromUdp();
+                            }
+                            return;
+                        }
+
+                        /**
+                         * Done
+                         */
+                        bDone = true;
+                        ConnectionRequestManagerVertice.connReqFsmHashMap.remove(cpeId);
+                        if (httpClient != null) {
+                            httpClient.close();
+                        }
+                        if (STATE_SESSION.equals(state) || STATE_LOCKED.equals(state)) {
+                            // Not recorded as a success, as the reachability record tracks the HTTP conn-reqs
+                            log.info(cpeId + ": Session started upon UDP conn-req.");
+                            saveCommunicationLog(RESULT_SUCCEEDED_VIA_UDP);
+                        }
+                    }
+                }
+        );
+    }
+
+    /**
+     * Fall back to HTTP after the UDP conn-req failed (if the CPE has a ConnectionRequestURL).
+     */
+    void fallbackFromUdp() {
+        if (httpClient != null) {
+            send(null);
+            return;
+        }
+
+        String error = "No session started upon UDP conn-req";
+        result = new JsonObject().put("status", error);
+        ConnectionRequestManagerVertice.connReqFsmHashMap.remove(cpeId);
+        saveCommunicationLog(result);
+        ConnectionRequestReachability.recordConnReqResult(redisClient, cpeId, false);
+        updateRedis(STATE_FAILED, error, ConnectionRequestConstants.DEFAULT_FAILURE_SOAKING_TIMEOUT);
+        doCallback(error);
+        bDone = true;
+    }
+
     /**
      * TODO: this is not immediately needed initially, but good to keep track of it.
      *
@@ -1,6 +1,8 @@
 package vertx.connreq;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.datagram.DatagramSocket;
+import io.vertx.core.datagram.DatagramSocketOptions;
 import io.vertx.redis.RedisClient;
 import io.vertx.redis.RedisOptions;
 import vertx.VertxConfigProperties;
@@ -33,6 +35,11 @@ public class ConnectionRequestManagerVertice extends AbstractVerticle {
      */
     private RedisClient redisClient;
 
+    /**
+     * Datagram Socket for the UDP conn-reqs (TR-069 Annex G)
+     */
+    private DatagramSocket udpSocket;
+
     /**
      * Frequently used reply messages
      */
@@ -64,7 +71,7 @@ public class ConnectionRequestManagerVertice extends AbstractVerticle {
      * @param reqMessage
      */
     public void handleRequest(final Message<JsonObject> reqMessage) {
-        JsonObject reqBody = reqMessage.body();
+        final JsonObject reqBody = reqMessage.body();
         final String cpeId = reqBody.getString(ConnectionRequestConstants.CPE_ID);
         final String url = reqBody.getString(ConnectionRequestConstants.URL);
         final String username = reqBody.getString(ConnectionRequestConstants.USERNAME);
@@ -75,10 +82,20 @@ public class ConnectionRequestManagerVertice extends AbstractVerticle {
         // Proxy
         final String proxy = reqBody.getString(ConnectionRequestConstants.PROXY);
 
+        // UDP Conn-Req Address (not applicable when going through the proxy)
+        final String udpAddress = proxy == null? reqBody.getString(ConnectionRequestConstants.UDP_ADDRESS) : null;
+
         // Build HTTP Client by URL String (in order to validate the URL)
         try {
-            if (proxy == null) {
-                httpClient = VertxHttpClientUtils.createHttpClient(vertx, url);
+            if (url == null && udpAddress != null) {
+                // UDP only
+                httpClient = null;
+            } else if (proxy == null) {
+                httpClient = VertxHttpClientUtils.createHttpClient(
+                        vertx,
+                        url,
+                        ConnectionRequestConstants.DEFAULT_CONNECT_TIMEOUT
+                );
             } else {
                 httpClient = VertxHttpClientUtils.createHttpClient(vertx, proxy,ConnectionRequestConstants.INTERNAL_PROXY_PORT);
             }
@@ -112,7 +129,16 @@ public class ConnectionRequestManagerVertice extends AbstractVerticle {
                                     username,
                                     password
                             );
-                            fsm.send(null);
+                            // The probes towards the unreachable CPEs come with a shorter timeout
+                            fsm.timeout = reqBody.getLong(
+                                    ConnectionRequestConstants.TIMEOUT,
+                                    ConnectionRequestConstants.DEFAULT_CONN_REQ_TIMEOUT
+                            );
+                            if (udpAddress != null) {
+                                fsm.sendUdp(udpSocket, udpAddress);
+                            } else {
+                                fsm.send(null);
+                            }
 
                             // Simply reply to sender that this new request has been successfully en-queued.
                             reqMessage.reply(fsm.fsmInfo);
@@ -177,6 +203,11 @@ public class ConnectionRequestManagerVertice extends AbstractVerticle {
                 .setHost(VertxConfigProperties.redisHost).setPort(VertxConfigProperties.redisPort);
         redisClient = RedisClient.create(vertx, config);
 
+        /**
+         * Create the Datagram Socket for the UDP conn-reqs (bound to an ephemeral port upon the first send)
+         */
+        udpSocket = vertx.createDatagramSocket(new DatagramSocketOptions());
+
         /**
          * Register Connection-Request Request Handler
          */
@@ -195,6 +226,10 @@ public class ConnectionRequestManagerVertice extends AbstractVerticle {
     public void stop() {
         log.info("ConnectionRequest Worker Vertice is shutting down...\n");
 
+        if (udpSocket != null) {
+            udpSocket.close();
+        }
+
 
         /**
          * Clean up all redis keys via Jedis (as Vertx mod redis is no longer available to us)
@@ -0,0 +1,360 @@
+package vertx.connreq;
+
+import io.vertx.redis.RedisClient;
+import vertx.VertxRedisUtils;
+import vertx.util.AcsConfigProperties;
+import vertx.util.AcsConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Project:  cwmp
+ *
+ * Connection-Request Reachability Tracking.
+ *
+ * Many CPEs sit behind NAT, which means the conn-reqs towards their ConnectionRequestURL never arrive and each attempt
+ * ends up with a timeout. A reachability record (i.e. a Redis Hash) is kept per CPE with:
+ *
+ * - the time of the last successful conn-req (i.e. the CPE answered the HTTP request) and of the last failed one;
+ * - the # of consecutive failures;
+ * - the source IP address of the last Inform and the host of the ConnectionRequestURL (reported by the CPE servers).
+ *
+ * A CPE is classified as unreachable after CONN_REQ_UNREACHABLE_FAILURES consecutive failures, or after
+ * NAT_UNREACHABLE_FAILURES consecutive failures if its Informs come from a different IP address than its
+ * ConnectionRequestURL (i.e. most likely behind NAT).
+ *
+ * Both addresses are normalized before being compared (IPv6 brackets/zones stripped, IPv4-mapped IPv6 addresses
+ * converted), and a ConnectionRequestURL with a hostname (instead of an IP literal) is never classified as behind
+ * NAT since resolving it would block. When the CPE servers sit behind HTTP proxies/LBs, the source IP address is
+ * taken from the X-Forwarded-For header of the trusted ones (see CONN_REQ_TRUSTED_PROXIES).
+ *
+ * The device ops towards the unreachable CPEs are queued right away for the next periodic Inform instead of waiting
+ * for a conn-req to time out, and a conn-req is still sent every CONN_REQ_PROBE_INTERVAL (with a shorter timeout) to
+ * find out when the CPE becomes reachable again.
+ *
+ * @author: ronyang
+ */
+public class ConnectionRequestReachability {
+    private static final Logger log = LoggerFactory.getLogger(ConnectionRequestReachability.class.getName());
+
+    /**
+     * Field Names of the reachability record
+     */
+    public static final String FIELD_NAME_LAST_SUCCESS = "lastSuccess";
+    public static final String FIELD_NAME_LAST_FAILURE = "lastFailure";
+    public static final String FIELD_NAME_LAST_PROBE = "lastProbe";
+    public static final String FIELD_NAME_CONSECUTIVE_FAILURES = "consecutiveFailures";
+    public static final String FIELD_NAME_SOURCE_IP = "sourceIp";
+    public static final String FIELD_NAME_CONN_REQ_HOST = "connReqHost";
+
+    /**
+     * IPv4 Literal Pattern
+     */
+    private static final Pattern IPV4_LITERAL_PATTERN = Pattern.compile("^\\d{1,3}(\\.\\d{1,3}){3}$");
+
+    /**
+     * (Normalized) IP addresses of the trusted HTTP proxies/LBs
+     */
+    public static final Set<String> TRUSTED_PROXIES = parseAddressList(AcsConfigProperties.CONN_REQ_TRUSTED_PROXIES);
+
+    /**
+     * Get the Redis Key of the reachability record of a CPE.
+     *
+     * @param cpeKey
+     */
+    public static String getRedisKey(String cpeKey) {
+        return AcsConstants.REDIS_KEY_CONN_REQ_REACHABILITY_PREFIX + cpeKey;
+    }
+
+    /**
+     * Read the reachability record of a CPE.
+     *
+     * The record is empty if the CPE has no record yet, or null if failed to read from Redis.
+     *
+     * @param redisClient
+     * @param cpeKey
+     * @param handler
+     */
+    public static void getRecord(RedisClient redisClient, String cpeKey, Handler<JsonObject> handler) {
+        VertxRedisUtils.hgetall(redisClient, getRedisKey(cpeKey), handler);
+    }
+
+    /**
+     * Record the result of a conn-req.
+     *
+     * @param redisClient
+     * @param cpeKey
+     * @param bSucceeded    Whether the CPE has answered the conn-req (even if with an error)
+     */
+    public static void recordConnReqResult(RedisClient redisClient, String cpeKey, boolean bSucceeded) {
+        if (AcsConfigProperties.CONN_REQ_UNREACHABLE_FAILURES <= 0) {
+            return;
+        }
+
+        String key = getRedisKey(cpeKey);
+        VertxRedisUtils.Batch batch = new VertxRedisUtils.Batch(redisClient);
+        if (bSucceeded) {
+            batch.hmset(
+                    key,
+                    new JsonObject()
+                            .put(FIELD_NAME_LAST_SUCCESS, String.valueOf(System.currentTimeMillis()))
+                            .put(FIELD_NAME_CONSECUTIVE_FAILURES, "0")
+            );
+        } else {
+            batch.hmset(
+                    key,
+                    new JsonObject().put(FIELD_NAME_LAST_FAILURE, String.valueOf(System.currentTimeMillis()))
+            ).hincrby(key, FIELD_NAME_CONSECUTIVE_FAILURES, 1);
+        }
+        batch.pexpire(key, ConnectionRequestConstants.REACHABILITY_RECORD_TTL).exec(null);
+    }
+
+    /**
+     * Record the source IP address of an Inform along with the ConnectionRequestURL of the CPE.
+     *
+     * @param redisClient
+     * @param cpeKey
+     * @param sourceIp
+     * @param connReqUrl
+     */
+    public static void recordInformSource(
+            RedisClient redisClient,
+            String cpeKey,
+            String sourceIp,
+            String connReqUrl) {
+        if (AcsConfigProperties.CONN_REQ_UNREACHABLE_FAILURES <= 0 || sourceIp == null) {
+            return;
+        }
+
+        String connReqHost = getHost(connReqUrl);
+        if (connReqHost == null) {
+            return;
+        }
+
+        String key = getRedisKey(cpeKey);
+        new VertxRedisUtils.Batch(redisClient)
+                .hmset(
+                        key,
+                        new JsonObject()
+                                .put(FIELD_NAME_SOURCE_IP, sourceIp)
+                                .put(FIELD_NAME_CONN_REQ_HOST, connReqHost)
+                )
+                .pexpire(key, ConnectionRequestConstants.REACHABILITY_RECORD_TTL)
+                .exec(null);
+    }
+
+    /**
+     * Record that a probe conn-req is being sent, so that the other ACS API servers hold off their own probes.
+     *
+     * @param redisClient
+     * @param cpeKey
+     */
+    public static void recordProbe(RedisClient redisClient, String cpeKey) {
+        String key = getRedisKey(cpeKey);
+        new VertxRedisUtils.Batch(redisClient)
+                .hmset(key, new JsonObject().put(FIELD_NAME_LAST_PROBE, String.valueOf(System.currentTimeMillis())))
+                .pexpire(key, ConnectionRequestConstants.REACHABILITY_RECORD_TTL)
+                .exec(null);
+    }
+
+    /**
+     * Classify a CPE by its reachability record.
+     *
+     * @param record
+     * @return  Whether the CPE is unreachable by conn-req
+     */
+    public static boolean isUnreachable(JsonObject record) {
+        if (record == null || AcsConfigProperties.CONN_REQ_UNREACHABLE_FAILURES <= 0) {
+            return false;
+        }
+
+        long failures = getLong(record, FIELD_NAME_CONSECUTIVE_FAILURES);
+        if (failures >= AcsConfigProperties.CONN_REQ_UNREACHABLE_FAILURES) {
+            return true;
+        }
+
+        /**
+         * Fewer failures are enough if the CPE appears to be behind NAT (but still more than one, so that a single
+         * lost conn-req does not hold the device ops until the next periodic Inform)
+         */
+        return failures >= ConnectionRequestConstants.NAT_UNREACHABLE_FAILURES && isBehindNat(record);
+    }
+
+    /**
+     * Check if the Informs of a CPE come from a different IP address than its ConnectionRequestURL.
+     *
+     * Returns false if either address is unknown or is not an IP literal.
+     *
+     * @param record
+     */
+    public static boolean isBehindNat(JsonObject record) {
+        String sourceIp = normalizeAddress(record.getString(FIELD_NAME_SOURCE_IP));
+        String connReqHost = normalizeAddress(record.getString(FIELD_NAME_CONN_REQ_HOST));
+        return sourceIp != null && connReqHost != null && !sourceIp.equals(connReqHost);
+    }
+
+    /**
+     * Normalize an IP address so that different notations of the same address are equal.
+     *
+     * Strips the brackets and zone index of IPv6 addresses, and converts IPv4-mapped IPv6 addresses to IPv4.
+     *
+     * @param address
+     * @return  The normalized address, or null if the address is not an IP literal (e.g. a hostname)
+     */
+    public static String normalizeAddress(String address) {
+        if (address == null) {
+            return null;
+        }
+
+        String literal = address.trim();
+        if (literal.startsWith("[") && literal.endsWith("]")) {
+            literal = literal.substring(1, literal.length() - 1);
+        }
+        int zoneIndex = literal.indexOf('%');
+        if (zoneIndex >= 0) {
+            literal = literal.substring(0, zoneIndex);
+        }
+
+        /**
+         * Only IP literals are parsed (InetAddress would otherwise do a blocking DNS lookup)
+         */
+        if (!literal.contains(":") && !IPV4_LITERAL_PATTERN.matcher(literal).matches()) {
+            return null;
+        }
+
+        try {
+            return InetAddress.getByName(literal).getHostAddress();
+        } catch (UnknownHostException | SecurityException e) {
+            log.debug("Invalid IP address " + address);
+            return null;
+        }
+    }
+
+    /**
+     * Get the IP address of an HTTP client, honoring the X-Forwarded-For header of the trusted proxies/LBs.
+     *
+     * @param remoteAddress The address of the TCP peer
+     * @param xForwardedFor The X-Forwarded-For header (if any)
+     */
+    public static String getClientAddress(String remoteAddress, String xForwardedFor) {
+        return getClientAddress(remoteAddress, xForwardedFor, TRUSTED_PROXIES);
+    }
+
+    /**
+     * Get the IP address of an HTTP client with a given set of trusted proxies/LBs.
+     *
+     * The X-Forwarded-For header is walked from the right (i.e. the hop closest to us), and the first address that
+     * is not a trusted proxy is returned. Addresses left of it may be forged by the client and are ignored.
+     *
+     * @param remoteAddress
+     * @param xForwardedFor
+     * @param trustedProxies
+     */
+    static String getClientAddress(String remoteAddress, String xForwardedFor, Set<String> trustedProxies) {
+        String clientAddress = normalizeAddress(remoteAddress);
+        if (clientAddress == null) {
+            return remoteAddress;
+        }
+        if (xForwardedFor == null || !trustedProxies.contains(clientAddress)) {
+            return clientAddress;
+        }
+
+        String[] hops = xForwardedFor.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = normalizeAddress(hops[i]);
+            if (hop == null) {
+                // Unparsable hop (e.g. "unknown" or an obfuscated identifier); stop at the last trusted proxy
+                break;
+            }
+            clientAddress = hop;
+            if (!trustedProxies.contains(hop)) {
+                break;
+            }
+        }
+        return clientAddress;
+    }
+
+    /**
+     * Parse a comma separated list of IP addresses into a set of normalized addresses.
+     *
+     * @param addresses
+     */
+    static Set<String> parseAddressList(String addresses) {
+        if (addresses == null || addresses.trim().isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Set<String> result = new HashSet<>();
+        for (String address : addresses.split(",")) {
+            String normalized = normalizeAddress(address);
+            if (normalized != null) {
+                result.add(normalized);
+            } else if (!address.trim().isEmpty()) {
+                log.error("Ignoring invalid trusted proxy address " + address + "!");
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Check if an unreachable CPE is due for another probe.
+     *
+     * @param record
+     */
+    public static boolean isProbeDue(JsonObject record) {
+        long lastAttempt = Math.max(
+                getLong(record, FIELD_NAME_LAST_FAILURE),
+                getLong(record, FIELD_NAME_LAST_PROBE)
+        );
+        return System.currentTimeMillis() - lastAttempt >= AcsConfigProperties.CONN_REQ_PROBE_INTERVAL * 1000L;
+    }
+
+    /**
+     * Extract the host from a ConnectionRequestURL.
+     *
+     * @param connReqUrl
+     */
+    public static String getHost(String connReqUrl) {
+        if (connReqUrl == null) {
+            return null;
+        }
+
+        try {
+            return new URL(connReqUrl).getHost();
+        } catch (MalformedURLException e) {
+            log.debug("Malformed ConnectionRequestURL " + connReqUrl);
+            return null;
+        }
+    }
+
+    /**
+     * Get a numeric field (stored as String) of the reachability record.
+     *
+     * @param record
+     * @param fieldName
+     */
+    static long getLong(JsonObject record, String fieldName) {
+        String value = record.getString(fieldName);
+        if (value == null) {
+            return 0;
+        }
+
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException ex) {
+            log.error("Invalid " + fieldName + " value " + value + " in conn-req reachability record!");
+            return 0;
+        }
+    }
+}
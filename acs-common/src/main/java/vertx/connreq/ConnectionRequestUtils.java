@@ -66,6 +66,10 @@ public class ConnectionRequestUtils {
                 .put(ConnectionRequestConstants.URL, connReqUrl)
                 .put(ConnectionRequestConstants.USERNAME, username)
                 .put(ConnectionRequestConstants.PASSWORD, password);
+        String udpAddress = cpeJsonObject.getString(Cpe.DB_FIELD_NAME_UDP_CONNREQ_ADDRESS);
+        if (udpAddress != null && udpAddress.length() > 0) {
+            connReqRequest.put(ConnectionRequestConstants.UDP_ADDRESS, udpAddress);
+        }
 
         vertx.eventBus().send(
                 AcsConstants.VERTX_ADDRESS_ACS_CONNECTION_REQUEST,
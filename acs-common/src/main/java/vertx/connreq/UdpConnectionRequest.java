@@ -0,0 +1,223 @@
+package vertx.connreq;
+
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Project:  cwmp
+ *
+ * UDP Connection Request Message (TR-069 Annex G).
+ *
+ * The CPEs behind NAT discover their public UDP binding via STUN and report it as
+ * "ManagementServer.UDPConnectionRequestAddress" ("host:port"). The ACS then sends a single datagram to that address
+ * with an HTTP GET request line:
+ *
+ *      GET http://{address}?ts={ts}&id={id}&un={username}&cn={cnonce}&sig={sig} HTTP/1.1
+ *
+ * where "sig" is the hex HMAC-SHA1 of the concatenated ts/id/un/cn values keyed by the conn-req password. The CPE
+ * discards the messages with an older "ts" or an already seen "id", which means the retransmissions must be identical.
+ *
+ * Anything after the port in the address (i.e. a path) is kept in the request URI, which is only used by the CPE
+ * simulator to tell the simulated CPEs apart.
+ *
+ * The host may be an IPv6 address, either bracketed ("[2001:db8::1]:7547") or bare without port ("2001:db8::1"),
+ * and the port defaults to DEFAULT_PORT if absent.
+ *
+ * @author: ronyang
+ */
+public class UdpConnectionRequest {
+    private static final Logger log = LoggerFactory.getLogger(UdpConnectionRequest.class.getName());
+
+    /**
+     * Query Parameter Names
+     */
+    public static final String PARAM_TIMESTAMP = "ts";
+    public static final String PARAM_ID = "id";
+    public static final String PARAM_USERNAME = "un";
+    public static final String PARAM_CNONCE = "cn";
+    public static final String PARAM_SIGNATURE = "sig";
+
+    /**
+     * Default Port (if not specified in the address)
+     */
+    public static final int DEFAULT_PORT = 80;
+
+    /**
+     * Max Port #
+     */
+    public static final int MAX_PORT = 65535;
+
+    /**
+     * HMAC Algorithm
+     */
+    public static final String HMAC_ALGORITHM = "HmacSHA1";
+
+    /**
+     * Build a UDP conn-req message.
+     *
+     * @param address       UDPConnectionRequestAddress
+     * @param username      Conn-Req Username
+     * @param password      Conn-Req Password
+     * @param ts            Timestamp (seconds since the epoch)
+     * @param id            Message Id
+     * @param cnonce        Client Nonce
+     */
+    public static String buildMessage(
+            String address,
+            String username,
+            String password,
+            long ts,
+            long id,
+            String cnonce) {
+        if (username == null) {
+            username = "";
+        }
+        if (password == null || password.equals("")) {
+            // Same as HTTP conn-reqs
+            password = username;
+        }
+
+        String signature = sign(password, String.valueOf(ts) + id + username + cnonce);
+        address = bracketIpv6Host(address);
+        return "GET http://" + address
+                + "?" + PARAM_TIMESTAMP + "=" + ts
+                + "&" + PARAM_ID + "=" + id
+                + "&" + PARAM_USERNAME + "=" + urlEncode(username)
+                + "&" + PARAM_CNONCE + "=" + cnonce
+                + "&" + PARAM_SIGNATURE + "=" + signature
+                + " HTTP/1.1\r\n"
+                + "Host: " + getHostAndPort(address) + "\r\n"
+                + "\r\n";
+    }
+
+    /**
+     * Compute the hex HMAC-SHA1 signature of a text.
+     *
+     * @param key
+     * @param text
+     */
+    public static String sign(String key, String text) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM));
+            return Hex.encodeHexString(mac.doFinal(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            // Should never happen as HmacSHA1 is always supported
+            log.error("Failed to compute " + HMAC_ALGORITHM + " due to " + e.getMessage() + "!");
+            return "";
+        }
+    }
+
+    /**
+     * Extract "host:port" from a UDPConnectionRequestAddress.
+     *
+     * @param address
+     */
+    public static String getHostAndPort(String address) {
+        int pathIndex = address.indexOf('/');
+        return pathIndex < 0? address : address.substring(0, pathIndex);
+    }
+
+    /**
+     * Extract the host (without the brackets of an IPv6 address) from a UDPConnectionRequestAddress.
+     *
+     * @param address
+     * @return  The host, or "" if the address is malformed
+     */
+    public static String getHost(String address) {
+        String hostAndPort = getHostAndPort(address);
+        if (hostAndPort.startsWith("[")) {
+            int closingIndex = hostAndPort.indexOf(']');
+            return closingIndex < 0? "" : hostAndPort.substring(1, closingIndex);
+        }
+
+        int portIndex = getPortSeparatorIndex(hostAndPort);
+        return portIndex < 0? hostAndPort : hostAndPort.substring(0, portIndex);
+    }
+
+    /**
+     * Extract the port from a UDPConnectionRequestAddress.
+     *
+     * @param address
+     * @return  The port, DEFAULT_PORT if absent, or -1 if invalid (not a number or out of range)
+     */
+    public static int getPort(String address) {
+        String hostAndPort = getHostAndPort(address);
+        int portIndex;
+        if (hostAndPort.startsWith("[")) {
+            int closingIndex = hostAndPort.indexOf(']');
+            if (closingIndex < 0) {
+                return -1;
+            }
+            if (closingIndex == hostAndPort.length() - 1) {
+                return DEFAULT_PORT;
+            }
+            if (hostAndPort.charAt(closingIndex + 1) != ':') {
+                return -1;
+            }
+            portIndex = closingIndex + 1;
+        } else {
+            portIndex = getPortSeparatorIndex(hostAndPort);
+            if (portIndex < 0) {
+                return DEFAULT_PORT;
+            }
+        }
+
+        try {
+            int port = Integer.valueOf(hostAndPort.substring(portIndex + 1));
+            return port > 0 && port <= MAX_PORT? port : -1;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Get the index of the ":" before the port in an unbracketed "host[:port]", or -1 if there is no port (including
+     * a bare IPv6 address, which has more than one ":").
+     *
+     * @param hostAndPort
+     */
+    static int getPortSeparatorIndex(String hostAndPort) {
+        int portIndex = hostAndPort.lastIndexOf(':');
+        if (portIndex >= 0 && hostAndPort.indexOf(':') != portIndex) {
+            // Bare IPv6 Address
+            return -1;
+        }
+        return portIndex;
+    }
+
+    /**
+     * Put a bare IPv6 host of a UDPConnectionRequestAddress into brackets, so it can be used in a URI/Host header.
+     *
+     * @param address
+     */
+    static String bracketIpv6Host(String address) {
+        String hostAndPort = getHostAndPort(address);
+        if (hostAndPort.startsWith("[") || getPortSeparatorIndex(hostAndPort) >= 0 || !hostAndPort.contains(":")) {
+            return address;
+        }
+        return "[" + hostAndPort + "]" + address.substring(hostAndPort.length());
+    }
+
+    /**
+     * URL-Encode a query parameter value.
+     *
+     * @param value
+     */
+    static String urlEncode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return value;
+        }
+    }
+}
@@ -25,8 +25,10 @@ import vertx.VertxException;
 import vertx.VertxJsonUtils;
 import vertx.VertxMongoUtils;
 import vertx.model.Cpe;
+import vertx.model.CpeIdentifier;
 import vertx.util.AcsConfigProperties;
 import vertx.util.AcsConstants;
+import vertx.util.AcsMongoIndexes;
 import dslforumOrgCwmp12.*;
 import dslforumOrgCwmp12.FaultDocument;
 import org.apache.xmlbeans.XmlException;
@@ -59,6 +61,18 @@ public class CwmpMessage {
     public static final long TTL_ONE_DAY = 1000 * 3600 * 24;
     public static final long DEFAULT_TTL = AcsConfigProperties.CWMP_MESSAGE_TTL * TTL_ONE_DAY;
 
+    /**
+     * MongoDB Indexes required by the CWMP log queries (per device, newest first), and the TTL index that purges the
+     * messages at their "expireAt" time
+     */
+    public static final JsonArray DB_INDEXES = new JsonArray()
+            .add(AcsMongoIndexes.index(new JsonObject()
+                    .put(AcsConstants.FIELD_NAME_ORG_ID, 1)
+                    .put(AcsConstants.FIELD_NAME_CPE_ID + "." + CpeIdentifier.FIELD_NAME_SN, 1)
+                    .put(CwmpMessage.DB_FIELD_NAME_TIMESTAMP, -1)
+                    .put(CwmpMessage.DB_FIELD_NAME_SN, -1)))
+            .add(AcsMongoIndexes.ttlIndex(CwmpMessage.DB_FIELD_NAME_EXPIRE_AT, 0));
+
     /**
      * DB Field Names
      */
@@ -7,10 +7,12 @@ import vertx.VertxMongoUtils;
 import vertx.CcException;
 import vertx.util.AcsConfigProperties;
 import vertx.util.AcsConstants;
+import vertx.util.AcsMongoIndexes;
 import vertx.util.AcsMiscUtils;
 import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
 import java.net.MalformedURLException;
@@ -39,6 +41,18 @@ public class AcsFile {
      */
     public static final String DB_COLLECTION_NAME = "CWMP-files";
 
+    /**
+     * MongoDB Indexes required by the file queries (lookup by name and by type)
+     */
+    public static final JsonArray DB_INDEXES = new JsonArray()
+            .add(AcsMongoIndexes.index(new JsonObject()
+                    .put(AcsConstants.FIELD_NAME_ORG_ID, 1)
+                    .put(AcsConstants.FIELD_NAME_NAME, 1)
+                    .put(AcsFile.FIELD_NAME_TYPE, 1)))
+            .add(AcsMongoIndexes.index(new JsonObject()
+                    .put(AcsConstants.FIELD_NAME_ORG_ID, 1)
+                    .put(AcsFile.FIELD_NAME_TYPE, 1)));
+
     /**
      * Auto Backup Constants
      */
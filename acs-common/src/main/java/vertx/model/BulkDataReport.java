@@ -0,0 +1,126 @@
+package vertx.model;
+
+import vertx.VertxJsonUtils;
+import vertx.VertxMongoUtils;
+import vertx.util.AcsConfigProperties;
+import vertx.util.AcsConstants;
+import vertx.util.AcsMongoIndexes;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Project:  cwmp
+ *
+ * Bulk Data Report (TR-232) Data model.
+ *
+ * Each report uploaded by a CPE (i.e. the parameter values collected at one point in time) is stored as one document
+ * in a daily collection (by received time in UTC, as the collection time is reported by the CPE and may be way off),
+ * for example "CWMP-bulk-data-20260119", so that the queries by time range only touch the relevant days and a day
+ * can be dropped at once when all its reports have expired (see isExpiredCollection()). The documents are also
+ * purged at their "expireAt" time by a TTL index.
+ *
+ * @author: ronyang
+ */
+public class BulkDataReport {
+    /**
+     * DB Collection Name Prefix (followed by "yyyyMMdd")
+     */
+    public static final String DB_COLLECTION_NAME_PREFIX = "CWMP-bulk-data-";
+
+    /**
+     * Field Name Constants
+     */
+    public static final String FIELD_NAME_CPE_KEY = "cpeKey";
+    public static final String FIELD_NAME_COLLECTION_TIME = "collectionTime";
+    public static final String FIELD_NAME_RECEIVED_TIME = "receivedTime";
+    public static final String FIELD_NAME_VALUES = "values";
+    public static final String FIELD_NAME_EXPIRE_AT = "expireAt";
+
+    /**
+     * MongoDB Indexes required by the per-device queries (by time range), and the TTL index that purges the reports at
+     * their "expireAt" time
+     */
+    public static final JsonArray DB_INDEXES = new JsonArray()
+            .add(AcsMongoIndexes.index(new JsonObject()
+                    .put(FIELD_NAME_CPE_KEY, 1)
+                    .put(FIELD_NAME_COLLECTION_TIME, -1)))
+            .add(AcsMongoIndexes.ttlIndex(FIELD_NAME_EXPIRE_AT, 0));
+
+    /**
+     * One Day in ms
+     */
+    public static final long ONE_DAY = 1000 * 3600 * 24;
+
+    /**
+     * Get the name of the daily collection of a received time.
+     *
+     * @param receivedTime  In ms
+     */
+    public static String getCollectionName(long receivedTime) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return DB_COLLECTION_NAME_PREFIX + format.format(new Date(receivedTime));
+    }
+
+    /**
+     * Check if a collection is a daily collection whose reports have all expired (i.e. received more than
+     * BULK_DATA_TTL days ago).
+     *
+     * @param collectionName
+     */
+    public static boolean isExpiredCollection(String collectionName) {
+        if (collectionName == null
+                || AcsConfigProperties.BULK_DATA_TTL <= 0
+                || !collectionName.startsWith(DB_COLLECTION_NAME_PREFIX)
+                || collectionName.length() != DB_COLLECTION_NAME_PREFIX.length() + "yyyyMMdd".length()) {
+            return false;
+        }
+
+        // The daily collection names sort by date
+        String oldestName = getCollectionName(System.currentTimeMillis() - AcsConfigProperties.BULK_DATA_TTL * ONE_DAY);
+        return collectionName.compareTo(oldestName) < 0;
+    }
+
+    /**
+     * Build the document of a report.
+     *
+     * @param orgId
+     * @param cpeKey
+     * @param oui
+     * @param sn
+     * @param collectionTime    In ms
+     * @param values            <Parameter Name --> Value>
+     */
+    public static JsonObject toDocument(
+            String orgId,
+            String cpeKey,
+            String oui,
+            String sn,
+            long collectionTime,
+            JsonObject values) {
+        // MongoDB does not allow "." in field names
+        VertxJsonUtils.convertDotInFieldNames(values, true);
+
+        long now = System.currentTimeMillis();
+        return new JsonObject()
+                .put(AcsConstants.FIELD_NAME_ORG_ID, orgId)
+                .put(FIELD_NAME_CPE_KEY, cpeKey)
+                .put(
+                        AcsConstants.FIELD_NAME_CPE_ID,
+                        new JsonObject()
+                                .put(CpeIdentifier.FIELD_NAME_OUI, oui)
+                                .put(CpeIdentifier.FIELD_NAME_SN, sn)
+                )
+                .put(FIELD_NAME_COLLECTION_TIME, VertxMongoUtils.getDateObject(collectionTime))
+                .put(FIELD_NAME_RECEIVED_TIME, VertxMongoUtils.getDateObject(now))
+                .put(FIELD_NAME_VALUES, values)
+                .put(
+                        FIELD_NAME_EXPIRE_AT,
+                        VertxMongoUtils.getDateObject(now + AcsConfigProperties.BULK_DATA_TTL * ONE_DAY)
+                );
+    }
+}
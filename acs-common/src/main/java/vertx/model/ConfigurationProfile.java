@@ -110,7 +110,7 @@ public class ConfigurationProfile {
             JsonObject rawPerCategoryParamValues = aCategory.getJsonObject(FIELD_NAME_PARAMETER_VALUES);
 
             // Get the Configuration Category from cache
-            JsonObject categoryDef = (JsonObject) categoryCache.hashMap.get(categoryName);
+            JsonObject categoryDef = (JsonObject) categoryCache.get(categoryName);
             if (categoryDef == null) {
                 log.error("Unable to find config category " + categoryName + " in cache!");
                 continue;
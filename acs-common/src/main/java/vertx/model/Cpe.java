@@ -2,11 +2,13 @@ package vertx.model;
 
 import io.vertx.ext.mongo.MongoClient;
 import vertx.VertxException;
+import vertx.VertxJsonUtils;
 import vertx.VertxMongoUtils;
 import vertx.CcException;
 import vertx.cwmp.CwmpMessageTypeEnum;
 import vertx.cwmp.CwmpNotificationValues;
 import vertx.util.AcsConstants;
+import vertx.util.AcsMongoIndexes;
 import vertx.util.AcsMiscUtils;
 import vertx.util.CpeDataModelMgmt;
 import vertx.util.GigaCenter;
@@ -14,6 +16,7 @@ import dslforumOrgCwmp12.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
 /**
@@ -68,6 +71,7 @@ public class Cpe extends MultiTenantObject{
     public static final String DB_FIELD_NAME_CONNREQ_URL = "connectionRequestUrl";
     public static final String DB_FIELD_NAME_CONNREQ_USERNAME = "connectionRequestUsername";
     public static final String DB_FIELD_NAME_CONNREQ_PASSWORD = "connectionRequestPassword";
+    public static final String DB_FIELD_NAME_UDP_CONNREQ_ADDRESS = "udpConnectionRequestAddress";
     public static final String DB_FIELD_NAME_IP_ADDRESS = "ipAddress";
     public static final String DB_FIELD_NAME_REGISTRATION_ID = "registrationId";
                                                     //InternetGatewayDevice.DeviceInfo.X_000631_RegistrationId
@@ -87,6 +91,53 @@ public class Cpe extends MultiTenantObject{
      */
     public static final String CPE_COLLECTION_NAME = "CWMP-devices";
 
+    /**
+     * MongoDB Indexes required by the device queries (lookup by FSAN/RegId/MAC, replacements, the facet counts, and
+     * the incremental reconciliation of the presence index).
+     *
+     * The per-workflow execution states ("workflows.<workflow id>.state") cannot be indexed as the field names are
+     * dynamic.
+     */
+    public static final JsonArray DB_INDEXES = new JsonArray()
+            .add(AcsMongoIndexes.index(new JsonObject()
+                    .put(AcsConstants.FIELD_NAME_ORG_ID, 1)
+                    .put(Cpe.DB_FIELD_NAME_SN, 1)))
+            .add(AcsMongoIndexes.index(new JsonObject()
+                    .put(AcsConstants.FIELD_NAME_ORG_ID, 1)
+                    .put(Cpe.DB_FIELD_NAME_REGISTRATION_ID, 1)))
+            .add(AcsMongoIndexes.index(new JsonObject()
+                    .put(AcsConstants.FIELD_NAME_ORG_ID, 1)
+                    .put(Cpe.DB_FIELD_NAME_MAC_ADDRESS, 1)))
+            .add(AcsMongoIndexes.sparseIndex(new JsonObject()
+                    .put(AcsConstants.FIELD_NAME_ORG_ID, 1)
+                    .put(Cpe.DB_FIELD_NAME_TO_BE_REPLACED_BY, 1)))
+            .add(AcsMongoIndexes.index(new JsonObject()
+                    .put(AcsConstants.FIELD_NAME_ORG_ID, 1)
+                    .put(CpeDeviceType.FIELD_NAME_MODEL_NAME, 1)
+                    .put(CpeDeviceType.FIELD_NAME_SW_VER, 1)))
+            .add(AcsMongoIndexes.index(new JsonObject()
+                    .put(Cpe.DB_FIELD_NAME_LAST_INFORM_TIME, 1)
+                    .put(VertxMongoUtils.MOD_MONGO_FIELD_NAME_ID, 1)));
+
+    /**
+     * Heavy sub-documents that are not needed by most CWMP sessions.
+     *
+     * They are excluded when loading the CPE at the beginning of a session and only fetched on demand.
+     */
+    public static final String[] HEAVY_FIELD_NAMES = {
+            DB_FIELD_NAME_PARAM_VALUES,
+            DB_FIELD_NAME_PARAM_ATTRIBUTES,
+            DB_FIELD_NAME_WORKFLOW_EXEC
+    };
+    public static final JsonObject QUERY_KEYS_NO_HEAVY_FIELDS = new JsonObject()
+            .put(DB_FIELD_NAME_PARAM_VALUES, 0)
+            .put(DB_FIELD_NAME_PARAM_ATTRIBUTES, 0)
+            .put(DB_FIELD_NAME_WORKFLOW_EXEC, 0);
+    public static final JsonObject QUERY_KEYS_HEAVY_FIELDS_ONLY = new JsonObject()
+            .put(DB_FIELD_NAME_PARAM_VALUES, 1)
+            .put(DB_FIELD_NAME_PARAM_ATTRIBUTES, 1)
+            .put(DB_FIELD_NAME_WORKFLOW_EXEC, 1);
+
     /**
      * Periodic Inform Constants
      */
@@ -119,6 +170,21 @@ public class Cpe extends MultiTenantObject{
      */
     public JsonObject cpeJsonObj;
 
+    /**
+     * Have the heavy sub-documents (see HEAVY_FIELD_NAMES) been loaded into cpeJsonObj?
+     *
+     * Set to false when the CPE was read with the QUERY_KEYS_NO_HEAVY_FIELDS projection.
+     */
+    public boolean bHeavyFieldsLoaded = true;
+
+    /**
+     * Is the full save of a new CPE waiting for the heavy sub-documents (see saveNewCpeToDb())?
+     *
+     * If so, the updateDb() calls are deferred until the save has been issued, so they are applied on top of it.
+     */
+    boolean bSavingNewCpe = false;
+    Handler<Void> deferredUpdates = null;
+
     /**
      * JSON Objects for updating MongoDB
      */
@@ -318,6 +384,8 @@ public class Cpe extends MultiTenantObject{
         public String connRequestUrl = null;
         public String connRequestUsername = null;
         public String connRequestPassword = null;
+        // UDP Connection Request Address (i.e. the NAT binding discovered via STUN, TR-069 Annex G)
+        public String udpConnRequestAddress = null;
         // External/Public IP Address
         public String ipAddress = null;
         public String ipSubnetMask = null;
@@ -372,6 +440,7 @@ public class Cpe extends MultiTenantObject{
             connRequestUrl = jsonObject.getString(DB_FIELD_NAME_CONNREQ_URL);
             connRequestUsername = jsonObject.getString(DB_FIELD_NAME_CONNREQ_USERNAME);
             connRequestPassword = jsonObject.getString(DB_FIELD_NAME_CONNREQ_PASSWORD);
+            udpConnRequestAddress = jsonObject.getString(DB_FIELD_NAME_UDP_CONNREQ_ADDRESS);
             informInterval = jsonObject.getInteger(DB_FIELD_NAME_PERIODIC_INFORM_INTERVAL, 0);
             bPeriodicInformEnabled = jsonObject.getBoolean(DB_FIELD_NAME_PERIODIC_INFORM_ENABLE, informInterval > 0);
             changeCounter = jsonObject.getInteger(DB_FIELD_NAME_CHANGE_COUNTER);
@@ -394,6 +463,9 @@ public class Cpe extends MultiTenantObject{
                     .put(DB_FIELD_NAME_PERIODIC_INFORM_INTERVAL, informInterval)
                     .put(DB_FIELD_NAME_PERIODIC_INFORM_ENABLE, bPeriodicInformEnabled);
 
+            if (udpConnRequestAddress != null) {
+                jsonObject.put(DB_FIELD_NAME_UDP_CONNREQ_ADDRESS, udpConnRequestAddress);
+            }
             if (changeCounter != null) {
                 jsonObject.put(DB_FIELD_NAME_CHANGE_COUNTER, changeCounter);
             }
@@ -429,6 +501,9 @@ public class Cpe extends MultiTenantObject{
                     .put(DB_FIELD_NAME_PERIODIC_INFORM_INTERVAL, informInterval)
                     .put(DB_FIELD_NAME_PERIODIC_INFORM_ENABLE, bPeriodicInformEnabled);
 
+            if (udpConnRequestAddress != null) {
+                parentCpe.put(DB_FIELD_NAME_UDP_CONNREQ_ADDRESS, udpConnRequestAddress);
+            }
             if (changeCounter != null) {
                 parentCpe.put(DB_FIELD_NAME_CHANGE_COUNTER, changeCounter);
             }
@@ -522,7 +597,8 @@ public class Cpe extends MultiTenantObject{
                 .put(DB_FIELD_NAME_SN, deviceId.sn)
                 .put(DB_FIELD_NAME_CONNREQ_URL, deviceId.connRequestUrl)
                 .put(DB_FIELD_NAME_CONNREQ_USERNAME, deviceId.connRequestUsername)
-                .put(DB_FIELD_NAME_CONNREQ_PASSWORD, deviceId.connRequestPassword);
+                .put(DB_FIELD_NAME_CONNREQ_PASSWORD, deviceId.connRequestPassword)
+                .put(DB_FIELD_NAME_UDP_CONNREQ_ADDRESS, deviceId.udpConnRequestAddress);
     }
 
     /**
@@ -535,7 +611,8 @@ public class Cpe extends MultiTenantObject{
                 .put(DB_FIELD_NAME_SN, cpeJsonObj.getString(DB_FIELD_NAME_SN))
                 .put(DB_FIELD_NAME_CONNREQ_URL, cpeJsonObj.getString(DB_FIELD_NAME_CONNREQ_URL))
                 .put(DB_FIELD_NAME_CONNREQ_USERNAME, cpeJsonObj.getString(DB_FIELD_NAME_CONNREQ_USERNAME))
-                .put(DB_FIELD_NAME_CONNREQ_PASSWORD, cpeJsonObj.getString(DB_FIELD_NAME_CONNREQ_PASSWORD));
+                .put(DB_FIELD_NAME_CONNREQ_PASSWORD, cpeJsonObj.getString(DB_FIELD_NAME_CONNREQ_PASSWORD))
+                .put(DB_FIELD_NAME_UDP_CONNREQ_ADDRESS, cpeJsonObj.getString(DB_FIELD_NAME_UDP_CONNREQ_ADDRESS));
     }
 
     /**
@@ -562,7 +639,38 @@ public class Cpe extends MultiTenantObject{
      *
      * @param mongoClient
      */
-    public void saveNewCpeToDb(MongoClient mongoClient) {
+    public void saveNewCpeToDb(final MongoClient mongoClient) {
+        if (!bHeavyFieldsLoaded) {
+            /**
+             * This is a full replace, so the heavy sub-documents of a pre-provisioned CPE must be read back first
+             */
+            bSavingNewCpe = true;
+            loadHeavyFields(
+                    mongoClient,
+                    new Handler<Boolean>() {
+                        @Override
+                        public void handle(Boolean bSucceeded) {
+                            bSavingNewCpe = false;
+                            if (bSucceeded) {
+                                saveNewCpeToDb(mongoClient);
+                            } else {
+                                log.error(key + ": Unable to save new CPE as the existing CPE could not be read!");
+                            }
+
+                            /**
+                             * Now apply the updates that have been deferred in the meantime
+                             */
+                            if (deferredUpdates != null) {
+                                Handler<Void> updates = deferredUpdates;
+                                deferredUpdates = null;
+                                updates.handle(null);
+                            }
+                        }
+                    }
+            );
+            return;
+        }
+
         /**
          * Persist it
          */
@@ -579,6 +687,56 @@ public class Cpe extends MultiTenantObject{
         addTimeStamp(AcsConstants.FIELD_NAME_CREATE_TIME);
     }
 
+    /**
+     * Load the heavy sub-documents (if not loaded yet) on demand and merge them into cpeJsonObj.
+     *
+     * Values that have been created locally since the CPE was loaded take precedence over the ones read from DB.
+     *
+     * @param mongoClient
+     * @param handler       Called with true once the heavy fields are available, or false if failed to read them
+     */
+    public void loadHeavyFields(MongoClient mongoClient, final Handler<Boolean> handler) {
+        if (bHeavyFieldsLoaded) {
+            handler.handle(true);
+            return;
+        }
+
+        try {
+            VertxMongoUtils.findOne(
+                    mongoClient,
+                    CPE_COLLECTION_NAME,
+                    new JsonObject().put(VertxMongoUtils.MOD_MONGO_FIELD_NAME_ID, key),
+                    new Handler<JsonObject>() {
+                        @Override
+                        public void handle(JsonObject heavyFields) {
+                            if (heavyFields == null || VertxMongoUtils.FIND_ONE_TIMED_OUT.equals(heavyFields)) {
+                                log.error(key + ": Failed to read heavy fields from DB!");
+                                handler.handle(false);
+                            } else {
+                                for (String fieldName : HEAVY_FIELD_NAMES) {
+                                    JsonObject dbValue = heavyFields.getJsonObject(fieldName);
+                                    if (dbValue == null) {
+                                        continue;
+                                    }
+                                    JsonObject localValue = cpeJsonObj.getJsonObject(fieldName);
+                                    if (localValue != null) {
+                                        VertxJsonUtils.merge(dbValue, localValue);
+                                    }
+                                    cpeJsonObj.put(fieldName, dbValue);
+                                }
+                                bHeavyFieldsLoaded = true;
+                                handler.handle(true);
+                            }
+                        }
+                    },
+                    QUERY_KEYS_HEAVY_FIELDS_ONLY
+            );
+        } catch (VertxException e) {
+            e.printStackTrace();
+            handler.handle(false);
+        }
+    }
+
     /**
      * Add a new field (to be persisted later).
      * @param fieldName
@@ -668,6 +826,13 @@ public class Cpe extends MultiTenantObject{
                         addSet(Cpe.DB_FIELD_NAME_CONNREQ_URL, paramValueString);
                         bParamValueChanged = true;
                     }
+                } else if (paramName.equals(rootObjectName + ".ManagementServer.UDPConnectionRequestAddress")) {
+                    // Reported via Inform/VALUE CHANGE by the CPEs that have STUN enabled
+                    if (!paramValueString.equals(deviceId.udpConnRequestAddress)) {
+                        deviceId.udpConnRequestAddress = paramValueString;
+                        addSet(Cpe.DB_FIELD_NAME_UDP_CONNREQ_ADDRESS, paramValueString);
+                        bParamValueChanged = true;
+                    }
                 } else if (paramName.equals("InternetGatewayDevice.ManagementServer.ConnectionRequestUsername")) {
                     if (!paramValueString.equals(deviceId.connRequestUsername)) {
                         deviceId.connRequestUsername = paramValueString;
@@ -777,6 +942,16 @@ public class Cpe extends MultiTenantObject{
         addSet(fieldName, VertxMongoUtils.getDateObject());
     }
 
+    /**
+     * Check if the only pending update of this CPE is the "lastInformTime" timestamp.
+     *
+     * @return
+     */
+    public boolean hasLastInformTimeUpdateOnly() {
+        return sets != null && sets.size() == 1 && sets.containsKey(DB_FIELD_NAME_LAST_INFORM_TIME)
+                && unsets == null && timestamps == null && pulls == null && pushes == null;
+    }
+
     /**
      * Persist changes of this CPE to MongoDB
      */
@@ -788,7 +963,22 @@ public class Cpe extends MultiTenantObject{
      * Persist changes of this CPE to MongoDB with a custom handler
      */
     private Long NON_NULL_LONG = new Long(1);
-    public void updateDb(MongoClient mongoClient, Handler<Long> handler) {
+    public void updateDb(final MongoClient mongoClient, final Handler<Long> handler) {
+        if (bSavingNewCpe) {
+            // Wait for the full save of the new CPE (see saveNewCpeToDb())
+            final Handler<Void> previousUpdates = deferredUpdates;
+            deferredUpdates = new Handler<Void>() {
+                @Override
+                public void handle(Void event) {
+                    if (previousUpdates != null) {
+                        previousUpdates.handle(null);
+                    }
+                    updateDb(mongoClient, handler);
+                }
+            };
+            return;
+        }
+
         JsonObject updates = VertxMongoUtils.getUpdatesObject(sets, unsets, timestamps, pulls, pushes);
 
         //log.debug("Updates:\n" + updates.encodePrettily());
@@ -999,6 +1189,11 @@ public class Cpe extends MultiTenantObject{
      * @return
      */
     public JsonObject getParamValueObject(String path, boolean bCreate) {
+        if (!bHeavyFieldsLoaded && !bCreate) {
+            // The values read from a projected CPE would be silently incomplete
+            throw new IllegalStateException(key + ": Reading parameter values before calling loadHeavyFields()!");
+        }
+
         JsonObject values = cpeJsonObj.getJsonObject(DB_FIELD_NAME_PARAM_VALUES);
 
         // Create a new "paramValues" JSON object if needed
@@ -1020,6 +1215,11 @@ public class Cpe extends MultiTenantObject{
      * @return
      */
     public JsonObject getParamAttrObject(String path, boolean bCreate) {
+        if (!bHeavyFieldsLoaded && !bCreate) {
+            // The attributes read from a projected CPE would be silently incomplete
+            throw new IllegalStateException(key + ": Reading parameter attributes before calling loadHeavyFields()!");
+        }
+
         JsonObject attrs = cpeJsonObj.getJsonObject(DB_FIELD_NAME_PARAM_ATTRIBUTES);
 
         // Create a new "paramAttributes" JSON object if needed
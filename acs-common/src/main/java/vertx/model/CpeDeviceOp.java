@@ -45,6 +45,7 @@ public class CpeDeviceOp {
     public static final String FIELD_NAME_SERVICES = ConfigurationProfile.FIELD_NAME_SERVICES;
     public static final String FIELD_NAME_DYNAMIC_OBJECTS = ConfigurationProfile.FIELD_NAME_DYNAMIC_OBJECTS;
     public static final String FIELD_NAME_SERVICE_PLAN = "servicePlan";
+    public static final String FIELD_NAME_PROFILE_ID = "profileId";
     public static final String FIELD_NAME_STATUS_CODE = AcsConstants.FIELD_NAME_STATUS_CODE;
     public static final String FIELD_NAME_PARAM_NAMES = "parameterNames";
     public static final String FIELD_NAME_PARAM_ATTRIBUTES = "parameterAttributes";
@@ -75,6 +76,7 @@ public class CpeDeviceOp {
     public static final String FIELD_NAME_CHUNKS_RETURNED = "chunks";
     public static final String FIELD_NAME_GET_OPTIONS_LIVE = "liveData";
     public static final String FIELD_NAME_GET_OPTIONS_CACHED = "cachedData";
+    public static final String FIELD_NAME_MAX_AGE = "maxAgeSeconds";
 
 
     /**
@@ -114,6 +116,7 @@ public class CpeDeviceOp {
     public static final String CPE_DEVICE_OP_STATE_IN_PROGRESS = "In-Progress";
     public static final String CPE_DEVICE_OP_STATE_SUCCEEDED = "Succeeded";
     public static final String CPE_DEVICE_OP_STATE_FAILED = "Failed";
+    public static final String CPE_DEVICE_OP_STATE_QUEUED_UNTIL_INFORM = "Queued-Until-Inform";
 
     /**
      * Define static JSON Field Validators
@@ -136,10 +139,12 @@ public class CpeDeviceOp {
                     .append(FIELD_NAME_SERVICES, VertxJsonUtils.JsonFieldType.JsonArray)
                     .append(FIELD_NAME_DYNAMIC_OBJECTS, VertxJsonUtils.JsonFieldType.JsonArray)
                     .append(FIELD_NAME_SERVICE_PLAN, VertxJsonUtils.JsonFieldType.JsonObject)
+                    .append(FIELD_NAME_PROFILE_ID, VertxJsonUtils.JsonFieldType.String)
                     .append(FIELD_NAME_CALLBACK_URL, VertxJsonUtils.JsonFieldType.String)
                     .append(FIELD_NAME_STATE, VertxJsonUtils.JsonFieldType.String)
                     .append(FIELD_NAME_RESULT, VertxJsonUtils.JsonFieldType.JsonObject)
                     .append(FIELD_NAME_GET_OPTIONS, VertxJsonUtils.JsonFieldType.JsonObject)
+                    .append(FIELD_NAME_MAX_AGE, VertxJsonUtils.JsonFieldType.Integer)
                     .append(FIELD_NAME_CHUNKS_RETURNED, VertxJsonUtils.JsonFieldType.Integer)
                     .append(FIELD_NAME_FILE_TYPE, VertxJsonUtils.JsonFieldType.String)
                     .append(FIELD_NAME_FILE_URL, VertxJsonUtils.JsonFieldType.String)
@@ -105,6 +105,10 @@ public class CpeGroup extends MultiTenantObject {
      * @return  true if the cpe satisfied the group matching criteria
      */
     public boolean match(Cpe cpe){
+        if (!cpe.bHeavyFieldsLoaded && hasHeavyFieldFilter(cpeFilter)) {
+            // The parameter values of a projected CPE are not available
+            throw new IllegalStateException(cpe.key + ": Matching group " + name + " before calling loadHeavyFields()!");
+        }
         return match(cpe.cpeJsonObj, cpeFilter);
     }
 
@@ -113,11 +117,22 @@ public class CpeGroup extends MultiTenantObject {
      *
      * check if the cpe satisfies the group matching criteria.
      *
+     * Filters on the heavy sub-documents (for example "paramValues.InternetGatewayDevice.DeviceInfo.ProvisioningCode")
+     * can only be evaluated if the CPE JSON Object contains that sub-document (an empty one is fine if the CPE has
+     * none), otherwise an IllegalStateException is thrown rather than silently evaluating them against "".
+     *
      * @param cpeJsonObject
      * @param filter
      * @return
      */
     public static boolean match(JsonObject cpeJsonObject, JsonObject filter) {
+        for (String heavyFieldName : Cpe.HEAVY_FIELD_NAMES) {
+            if (!cpeJsonObject.containsKey(heavyFieldName) && hasFieldFilter(filter, heavyFieldName)) {
+                throw new IllegalStateException("CPE " + cpeJsonObject.getString(AcsConstants.FIELD_NAME_ID)
+                        + " has no " + heavyFieldName + " to match filter " + filter.encode() + "!");
+            }
+        }
+
         boolean isOr = false;
         if (filter.fieldNames().size() == 1 && filter.containsKey(OPERATOR_OR))
             isOr = true;
@@ -125,6 +140,64 @@ public class CpeGroup extends MultiTenantObject {
         return recursiveMatch(cpeJsonObject, filter, isOr);
     }
 
+    /**
+     * Check if a filter has any criteria on the heavy sub-documents of the CPEs (see Cpe.HEAVY_FIELD_NAMES).
+     *
+     * @param filter
+     */
+    public static boolean hasHeavyFieldFilter(JsonObject filter) {
+        for (String heavyFieldName : Cpe.HEAVY_FIELD_NAMES) {
+            if (hasFieldFilter(filter, heavyFieldName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if a filter has any criteria on a given top-level field (or any field within it).
+     *
+     * @param filter
+     * @param fieldName
+     */
+    public static boolean hasFieldFilter(JsonObject filter, String fieldName) {
+        for (String filterFieldName : filter.fieldNames()) {
+            Object valueFilter = filter.getValue(filterFieldName);
+            if (filterFieldName.startsWith(OPERATOR_OR) && valueFilter instanceof JsonArray) {
+                for (Object value : (JsonArray) valueFilter) {
+                    if (value instanceof JsonObject && hasFieldFilter((JsonObject) value, fieldName)) {
+                        return true;
+                    }
+                }
+            } else if (filterFieldName.equals(fieldName) || filterFieldName.startsWith(fieldName + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get a value from the CPE JSON Object by a (possibly dot-separated) field name, e.g.
+     * "paramValues.InternetGatewayDevice.DeviceInfo.ProvisioningCode".
+     *
+     * @param cpeJsonObject
+     * @param fieldName
+     */
+    public static Object getValueByPath(JsonObject cpeJsonObject, String fieldName) {
+        if (cpeJsonObject.containsKey(fieldName) || fieldName.indexOf('.') < 0) {
+            return cpeJsonObject.getValue(fieldName);
+        }
+
+        Object value = cpeJsonObject;
+        for (String subPath : fieldName.split("\\.")) {
+            if (!(value instanceof JsonObject)) {
+                return null;
+            }
+            value = ((JsonObject) value).getValue(subPath);
+        }
+        return value;
+    }
+
     /**
      * recursive check if the cpe deviceId value satisfied the matching criteria
      * currently the matching criteria only applies to the DeviceId structure
@@ -146,7 +219,7 @@ public class CpeGroup extends MultiTenantObject {
                 }
             }
             else {
-                valueCpe = deviceId.getValue(fieldName);
+                valueCpe = getValueByPath(deviceId, fieldName);
                 inner_result = basicMatch(valueFilter, valueCpe);
                 if(!isOr) {
                     if (!inner_result) {
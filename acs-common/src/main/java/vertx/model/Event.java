@@ -4,7 +4,9 @@ import io.vertx.ext.mongo.MongoClient;
 import vertx.VertxException;
 import vertx.VertxMongoUtils;
 import vertx.util.AcsConstants;
+import vertx.util.AcsMongoIndexes;
 import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
 /**
@@ -20,6 +22,18 @@ public class Event {
      */
     public static final String DB_COLLECTION_NAME = "CWMP-events";
 
+    /**
+     * MongoDB Indexes required by the event queries (per org or per device, newest first)
+     */
+    public static final JsonArray DB_INDEXES = new JsonArray()
+            .add(AcsMongoIndexes.index(new JsonObject()
+                    .put(AcsConstants.FIELD_NAME_ORG_ID, 1)
+                    .put(Event.FIELD_NAME_DEVICE_SN, 1)
+                    .put(Event.FIELD_NAME_TIMESTAMP, -1)))
+            .add(AcsMongoIndexes.index(new JsonObject()
+                    .put(AcsConstants.FIELD_NAME_ORG_ID, 1)
+                    .put(Event.FIELD_NAME_TIMESTAMP, -1)));
+
     /**
      * Field Name Constants
      */
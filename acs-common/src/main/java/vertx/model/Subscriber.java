@@ -5,6 +5,7 @@ import vertx.VertxException;
 import vertx.VertxJsonUtils;
 import vertx.VertxMongoUtils;
 import vertx.util.AcsConstants;
+import vertx.util.AcsMongoIndexes;
 import vertx.util.AcsMiscUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +30,20 @@ public class Subscriber {
      */
     public static final String DB_COLLECTION_NAME = "sxa-subscribers";
 
+    /**
+     * MongoDB Indexes required by the subscriber queries (uniqueness checks and lookup by device)
+     */
+    public static final JsonArray DB_INDEXES = new JsonArray()
+            .add(AcsMongoIndexes.index(new JsonObject()
+                    .put(AcsConstants.FIELD_NAME_ORG_ID, 1)
+                    .put(Subscriber.FIELD_NAME_LOCATIONS + "." + Subscriber.FIELD_NAME_LOCATIONS_DEVICES, 1)))
+            .add(AcsMongoIndexes.index(new JsonObject()
+                    .put(AcsConstants.FIELD_NAME_ORG_ID, 1)
+                    .put(Subscriber.FIELD_NAME_CUSTOM_ID, 1)))
+            .add(AcsMongoIndexes.sparseIndex(new JsonObject()
+                    .put(AcsConstants.FIELD_NAME_ORG_ID, 1)
+                    .put(Subscriber.SERVICE_PREFIX_FULL_PATH, 1)));
+
     /**
      * Field Name Constants
      */
@@ -8,6 +8,7 @@ import vertx.CcException;
 import vertx.cache.ConfigurationProfileCache;
 import vertx.cache.GroupCache;
 import vertx.util.AcsConstants;
+import vertx.util.AcsMongoIndexes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import io.vertx.core.Handler;
@@ -35,6 +36,17 @@ public class Workflow {
      */
     public static final String DB_COLLECTION_NAME = "CWMP-workflows";
 
+    /**
+     * MongoDB Indexes required by the workflow queries (lookup by name and by state)
+     */
+    public static final JsonArray DB_INDEXES = new JsonArray()
+            .add(AcsMongoIndexes.index(new JsonObject()
+                    .put(AcsConstants.FIELD_NAME_ORG_ID, 1)
+                    .put(AcsConstants.FIELD_NAME_NAME, 1)))
+            .add(AcsMongoIndexes.index(new JsonObject()
+                    .put(AcsConstants.FIELD_NAME_ORG_ID, 1)
+                    .put(Workflow.FIELD_NAME_STATE, 1)));
+
     /**
      * Field Names
      */
@@ -400,8 +412,30 @@ public class Workflow {
         );
     }
 
+    /**
+     * Check if the matcher of this workflow has any group filter on the heavy sub-documents of the CPEs (i.e.
+     * "paramValues"), which must then be present in the CPE JSON Objects passed to matchCpe().
+     */
+    public boolean needsHeavyFields() {
+        if (cpeMatcher == null) {
+            return false;
+        }
+
+        JsonArray subMatcherArray = cpeMatcher.getJsonArray(VertxMongoUtils.MOD_MONGO_QUERY_OPERATOR_OR);
+        for (int i =0; i < subMatcherArray.size(); i ++) {
+            JsonObject subMatcher = subMatcherArray.getJsonObject(i);
+            if (!subMatcher.containsKey(AcsConstants.FIELD_NAME_ID) && CpeGroup.hasHeavyFieldFilter(subMatcher)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Test if a given CPE matches the matcher of this workflow.
+     *
+     * A group filter on "paramValues" is treated as not matched (with an error log) if the CPE JSON Object does not
+     * contain the "paramValues" (see needsHeavyFields()).
      */
     public boolean matchCpe(JsonObject cpe) {
         // Try to match the CPE against the CPE matcher of this workflow
@@ -415,7 +449,12 @@ public class Workflow {
                         .contains(cpe.getString(AcsConstants.FIELD_NAME_ID));
             } else {
                 // Group Matcher
-                bMatched = CpeGroup.match(cpe, subMatcher);
+                try {
+                    bMatched = CpeGroup.match(cpe, subMatcher);
+                } catch (IllegalStateException e) {
+                    log.error("Workflow " + id + ": " + e.getMessage());
+                    bMatched = false;
+                }
             }
 
             if (bMatched) {
@@ -195,7 +195,7 @@ public class WorkflowAction {
                  */
                 profileName = jsonObject.getString(FIELD_NAME_PROFILE_NAME);
                 if (profileName == null && configurationProfileCache != null) {
-                    JsonObject profile = (JsonObject) configurationProfileCache.hashMap.get(profileId);
+                    JsonObject profile = (JsonObject) configurationProfileCache.get(profileId);
                     if (profile != null) {
                         profileName = profile.getString(AcsConstants.FIELD_NAME_NAME);
                         jsonObject.put(FIELD_NAME_PROFILE_NAME, profileName);
@@ -207,7 +207,7 @@ public class WorkflowAction {
                  */
                 paramValues = jsonObject.getJsonObject(FIELD_NAME_PARAMETER_VALUES);
                 if (paramValues == null && configurationProfileCache != null) {
-                    JsonObject profile = (JsonObject) configurationProfileCache.hashMap.get(profileId);
+                    JsonObject profile = (JsonObject) configurationProfileCache.get(profileId);
                     if (profile == null) {
                         log.error("Invalid Profile Id " + profileId + "!");
                         throw INVALID_PROFILE_ID;
@@ -224,7 +224,7 @@ public class WorkflowAction {
                  */
                 services = jsonObject.getJsonArray(FIELD_NAME_SERVICES);
                 if (services == null && configurationProfileCache != null) {
-                    JsonObject profile = (JsonObject) configurationProfileCache.hashMap.get(profileId);
+                    JsonObject profile = (JsonObject) configurationProfileCache.get(profileId);
                     if (profile == null) {
                         log.error("Invalid Profile Id " + profileId + "!");
                         throw INVALID_PROFILE_ID;
@@ -241,7 +241,7 @@ public class WorkflowAction {
                  */
                 dynamicObjects = jsonObject.getJsonArray(FIELD_NAME_DYNAMIC_OBJECTS);
                 if (dynamicObjects == null && configurationProfileCache != null) {
-                    JsonObject profile = (JsonObject) configurationProfileCache.hashMap.get(profileId);
+                    JsonObject profile = (JsonObject) configurationProfileCache.get(profileId);
                     if (profile == null) {
                         log.error("Invalid Profile Id " + profileId + "!");
                         throw INVALID_PROFILE_ID;
@@ -303,6 +303,10 @@ public class WorkflowAction {
         switch (action.actionEnum) {
             case APPLY_CONFIG_PROFILE:
             case SET_PARAMETER_VALUES:
+                if (action.profileId != null) {
+                    // Allows the CPE server to reuse the compiled parameter values of the profile
+                    requestBody.put(CpeDeviceOp.FIELD_NAME_PROFILE_ID, action.profileId);
+                }
                 if (action.paramValues != null) {
                     requestBody.put(CpeDeviceOp.FIELD_NAME_PARAM_VALUES, action.paramValues);
                 }
@@ -61,6 +61,73 @@ public class AcsConfigProperties {
      */
     public static final int DEFAULT_NBR_OF_PASSIVE_WORKFLOW_WORKER_VERTICES = VertxUtils.getNumberOfCpuCores();
 
+    /**
+     * Default # of ACS API (NBI) vertice instances equals the # of CPU cores
+     */
+    public static final int DEFAULT_NBR_OF_ACS_API_VERTICES = VertxUtils.getNumberOfCpuCores();
+
+    /**
+     * Default Local Cache Disk Snapshot Directory (set to an empty string to disable the disk snapshots)
+     */
+    public static final String DEFAULT_CACHE_SNAPSHOT_DIR =
+            VertxUtils.initStringProp("HOME", "/usr/tmp") + "/cwmp-cache-snapshots";
+
+    /**
+     * By default, the required MongoDB indexes are ensured at startup
+     */
+    public static final boolean DEFAULT_ENSURE_MONGO_INDEXES = true;
+
+    /**
+     * Default NBI Request Time Budget (in seconds), shared by the MongoDB queries issued for the same request (except
+     * the streamed exports)
+     */
+    public static final int DEFAULT_NBI_REQUEST_TIME_BUDGET = 30;
+
+    /**
+     * Default Max # of concurrent CWMP sessions per CPE Server session vertice
+     */
+    public static final int DEFAULT_CPE_SERVER_MAX_SESSIONS_PER_VERTICE = 2000;
+
+    /**
+     * By default, the periodic informs in over-subscribed time slots are spread across the interval
+     */
+    public static final boolean DEFAULT_INFORM_SLOT_BALANCING = true;
+
+    /**
+     * By default, the parameter values reported by the CPEs are cached in Redis for 1 hour (0 to disable)
+     */
+    public static final int DEFAULT_PARAM_VALUE_CACHE_TTL = 3600;
+
+    /**
+     * By default, a CPE is considered unreachable by connection requests after 3 consecutive failures (0 to disable)
+     */
+    public static final int DEFAULT_CONN_REQ_UNREACHABLE_FAILURES = 3;
+
+    /**
+     * By default, an unreachable CPE is probed with a connection request at most every 30 minutes
+     */
+    public static final int DEFAULT_CONN_REQ_PROBE_INTERVAL = 1800;
+
+    /**
+     * By default, no HTTP proxy/load balancer in front of the CPE servers is trusted for X-Forwarded-For
+     */
+    public static final String DEFAULT_CONN_REQ_TRUSTED_PROXIES = null;
+
+    /**
+     * By default, the latest 100000 Inform events are retained per org in the CPE event stream (0 to disable)
+     */
+    public static final int DEFAULT_CPE_EVENT_STREAM_MAX_LENGTH = 100000;
+
+    /**
+     * By default, the CPE event stream of an org is dropped after 7 days without new events
+     */
+    public static final int DEFAULT_CPE_EVENT_STREAM_TTL = 7 * 24 * 3600;
+
+    /**
+     * Default Bulk Data Report TTL (in # of days, 0 to disable the bulk data collection endpoint)
+     */
+    public static final int DEFAULT_BULK_DATA_TTL = 7;
+
     /**
      * Default SXA JBOSS API Port #
      */
@@ -100,6 +167,11 @@ public class AcsConfigProperties {
     public static final String NBR_OF_PASSIVE_WORKFLOW_WORKER_VERTICES_SYS_ENV_VAR =
             "CWMP_NBR_OF_PASSIVE_WORKFLOW_WORKER_VERTICES";
 
+    /**
+     * System Environment Variable Name for # of ACS API (NBI) vertice instances
+     */
+    public static final String NBR_OF_ACS_API_VERTICES_SYS_ENV_VAR = "CWMP_NBR_OF_ACS_API_VERTICES";
+
     /**
      * System Environment Variable Name for Max # of concurrent auto backup tasks
      */
@@ -114,6 +186,67 @@ public class AcsConfigProperties {
      */
     public static final String CWMP_MESSAGE_TTL_SYS_ENV_VAR = "CWMP_CWMP_MESSAGE_TTL";
 
+    /**
+     * System Environment Variable Name for Local Cache Disk Snapshot Directory
+     */
+    public static final String CACHE_SNAPSHOT_DIR_SYS_ENV_VAR = "CWMP_CACHE_SNAPSHOT_DIR";
+
+    /**
+     * System Environment Variable Name for whether to ensure the MongoDB indexes at startup
+     */
+    public static final String ENSURE_MONGO_INDEXES_SYS_ENV_VAR = "CWMP_ENSURE_MONGO_INDEXES";
+
+    /**
+     * System Environment Variable Name for NBI Request Time Budget
+     */
+    public static final String NBI_REQUEST_TIME_BUDGET_SYS_ENV_VAR = "CWMP_NBI_REQUEST_TIME_BUDGET";
+
+    /**
+     * System Environment Variable Name for Max # of concurrent CWMP sessions per CPE Server session vertice
+     */
+    public static final String CPE_SERVER_MAX_SESSIONS_PER_VERTICE_SYS_ENV_VAR =
+            "CWMP_CPE_SERVER_MAX_SESSIONS_PER_VERTICE";
+
+    /**
+     * System Environment Variable Name for whether to spread the periodic informs in over-subscribed time slots
+     */
+    public static final String INFORM_SLOT_BALANCING_SYS_ENV_VAR = "CWMP_INFORM_SLOT_BALANCING";
+
+    /**
+     * System Environment Variable Name for the TTL of the cached parameter values
+     */
+    public static final String PARAM_VALUE_CACHE_TTL_SYS_ENV_VAR = "CWMP_PARAM_VALUE_CACHE_TTL";
+
+    /**
+     * System Environment Variable Name for the # of consecutive conn-req failures that makes a CPE unreachable
+     */
+    public static final String CONN_REQ_UNREACHABLE_FAILURES_SYS_ENV_VAR = "CWMP_CONN_REQ_UNREACHABLE_FAILURES";
+
+    /**
+     * System Environment Variable Name for the max # of events retained per org in the CPE event stream
+     */
+    public static final String CPE_EVENT_STREAM_MAX_LENGTH_SYS_ENV_VAR = "CWMP_CPE_EVENT_STREAM_MAX_LENGTH";
+
+    /**
+     * System Environment Variable Name for the TTL of the idle CPE event streams
+     */
+    public static final String CPE_EVENT_STREAM_TTL_SYS_ENV_VAR = "CWMP_CPE_EVENT_STREAM_TTL";
+
+    /**
+     * System Environment Variable Name for Bulk Data Report TTL
+     */
+    public static final String BULK_DATA_TTL_SYS_ENV_VAR = "CWMP_BULK_DATA_TTL";
+
+    /**
+     * System Environment Variable Name for the interval of the conn-req probes towards the unreachable CPEs
+     */
+    public static final String CONN_REQ_PROBE_INTERVAL_SYS_ENV_VAR = "CWMP_CONN_REQ_PROBE_INTERVAL";
+
+    /**
+     * System Environment Variable Name for the (comma separated) IP addresses of the trusted HTTP proxies/LBs
+     */
+    public static final String CONN_REQ_TRUSTED_PROXIES_SYS_ENV_VAR = "CWMP_CONN_REQ_TRUSTED_PROXIES";
+
     /**
      * System Environment Variable Names for ACS NBI API Server Hostname/Port/ContextRoot
      */
@@ -160,6 +293,11 @@ public class AcsConfigProperties {
     public static final String FILE_SERVER_URL_ROOT = "/files/";
     public static final String BASE_FILE_SERVER_URL = CPE_SERVER_BASE_URL + FILE_SERVER_URL_ROOT;
 
+    /**
+     * Bulk Data Collection URL Root (followed by the URL path of the org's ACS URL, see BulkDataRequestHandler)
+     */
+    public static final String BULK_DATA_URL_ROOT = "/bulkdata";
+
     /**
      * Actual File Server File Store Path
      */
@@ -185,6 +323,14 @@ public class AcsConfigProperties {
                     VertxUtils.getNumberOfCpuCores()
             );
 
+    /**
+     * Actual # of ACS API (NBI) vertice instances
+     */
+    public static final int NBR_OF_ACS_API_VERTICES = Math.max(
+            1,
+            VertxUtils.initIntegerProp(NBR_OF_ACS_API_VERTICES_SYS_ENV_VAR, DEFAULT_NBR_OF_ACS_API_VERTICES)
+    );
+
     /**
      * Actual Max # of concurrent auto backup tasks
      */
@@ -202,6 +348,84 @@ public class AcsConfigProperties {
     public static final int CWMP_MESSAGE_TTL =
             VertxUtils.initIntegerProp(CWMP_MESSAGE_TTL_SYS_ENV_VAR, DEFAULT_CWMP_MESSAGE_TTL);
 
+    /**
+     * Actual Local Cache Disk Snapshot Directory
+     */
+    public static final String CACHE_SNAPSHOT_DIR =
+            VertxUtils.initStringProp(CACHE_SNAPSHOT_DIR_SYS_ENV_VAR, DEFAULT_CACHE_SNAPSHOT_DIR);
+
+    /**
+     * Actual flag for whether to ensure the MongoDB indexes at startup
+     */
+    public static final boolean ENSURE_MONGO_INDEXES =
+            VertxUtils.initBooleanProp(ENSURE_MONGO_INDEXES_SYS_ENV_VAR, DEFAULT_ENSURE_MONGO_INDEXES);
+
+    /**
+     * Actual NBI Request Time Budget (in seconds)
+     */
+    public static final int NBI_REQUEST_TIME_BUDGET =
+            VertxUtils.initIntegerProp(NBI_REQUEST_TIME_BUDGET_SYS_ENV_VAR, DEFAULT_NBI_REQUEST_TIME_BUDGET);
+
+    /**
+     * Actual Max # of concurrent CWMP sessions per CPE Server session vertice
+     */
+    public static final int CPE_SERVER_MAX_SESSIONS_PER_VERTICE = VertxUtils.initIntegerProp(
+            CPE_SERVER_MAX_SESSIONS_PER_VERTICE_SYS_ENV_VAR,
+            DEFAULT_CPE_SERVER_MAX_SESSIONS_PER_VERTICE
+    );
+
+    /**
+     * Actual flag for whether to spread the periodic informs in over-subscribed time slots
+     */
+    public static final boolean INFORM_SLOT_BALANCING =
+            VertxUtils.initBooleanProp(INFORM_SLOT_BALANCING_SYS_ENV_VAR, DEFAULT_INFORM_SLOT_BALANCING);
+
+    /**
+     * Actual TTL of the cached parameter values (in seconds)
+     */
+    public static final int PARAM_VALUE_CACHE_TTL =
+            VertxUtils.initIntegerProp(PARAM_VALUE_CACHE_TTL_SYS_ENV_VAR, DEFAULT_PARAM_VALUE_CACHE_TTL);
+
+    /**
+     * Actual # of consecutive conn-req failures that makes a CPE unreachable
+     */
+    public static final int CONN_REQ_UNREACHABLE_FAILURES = VertxUtils.initIntegerProp(
+            CONN_REQ_UNREACHABLE_FAILURES_SYS_ENV_VAR,
+            DEFAULT_CONN_REQ_UNREACHABLE_FAILURES
+    );
+
+    /**
+     * Actual interval of the conn-req probes towards the unreachable CPEs (in seconds)
+     */
+    public static final int CONN_REQ_PROBE_INTERVAL =
+            VertxUtils.initIntegerProp(CONN_REQ_PROBE_INTERVAL_SYS_ENV_VAR, DEFAULT_CONN_REQ_PROBE_INTERVAL);
+
+    /**
+     * Actual (comma separated) IP addresses of the HTTP proxies/LBs whose X-Forwarded-For headers are trusted
+     */
+    public static final String CONN_REQ_TRUSTED_PROXIES =
+            VertxUtils.initStringProp(CONN_REQ_TRUSTED_PROXIES_SYS_ENV_VAR, DEFAULT_CONN_REQ_TRUSTED_PROXIES);
+
+    /**
+     * Actual max # of events retained per org in the CPE event stream
+     */
+    public static final int CPE_EVENT_STREAM_MAX_LENGTH = VertxUtils.initIntegerProp(
+            CPE_EVENT_STREAM_MAX_LENGTH_SYS_ENV_VAR,
+            DEFAULT_CPE_EVENT_STREAM_MAX_LENGTH
+    );
+
+    /**
+     * Actual TTL of the idle CPE event streams (in seconds)
+     */
+    public static final int CPE_EVENT_STREAM_TTL =
+            VertxUtils.initIntegerProp(CPE_EVENT_STREAM_TTL_SYS_ENV_VAR, DEFAULT_CPE_EVENT_STREAM_TTL);
+
+    /**
+     * Actual Bulk Data Report TTL
+     */
+    public static final int BULK_DATA_TTL =
+            VertxUtils.initIntegerProp(BULK_DATA_TTL_SYS_ENV_VAR, DEFAULT_BULK_DATA_TTL);
+
     /**
      * Actual SXA JBoss API Hostname/Port
      */
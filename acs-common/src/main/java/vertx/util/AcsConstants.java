@@ -34,6 +34,7 @@ public class AcsConstants {
     public static final String ACS_API_SERVICE_DEVICE_DATA_MODEL = "device-data-model";
     public static final String ACS_API_SERVICE_SERVICE_PLAN = "service-plan";
     public static final String ACS_API_SERVICE_DIAL_PLAN = "dial-plan";
+    public static final String ACS_API_SERVICE_CPE_EVENT_STREAM = "cpe-event-stream";
 
     /**
      * Vert.x Event Bus Addresses
@@ -83,6 +84,51 @@ public class AcsConstants {
      */
     public static final String REDIS_KEY_AUTO_BACKUP_QUEUE = "acs.auto.backup.queue";
 
+    /**
+     * Per-Org CPE Presence Index (Sorted Set of CPE Keys scored by last Inform time)
+     */
+    // actual Redis keys will be built by adding the following prefix to org id string
+    public static final String REDIS_KEY_CPE_PRESENCE_PREFIX = "acs.cpe.presence~";
+
+    /**
+     * Lock held by the ACS API server that is currently reconciling the presence index with MongoDB
+     */
+    public static final String REDIS_KEY_CPE_PRESENCE_RECONCILE_LOCK = "acs.cpe.presence.reconcile.lock";
+
+    /**
+     * Time (in ms) since which the CPE records are read by the next incremental reconciliation of the presence index
+     */
+    public static final String REDIS_KEY_CPE_PRESENCE_RECONCILE_WATERMARK = "acs.cpe.presence.reconcile.watermark";
+
+    /**
+     * Per-Workflow Progress Counters (Hash of success/failure/in-progress counts)
+     */
+    // actual Redis keys will be built by adding the following prefix to workflow id string
+    public static final String REDIS_KEY_WORKFLOW_COUNTERS_PREFIX = "acs.workflow.counters~";
+    // Lock held by the workflow worker that is currently reconciling the counters of a workflow
+    public static final String REDIS_KEY_WORKFLOW_COUNTERS_LOCK_PREFIX = "acs.workflow.counters.lock~";
+
+    /**
+     * Per-CPE Parameter Value Cache (Hash of parameter name --> timestamped value)
+     */
+    // actual Redis keys will be built by adding the following prefix to CPE key string
+    public static final String REDIS_KEY_PARAM_VALUES_PREFIX = "acs.param.values~";
+
+    /**
+     * Per-CPE Connection-Request Reachability Record (Hash of last success/failure, consecutive failures, etc.)
+     */
+    // actual Redis keys will be built by adding the following prefix to CPE key string
+    public static final String REDIS_KEY_CONN_REQ_REACHABILITY_PREFIX = "acs.conn.req.reachability~";
+
+    /**
+     * Per-Org CPE Event Stream (Sorted Set of Inform events scored by offset, plus the last offset and the committed
+     * offsets of the consumer groups)
+     */
+    // actual Redis keys will be built by adding the following prefixes to org id string
+    public static final String REDIS_KEY_CPE_EVENT_STREAM_PREFIX = "acs.cpe.events~";
+    public static final String REDIS_KEY_CPE_EVENT_STREAM_OFFSET_PREFIX = "acs.cpe.events.offset~";
+    public static final String REDIS_KEY_CPE_EVENT_STREAM_GROUPS_PREFIX = "acs.cpe.events.groups~";
+
     /**
      * Field Names
      */
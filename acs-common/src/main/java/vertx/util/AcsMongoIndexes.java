@@ -0,0 +1,153 @@
+package vertx.util;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
+import vertx.VertxException;
+import vertx.VertxMongoUtils;
+import vertx.cache.CacheChangeLog;
+import vertx.cwmp.CwmpMessage;
+import vertx.model.AcsFile;
+import vertx.model.Cpe;
+import vertx.model.Event;
+import vertx.model.Subscriber;
+import vertx.model.Workflow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Project:  cwmp
+ *
+ * Registry of the MongoDB Indexes required by the hot query shapes.
+ *
+ * Each model declares the compound/TTL indexes its queries rely on (as a "DB_INDEXES" array), and this registry
+ * ensures all of them at startup via one "createIndexes" command per index, which is a no-op for the indexes that
+ * already exist. The index names follow the MongoDB default naming convention (for example "orgId_1_serialNumber_1"),
+ * so that the indexes created manually with default names are recognized as the same indexes.
+ *
+ * An equivalent index that already exists with a different name or different options (for example created manually
+ * with a custom name, or without the TTL) makes MongoDB reject the index with a conflict. Each index is created
+ * separately so that a conflict only affects that index, and the conflicts are reported as such (the existing index
+ * has to be dropped manually for the declared one to be created).
+ *
+ * The query shapes that are still answered by collection scans can be found via the "query-diagnostics" NBI service.
+ *
+ * @author: ronyang
+ */
+public class AcsMongoIndexes {
+    private static final Logger log = LoggerFactory.getLogger(AcsMongoIndexes.class.getName());
+
+    /**
+     * Build a (compound) index with the default name.
+     *
+     * The indexes are built in the background so that ensuring them on a large existing collection does not block
+     * the other operations.
+     *
+     * @param keys  Field name --> 1 (ascending) or -1 (descending), in order
+     */
+    public static JsonObject index(JsonObject keys) {
+        StringBuilder name = new StringBuilder();
+        for (String field : keys.fieldNames()) {
+            if (name.length() > 0) {
+                name.append("_");
+            }
+            name.append(field).append("_").append(keys.getValue(field));
+        }
+
+        return new JsonObject()
+                .put("key", keys)
+                .put("name", name.toString())
+                .put("background", true);
+    }
+
+    /**
+     * Build a sparse (compound) index, i.e. only the documents that have the indexed fields are indexed.
+     *
+     * @param keys
+     */
+    public static JsonObject sparseIndex(JsonObject keys) {
+        return index(keys).put("sparse", true);
+    }
+
+    /**
+     * Build a TTL index on a single date field.
+     *
+     * @param field
+     * @param expireAfterSeconds    Documents expire this # of seconds after the date value of the field
+     */
+    public static JsonObject ttlIndex(String field, long expireAfterSeconds) {
+        return index(new JsonObject().put(field, 1)).put("expireAfterSeconds", expireAfterSeconds);
+    }
+
+    /**
+     * Get all the required indexes.
+     *
+     * @return  <Collection Name --> Indexes>
+     */
+    public static Map<String, JsonArray> getAllIndexes() {
+        Map<String, JsonArray> allIndexes = new LinkedHashMap<>();
+        allIndexes.put(Cpe.CPE_COLLECTION_NAME, Cpe.DB_INDEXES);
+        allIndexes.put(Subscriber.DB_COLLECTION_NAME, Subscriber.DB_INDEXES);
+        allIndexes.put(Event.DB_COLLECTION_NAME, Event.DB_INDEXES);
+        allIndexes.put(CwmpMessage.DB_COLLECTION_NAME, CwmpMessage.DB_INDEXES);
+        allIndexes.put(AcsFile.DB_COLLECTION_NAME, AcsFile.DB_INDEXES);
+        allIndexes.put(Workflow.DB_COLLECTION_NAME, Workflow.DB_INDEXES);
+        allIndexes.put(CacheChangeLog.DB_COLLECTION_NAME, CacheChangeLog.DB_INDEXES);
+        return allIndexes;
+    }
+
+    /**
+     * Ensure all the required indexes.
+     *
+     * The handler (if any) is called with the # of indexes that could not be created (including the conflicts).
+     *
+     * @param mongoClient
+     * @param handler
+     */
+    public static void ensureAll(MongoClient mongoClient, final Handler<Integer> handler) {
+        final Map<String, JsonArray> allIndexes = getAllIndexes();
+        final int[] pending = {0};
+        for (JsonArray indexes : allIndexes.values()) {
+            pending[0] += indexes.size();
+        }
+        final int[] failures = {0};
+
+        for (final Map.Entry<String, JsonArray> entry : allIndexes.entrySet()) {
+            for (int i = 0; i < entry.getValue().size(); i ++) {
+                final JsonObject index = entry.getValue().getJsonObject(i);
+                Handler<Integer> resultHandler = new Handler<Integer>() {
+                    @Override
+                    public void handle(Integer errorCode) {
+                        String indexName = index.getString("name");
+                        if (errorCode == 0) {
+                            log.info(entry.getKey() + ": ensured index " + indexName + ".");
+                        } else {
+                            failures[0] ++;
+                            if (VertxMongoUtils.isIndexConflict(errorCode)) {
+                                log.error(entry.getKey() + ": index " + indexName + " " + index.getJsonObject("key")
+                                        + " conflicts with an existing index with the same keys but a different name"
+                                        + " or options! Drop the existing index to have it recreated.");
+                            }
+                        }
+
+                        pending[0] --;
+                        if (pending[0] == 0 && handler != null) {
+                            handler.handle(failures[0]);
+                        }
+                    }
+                };
+
+                try {
+                    VertxMongoUtils.createIndex(mongoClient, entry.getKey(), index, resultHandler);
+                } catch (VertxException e) {
+                    log.error(entry.getKey() + ": failed to create index due to " + e.getMessage() + "!");
+                    resultHandler.handle(VertxMongoUtils.MONGO_ERROR_CODE_UNKNOWN);
+                }
+            }
+        }
+    }
+}
@@ -28,15 +28,13 @@ public class AutoBackupUtils {
      * @param cpe
      */
     public static void addToQueue(RedisClient redisClient, final JsonObject cpe) {
-        final long delay = AcsConfigProperties.AUTO_BACKUP_SOAK_TIME
-                // plus a random delay
-                + AcsMiscUtils.randInt(0, AcsConfigProperties.AUTO_BACKUP_SOAK_TIME);
-        final String delayString = (delay / 60) + " min(s) " + (delay % 60) + " second(s)";
+        final long delay = getDelay();
+        final String delayString = getDelayString(delay);
 
         VertxRedisUtils.zadd(
                 redisClient,
                 AcsConstants.REDIS_KEY_AUTO_BACKUP_QUEUE,
-                System.currentTimeMillis() + (delay * 1000),
+                getScore(delay),
                 cpe.encode(),
                 new Handler<Long>() {
                     @Override
@@ -50,6 +48,45 @@ public class AutoBackupUtils {
         );
     }
 
+    /**
+     * Add a new CPE into the queue as part of a Redis batch.
+     *
+     * @param batch
+     * @param cpe
+     */
+    public static void addToQueue(VertxRedisUtils.Batch batch, final JsonObject cpe) {
+        final long delay = getDelay();
+
+        batch.zadd(AcsConstants.REDIS_KEY_AUTO_BACKUP_QUEUE, getScore(delay), cpe.encode());
+        log.info("Adding " + cpe.getString(Cpe.DB_FIELD_NAME_SN) + ". Delay: " + getDelayString(delay));
+    }
+
+    /**
+     * Get the soak time of a new task, i.e. AUTO_BACKUP_SOAK_TIME plus a random delay (in seconds).
+     */
+    static long getDelay() {
+        return AcsConfigProperties.AUTO_BACKUP_SOAK_TIME
+                + AcsMiscUtils.randInt(0, AcsConfigProperties.AUTO_BACKUP_SOAK_TIME);
+    }
+
+    /**
+     * Get the score of a new task in the queue, i.e. the time (in ms) when it is due.
+     *
+     * @param delay     In seconds
+     */
+    static long getScore(long delay) {
+        return System.currentTimeMillis() + (delay * 1000);
+    }
+
+    /**
+     * Format a delay for logging.
+     *
+     * @param delay     In seconds
+     */
+    static String getDelayString(long delay) {
+        return (delay / 60) + " min(s) " + (delay % 60) + " second(s)";
+    }
+
     /**
      * Read auto-backup tasks that pasted the soaking time from the queue.
      *
@@ -0,0 +1,280 @@
+package vertx.util;
+
+import io.vertx.redis.RedisClient;
+import io.vertx.redis.op.RangeLimitOptions;
+import vertx.VertxRedisUtils;
+import vertx.model.Cpe;
+import vertx.model.CpeIdentifier;
+import dslforumOrgCwmp12.ParameterValueStruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Project:  cwmp
+ *
+ * Util Methods related to the per-org CPE Event Stream.
+ *
+ * The CPE Servers append a compact summary of each Inform (the event codes, plus the reported parameter values if
+ * the Inform carries a "4 VALUE CHANGE" event) to a per-org stream in Redis, which is made of:
+ *
+ * - a Sorted Set of the events (as JSON Strings) scored by their offsets;
+ * - a counter of the last offset assigned;
+ * - a Hash of the committed offsets of the consumer groups.
+ *
+ * The events are appended in batches by a Lua script, which assigns the offsets and adds the events atomically, so
+ * the offsets always show up in order and without gaps. The stream is capped at CPE_EVENT_STREAM_MAX_LENGTH events,
+ * and dropped after CPE_EVENT_STREAM_TTL seconds without new events.
+ *
+ * The consumers read the events from any offset (i.e. replay), and each consumer group commits the offset of the last
+ * event it has processed, so that it can resume from there.
+ *
+ * @author: ronyang
+ */
+public class CpeEventStreamUtils {
+    private static final Logger log = LoggerFactory.getLogger(CpeEventStreamUtils.class.getName());
+
+    /**
+     * Field Names of the events
+     */
+    public static final String FIELD_NAME_OFFSET = "offset";
+    public static final String FIELD_NAME_TIME = "time";
+    public static final String FIELD_NAME_CPE_KEY = "cpeKey";
+    public static final String FIELD_NAME_EVENT_CODES = "eventCodes";
+    public static final String FIELD_NAME_VALUES = "values";
+
+    /**
+     * Lua Script that appends a batch of events.
+     *
+     * KEYS[1]: Sorted Set of events, KEYS[2]: last offset
+     * ARGV[1]: max length, ARGV[2]: TTL (in ms), ARGV[3..]: events (JSON Objects without the offset)
+     *
+     * Returns the last offset.
+     */
+    public static final String APPEND_SCRIPT =
+            "local nbrOfEvents = #ARGV - 2\n"
+            + "local last = redis.call('INCRBY', KEYS[2], nbrOfEvents)\n"
+            + "for i = 1, nbrOfEvents do\n"
+            + "  local offset = last - nbrOfEvents + i\n"
+            + "  redis.call('ZADD', KEYS[1], offset, '{\"" + FIELD_NAME_OFFSET + "\":' .. offset .. ','"
+            + " .. string.sub(ARGV[i + 2], 2))\n"
+            + "end\n"
+            + "redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -tonumber(ARGV[1]) - 1)\n"
+            + "redis.call('PEXPIRE', KEYS[1], ARGV[2])\n"
+            + "redis.call('PEXPIRE', KEYS[2], ARGV[2])\n"
+            + "return last\n";
+
+    /**
+     * Get the Redis Key of the events of an org.
+     *
+     * @param orgId
+     */
+    public static String getRedisKey(String orgId) {
+        return AcsConstants.REDIS_KEY_CPE_EVENT_STREAM_PREFIX + orgId;
+    }
+
+    /**
+     * Get the Redis Key of the last offset of an org.
+     *
+     * @param orgId
+     */
+    public static String getOffsetRedisKey(String orgId) {
+        return AcsConstants.REDIS_KEY_CPE_EVENT_STREAM_OFFSET_PREFIX + orgId;
+    }
+
+    /**
+     * Get the Redis Key of the committed offsets of the consumer groups of an org.
+     *
+     * @param orgId
+     */
+    public static String getGroupsRedisKey(String orgId) {
+        return AcsConstants.REDIS_KEY_CPE_EVENT_STREAM_GROUPS_PREFIX + orgId;
+    }
+
+    /**
+     * Build the compact summary of an Inform.
+     *
+     * @param cpe
+     * @param eventCodes
+     * @param parameterValueStructs     The parameter values of the Inform (only included for "4 VALUE CHANGE")
+     */
+    public static JsonObject buildInformEvent(
+            Cpe cpe,
+            String[] eventCodes,
+            ParameterValueStruct[] parameterValueStructs) {
+        JsonObject event = new JsonObject()
+                .put(FIELD_NAME_TIME, cpe.informTime)
+                .put(FIELD_NAME_CPE_KEY, cpe.getCpeKey())
+                .put(
+                        AcsConstants.FIELD_NAME_CPE_ID,
+                        new JsonObject()
+                                .put(CpeIdentifier.FIELD_NAME_OUI, cpe.deviceId.oui)
+                                .put(CpeIdentifier.FIELD_NAME_SN, cpe.deviceId.sn)
+                )
+                .put(FIELD_NAME_EVENT_CODES, new JsonArray(Arrays.asList((Object[]) eventCodes)));
+
+        if (parameterValueStructs != null) {
+            JsonObject values = new JsonObject();
+            for (ParameterValueStruct valueStruct : parameterValueStructs) {
+                if (valueStruct.getName() != null && valueStruct.getValue() != null) {
+                    values.put(valueStruct.getName(), valueStruct.getValue().getStringValue());
+                }
+            }
+            event.put(FIELD_NAME_VALUES, values);
+        }
+        return event;
+    }
+
+    /**
+     * Append a batch of events to the stream of an org.
+     *
+     * @param redisClient
+     * @param orgId
+     * @param events        Encoded JSON Objects
+     */
+    public static void append(RedisClient redisClient, final String orgId, final List<String> events) {
+        if (AcsConfigProperties.CPE_EVENT_STREAM_MAX_LENGTH <= 0 || events.size() == 0) {
+            return;
+        }
+
+        List<String> args = new ArrayList<>(events.size() + 2);
+        args.add(String.valueOf(AcsConfigProperties.CPE_EVENT_STREAM_MAX_LENGTH));
+        args.add(String.valueOf(AcsConfigProperties.CPE_EVENT_STREAM_TTL * 1000L));
+        args.addAll(events);
+
+        redisClient.eval(
+                APPEND_SCRIPT,
+                Arrays.asList(getRedisKey(orgId), getOffsetRedisKey(orgId)),
+                args,
+                res -> {
+                    if (res.failed()) {
+                        log.error("Failed to append " + events.size() + " event(s) to the CPE event stream of org "
+                                + orgId + "! " + res.cause());
+                    }
+                }
+        );
+    }
+
+    /**
+     * Read up to "count" events starting from the given offset.
+     *
+     * The events that have already been trimmed are skipped silently (i.e. the first event returned may have a
+     * higher offset than requested).
+     *
+     * @param redisClient
+     * @param orgId
+     * @param fromOffset
+     * @param count
+     * @param handler       Called with the events (in order), or null if failed to read from Redis
+     */
+    public static void read(
+            RedisClient redisClient,
+            String orgId,
+            long fromOffset,
+            int count,
+            final Handler<JsonArray> handler) {
+        redisClient.zrangebyscore(
+                getRedisKey(orgId),
+                String.valueOf(fromOffset),
+                "+inf",
+                (RangeLimitOptions) new RangeLimitOptions().setLimit(0, count),
+                res -> {
+                    if (res.failed()) {
+                        log.error("Failed to read the CPE event stream! " + res.cause());
+                        handler.handle(null);
+                        return;
+                    }
+
+                    JsonArray events = new JsonArray();
+                    for (int i = 0; i < res.result().size(); i ++) {
+                        try {
+                            events.add(new JsonObject(res.result().getString(i)));
+                        } catch (Exception ex) {
+                            log.error("Invalid event in the CPE event stream: " + res.result().getString(i));
+                        }
+                    }
+                    handler.handle(events);
+                }
+        );
+    }
+
+    /**
+     * Get the last offset of the stream of an org (0 if no event yet).
+     *
+     * @param redisClient
+     * @param orgId
+     * @param handler       Called with the last offset, or null if failed to read from Redis
+     */
+    public static void getLastOffset(RedisClient redisClient, String orgId, final Handler<Long> handler) {
+        redisClient.get(
+                getOffsetRedisKey(orgId),
+                res -> handler.handle(res.failed()? null : toLong(res.result()))
+        );
+    }
+
+    /**
+     * Get the committed offset of a consumer group (0 if nothing committed yet).
+     *
+     * @param redisClient
+     * @param orgId
+     * @param group
+     * @param handler       Called with the committed offset, or null if failed to read from Redis
+     */
+    public static void getCommittedOffset(
+            RedisClient redisClient,
+            String orgId,
+            String group,
+            final Handler<Long> handler) {
+        redisClient.hget(
+                getGroupsRedisKey(orgId),
+                group,
+                res -> handler.handle(res.failed()? null : toLong(res.result()))
+        );
+    }
+
+    /**
+     * Commit the offset of the last event processed by a consumer group.
+     *
+     * @param redisClient
+     * @param orgId
+     * @param group
+     * @param offset
+     * @param handler       Called with the result (null if failed)
+     */
+    public static void commitOffset(
+            RedisClient redisClient,
+            String orgId,
+            String group,
+            long offset,
+            Handler<JsonArray> handler) {
+        String key = getGroupsRedisKey(orgId);
+        new VertxRedisUtils.Batch(redisClient)
+                .hmset(key, new JsonObject().put(group, String.valueOf(offset)))
+                .pexpire(key, AcsConfigProperties.CPE_EVENT_STREAM_TTL * 1000L)
+                .exec(handler);
+    }
+
+    /**
+     * Convert a Redis String value to long (0 if null or invalid).
+     *
+     * @param value
+     */
+    static long toLong(String value) {
+        if (value == null) {
+            return 0;
+        }
+
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException ex) {
+            log.error("Invalid offset " + value + " in the CPE event stream!");
+            return 0;
+        }
+    }
+}
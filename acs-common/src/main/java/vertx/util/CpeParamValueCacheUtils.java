@@ -0,0 +1,219 @@
+package vertx.util;
+
+import io.vertx.redis.RedisClient;
+import vertx.VertxJsonUtils;
+import vertx.VertxRedisUtils;
+import vertx.model.CWMPTr098ModelExtensions;
+import dslforumOrgCwmp12.ParameterValueStruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Project:  cwmp
+ *
+ * Util Methods related to the CPE Parameter Value Cache.
+ *
+ * The CPE Servers keep one Redis Hash per CPE, with the parameter names as fields and the last reported values
+ * (along with the time they were reported) as values. The cache is populated from the Informs (including the VALUE
+ * CHANGE events), the "GetParameterValues" responses and the successful "SetParameterValues" requests.
+ *
+ * When a "GetParameterValues" request asks for a partial path (i.e. ending with "."), the partial path itself is also
+ * stored (with the time only), which means that the whole sub-tree was read at that time. A partial path is only
+ * answered from the cache if it (or one of its parent paths) has been read recently enough, and only the values that
+ * were reported since then are included (so that the deleted objects are left out).
+ *
+ * The ACS API servers answer the "GetParameterValues" device ops that come with a "maxAgeSeconds" from this cache,
+ * and only send the stale parameter names to the device.
+ *
+ * @author: ronyang
+ */
+public class CpeParamValueCacheUtils {
+    private static final Logger log = LoggerFactory.getLogger(CpeParamValueCacheUtils.class.getName());
+
+    /**
+     * Field Names of the cached values
+     */
+    public static final String FIELD_NAME_VALUE = "v";
+    public static final String FIELD_NAME_TIME = "t";
+
+    /**
+     * Result of a cache lookup
+     */
+    public static class LookupResult {
+        // The values that are fresh enough (as nested JSON Object like the "GetParameterValues" results)
+        public JsonObject freshValues = new JsonObject();
+        // The parameter names that have to be read from the device
+        public JsonArray staleParamNames = new JsonArray();
+    }
+
+    /**
+     * Get the Redis Key of the cache of a CPE.
+     *
+     * @param cpeKey
+     */
+    public static String getRedisKey(String cpeKey) {
+        return AcsConstants.REDIS_KEY_PARAM_VALUES_PREFIX + cpeKey;
+    }
+
+    /**
+     * Cache the parameter values reported by a CPE.
+     *
+     * @param redisClient
+     * @param cpeKey
+     * @param parameterValueStructs
+     * @param partialPaths          The partial paths that have been read entirely (if any)
+     */
+    public static void update(
+            RedisClient redisClient,
+            String cpeKey,
+            ParameterValueStruct[] parameterValueStructs,
+            String[] partialPaths) {
+        if (AcsConfigProperties.PARAM_VALUE_CACHE_TTL <= 0 || cpeKey == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        JsonObject fields = new JsonObject();
+        if (parameterValueStructs != null) {
+            for (ParameterValueStruct valueStruct : parameterValueStructs) {
+                if (valueStruct.getName() != null && valueStruct.getValue() != null) {
+                    fields.put(
+                            valueStruct.getName(),
+                            new JsonObject()
+                                    .put(FIELD_NAME_VALUE, valueStruct.getValue().getStringValue())
+                                    .put(FIELD_NAME_TIME, now)
+                                    .encode()
+                    );
+                }
+            }
+        }
+        if (partialPaths != null) {
+            for (String partialPath : partialPaths) {
+                if (partialPath != null && partialPath.endsWith(".")) {
+                    fields.put(partialPath, new JsonObject().put(FIELD_NAME_TIME, now).encode());
+                }
+            }
+        }
+        if (fields.size() == 0) {
+            return;
+        }
+
+        String key = getRedisKey(cpeKey);
+        new VertxRedisUtils.Batch(redisClient)
+                .hmset(key, fields)
+                .pexpire(key, AcsConfigProperties.PARAM_VALUE_CACHE_TTL * 1000L)
+                .exec(null);
+    }
+
+    /**
+     * Look up the values of the given parameter names that have been reported since the given time.
+     *
+     * The parameter names with CWMP abstract names are always considered stale as they have to be converted by the
+     * CPE server.
+     *
+     * @param redisClient
+     * @param cpeKey
+     * @param paramNames
+     * @param minTime       In ms
+     * @param handler
+     */
+    public static void lookup(
+            RedisClient redisClient,
+            String cpeKey,
+            final JsonArray paramNames,
+            final long minTime,
+            final Handler<LookupResult> handler) {
+        VertxRedisUtils.hgetall(
+                redisClient,
+                getRedisKey(cpeKey),
+                new Handler<JsonObject>() {
+                    @Override
+                    public void handle(JsonObject cache) {
+                        LookupResult result = new LookupResult();
+                        for (int i = 0; i < paramNames.size(); i ++) {
+                            String paramName = paramNames.getString(i);
+                            if (cache == null
+                                    || CWMPTr098ModelExtensions.containCWMPAbstractName(paramName)
+                                    || !lookupParamName(cache, paramName, minTime, result.freshValues)) {
+                                result.staleParamNames.add(paramName);
+                            }
+                        }
+                        handler.handle(result);
+                    }
+                }
+        );
+    }
+
+    /**
+     * Look up a single parameter name (or partial path), and add the value(s) to the given JSON Object if fresh.
+     *
+     * @param cache
+     * @param paramName
+     * @param minTime
+     * @param freshValues
+     *
+     * @return  Whether the parameter name (or partial path) is fresh
+     */
+    public static boolean lookupParamName(JsonObject cache, String paramName, long minTime, JsonObject freshValues) {
+        if (!paramName.endsWith(".")) {
+            JsonObject cachedValue = getCachedValue(cache, paramName);
+            if (cachedValue == null
+                    || !cachedValue.containsKey(FIELD_NAME_VALUE)
+                    || cachedValue.getLong(FIELD_NAME_TIME, 0L) < minTime) {
+                return false;
+            }
+            VertxJsonUtils.deepAdd(freshValues, paramName, cachedValue.getString(FIELD_NAME_VALUE));
+            return true;
+        }
+
+        /**
+         * Find the latest read of the partial path or any of its parent paths
+         */
+        long readTime = 0;
+        for (int index = paramName.indexOf('.'); index >= 0; index = paramName.indexOf('.', index + 1)) {
+            JsonObject cachedPath = getCachedValue(cache, paramName.substring(0, index + 1));
+            if (cachedPath != null) {
+                readTime = Math.max(readTime, cachedPath.getLong(FIELD_NAME_TIME, 0L));
+            }
+        }
+        if (readTime == 0 || readTime < minTime) {
+            return false;
+        }
+
+        /**
+         * Include the values that have been reported since the sub-tree was read
+         */
+        for (String name : cache.fieldNames()) {
+            if (name.startsWith(paramName) && !name.endsWith(".")) {
+                JsonObject cachedValue = getCachedValue(cache, name);
+                if (cachedValue != null && cachedValue.getLong(FIELD_NAME_TIME, 0L) >= readTime) {
+                    VertxJsonUtils.deepAdd(freshValues, name, cachedValue.getString(FIELD_NAME_VALUE));
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode a cached value.
+     *
+     * @param cache
+     * @param name
+     */
+    public static JsonObject getCachedValue(JsonObject cache, String name) {
+        String rawValue = cache.getString(name);
+        if (rawValue == null) {
+            return null;
+        }
+
+        try {
+            return new JsonObject(rawValue);
+        } catch (Exception ex) {
+            log.error("Invalid cached value for " + name + ": " + rawValue);
+            return null;
+        }
+    }
+}
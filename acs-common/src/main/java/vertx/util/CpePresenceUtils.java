@@ -0,0 +1,675 @@
+package vertx.util;
+
+import io.vertx.ext.mongo.MongoClient;
+import io.vertx.redis.RedisClient;
+import vertx.VertxException;
+import vertx.VertxMongoUtils;
+import vertx.VertxRedisUtils;
+import vertx.model.Cpe;
+import vertx.model.Organization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Project:  cwmp
+ *
+ * Util Methods related to the CPE Presence Index.
+ *
+ * The CPE Servers maintain one Redis Sorted Set per organization, with the CPE Keys as members and the last Inform
+ * time (in ms) as scores. The online/offline counts can then be answered with ZCARD/ZCOUNT, and the stale devices
+ * can be listed with ZRANGEBYSCORE, without scanning the CPE collection.
+ *
+ * As the index is only fed by the Informs, it is seeded from (and periodically reconciled with) the "lastInformTime"
+ * of the CPE records in MongoDB by one of the ACS API servers (see reconcile()), so that the CPEs that have not
+ * informed since the index was created (or since Redis was flushed) are still counted, and the CPEs that have been
+ * deleted are no longer counted.
+ *
+ * @author: ronyang
+ */
+public class CpePresenceUtils {
+    private static final Logger log = LoggerFactory.getLogger(CpePresenceUtils.class.getName());
+
+    /**
+     * Default Presence Window (in seconds).
+     *
+     * CPEs that have not informed within the window are considered offline (i.e. stale).
+     */
+    public static final int DEFAULT_PRESENCE_WINDOW = 86400;
+
+    /**
+     * Reconcile the presence index with MongoDB every 6 hours (in ms)
+     */
+    public static final long RECONCILE_INTERVAL = 6 * 3600 * 1000L;
+
+    /**
+     * The incremental reconciliations also read the CPEs that have informed within 1 hour before the previous run
+     * started (in ms), which covers the "lastInformTime" updates that reached MongoDB late
+     */
+    public static final long RECONCILE_OVERLAP = 3600 * 1000L;
+
+    /**
+     * # of CPE records (or presence index members) read per page while reconciling
+     */
+    public static final int RECONCILE_BATCH_SIZE = 10000;
+
+    /**
+     * Projection of the CPE records while reconciling
+     */
+    public static final JsonObject RECONCILE_QUERY_KEYS = new JsonObject()
+            .put(Cpe.DB_FIELD_NAME_LAST_INFORM_TIME, 1);
+
+    /**
+     * Sort the CPE records by id while reconciling (for keyset paging)
+     */
+    public static final JsonObject RECONCILE_QUERY_SORT = new JsonObject()
+            .put(VertxMongoUtils.MOD_MONGO_FIELD_NAME_ID, 1);
+
+    /**
+     * Sort the CPE records by "lastInformTime" then id while reconciling incrementally (for keyset paging)
+     */
+    public static final JsonObject INCREMENTAL_RECONCILE_QUERY_SORT = new JsonObject()
+            .put(Cpe.DB_FIELD_NAME_LAST_INFORM_TIME, 1)
+            .put(VertxMongoUtils.MOD_MONGO_FIELD_NAME_ID, 1);
+
+    /**
+     * Projection of the organizations and CPE records while pruning
+     */
+    public static final JsonObject ID_ONLY_QUERY_KEYS = new JsonObject()
+            .put(AcsConstants.FIELD_NAME_ID, 1);
+
+    /**
+     * Lua Script that merges a batch of last Inform times into a presence index, keeping the greater score of each
+     * member (the CPE servers may have recorded a more recent Inform since the CPE records were read).
+     *
+     * KEYS[1]: presence index, ARGV: pairs of CPE key and last Inform time (in ms)
+     */
+    public static final String MERGE_SCRIPT =
+            "for i = 1, #ARGV, 2 do\n"
+            + "  local score = redis.call('ZSCORE', KEYS[1], ARGV[i])\n"
+            + "  if not score or tonumber(score) < tonumber(ARGV[i + 1]) then\n"
+            + "    redis.call('ZADD', KEYS[1], ARGV[i + 1], ARGV[i])\n"
+            + "  end\n"
+            + "end\n"
+            + "return 0\n";
+
+    /**
+     * Field Names used in the query results
+     */
+    public static final String FIELD_NAME_TOTAL = "total";
+    public static final String FIELD_NAME_ONLINE = "online";
+    public static final String FIELD_NAME_OFFLINE = "offline";
+
+    /**
+     * Get the Redis Key of the presence index of an organization.
+     *
+     * @param orgId
+     */
+    public static String getRedisKey(String orgId) {
+        return AcsConstants.REDIS_KEY_CPE_PRESENCE_PREFIX + orgId;
+    }
+
+    /**
+     * Update the last Inform time of a batch of CPEs within the same organization.
+     *
+     * @param redisClient
+     * @param orgId
+     * @param informTimes   <CPE Key --> Last Inform Time in ms>
+     */
+    public static void update(RedisClient redisClient, final String orgId, Map<String, Double> informTimes) {
+        if (orgId == null || informTimes == null || informTimes.size() == 0) {
+            return;
+        }
+
+        VertxRedisUtils.zaddMany(
+                redisClient,
+                getRedisKey(orgId),
+                informTimes,
+                new Handler<Long>() {
+                    @Override
+                    public void handle(Long nbrOfNewMembers) {
+                        if (nbrOfNewMembers == null) {
+                            log.error("Failed to update the presence index for org " + orgId + "!");
+                        }
+                    }
+                }
+        );
+    }
+
+    /**
+     * Update the last Inform time of a batch of CPEs within the same organization as part of a Redis batch.
+     *
+     * @param batch
+     * @param orgId
+     * @param informTimes   <CPE Key --> Last Inform Time in ms>
+     */
+    public static void update(VertxRedisUtils.Batch batch, String orgId, Map<String, Double> informTimes) {
+        if (orgId == null || informTimes == null || informTimes.size() == 0) {
+            return;
+        }
+
+        batch.zaddMany(getRedisKey(orgId), informTimes);
+    }
+
+    /**
+     * Remove a CPE from the presence index (for example when the CPE is deleted).
+     *
+     * @param redisClient
+     * @param orgId
+     * @param cpeKey
+     */
+    public static void remove(RedisClient redisClient, String orgId, String cpeKey) {
+        if (orgId == null || cpeKey == null) {
+            return;
+        }
+
+        VertxRedisUtils.zrem(
+                redisClient,
+                getRedisKey(orgId),
+                cpeKey,
+                new Handler<Long>() {
+                    @Override
+                    public void handle(Long result) {
+                    }
+                }
+        );
+    }
+
+    /**
+     * Reconcile the presence indexes with the "lastInformTime" of the CPE records in MongoDB, unless another ACS API
+     * server has done so within the last RECONCILE_INTERVAL (i.e. once per cluster).
+     *
+     * Only the CPE records that have informed since the last reconciliation (minus RECONCILE_OVERLAP) are read, unless
+     * the watermark is missing (first run, or Redis has been flushed) in which case the whole CPE collection is read.
+     * The records are read page by page, and each page is merged into the presence indexes by MERGE_SCRIPT, which
+     * never moves a score backwards. The members of the CPEs that no longer exist in MongoDB are pruned afterwards.
+     *
+     * @param mongoClient
+     * @param redisClient
+     */
+    public static void reconcile(final MongoClient mongoClient, final RedisClient redisClient) {
+        VertxRedisUtils.set(
+                redisClient,
+                AcsConstants.REDIS_KEY_CPE_PRESENCE_RECONCILE_LOCK,
+                String.valueOf(System.currentTimeMillis()),
+                // Expire a bit early so the next run is not skipped due to timer drifts
+                RECONCILE_INTERVAL - 60000,
+                true,
+                null,
+                new Handler<String>() {
+                    @Override
+                    public void handle(String result) {
+                        if (!VertxRedisUtils.OK.equals(result)) {
+                            return;
+                        }
+
+                        final long startTime = System.currentTimeMillis();
+                        redisClient.get(
+                                AcsConstants.REDIS_KEY_CPE_PRESENCE_RECONCILE_WATERMARK,
+                                res -> {
+                                    if (res.failed()) {
+                                        log.error("Failed to read the presence index watermark! " + res.cause());
+                                        return;
+                                    }
+
+                                    String watermark = res.result();
+                                    JsonObject watermarkDate = null;
+                                    if (watermark != null) {
+                                        try {
+                                            watermarkDate = VertxMongoUtils.getDateObject(Long.valueOf(watermark));
+                                        } catch (NumberFormatException ex) {
+                                            log.error("Invalid presence index watermark " + watermark + "!");
+                                        }
+                                    }
+
+                                    log.info("Reconciling the CPE presence index with MongoDB ("
+                                            + (watermarkDate == null? "full" : "since " + watermarkDate.encode())
+                                            + ")...");
+                                    reconcilePage(mongoClient, redisClient, watermarkDate, null, 0, startTime);
+                                }
+                        );
+                    }
+                }
+        );
+    }
+
+    /**
+     * Build the matcher of the next page of CPE records to reconcile.
+     *
+     * The full reconciliation pages by id, and the incremental one pages by "lastInformTime" then id (i.e. the sort
+     * returned by getReconcileSort()).
+     *
+     * @param watermarkDate     Read the CPEs that have informed after this date (null to read all CPEs)
+     * @param lastCpe           The last CPE record of the previous page (null for the first page)
+     */
+    public static JsonObject buildReconcileMatcher(JsonObject watermarkDate, JsonObject lastCpe) {
+        JsonObject matcher = new JsonObject();
+        if (watermarkDate == null) {
+            matcher.put(Cpe.DB_FIELD_NAME_LAST_INFORM_TIME, VertxMongoUtils.EXISTS);
+            if (lastCpe != null) {
+                matcher.put(
+                        VertxMongoUtils.MOD_MONGO_FIELD_NAME_ID,
+                        new JsonObject().put(
+                                VertxMongoUtils.MOD_MONGO_QUERY_OPERATOR_GREATER_THAN,
+                                lastCpe.getString(AcsConstants.FIELD_NAME_ID)
+                        )
+                );
+            }
+        } else {
+            matcher.put(
+                    Cpe.DB_FIELD_NAME_LAST_INFORM_TIME,
+                    new JsonObject().put(VertxMongoUtils.MOD_MONGO_QUERY_OPERATOR_GREATER_THAN, watermarkDate)
+            );
+            if (lastCpe != null) {
+                JsonObject lastInformTime = lastCpe.getJsonObject(Cpe.DB_FIELD_NAME_LAST_INFORM_TIME);
+                matcher.put(
+                        VertxMongoUtils.MOD_MONGO_QUERY_OPERATOR_OR,
+                        new JsonArray()
+                                .add(new JsonObject().put(
+                                        Cpe.DB_FIELD_NAME_LAST_INFORM_TIME,
+                                        new JsonObject().put(
+                                                VertxMongoUtils.MOD_MONGO_QUERY_OPERATOR_GREATER_THAN,
+                                                lastInformTime
+                                        )
+                                ))
+                                .add(new JsonObject()
+                                        .put(Cpe.DB_FIELD_NAME_LAST_INFORM_TIME, lastInformTime)
+                                        .put(
+                                                VertxMongoUtils.MOD_MONGO_FIELD_NAME_ID,
+                                                new JsonObject().put(
+                                                        VertxMongoUtils.MOD_MONGO_QUERY_OPERATOR_GREATER_THAN,
+                                                        lastCpe.getString(AcsConstants.FIELD_NAME_ID)
+                                                )
+                                        )
+                                )
+                );
+            }
+        }
+        return matcher;
+    }
+
+    /**
+     * Get the sort of the CPE records to reconcile.
+     *
+     * @param watermarkDate     null for the full reconciliation
+     */
+    public static JsonObject getReconcileSort(JsonObject watermarkDate) {
+        return watermarkDate == null? RECONCILE_QUERY_SORT : INCREMENTAL_RECONCILE_QUERY_SORT;
+    }
+
+    /**
+     * Reconcile the next page of CPE records.
+     *
+     * @param mongoClient
+     * @param redisClient
+     * @param watermarkDate The CPEs that have informed after this date are reconciled (null for all CPEs)
+     * @param lastCpe       The last CPE record of the previous page (null for the first page)
+     * @param nbrOfCpes     # of CPE records reconciled so far
+     * @param startTime     When this reconciliation has started
+     */
+    static void reconcilePage(
+            final MongoClient mongoClient,
+            final RedisClient redisClient,
+            final JsonObject watermarkDate,
+            JsonObject lastCpe,
+            final int nbrOfCpes,
+            final long startTime) {
+        try {
+            VertxMongoUtils.find(
+                    mongoClient,
+                    Cpe.CPE_COLLECTION_NAME,
+                    buildReconcileMatcher(watermarkDate, lastCpe),
+                    getReconcileSort(watermarkDate),
+                    0,
+                    RECONCILE_BATCH_SIZE,
+                    new Handler<List<JsonObject>>() {
+                        @Override
+                        public void handle(List<JsonObject> cpes) {
+                            if (cpes == null) {
+                                log.error("Failed to read the CPE records while reconciling the presence index!");
+                                return;
+                            }
+
+                            /**
+                             * Group the last Inform times by org
+                             */
+                            HashMap<String, Map<String, Double>> informTimesByOrg = new HashMap<>();
+                            for (JsonObject cpe : cpes) {
+                                String cpeKey = cpe.getString(AcsConstants.FIELD_NAME_ID);
+                                String orgId = Cpe.getOrgIdByCpeKey(cpeKey);
+                                JsonObject lastInformTime = cpe.getJsonObject(Cpe.DB_FIELD_NAME_LAST_INFORM_TIME);
+                                if (orgId == null || lastInformTime == null) {
+                                    continue;
+                                }
+
+                                try {
+                                    double informTime =
+                                            VertxMongoUtils.getDateFromMongoDateObject(lastInformTime).getTime();
+                                    Map<String, Double> informTimes = informTimesByOrg.get(orgId);
+                                    if (informTimes == null) {
+                                        informTimes = new HashMap<>();
+                                        informTimesByOrg.put(orgId, informTimes);
+                                    }
+                                    informTimes.put(cpeKey, informTime);
+                                } catch (VertxException e) {
+                                    log.error(cpeKey + ": Invalid " + Cpe.DB_FIELD_NAME_LAST_INFORM_TIME + "!");
+                                }
+                            }
+
+                            for (Map.Entry<String, Map<String, Double>> entry : informTimesByOrg.entrySet()) {
+                                merge(redisClient, entry.getKey(), entry.getValue());
+                            }
+
+                            if (cpes.size() < RECONCILE_BATCH_SIZE) {
+                                log.info("Reconciled the CPE presence index with " + (nbrOfCpes + cpes.size())
+                                        + " CPE record(s).");
+
+                                // The next run only reads the CPEs that have informed since this one started
+                                VertxRedisUtils.set(
+                                        redisClient,
+                                        AcsConstants.REDIS_KEY_CPE_PRESENCE_RECONCILE_WATERMARK,
+                                        String.valueOf(startTime - RECONCILE_OVERLAP)
+                                );
+
+                                prune(mongoClient, redisClient);
+                            } else {
+                                reconcilePage(
+                                        mongoClient,
+                                        redisClient,
+                                        watermarkDate,
+                                        cpes.get(cpes.size() - 1),
+                                        nbrOfCpes + cpes.size(),
+                                        startTime
+                                );
+                            }
+                        }
+                    },
+                    RECONCILE_QUERY_KEYS,
+                    RECONCILE_BATCH_SIZE
+            );
+        } catch (VertxException e) {
+            log.error("Failed to reconcile the presence index due to " + e.getMessage() + "!");
+        }
+    }
+
+    /**
+     * Merge the last Inform times of a batch of CPEs within the same organization into the presence index, without
+     * moving any score backwards (see MERGE_SCRIPT).
+     *
+     * @param redisClient
+     * @param orgId
+     * @param informTimes   <CPE Key --> Last Inform Time in ms>
+     */
+    public static void merge(RedisClient redisClient, final String orgId, Map<String, Double> informTimes) {
+        List<String> args = new ArrayList<>(informTimes.size() * 2);
+        for (Map.Entry<String, Double> entry : informTimes.entrySet()) {
+            args.add(entry.getKey());
+            args.add(String.valueOf(entry.getValue().longValue()));
+        }
+
+        redisClient.eval(
+                MERGE_SCRIPT,
+                Collections.singletonList(getRedisKey(orgId)),
+                args,
+                res -> {
+                    if (res.failed()) {
+                        log.error("Failed to merge into the presence index of org " + orgId + "! " + res.cause());
+                    }
+                }
+        );
+    }
+
+    /**
+     * Prune the members of the CPEs that no longer exist in MongoDB (for example the ones deleted without going
+     * through the ACS API) from the presence indexes of all organizations.
+     *
+     * @param mongoClient
+     * @param redisClient
+     */
+    public static void prune(final MongoClient mongoClient, final RedisClient redisClient) {
+        try {
+            VertxMongoUtils.find(
+                    mongoClient,
+                    Organization.DB_COLLECTION_NAME,
+                    new JsonObject(),
+                    new Handler<List<JsonObject>>() {
+                        @Override
+                        public void handle(List<JsonObject> orgs) {
+                            if (orgs == null) {
+                                log.error("Failed to read the organizations while pruning the presence index!");
+                                return;
+                            }
+
+                            List<String> orgIds = new ArrayList<>(orgs.size());
+                            for (JsonObject org : orgs) {
+                                orgIds.add(org.getString(AcsConstants.FIELD_NAME_ID));
+                            }
+                            prunePage(mongoClient, redisClient, orgIds, 0, 0, 0);
+                        }
+                    },
+                    ID_ONLY_QUERY_KEYS,
+                    RECONCILE_BATCH_SIZE
+            );
+        } catch (VertxException e) {
+            log.error("Failed to prune the presence index due to " + e.getMessage() + "!");
+        }
+    }
+
+    /**
+     * Prune the next page of members from the presence index of an organization.
+     *
+     * @param mongoClient
+     * @param redisClient
+     * @param orgIds
+     * @param orgIndex      Index of the organization (within orgIds)
+     * @param start         Rank of the first member of this page
+     * @param nbrOfPruned   # of members pruned so far
+     */
+    static void prunePage(
+            final MongoClient mongoClient,
+            final RedisClient redisClient,
+            final List<String> orgIds,
+            final int orgIndex,
+            final int start,
+            final int nbrOfPruned) {
+        if (orgIndex >= orgIds.size()) {
+            log.info("Pruned " + nbrOfPruned + " deleted CPE(s) from the presence index.");
+            return;
+        }
+
+        final String key = getRedisKey(orgIds.get(orgIndex));
+        VertxRedisUtils.zrange(
+                redisClient,
+                key,
+                start,
+                start + RECONCILE_BATCH_SIZE - 1,
+                new Handler<JsonArray>() {
+                    @Override
+                    public void handle(final JsonArray cpeKeys) {
+                        if (cpeKeys == null || cpeKeys.size() == 0) {
+                            // Next org
+                            prunePage(mongoClient, redisClient, orgIds, orgIndex + 1, 0, nbrOfPruned);
+                            return;
+                        }
+
+                        try {
+                            VertxMongoUtils.find(
+                                    mongoClient,
+                                    Cpe.CPE_COLLECTION_NAME,
+                                    new JsonObject().put(
+                                            AcsConstants.FIELD_NAME_ID,
+                                            new JsonObject().put(VertxMongoUtils.MOD_MONGO_QUERY_OPERATOR_IN, cpeKeys)
+                                    ),
+                                    new Handler<List<JsonObject>>() {
+                                        @Override
+                                        public void handle(List<JsonObject> cpes) {
+                                            if (cpes == null) {
+                                                log.error("Failed to read the CPE records while pruning the presence"
+                                                        + " index!");
+                                                return;
+                                            }
+
+                                            Set<String> existingCpeKeys = new HashSet<>();
+                                            for (JsonObject cpe : cpes) {
+                                                existingCpeKeys.add(cpe.getString(AcsConstants.FIELD_NAME_ID));
+                                            }
+                                            List<String> deletedCpeKeys = new ArrayList<>();
+                                            for (int i = 0; i < cpeKeys.size(); i ++) {
+                                                if (!existingCpeKeys.contains(cpeKeys.getString(i))) {
+                                                    deletedCpeKeys.add(cpeKeys.getString(i));
+                                                }
+                                            }
+                                            if (deletedCpeKeys.size() > 0) {
+                                                redisClient.zremMany(key, deletedCpeKeys, res -> {
+                                                    if (res.failed()) {
+                                                        log.error("Failed to prune the presence index! "
+                                                                + res.cause());
+                                                    }
+                                                });
+                                            }
+
+                                            // The pruned members no longer take up ranks
+                                            prunePage(
+                                                    mongoClient,
+                                                    redisClient,
+                                                    orgIds,
+                                                    orgIndex,
+                                                    start + cpeKeys.size() - deletedCpeKeys.size(),
+                                                    nbrOfPruned + deletedCpeKeys.size()
+                                            );
+                                        }
+                                    },
+                                    ID_ONLY_QUERY_KEYS,
+                                    RECONCILE_BATCH_SIZE
+                            );
+                        } catch (VertxException e) {
+                            log.error("Failed to prune the presence index due to " + e.getMessage() + "!");
+                        }
+                    }
+                }
+        );
+    }
+
+    /**
+     * Get the total/online/offline counts of an organization.
+     *
+     * The result is passed to the handler as a JSON Object, or null if failed to read from Redis.
+     *
+     * @param redisClient
+     * @param orgId
+     * @param window        Presence Window in seconds
+     * @param handler
+     */
+    public static void getCounts(
+            final RedisClient redisClient,
+            String orgId,
+            int window,
+            final Handler<JsonObject> handler) {
+        final String key = getRedisKey(orgId);
+        final long cutoff = System.currentTimeMillis() - window * 1000L;
+
+        VertxRedisUtils.zcard(
+                redisClient,
+                key,
+                new Handler<Long>() {
+                    @Override
+                    public void handle(final Long total) {
+                        if (total == null) {
+                            handler.handle(null);
+                            return;
+                        }
+
+                        VertxRedisUtils.zcount(
+                                redisClient,
+                                key,
+                                cutoff,
+                                Long.MAX_VALUE,
+                                new Handler<Long>() {
+                                    @Override
+                                    public void handle(Long online) {
+                                        if (online == null) {
+                                            handler.handle(null);
+                                            return;
+                                        }
+
+                                        handler.handle(
+                                                new JsonObject()
+                                                        .put(FIELD_NAME_TOTAL, total)
+                                                        .put(FIELD_NAME_ONLINE, online)
+                                                        .put(FIELD_NAME_OFFLINE, total - online)
+                                        );
+                                    }
+                                }
+                        );
+                    }
+                }
+        );
+    }
+
+    /**
+     * Get the stale CPEs of an organization, i.e. the CPEs that have not informed within the presence window,
+     * starting with the one that has been silent for the longest time.
+     *
+     * The result is passed to the handler as a JSON Array of "{_id, lastInformTime}", or null if failed to read
+     * from Redis.
+     *
+     * @param redisClient
+     * @param orgId
+     * @param window        Presence Window in seconds
+     * @param skip
+     * @param limit
+     * @param handler
+     */
+    public static void getStaleCpes(
+            RedisClient redisClient,
+            String orgId,
+            int window,
+            int skip,
+            int limit,
+            final Handler<JsonArray> handler) {
+        VertxRedisUtils.zrangeByScore(
+                redisClient,
+                getRedisKey(orgId),
+                0,
+                System.currentTimeMillis() - window * 1000L - 1,
+                skip,
+                limit,
+                new Handler<JsonArray>() {
+                    @Override
+                    public void handle(JsonArray membersWithScores) {
+                        if (membersWithScores == null) {
+                            handler.handle(null);
+                            return;
+                        }
+
+                        // The raw result is a flat array of "member, score, member, score..."
+                        JsonArray staleCpes = new JsonArray();
+                        for (int i = 0; i + 1 < membersWithScores.size(); i += 2) {
+                            staleCpes.add(
+                                    new JsonObject()
+                                            .put(AcsConstants.FIELD_NAME_ID, membersWithScores.getString(i))
+                                            .put(
+                                                    Cpe.DB_FIELD_NAME_LAST_INFORM_TIME,
+                                                    VertxMongoUtils.getDateObject(
+                                                            Double.valueOf(membersWithScores.getString(i + 1))
+                                                                    .longValue()
+                                                    )
+                                            )
+                            );
+                        }
+                        handler.handle(staleCpes);
+                    }
+                }
+        );
+    }
+}
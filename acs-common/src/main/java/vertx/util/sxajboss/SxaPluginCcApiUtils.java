@@ -8,6 +8,7 @@ import org.slf4j.LoggerFactory;
 import io.vertx.core.Handler;
 import io.vertx.core.http.HttpClientResponse;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
 
 /**
  * Project:  cwmp
@@ -29,9 +30,34 @@ public class SxaPluginCcApiUtils extends SxaJBossApiUtils{
 
     /**
      * Notify SXA Plugin-CC that a new CPE has been discovered.
+     *
+     * The heavy fields (i.e. the parameter values) of a projected CPE are loaded first.
+     *
+     * @param mongoClient
+     * @param cpe
+     */
+    public static void sendCpeDiscoveryToPluginCc(MongoClient mongoClient, final Cpe cpe) {
+        cpe.loadHeavyFields(
+                mongoClient,
+                new Handler<Boolean>() {
+                    @Override
+                    public void handle(Boolean bSucceeded) {
+                        if (bSucceeded) {
+                            sendCpeDiscoveryToPluginCc(cpe);
+                        } else {
+                            log.error(cpe.getCpeKey() + ": Unable to send CPE discovery notification to SXA Plugin-CC"
+                                    + " as the parameter values could not be read!");
+                        }
+                    }
+                }
+        );
+    }
+
+    /**
+     * Notify SXA Plugin-CC that a new CPE has been discovered (the CPE must have its heavy fields loaded).
      * @param cpe
      */
-    public static void sendCpeDiscoveryToPluginCc(final Cpe cpe) {
+    static void sendCpeDiscoveryToPluginCc(final Cpe cpe) {
         /**
          * Build request payload
          */
@@ -0,0 +1,101 @@
+package vertx.cache;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit Test for {@link LocalCacheDiskSnapshot}.
+ *
+ * @author: ronyang
+ */
+public class LocalCacheDiskSnapshotTest {
+    static final String CACHE_ID = "vertx.cache.GroupCache|CWMP-groups|{}";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    static Map<String, JsonObject> rawJsonObjects() {
+        Map<String, JsonObject> rawJsonObjects = new LinkedHashMap<>();
+        rawJsonObjects.put("g1", new JsonObject().put("_id", "g1").put("name", "Gold"));
+        rawJsonObjects.put("g2", new JsonObject().put("_id", "g2").put("name", "Silver"));
+        return rawJsonObjects;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        File file = LocalCacheDiskSnapshot.getFile(tempFolder.getRoot().getPath(), "GroupCache-CWMP-groups");
+        assertTrue(LocalCacheDiskSnapshot.write(file, CACHE_ID, 12345, rawJsonObjects()));
+
+        LocalCacheDiskSnapshot snapshot = LocalCacheDiskSnapshot.read(file, CACHE_ID);
+        assertEquals(12345, snapshot.changeLogWatermark);
+        assertEquals(rawJsonObjects(), snapshot.rawJsonObjects);
+
+        // Saved by a different cache
+        assertNull(LocalCacheDiskSnapshot.read(file, "vertx.cache.OrganizationCache|CWMP-organizations|{}"));
+
+        // No temp files left behind
+        String[] names = tempFolder.getRoot().list();
+        for (String name : names) {
+            assertFalse(name.endsWith(".tmp"));
+        }
+    }
+
+    @Test
+    public void testOwnerOnlyPermissions() throws Exception {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return;
+        }
+
+        File file = LocalCacheDiskSnapshot.getFile(tempFolder.getRoot().getPath(), "GroupCache-CWMP-groups");
+        LocalCacheDiskSnapshot.write(file, CACHE_ID, 1, rawJsonObjects());
+        assertEquals(
+                LocalCacheDiskSnapshot.OWNER_ONLY_PERMISSIONS,
+                PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath()))
+        );
+    }
+
+    @Test
+    public void testSkippedWhileLocked() throws Exception {
+        File file = LocalCacheDiskSnapshot.getFile(tempFolder.getRoot().getPath(), "GroupCache-CWMP-groups");
+        File lockFile = new File(file.getPath() + LocalCacheDiskSnapshot.LOCK_FILE_NAME_SUFFIX);
+
+        try (RandomAccessFile raf = new RandomAccessFile(lockFile, "rw");
+             FileChannel channel = raf.getChannel();
+             FileLock lock = channel.lock()) {
+            assertFalse(LocalCacheDiskSnapshot.write(file, CACHE_ID, 1, rawJsonObjects()));
+        }
+        assertFalse(file.exists());
+
+        assertTrue(LocalCacheDiskSnapshot.write(file, CACHE_ID, 1, rawJsonObjects()));
+        assertTrue(file.exists());
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void testCorruptedFile() throws Exception {
+        File file = LocalCacheDiskSnapshot.getFile(tempFolder.getRoot().getPath(), "GroupCache-CWMP-groups");
+        LocalCacheDiskSnapshot.write(file, CACHE_ID, 1, rawJsonObjects());
+
+        // Truncate the last entry
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+        LocalCacheDiskSnapshot.read(file, CACHE_ID);
+    }
+}
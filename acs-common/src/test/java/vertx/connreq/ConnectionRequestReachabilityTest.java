@@ -0,0 +1,110 @@
+package vertx.connreq;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit Test for {@link ConnectionRequestReachability}.
+ *
+ * @author: ronyang
+ */
+public class ConnectionRequestReachabilityTest {
+    static final Set<String> TRUSTED_PROXIES = ConnectionRequestReachability.parseAddressList("10.0.0.1, 10.0.0.2");
+
+    static JsonObject record(String sourceIp, String connReqUrl, int failures) {
+        return new JsonObject()
+                .put(ConnectionRequestReachability.FIELD_NAME_SOURCE_IP, sourceIp)
+                .put(ConnectionRequestReachability.FIELD_NAME_CONN_REQ_HOST, ConnectionRequestReachability.getHost(connReqUrl))
+                .put(ConnectionRequestReachability.FIELD_NAME_CONSECUTIVE_FAILURES, String.valueOf(failures));
+    }
+
+    @Test
+    public void testNormalizeAddress() {
+        assertEquals("192.0.2.1", ConnectionRequestReachability.normalizeAddress("192.0.2.1"));
+        assertEquals("192.0.2.1", ConnectionRequestReachability.normalizeAddress(" 192.0.2.1 "));
+        assertEquals("192.0.2.1", ConnectionRequestReachability.normalizeAddress("::ffff:192.0.2.1"));
+        assertEquals(
+                ConnectionRequestReachability.normalizeAddress("2001:db8:0:0:0:0:0:1"),
+                ConnectionRequestReachability.normalizeAddress("[2001:db8::1]")
+        );
+        assertEquals(
+                ConnectionRequestReachability.normalizeAddress("fe80::1"),
+                ConnectionRequestReachability.normalizeAddress("fe80::1%eth0")
+        );
+        assertNull(ConnectionRequestReachability.normalizeAddress("cpe.example.com"));
+        assertNull(ConnectionRequestReachability.normalizeAddress("unknown"));
+        assertNull(ConnectionRequestReachability.normalizeAddress(null));
+    }
+
+    @Test
+    public void testIsBehindNat() {
+        assertFalse(ConnectionRequestReachability.isBehindNat(record("192.0.2.1", "http://192.0.2.1:7547/cr", 0)));
+        assertTrue(ConnectionRequestReachability.isBehindNat(record("198.51.100.7", "http://192.168.1.1:7547/", 0)));
+
+        // Same address in different notations
+        assertFalse(ConnectionRequestReachability.isBehindNat(
+                record("2001:db8:0:0:0:0:0:1", "http://[2001:db8::1]:7547/", 0)
+        ));
+        assertFalse(ConnectionRequestReachability.isBehindNat(record("::ffff:192.0.2.1", "http://192.0.2.1/", 0)));
+
+        // Hostnames are never classified as NAT
+        assertFalse(ConnectionRequestReachability.isBehindNat(record("192.0.2.1", "http://cpe.example.com:7547/", 0)));
+        assertFalse(ConnectionRequestReachability.isBehindNat(new JsonObject()));
+    }
+
+    @Test
+    public void testIsUnreachable() {
+        // A single failure is not enough even behind NAT
+        assertFalse(ConnectionRequestReachability.isUnreachable(record("198.51.100.7", "http://192.168.1.1:7547/", 1)));
+        assertTrue(ConnectionRequestReachability.isUnreachable(record(
+                "198.51.100.7",
+                "http://192.168.1.1:7547/",
+                (int) ConnectionRequestConstants.NAT_UNREACHABLE_FAILURES
+        )));
+
+        // Not behind NAT
+        assertFalse(ConnectionRequestReachability.isUnreachable(record("192.0.2.1", "http://192.0.2.1:7547/", 2)));
+        assertFalse(ConnectionRequestReachability.isUnreachable(null));
+    }
+
+    @Test
+    public void testGetClientAddress() {
+        // Not from a trusted proxy: X-Forwarded-For is ignored
+        assertEquals(
+                "198.51.100.7",
+                ConnectionRequestReachability.getClientAddress("198.51.100.7", "192.0.2.1", TRUSTED_PROXIES)
+        );
+
+        // From a trusted proxy
+        assertEquals(
+                "192.0.2.1",
+                ConnectionRequestReachability.getClientAddress("10.0.0.1", "192.0.2.1", TRUSTED_PROXIES)
+        );
+
+        // Chained trusted proxies, with a forged left-most hop
+        assertEquals(
+                "192.0.2.1",
+                ConnectionRequestReachability.getClientAddress(
+                        "10.0.0.1",
+                        "203.0.113.9, 192.0.2.1, 10.0.0.2",
+                        TRUSTED_PROXIES
+                )
+        );
+
+        // Unparsable hop: stop at the last trusted proxy
+        assertEquals(
+                "10.0.0.2",
+                ConnectionRequestReachability.getClientAddress("10.0.0.1", "unknown, 10.0.0.2", TRUSTED_PROXIES)
+        );
+
+        // No header
+        assertEquals("10.0.0.1", ConnectionRequestReachability.getClientAddress("10.0.0.1", null, TRUSTED_PROXIES));
+    }
+}
@@ -0,0 +1,62 @@
+package vertx.connreq;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit Test for {@link UdpConnectionRequest}.
+ *
+ * @author: ronyang
+ */
+public class UdpConnectionRequestTest {
+    @Test
+    public void testIpv4() {
+        assertEquals("192.0.2.1", UdpConnectionRequest.getHost("192.0.2.1:7547"));
+        assertEquals(7547, UdpConnectionRequest.getPort("192.0.2.1:7547"));
+        assertEquals("192.0.2.1", UdpConnectionRequest.getHost("192.0.2.1:7547/cpe/1"));
+        assertEquals(7547, UdpConnectionRequest.getPort("192.0.2.1:7547/cpe/1"));
+
+        // Missing Port
+        assertEquals("192.0.2.1", UdpConnectionRequest.getHost("192.0.2.1"));
+        assertEquals(UdpConnectionRequest.DEFAULT_PORT, UdpConnectionRequest.getPort("192.0.2.1"));
+    }
+
+    @Test
+    public void testIpv6() {
+        assertEquals("2001:db8::1", UdpConnectionRequest.getHost("[2001:db8::1]:7547"));
+        assertEquals(7547, UdpConnectionRequest.getPort("[2001:db8::1]:7547"));
+        assertEquals("2001:db8::1", UdpConnectionRequest.getHost("[2001:db8::1]"));
+        assertEquals(UdpConnectionRequest.DEFAULT_PORT, UdpConnectionRequest.getPort("[2001:db8::1]"));
+
+        // Bare IPv6 Address (no port)
+        assertEquals("2001:db8::1", UdpConnectionRequest.getHost("2001:db8::1"));
+        assertEquals(UdpConnectionRequest.DEFAULT_PORT, UdpConnectionRequest.getPort("2001:db8::1"));
+
+        // Malformed
+        assertEquals("", UdpConnectionRequest.getHost("[2001:db8::1:7547"));
+        assertEquals(-1, UdpConnectionRequest.getPort("[2001:db8::1:7547"));
+        assertEquals(-1, UdpConnectionRequest.getPort("[2001:db8::1]7547"));
+    }
+
+    @Test
+    public void testInvalidPort() {
+        assertEquals(-1, UdpConnectionRequest.getPort("192.0.2.1:"));
+        assertEquals(-1, UdpConnectionRequest.getPort("192.0.2.1:abc"));
+        assertEquals(-1, UdpConnectionRequest.getPort("192.0.2.1:0"));
+        assertEquals(-1, UdpConnectionRequest.getPort("192.0.2.1:65536"));
+        assertEquals(-1, UdpConnectionRequest.getPort("[2001:db8::1]:-1"));
+        assertEquals(65535, UdpConnectionRequest.getPort("192.0.2.1:65535"));
+    }
+
+    @Test
+    public void testBuildMessageBracketsIpv6Host() {
+        String message = UdpConnectionRequest.buildMessage("2001:db8::1", "user", "pass", 1000, 1, "abc");
+        assertTrue(message.startsWith("GET http://[2001:db8::1]?"));
+        assertTrue(message.contains("Host: [2001:db8::1]\r\n"));
+
+        message = UdpConnectionRequest.buildMessage("[2001:db8::1]:7547", "user", "pass", 1000, 1, "abc");
+        assertTrue(message.startsWith("GET http://[2001:db8::1]:7547?"));
+    }
+}
@@ -0,0 +1,95 @@
+package vertx.model;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit Test for {@link CpeGroup} matching.
+ *
+ * @author: ronyang
+ */
+public class CpeGroupTest {
+    static final String PROV_CODE = "paramValues.InternetGatewayDevice.DeviceInfo.ProvisioningCode";
+
+    static final JsonObject PARAM_VALUES_FILTER = new JsonObject()
+            .put(CpeDeviceType.FIELD_NAME_MANUFACTURER, "Calix")
+            .put(PROV_CODE, "GOLD");
+
+    /**
+     * A CPE read with the QUERY_KEYS_NO_HEAVY_FIELDS projection
+     */
+    static JsonObject projectedCpe() {
+        return new JsonObject()
+                .put("_id", "000631-CXNK0012345")
+                .put(CpeDeviceType.FIELD_NAME_MANUFACTURER, "Calix");
+    }
+
+    /**
+     * The same CPE with its parameter values
+     */
+    static JsonObject fullCpe(String provCode) {
+        return projectedCpe().put(
+                Cpe.DB_FIELD_NAME_PARAM_VALUES,
+                new JsonObject().put(
+                        "InternetGatewayDevice",
+                        new JsonObject().put(
+                                "DeviceInfo",
+                                new JsonObject().put("ProvisioningCode", provCode)
+                        )
+                )
+        );
+    }
+
+    @Test
+    public void testHasHeavyFieldFilter() {
+        assertTrue(CpeGroup.hasHeavyFieldFilter(PARAM_VALUES_FILTER));
+        assertTrue(CpeGroup.hasHeavyFieldFilter(new JsonObject().put(
+                CpeGroup.OPERATOR_OR,
+                new JsonArray()
+                        .add(new JsonObject().put(CpeDeviceType.FIELD_NAME_MANUFACTURER, "Calix"))
+                        .add(new JsonObject().put(PROV_CODE, "GOLD"))
+        )));
+        assertFalse(CpeGroup.hasHeavyFieldFilter(new JsonObject().put(CpeDeviceType.FIELD_NAME_MANUFACTURER, "Calix")));
+        assertFalse(CpeGroup.hasHeavyFieldFilter(new JsonObject().put("paramValuesCount", 1)));
+    }
+
+    @Test
+    public void testGetValueByPath() {
+        assertEquals("GOLD", CpeGroup.getValueByPath(fullCpe("GOLD"), PROV_CODE));
+        assertEquals("Calix", CpeGroup.getValueByPath(fullCpe("GOLD"), CpeDeviceType.FIELD_NAME_MANUFACTURER));
+        assertNull(CpeGroup.getValueByPath(fullCpe("GOLD"), PROV_CODE + ".Foo"));
+        assertNull(CpeGroup.getValueByPath(projectedCpe(), PROV_CODE));
+    }
+
+    @Test
+    public void testParamValuesFilterOnFullCpe() {
+        assertTrue(CpeGroup.match(fullCpe("GOLD"), PARAM_VALUES_FILTER));
+        assertFalse(CpeGroup.match(fullCpe("SILVER"), PARAM_VALUES_FILTER));
+
+        // A CPE that has no parameter values at all is evaluated against ""
+        assertFalse(CpeGroup.match(
+                projectedCpe().put(Cpe.DB_FIELD_NAME_PARAM_VALUES, new JsonObject()),
+                PARAM_VALUES_FILTER
+        ));
+    }
+
+    @Test
+    public void testParamValuesFilterOnProjectedCpe() {
+        try {
+            CpeGroup.match(projectedCpe(), PARAM_VALUES_FILTER);
+            fail("A paramValues filter must not be evaluated against a projected CPE!");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+        // Filters on the other fields still work
+        assertTrue(CpeGroup.match(projectedCpe(), new JsonObject().put(CpeDeviceType.FIELD_NAME_MANUFACTURER, "Calix")));
+    }
+}
@@ -0,0 +1,386 @@
+package vertx.acs;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.ext.mongo.MongoClient;
+import io.vertx.redis.RedisClient;
+import io.vertx.redis.RedisOptions;
+import vertx.VertxConfigProperties;
+import vertx.VertxMongoUtils;
+import vertx.VertxUtils;
+import vertx.acs.cache.AcsSharedCaches;
+import vertx.acs.nbi.AbstractAcNbiCrudService;
+import vertx.acs.nbi.AcsApiService;
+import vertx.acs.nbi.BuildInfo.BuildInfoService;
+import vertx.acs.nbi.diagnostics.QueryDiagnosticsService;
+import vertx.acs.nbi.configurationcategory.ConfigurationCategoryService;
+import vertx.acs.nbi.cwmplog.CwmpLogService;
+import vertx.acs.nbi.devicedata.DeviceDataService;
+import vertx.acs.nbi.deviceop.DeviceOpService;
+import vertx.acs.nbi.devicetype.DeviceTypeService;
+import vertx.acs.nbi.dialplan.DialPlanService;
+import vertx.acs.nbi.event.CpeEventStreamService;
+import vertx.acs.nbi.event.EventService;
+import vertx.acs.nbi.file.FileService;
+import vertx.acs.nbi.group.GroupService;
+import vertx.acs.nbi.maintenanceschedule.MaintenanceScheduleService;
+import vertx.acs.nbi.model.AcsNbiRequest;
+import vertx.acs.nbi.organization.OrganizationService;
+import vertx.acs.nbi.organization.PerOrgNbiAuthenticator;
+import vertx.acs.nbi.organization.PerOrgNbiAuthenticatorCache;
+import vertx.acs.nbi.profile.ConfigurationProfileService;
+import vertx.acs.nbi.serviceplan.ServicePlanService;
+import vertx.acs.nbi.subscriber.SubscriberService;
+import vertx.acs.nbi.workflow.WorkflowExecLogsService;
+import vertx.acs.nbi.workflow.WorkflowService;
+import vertx.util.AcsApiUtils;
+import vertx.util.AcsConfigProperties;
+import vertx.util.AcsConstants;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.apache.http.auth.AUTH;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Project:  SXA CC - ACS API
+ *
+ * ACS API (NBI) Vertice.
+ *
+ * Hosts all the ACS API services as well as the internal and external API HTTP servers. Multiple instances of this
+ * vertice can be deployed (one per event loop), in which case Vert.x distributes the HTTP connections on the shared
+ * ports and the event bus requests across the instances.
+ *
+ * Each instance has its own service objects, but all instances use the JVM-wide shared local caches
+ * (see AcsSharedCaches).
+ *
+ * @author: ronyang
+ */
+public class AcsApiVertice extends AbstractVerticle {
+    private static final Logger log = LoggerFactory.getLogger(AcsApiVertice.class.getName());
+
+    /**
+     * All Regular cwmp API Services
+     */
+    AcsApiService[] allCWMPApiServices = new AcsApiService[] {
+            new ConfigurationProfileService(),
+            new DeviceOpService(),
+            new DeviceTypeService(),
+            new DeviceDataService(),
+            new EventService(),
+            new FileService(),
+            new GroupService(),
+            new WorkflowService(),
+            new WorkflowExecLogsService(),
+            new CwmpLogService(),
+            new SubscriberService(),
+            new ServicePlanService(),
+            new DialPlanService(),
+            new MaintenanceScheduleService(),
+            new ConfigurationCategoryService(),
+            new BuildInfoService(),
+            new QueryDiagnosticsService(),
+            new CpeEventStreamService(),
+            new OrganizationService()
+    };
+
+    /**
+     * cwmp Service Map <URL Path String --> API Service>
+     */
+    Map<String, AcsApiService> serviceMap = new HashMap<> ();
+
+    /**
+     * Per-Org Authenticator
+     */
+    PerOrgNbiAuthenticatorCache perOrgNbiAuthenticatorCache;
+
+    MongoClient mongoClient;
+
+    /**
+     * Start the Vertice
+     */
+    public void start() {
+        mongoClient = MongoClient.createShared(vertx, VertxMongoUtils.getModMongoPersistorConfig());
+
+        /**
+         * Use the shared local cache of all organization for authentication
+         */
+        perOrgNbiAuthenticatorCache = AcsSharedCaches.getPerOrgNbiAuthenticatorCache();
+
+        RedisOptions redis_config = new RedisOptions()
+                .setHost(VertxConfigProperties.redisHost).setPort(VertxConfigProperties.redisPort).setSelect(VertxConfigProperties.redisDbIndex);
+        RedisClient redisClient = RedisClient.create(vertx,redis_config);
+
+        /**
+         * Initialize service map
+         *
+         * TODO: Add release version to the URL path.
+         */
+        for (AcsApiService service : allCWMPApiServices) {
+            log.debug("Installing " + service.getServiceName() + " service...");
+            // Setup HTTP URL path for this service
+            serviceMap.put(service.getServiceName(), service);
+            // Install event bus handler for this service
+            vertx.eventBus().consumer(
+                    AcsApiUtils.getServiceVertxAddress(service.getServiceName()),
+                    new VertxRequestHandler(service));
+            // Set the (shared) Cache Objects
+            service.setOrganizationCache(AcsSharedCaches.getOrganizationCache());
+            service.setPassiveWorkflowCache(AcsSharedCaches.getPassiveWorkflowCache());
+            service.setDialPlanCache(AcsSharedCaches.getDialPlanCache());
+            service.setConfigurationProfileCache(AcsSharedCaches.getConfigurationProfileCache());
+            service.setGroupCache(AcsSharedCaches.getGroupCache());
+            service.setCountCache(AcsSharedCaches.getCountCache());
+            service.setRedisClient(redisClient);
+            service.setMongoClient(mongoClient);
+            // Start this service
+            service.start(vertx);
+        }
+
+        /**
+         * Start the cwmp Internal API HTTP server
+         */
+        HttpServer CWMPApiServer = vertx.createHttpServer();
+        CWMPApiServer.requestHandler(internalApiHttpRequestHandler);
+        CWMPApiServer.listen(AcsConfigProperties.ACS_INTERNAL_API_PORT);
+
+        /**
+         * Start the External API HTTP server
+         */
+        HttpServer externalApiServer = vertx.createHttpServer();
+        externalApiServer.requestHandler(externalApiHttpRequestHandler);
+        externalApiServer.listen(AcsConfigProperties.ACS_EXTERNAL_API_PORT);
+    }
+
+    /**
+     * Stop this Vertice
+     */
+    public void stop() {
+        for (AcsApiService service : allCWMPApiServices) {
+            log.debug("Shutting down " + service.getServiceName() + " service...");
+            service.stop(vertx);
+        }
+    }
+
+    /**
+     * cwmp Internal API HTTP Request Handler
+     */
+    Handler<HttpServerRequest> internalApiHttpRequestHandler = new Handler<HttpServerRequest>() {
+        /**
+         * Handler Body
+         *
+         * @param request
+         */
+        @Override
+        public void handle(final HttpServerRequest request) {
+            /**
+             * Determine OrgId
+             *
+             * "orgId", if any, is carried via a query parameter
+             */
+            final String orgId = request.params().get("orgId");
+
+            // Call the common handler
+            commonHttpRequestHandler(request, true, AcsConfigProperties.ACS_INTERNAL_API_CONTEXT_ROOT, orgId);
+        }
+    };
+
+    /**
+     * External API HTTP Request Handler
+     */
+    Handler<HttpServerRequest> externalApiHttpRequestHandler = new Handler<HttpServerRequest>() {
+        /**
+         * Handler Body
+         *
+         * @param request
+         */
+        @Override
+        public void handle(final HttpServerRequest request) {
+            log.debug("Received a new request from Remote host: " + request.remoteAddress().host()
+                    + ", URL path: " + request.path());
+
+            /**
+             * Authenticate the request
+             */
+            String authString = request.headers().get(AUTH.WWW_AUTH_RESP);
+            if (authString == null) {
+                /**
+                 * TODO: Do we want to log this incident?
+                 */
+
+                log.error("Received an external request without " + AUTH.WWW_AUTH_RESP + " header! URL path: "
+                        + request.path() + ", remote host: " + request.remoteAddress().host());
+                request.response().putHeader("Content-Type", "text/html");
+                VertxUtils.setResponseStatus(request, HttpResponseStatus.UNAUTHORIZED);
+
+                if (request.path().equals("/") || request.path().equals("/api")) {
+                    request.response().end(
+                            "<h2>Welcome to the Calix Consumer Connect API Server!</h2>\n" +
+                            "\n" +
+                            "\n" +
+                            "<p>Every API request must carry a valid HTTP Basic Authorization Header.</p>\n" +
+                            "\n" +
+                            "<p>Please Consult with Calix Support Team to get the API Documents and Credentials.</p>\n"
+                    );
+                } else {
+                    request.response().end();
+                }
+                return;
+            }
+
+            PerOrgNbiAuthenticator authenticator =
+                    perOrgNbiAuthenticatorCache.getAuthenticatorByAuthString(authString);
+            if (authenticator == null) {
+                /**
+                 * TODO: Do we want to log this incident?
+                 */
+
+                log.error("Received an NBI request with invalid " + AUTH.WWW_AUTH_RESP + " header! URL path: "
+                        + request.path() + ", remote host: " + request.remoteAddress().host());
+                VertxUtils.setResponseStatus(request, HttpResponseStatus.UNAUTHORIZED);
+                request.response().end();
+                return;
+            }
+
+            // Get Org ID
+            String orgId = authenticator.id;
+
+            // Call the common handler
+            commonHttpRequestHandler(request, false, AcsConfigProperties.ACS_EXTERNAL_API_CONTEXT_ROOT, orgId);
+        }
+    };
+
+    /**
+     * Common HTTP Request Handler Method.
+     *
+     * @param request
+     * @param contextRoot
+     * @param orgId
+     */
+    public void commonHttpRequestHandler(
+            final HttpServerRequest request,
+            final boolean bIsInternalRequest,
+            String contextRoot,
+            final String orgId) {
+        /**
+         * Lookup service instance by URL path which must be in the format of
+         * "/[context root]/[service name]{/[]optional path parameters]}"
+         */
+        final String[] pathSegments = request.path().split("/");
+        if (pathSegments.length < 3 || !pathSegments[1].equals(contextRoot)) {
+            /**
+             * Invalid Request Path
+             */
+            if (request.path().equals("/favicon.ico")) {
+                //VertxUtils.serveHttpFileDownloadRequest(vertx, request, "favicon.ico");
+                request.response().end();
+            } else if (bIsInternalRequest && request.path().equals("/buildInfo")) {
+                VertxUtils.serveHttpFileDownloadRequest(vertx, request, "build-info.txt");
+            } else {
+                log.error("Invalid URL Path " + request.path() + "! HTTP Method: " + request.method());
+                if (pathSegments.length > 1) {
+                    log.error("Invalid context root " + pathSegments[1] + ", expecting " + contextRoot);
+                } else {
+                    log.error("Missing context root.");
+                }
+
+                VertxUtils.badHttpRequest(request, "Invalid URL path!");
+            }
+            return;
+        }
+
+        final AcsApiService service = serviceMap.get(pathSegments[2]);
+
+        if (service != null) {
+            /**
+             * A regular ACS API CRUD Service Request
+             * The process starts after the entire body has been received
+             */
+            request.bodyHandler(new Handler<Buffer>() {
+                @Override
+                public void handle(Buffer rawBodyBuffer) {
+                    JsonObject body = null;
+                    try {
+                        if (rawBodyBuffer != null && rawBodyBuffer.length() > 0) {
+                            body = new JsonObject(rawBodyBuffer.toString());
+                        } else {
+                            body = new JsonObject();
+                        }
+                    } catch (Exception ex) {
+                        VertxUtils.badHttpRequest(request, "Invalid JSON Payload!");
+                        return;
+                    }
+
+                    /**
+                     * Print Debug Log for all external requests
+                     */
+                    if (bIsInternalRequest == false) {
+                        if (body.size() > 0) {
+                            log.debug("Request body:\n" + body.encodePrettily());
+                        } else {
+                            log.debug("Request body is empty.");
+                        }
+                    }
+
+                    if (orgId != null) {
+                        body.put(AcsConstants.FIELD_NAME_ORG_ID, orgId);
+                    }
+
+                    // Create a new AcsNbiRequest POJO and Call the service's handler
+                    try {
+                        service.handle(new AcsNbiRequest(request, body, bIsInternalRequest), pathSegments);
+                    } catch (Exception ex) {
+                        String errorDetails = VertxUtils.getLocalIpAddress() + "~" + VertxUtils.getPid()
+                                + "~" + new Date().toString() + "~" + System.currentTimeMillis();
+                        VertxUtils.responseWithStatusCode(
+                                HttpResponseStatus.INTERNAL_SERVER_ERROR,
+                                request,
+                                AbstractAcNbiCrudService.INTERNAL_SERVER_ERROR_CONTACT_CALIX
+                                        + " (error detail: " + errorDetails
+                        );
+                        ex.printStackTrace();
+                    }
+                }
+            });
+        } else {
+            /**
+             * Invalid Request Path
+             */
+            log.error("No service found for " + pathSegments[2] + "! Invalid URL Path "
+                    + request.path() + "! HTTP Method: " + request.method());
+            VertxUtils.badHttpRequest(request, "Invalid URL path!");
+        }
+    }
+
+    /**
+     * Inner Class for Internal Vert.x Request Handler.
+     *
+     * Dedicated instance per service.
+     */
+    private class VertxRequestHandler implements Handler<Message<JsonObject>> {
+        AcsApiService service;
+
+        /**
+         * Constructor.
+         *
+         * @param service
+         */
+        public VertxRequestHandler(AcsApiService service) {
+            this.service = service;
+        }
+
+        @Override
+        public void handle(Message<JsonObject> message) {
+            // Call the service's handler
+            service.handle(new AcsNbiRequest(message, message.body()), null);
+        }
+    };
+}
\ No newline at end of file
@@ -0,0 +1,128 @@
+package vertx.acs.cache;
+
+import vertx.acs.nbi.organization.PerOrgNbiAuthenticatorCache;
+import vertx.cache.ConfigurationCategoryCache;
+import vertx.cache.ConfigurationProfileCache;
+import vertx.cache.DialPlanCache;
+import vertx.cache.GroupCache;
+import vertx.cache.OrganizationCache;
+import vertx.model.ConfigurationCategory;
+import vertx.model.ConfigurationProfile;
+import vertx.model.CpeGroup;
+import vertx.model.Organization;
+import vertx.model.Workflow;
+import vertx.util.AcsConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.vertx.core.Vertx;
+
+/**
+ * Project:  cwmp
+ *
+ * JVM-wide Local Caches shared by all the ACS API (NBI) vertice instances and the worker vertices.
+ *
+ * The caches are created once by the main vertice (so their refresh timers and CRUD event handlers run on the event
+ * loop of the main vertice), and are read by all the other vertices. See AbstractLocalCache for how the caches are
+ * updated without locking.
+ *
+ * @author: ronyang
+ */
+public class AcsSharedCaches {
+    private static final Logger log = LoggerFactory.getLogger(AcsSharedCaches.class.getName());
+
+    /**
+     * The Shared Caches
+     */
+    private static volatile OrganizationCache organizationCache = null;
+    private static volatile PerOrgNbiAuthenticatorCache perOrgNbiAuthenticatorCache = null;
+    private static volatile PassiveWorkflowCache passiveWorkflowCache = null;
+    private static volatile ConfigurationProfileCache configurationProfileCache = null;
+    private static volatile ConfigurationCategoryCache configurationCategoryCache = null;
+    private static volatile DialPlanCache dialPlanCache = null;
+    private static volatile GroupCache groupCache = null;
+    private static volatile CountCache countCache = null;
+
+    /**
+     * Create all the shared caches (if not created yet).
+     *
+     * Must be called by the main vertice before deploying any vertice that uses the shared caches.
+     *
+     * @param vertx
+     */
+    public static synchronized void init(Vertx vertx) {
+        if (organizationCache != null) {
+            return;
+        }
+
+        log.info("Creating shared local caches...");
+        perOrgNbiAuthenticatorCache = new PerOrgNbiAuthenticatorCache(vertx);
+        passiveWorkflowCache = new PassiveWorkflowCache(
+                vertx,
+                AcsConstants.VERTX_ADDRESS_WORKFLOW_CRUD,
+                Workflow.DB_COLLECTION_NAME,
+                "passive-workflow"
+        );
+        configurationProfileCache = new ConfigurationProfileCache(
+                vertx,
+                AcsConstants.VERTX_ADDRESS_ACS_CONFIG_PROFILE_CRUD,
+                ConfigurationProfile.DB_COLLECTION_NAME,
+                ConfigurationProfile.class.getSimpleName()
+        );
+        configurationCategoryCache = new ConfigurationCategoryCache(
+                vertx,
+                AcsConstants.VERTX_ADDRESS_ACS_CONFIG_CATEGORY_CRUD,
+                ConfigurationCategory.DB_COLLECTION_NAME,
+                ConfigurationCategory.class.getSimpleName()
+        );
+        dialPlanCache = new DialPlanCache(vertx);
+        groupCache = new GroupCache(
+                vertx,
+                AcsConstants.VERTX_ADDRESS_ACS_GROUP_CRUD,
+                CpeGroup.DB_COLLECTION_NAME,
+                CpeGroup.class.getSimpleName()
+        );
+        countCache = new CountCache(vertx);
+        // Created last as it also indicates the caches have been initialized
+        organizationCache = new OrganizationCache(
+                vertx,
+                AcsConstants.VERTX_ADDRESS_ACS_ORGANIZATION_CRUD,
+                Organization.DB_COLLECTION_NAME,
+                Organization.class.getSimpleName()
+        );
+    }
+
+    /**
+     * Getters
+     */
+    public static OrganizationCache getOrganizationCache() {
+        return organizationCache;
+    }
+
+    public static PerOrgNbiAuthenticatorCache getPerOrgNbiAuthenticatorCache() {
+        return perOrgNbiAuthenticatorCache;
+    }
+
+    public static PassiveWorkflowCache getPassiveWorkflowCache() {
+        return passiveWorkflowCache;
+    }
+
+    public static ConfigurationProfileCache getConfigurationProfileCache() {
+        return configurationProfileCache;
+    }
+
+    public static ConfigurationCategoryCache getConfigurationCategoryCache() {
+        return configurationCategoryCache;
+    }
+
+    public static DialPlanCache getDialPlanCache() {
+        return dialPlanCache;
+    }
+
+    public static GroupCache getGroupCache() {
+        return groupCache;
+    }
+
+    public static CountCache getCountCache() {
+        return countCache;
+    }
+}
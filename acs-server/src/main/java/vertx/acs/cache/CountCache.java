@@ -0,0 +1,428 @@
+package vertx.acs.cache;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
+import vertx.VertxException;
+import vertx.VertxMongoUtils;
+import vertx.model.Cpe;
+import vertx.model.CpeDeviceType;
+import vertx.util.AcsConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Project:  cwmp
+ *
+ * JVM-wide Cache of the NBI Count Query Results.
+ *
+ * The GUI keeps issuing the same count queries (for example the total # of devices of an org, or the # of devices
+ * within a group), which would otherwise each run a MongoDB count with the same matcher over and over again.
+ *
+ * - The results are cached by collection name + normalized matcher (which includes the orgId), but only the queries
+ *   with "approx=true" are answered from the cache (with results up to APPROX_TTL old). The exact counts (for example
+ *   the total # of devices of a new workflow, which decides whether the workflow is rejected) always go to MongoDB.
+ * - With "approx=true":
+ *   - the total # of documents of a whole collection (i.e. empty matcher) is estimated by the collection metadata;
+ *   - the # of devices of an org, optionally filtered by model name and/or software version, is answered from the
+ *     per-org facet counters, which are built by a single "$group" aggregation per org.
+ * - Deleting devices via the NBI or any CRUD event of the CPE groups invalidates the cached results of the org, which
+ *   include the results of the matchers with the orgId in an "$in"/"$eq" clause, and of the matchers whose orgIds
+ *   cannot be determined (for example with the orgId only inside "$or").
+ *
+ * @author: ronyang
+ */
+public class CountCache {
+    private static final Logger log = LoggerFactory.getLogger(CountCache.class.getName());
+
+    /**
+     * TTL (in ms) of the results used by the approx queries
+     */
+    public static final long APPROX_TTL = 300000;
+
+    /**
+     * Max # of cached results
+     */
+    public static final int MAX_NBR_OF_RESULTS = 10000;
+
+    /**
+     * The device fields with facet counters
+     */
+    public static final String[] FACET_FIELDS = {
+            CpeDeviceType.FIELD_NAME_MODEL_NAME,
+            CpeDeviceType.FIELD_NAME_SW_VER
+    };
+
+    /**
+     * Aggregation pipeline stage that groups the devices of an org by all the facet fields
+     */
+    public static final JsonObject FACET_GROUP_STAGE = new JsonObject().put(
+            "$group",
+            new JsonObject()
+                    .put(
+                            AcsConstants.FIELD_NAME_ID,
+                            new JsonObject()
+                                    .put(CpeDeviceType.FIELD_NAME_MODEL_NAME, "$" + CpeDeviceType.FIELD_NAME_MODEL_NAME)
+                                    .put(CpeDeviceType.FIELD_NAME_SW_VER, "$" + CpeDeviceType.FIELD_NAME_SW_VER)
+                    )
+                    .put(VertxMongoUtils.MOD_MONGO_FIELD_NAME_COUNT, new JsonObject().put("$sum", 1))
+    );
+
+    /**
+     * A Cached Result
+     */
+    public static class CachedCount {
+        // The orgIds of the matcher, or null if unknown (i.e. invalidated along with any org)
+        public final Set<String> orgIds;
+        public final long count;
+        public final long time;
+
+        public CachedCount(Set<String> orgIds, long count) {
+            this.orgIds = orgIds;
+            this.count = count;
+            this.time = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * The Facet Counters of an org.
+     *
+     * Each bucket is a "{_id: {modelName, softwareVersion}, count}" returned by the aggregation.
+     */
+    public static class OrgFacets {
+        public final List<JsonObject> buckets;
+        public final long time;
+
+        public OrgFacets(List<JsonObject> buckets) {
+            this.buckets = buckets;
+            this.time = System.currentTimeMillis();
+        }
+
+        /**
+         * Sum up the buckets that match the given facet values.
+         *
+         * @param facetValues   <field name --> value>, or empty for the org total
+         */
+        public long count(Map<String, String> facetValues) {
+            long count = 0;
+            for (JsonObject bucket : buckets) {
+                JsonObject id = bucket.getJsonObject(AcsConstants.FIELD_NAME_ID);
+                boolean bMatch = true;
+                for (Map.Entry<String, String> facetValue : facetValues.entrySet()) {
+                    if (!facetValue.getValue().equals(id.getString(facetValue.getKey()))) {
+                        bMatch = false;
+                        break;
+                    }
+                }
+                if (bMatch) {
+                    count += ((Number) bucket.getValue(VertxMongoUtils.MOD_MONGO_FIELD_NAME_COUNT)).longValue();
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Cached Results by key
+     */
+    final ConcurrentHashMap<String, CachedCount> results = new ConcurrentHashMap<>();
+
+    /**
+     * Facet Counters by orgId
+     */
+    final ConcurrentHashMap<String, OrgFacets> allOrgFacets = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param vertx
+     */
+    public CountCache(Vertx vertx) {
+        /**
+         * The cached group counts are stale once the group filter has changed
+         */
+        vertx.eventBus().consumer(
+                AcsConstants.VERTX_ADDRESS_ACS_GROUP_CRUD,
+                new Handler<Message<JsonObject>>() {
+                    @Override
+                    public void handle(Message<JsonObject> event) {
+                        invalidate(event.body().getString(AcsConstants.FIELD_NAME_ORG_ID));
+                    }
+                }
+        );
+    }
+
+    /**
+     * Count the documents that match the given matcher.
+     *
+     * The handler is called with null if failed.
+     *
+     * @param mongoClient
+     * @param collectionName
+     * @param matcher
+     * @param bApprox       Whether an estimated or older (up to APPROX_TTL) count is acceptable
+     * @param maxTimeMs     Time budget (in ms) of the count query (if not answered by the cache)
+     * @param handler
+     */
+    public void count(
+            MongoClient mongoClient,
+            String collectionName,
+            JsonObject matcher,
+            boolean bApprox,
+            long maxTimeMs,
+            final Handler<Long> handler) {
+        final String key = getKey(collectionName, matcher);
+        final Set<String> orgIds = getOrgIds(matcher);
+        final String orgId = orgIds != null && orgIds.size() == 1
+                && matcher.getValue(AcsConstants.FIELD_NAME_ORG_ID) instanceof String?
+                orgIds.iterator().next() : null;
+
+        /**
+         * Cached Result (only for the approx queries)
+         */
+        CachedCount cachedCount = bApprox? results.get(key) : null;
+        if (cachedCount != null && System.currentTimeMillis() - cachedCount.time < APPROX_TTL) {
+            handler.handle(cachedCount.count);
+            return;
+        }
+
+        /**
+         * Handler that caches the result before passing it on
+         */
+        Handler<Long> resultHandler = new Handler<Long>() {
+            @Override
+            public void handle(Long count) {
+                if (count != null) {
+                    put(key, new CachedCount(orgIds, count));
+                }
+                handler.handle(count);
+            }
+        };
+
+        try {
+            if (bApprox && matcher.size() == 0) {
+                /**
+                 * Whole Collection
+                 */
+                VertxMongoUtils.estimatedCount(mongoClient, collectionName, resultHandler);
+                return;
+            }
+
+            if (bApprox && orgId != null && Cpe.CPE_COLLECTION_NAME.equals(collectionName)) {
+                Map<String, String> facetValues = getFacetValues(matcher);
+                if (facetValues != null) {
+                    /**
+                     * Org Total or Facet
+                     */
+                    countByFacets(mongoClient, orgId, facetValues, resultHandler);
+                    return;
+                }
+            }
+
+            VertxMongoUtils.count(mongoClient, collectionName, matcher, resultHandler, maxTimeMs);
+        } catch (VertxException e) {
+            e.printStackTrace();
+            handler.handle(null);
+        }
+    }
+
+    /**
+     * Answer a count query from the facet counters of an org (which are rebuilt if older than APPROX_TTL).
+     *
+     * @param mongoClient
+     * @param orgId
+     * @param facetValues
+     * @param handler
+     */
+    public void countByFacets(
+            MongoClient mongoClient,
+            final String orgId,
+            final Map<String, String> facetValues,
+            final Handler<Long> handler) throws VertxException {
+        OrgFacets orgFacets = allOrgFacets.get(orgId);
+        if (orgFacets != null && System.currentTimeMillis() - orgFacets.time < APPROX_TTL) {
+            handler.handle(orgFacets.count(facetValues));
+            return;
+        }
+
+        VertxMongoUtils.aggregate(
+                mongoClient,
+                Cpe.CPE_COLLECTION_NAME,
+                new JsonArray()
+                        .add(new JsonObject().put("$match", new JsonObject().put(AcsConstants.FIELD_NAME_ORG_ID, orgId)))
+                        .add(FACET_GROUP_STAGE),
+                new Handler<JsonArray>() {
+                    @Override
+                    public void handle(JsonArray buckets) {
+                        if (buckets == null) {
+                            handler.handle(null);
+                            return;
+                        }
+
+                        List<JsonObject> bucketList = new ArrayList<>(buckets.size());
+                        for (int i = 0; i < buckets.size(); i ++) {
+                            bucketList.add(buckets.getJsonObject(i));
+                        }
+                        OrgFacets orgFacets = new OrgFacets(bucketList);
+                        allOrgFacets.put(orgId, orgFacets);
+                        log.debug("Built " + bucketList.size() + " facet bucket(s) for org " + orgId);
+
+                        handler.handle(orgFacets.count(facetValues));
+                    }
+                }
+        );
+    }
+
+    /**
+     * Invalidate all the cached results (and facet counters) of an org.
+     *
+     * @param orgId     The orgId, or null to invalidate everything
+     */
+    public void invalidate(String orgId) {
+        if (orgId == null) {
+            results.clear();
+            allOrgFacets.clear();
+            return;
+        }
+
+        allOrgFacets.remove(orgId);
+        for (Iterator<CachedCount> iterator = results.values().iterator(); iterator.hasNext(); ) {
+            Set<String> orgIds = iterator.next().orgIds;
+            if (orgIds == null || orgIds.contains(orgId)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the orgIds a matcher is restricted to, i.e. by a top-level "orgId" with a string value or a "$eq"/"$in"
+     * of string values.
+     *
+     * @param matcher
+     * @return  The orgIds, or null if they cannot be determined
+     */
+    public static Set<String> getOrgIds(JsonObject matcher) {
+        Object value = matcher.getValue(AcsConstants.FIELD_NAME_ORG_ID);
+        if (value instanceof String) {
+            return Collections.singleton((String) value);
+        }
+        if (!(value instanceof JsonObject) || ((JsonObject) value).size() != 1) {
+            return null;
+        }
+
+        JsonObject operator = (JsonObject) value;
+        if (operator.getValue(VertxMongoUtils.MOD_MONGO_QUERY_OPERATOR_EQUAL) instanceof String) {
+            return Collections.singleton(operator.getString(VertxMongoUtils.MOD_MONGO_QUERY_OPERATOR_EQUAL));
+        }
+        if (operator.getValue(VertxMongoUtils.MOD_MONGO_QUERY_OPERATOR_IN) instanceof JsonArray) {
+            Set<String> orgIds = new HashSet<>();
+            for (Object orgId : operator.getJsonArray(VertxMongoUtils.MOD_MONGO_QUERY_OPERATOR_IN)) {
+                if (!(orgId instanceof String)) {
+                    return null;
+                }
+                orgIds.add((String) orgId);
+            }
+            return orgIds;
+        }
+        return null;
+    }
+
+    /**
+     * Save a result, and prune the expired results if there are too many.
+     *
+     * @param key
+     * @param cachedCount
+     */
+    void put(String key, CachedCount cachedCount) {
+        if (results.size() >= MAX_NBR_OF_RESULTS) {
+            long now = System.currentTimeMillis();
+            for (Iterator<CachedCount> iterator = results.values().iterator(); iterator.hasNext(); ) {
+                if (now - iterator.next().time >= APPROX_TTL) {
+                    iterator.remove();
+                }
+            }
+            if (results.size() >= MAX_NBR_OF_RESULTS) {
+                log.info("Too many cached counts. Clearing all.");
+                results.clear();
+            }
+        }
+
+        results.put(key, cachedCount);
+    }
+
+    /**
+     * Get the facet values of a device matcher, i.e. if the matcher only contains "orgId" and exact string values of
+     * the facet fields.
+     *
+     * @param matcher
+     * @return  <field name --> value>, or null if the matcher cannot be answered by the facet counters.
+     */
+    public static Map<String, String> getFacetValues(JsonObject matcher) {
+        Map<String, String> facetValues = new TreeMap<>();
+        for (String field : matcher.fieldNames()) {
+            if (AcsConstants.FIELD_NAME_ORG_ID.equals(field)) {
+                continue;
+            }
+
+            boolean bFacetField = false;
+            for (String facetField : FACET_FIELDS) {
+                if (facetField.equals(field)) {
+                    bFacetField = true;
+                    break;
+                }
+            }
+            Object value = matcher.getValue(field);
+            if (!bFacetField || !(value instanceof String)) {
+                return null;
+            }
+            facetValues.put(field, (String) value);
+        }
+        return facetValues;
+    }
+
+    /**
+     * Build the cache key by collection name and the normalized matcher (i.e. with all the fields sorted, so that
+     * the same query always gets the same key regardless of the field order).
+     *
+     * @param collectionName
+     * @param matcher
+     */
+    public static String getKey(String collectionName, JsonObject matcher) {
+        return collectionName + ":" + normalize(matcher).toString();
+    }
+
+    /**
+     * Normalize a JSON value by sorting the fields of all the (nested) JSON Objects.
+     *
+     * @param value
+     */
+    static Object normalize(Object value) {
+        if (value instanceof JsonObject) {
+            JsonObject normalized = new JsonObject();
+            for (String field : new TreeMap<>(((JsonObject) value).getMap()).keySet()) {
+                normalized.put(field, normalize(((JsonObject) value).getValue(field)));
+            }
+            return normalized;
+        } else if (value instanceof JsonArray) {
+            JsonArray normalized = new JsonArray();
+            for (Object element : (JsonArray) value) {
+                normalized.add(normalize(element));
+            }
+            return normalized;
+        }
+        return value;
+    }
+}
@@ -10,6 +10,7 @@ import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 
 import java.util.Comparator;
+import java.util.Map;
 
 /**
  * Project:  cwmp
@@ -99,7 +100,7 @@ public class PassiveWorkflowCache extends AbstractMultiOrgLocalCache {
     }
 
     /**
-     * Convert raw JSON Objects before saving into rawJsonObjectHashMap.
+     * Convert raw JSON Objects before saving into the snapshot.
      *
      * Default to no action.
      *
@@ -116,14 +117,16 @@ public class PassiveWorkflowCache extends AbstractMultiOrgLocalCache {
 
     /**
      * Custom comparator that sorts by creation time
+     *
+     * @param rawJsonObjects
      */
     @Override
-    public Comparator getComparator(){
+    public Comparator getComparator(final Map<String, JsonObject> rawJsonObjects){
         return new Comparator() {
             @Override
             public int compare(Object o1, Object o2) {
-                JsonObject workflow1 = rawJsonObjectHashMap.get(o1);
-                JsonObject workflow2 = rawJsonObjectHashMap.get(o2);
+                JsonObject workflow1 = rawJsonObjects.get(o1);
+                JsonObject workflow2 = rawJsonObjects.get(o2);
 
                 JsonObject dateObject1 = workflow1 == null? null : workflow1.getJsonObject(AcsConstants.FIELD_NAME_CREATE_TIME);
                 JsonObject dateObject2 = workflow2 == null? null : workflow2.getJsonObject(AcsConstants.FIELD_NAME_CREATE_TIME);
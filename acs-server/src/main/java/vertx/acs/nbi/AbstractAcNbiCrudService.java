@@ -6,8 +6,11 @@ import vertx.VertxException;
 import vertx.VertxJsonUtils;
 import vertx.VertxMongoUtils;
 import vertx.VertxUtils;
+import vertx.acs.cache.CountCache;
 import vertx.acs.cache.PassiveWorkflowCache;
+import vertx.acs.nbi.model.AcsNbiPageToken;
 import vertx.acs.nbi.model.AcsNbiRequest;
+import vertx.cache.CacheChangeLog;
 import vertx.cache.ConfigurationProfileCache;
 import vertx.cache.DialPlanCache;
 import vertx.cache.GroupCache;
@@ -81,6 +84,11 @@ public abstract class AbstractAcNbiCrudService implements AcsApiService{
      */
     public GroupCache groupCache;
 
+    /**
+     * Count Query Result Cache
+     */
+    public CountCache countCache;
+
     /**
      * Redis Client
      */
@@ -95,6 +103,10 @@ public abstract class AbstractAcNbiCrudService implements AcsApiService{
     public static final String QUERY_KEYWORD_SKIP = "skip";
     public static final String QUERY_KEYWORD_LIMIT = "limit";
     public static final String QUERY_KEYWORD_BRIEF = "brief";
+    public static final String QUERY_KEYWORD_PAGE_TOKEN = "pageToken";
+    public static final String QUERY_KEYWORD_KEYSET = "keyset";
+    public static final String QUERY_KEYWORD_PRETTY = "pretty";
+    public static final String QUERY_KEYWORD_APPROX = "approx";
 
     /**
      * Special/Complex Query Fields that have to be carried within the request body
@@ -208,6 +220,16 @@ public abstract class AbstractAcNbiCrudService implements AcsApiService{
         this.groupCache = groupCache;
     }
 
+    /**
+     * Set Count Cache
+     *
+     * @param countCache
+     */
+    @Override
+    public void setCountCache(CountCache countCache) {
+        this.countCache = countCache;
+    }
+
     /**
      * Set Redis Client
      *
@@ -446,10 +468,18 @@ public abstract class AbstractAcNbiCrudService implements AcsApiService{
                     break;
 
                 case QUERY_KEYWORD_BRIEF:
+                case QUERY_KEYWORD_PRETTY:
+                case QUERY_KEYWORD_APPROX:
+                case QUERY_KEYWORD_KEYSET:
                     bSaveToBody = false;
                     type = VertxJsonUtils.JsonFieldType.Boolean;
                     break;
 
+                case QUERY_KEYWORD_PAGE_TOKEN:
+                    bSaveToBody = false;
+                    type = VertxJsonUtils.JsonFieldType.String;
+                    break;
+
                 default:
                     if (allowedQueryParams != null) {
                         type = allowedQueryParams.get(name);
@@ -755,13 +785,15 @@ public abstract class AbstractAcNbiCrudService implements AcsApiService{
     public void handleRetrieve(final AcsNbiRequest nbiRequest) {
         if (nbiRequest.urlPathParams != null && nbiRequest.urlPathParams[0].equals(QUERY_KEYWORD_COUNT)) {
             /**
-             * Send the count request
+             * Send the count request (which may be answered by the count cache)
              */
             try {
-                VertxMongoUtils.count(
+                countCache.count(
                         mongoClient,
                         getDbCollectionName(),
                         buildRetrieveMatcher(nbiRequest),
+                        nbiRequest.getQueryApprox(),
+                        nbiRequest.getQueryTimeBudget(),
                         new Handler<Long>() {
                             @Override
                             public void handle(Long count) {
@@ -785,6 +817,44 @@ public abstract class AbstractAcNbiCrudService implements AcsApiService{
             /**
              * Regular Retrieval
              */
+            boolean bChunkMode = bReturnRetrieveResultInChunkMode(nbiRequest);
+            JsonObject sort = getQuerySort(nbiRequest);
+            int skip = getQuerySkipCount(nbiRequest);
+            int limit = getQueryLimitCount(nbiRequest);
+            JsonObject keys = buildRetrieveQueryKeys(nbiRequest);
+            Handler findHandler = getMongoFindHandler(nbiRequest);
+            JsonObject seekMatcher = null;
+
+            /**
+             * Keyset Pagination
+             */
+            boolean bKeysetPaging = bChunkMode && isKeysetPaging(nbiRequest);
+            if (bKeysetPaging) {
+                JsonObject seekSort = AcsNbiPageToken.getSeekSort(sort);
+                // The records without the sort fields cannot be seeked past, thus are excluded from all pages
+                seekMatcher = AcsNbiPageToken.buildSortFieldsMatcher(seekSort);
+                String pageToken = nbiRequest.getQueryPageToken();
+                if (pageToken != null) {
+                    try {
+                        seekMatcher = AcsNbiPageToken.addSeekMatcher(
+                                seekMatcher,
+                                AcsNbiPageToken.buildSeekMatcher(
+                                        seekSort,
+                                        AcsNbiPageToken.decode(pageToken, seekSort)
+                                )
+                        );
+                    } catch (VertxException ex) {
+                        nbiRequest.sendResponse(HttpResponseStatus.BAD_REQUEST, INVALID_URL_PATH_OR_QUERY_PARAMETERS);
+                        return;
+                    }
+                    // The token replaces "skip"
+                    skip = 0;
+                }
+
+                sort = seekSort;
+                keys = AcsNbiPageToken.addSortFieldsToKeys(keys, seekSort);
+                findHandler = new PageTokenHandler(nbiRequest, seekSort, limit, findHandler);
+            }
 
             /**
              * Set HTTP Headers (Chunk Mode and Content Type)
@@ -792,7 +862,10 @@ public abstract class AbstractAcNbiCrudService implements AcsApiService{
             if (nbiRequest.httpServerRequest != null) {
                 nbiRequest.httpServerRequest.response().putHeader("Content-Type", "application/json");
                 VertxUtils.setResponseStatus(nbiRequest.httpServerRequest, HttpResponseStatus.OK);
-                if (bReturnRetrieveResultInChunkMode(nbiRequest)) {
+                if (bKeysetPaging) {
+                    // Start the chunked response when the token of the next page is known
+                    nbiRequest.bChunkStartPending = true;
+                } else if (bChunkMode) {
                     nbiRequest.httpServerRequest.response().setChunked(true);
                     nbiRequest.httpServerRequest.response().write("[");
                 }
@@ -802,17 +875,40 @@ public abstract class AbstractAcNbiCrudService implements AcsApiService{
              * Send the query
              */
             try {
-                VertxMongoUtils.find(
-                        mongoClient,
-                        getDbCollectionName(),
-                        buildRetrieveMatcher(nbiRequest),
-                        getQuerySort(nbiRequest),
-                        getQuerySkipCount(nbiRequest),
-                        getQueryLimitCount(nbiRequest),
-                        getMongoFindHandler(nbiRequest),
-                        buildRetrieveQueryKeys(nbiRequest),
-                        null
-                );
+                JsonObject matcher = buildRetrieveMatcher(nbiRequest);
+                if (seekMatcher != null && seekMatcher.size() > 0) {
+                    matcher = AcsNbiPageToken.addSeekMatcher(matcher, seekMatcher);
+                }
+
+                if (bChunkMode && !bKeysetPaging) {
+                    // Streamed exports may legitimately run longer than the request time budget
+                    VertxMongoUtils.find(
+                            mongoClient,
+                            getDbCollectionName(),
+                            matcher,
+                            sort,
+                            skip,
+                            limit,
+                            findHandler,
+                            keys,
+                            null,
+                            false
+                    );
+                } else {
+                    VertxMongoUtils.find(
+                            mongoClient,
+                            getDbCollectionName(),
+                            matcher,
+                            sort,
+                            skip,
+                            limit,
+                            findHandler,
+                            keys,
+                            null,
+                            false,
+                            nbiRequest.getQueryTimeBudget()
+                    );
+                }
             } catch (VertxException e) {
                 e.printStackTrace();
                 nbiRequest.sendResponseChunk(HttpResponseStatus.OK, null, false);
@@ -1087,6 +1183,62 @@ public abstract class AbstractAcNbiCrudService implements AcsApiService{
         return null;
     }
 
+    /**
+     * For bulk query, should the results be paged with keyset pagination tokens instead of "skip"?
+     *
+     * Only if the client passed a page token, or has opted in with "keyset=true" for the first page (so the response
+     * carries the token of the 2nd page). All the other clients keep the old behavior.
+     *
+     * @param nbiRequest
+     */
+    public boolean isKeysetPaging(AcsNbiRequest nbiRequest) {
+        return nbiRequest.getQueryPageToken() != null || nbiRequest.getQueryKeyset();
+    }
+
+    /**
+     * Page Token Handler.
+     *
+     * Wraps the actual find handler and builds the token of the next page from the last (raw) record, if the current
+     * page is full.
+     */
+    public class PageTokenHandler implements Handler<List<JsonObject>>{
+        AcsNbiRequest nbiRequest;
+        JsonObject seekSort;
+        int limit;
+        Handler findHandler;
+
+        /**
+         * Constructor.
+         *
+         * @param nbiRequest
+         * @param seekSort
+         * @param limit
+         * @param findHandler
+         */
+        public PageTokenHandler(AcsNbiRequest nbiRequest, JsonObject seekSort, int limit, Handler findHandler) {
+            this.nbiRequest = nbiRequest;
+            this.seekSort = seekSort;
+            this.limit = limit;
+            this.findHandler = findHandler;
+        }
+
+        /**
+         * The handler method body.
+         * @param mongo_query_results
+         */
+        @Override
+        public void handle(List<JsonObject> mongo_query_results) {
+            if (mongo_query_results != null && limit > 0 && mongo_query_results.size() >= limit) {
+                nbiRequest.nextPageToken = AcsNbiPageToken.encode(
+                        seekSort,
+                        mongo_query_results.get(mongo_query_results.size() - 1)
+                );
+            }
+
+            findHandler.handle(mongo_query_results);
+        }
+    }
+
     /**
      * Get a VertxMongoUtils.FindHandler instance for a retrieve request.
      *
@@ -1154,7 +1306,10 @@ public abstract class AbstractAcNbiCrudService implements AcsApiService{
     public JsonArray postRetrieve(AcsNbiRequest nbiRequest, JsonArray queryResults, boolean moreExists) {
         if (queryResults != null &&
                 queryResults.size() > 0) {
-            JsonArray newResults = new JsonArray();
+            /**
+             * Convert the records in place (instead of copying them into a new array)
+             */
+            List records = queryResults.getList();
             for (int i=0; i < queryResults.size(); i ++) {
                 JsonObject aRecord = queryResults.getJsonObject(i);
 
@@ -1174,11 +1329,13 @@ public abstract class AbstractAcNbiCrudService implements AcsApiService{
                 }
 
                 // perform additional custom actions
-                newResults.add(additionalPostRetrievePerRecordHandler(nbiRequest, aRecord));
+                JsonObject newRecord = additionalPostRetrievePerRecordHandler(nbiRequest, aRecord);
+                if (newRecord != aRecord) {
+                    records.set(i, newRecord);
+                }
             }
 
-            // update the query results with converted results
-            return newResults;
+            return queryResults;
         } else if (queryResults == null) {
             return EMPTY_JSON_ARRAY;
         } else {
@@ -1842,6 +1999,9 @@ public abstract class AbstractAcNbiCrudService implements AcsApiService{
     public void publishCrudEvent(AcsNbiRequest nbiRequest, AcsApiCrudTypeEnum crudType) {
         String address = getPublishCrudEventsAddress();
         if (address != null) {
+            // Let the caches that missed the event pick up the change with their next delta refresh
+            recordCacheChange(nbiRequest);
+
             // Build a new Event with CRUD Type
             nbiRequest.body.put(AcsConstants.FIELD_NAME_ACS_CRUD_TYPE, crudType.name());
 
@@ -1850,6 +2010,21 @@ public abstract class AbstractAcNbiCrudService implements AcsApiService{
         }
     }
 
+    /**
+     * Record the change of the document in the cache change log.
+     *
+     * @param nbiRequest
+     */
+    public void recordCacheChange(AcsNbiRequest nbiRequest) {
+        Object id = nbiRequest.body.getValue(AcsConstants.FIELD_NAME_ID);
+        CacheChangeLog.record(
+                mongoClient,
+                getDbCollectionName(),
+                // Bulk delete
+                id instanceof String? (String) id : CacheChangeLog.ALL_DOCS
+        );
+    }
+
     /**
      * Whether Cross Reference Check(s) is needed on Update.
      *
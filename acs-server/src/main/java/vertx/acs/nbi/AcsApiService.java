@@ -2,6 +2,7 @@ package vertx.acs.nbi;
 
 import io.vertx.ext.mongo.MongoClient;
 import io.vertx.redis.RedisClient;
+import vertx.acs.cache.CountCache;
 import vertx.acs.cache.PassiveWorkflowCache;
 import vertx.acs.nbi.model.AcsNbiRequest;
 import vertx.cache.ConfigurationProfileCache;
@@ -71,6 +72,11 @@ public interface AcsApiService {
      */
     public void setGroupCache(GroupCache groupCache);
 
+    /**
+     * Set Count Cache
+     */
+    public void setCountCache(CountCache countCache);
+
     /**
      * Set Redis Client
      */
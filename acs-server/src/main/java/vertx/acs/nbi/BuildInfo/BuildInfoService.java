@@ -4,6 +4,7 @@ import io.vertx.core.Handler;
 import io.vertx.ext.mongo.MongoClient;
 import io.vertx.redis.RedisClient;
 import vertx.VertxUtils;
+import vertx.acs.cache.CountCache;
 import vertx.acs.cache.PassiveWorkflowCache;
 import vertx.acs.nbi.AcsApiService;
 import vertx.acs.nbi.model.AcsNbiRequest;
@@ -124,6 +125,16 @@ public class BuildInfoService implements AcsApiService{
 
     }
 
+    /**
+     * Set Count Cache
+     *
+     * @param countCache
+     */
+    @Override
+    public void setCountCache(CountCache countCache) {
+
+    }
+
     /**
      * Set Redis Client
      *
@@ -10,6 +10,7 @@ import vertx.connreq.ConnectionRequestUtils;
 import vertx.cwmp.CwmpMessage;
 import vertx.model.*;
 import vertx.util.AcsConstants;
+import vertx.util.CpePresenceUtils;
 import vertx.util.sxajboss.SxaJBossApiUtils;
 import vertx.util.sxajboss.SxaStagerApiUtils;
 import io.netty.handler.codec.http.HttpResponseStatus;
@@ -37,13 +38,22 @@ public class DeviceDataService extends AbstractAcNbiCrudService{
      */
     public static final String QUERY_UNLINKED = "unlinked";
 
+    /**
+     * Presence Query Syntax, i.e. "/cc/device/presence?window=<seconds>&stale=<true|false>"
+     */
+    public static final String QUERY_KEYWORD_PRESENCE = "presence";
+    public static final String QUERY_PRESENCE_WINDOW = "window";
+    public static final String QUERY_PRESENCE_STALE = "stale";
+
     /**
      * Allowed Query Parameter Name/Type Pairs
      */
     private static final HashMap<String, VertxJsonUtils.JsonFieldType> QUERY_PARAMETER_NAME_TYPE_PAIRS =
             new VertxJsonUtils.JsonFieldValidator()
                     .append(Cpe.DB_FIELD_NAME_SN, VertxJsonUtils.JsonFieldType.String)
-                    .append(QUERY_UNLINKED, VertxJsonUtils.JsonFieldType.Boolean);
+                    .append(QUERY_UNLINKED, VertxJsonUtils.JsonFieldType.Boolean)
+                    .append(QUERY_PRESENCE_WINDOW, VertxJsonUtils.JsonFieldType.Integer)
+                    .append(QUERY_PRESENCE_STALE, VertxJsonUtils.JsonFieldType.Boolean);
 
     /**
      * Inner class that keeps tracks of all interim data needed when processing an API request
@@ -113,6 +123,14 @@ public class DeviceDataService extends AbstractAcNbiCrudService{
                     .append(QUERY_UNLINKED, VertxJsonUtils.JsonFieldType.Boolean)
                     .append(AcsConstants.FIELD_NAME_ID, VertxJsonUtils.JsonFieldType.String);
 
+    public static final VertxJsonUtils.JsonFieldValidator RETRIEVE_PRESENCE_MANDATORY_FIELDS =
+            new VertxJsonUtils.JsonFieldValidator()
+                    .append(AcsConstants.FIELD_NAME_ORG_ID, VertxJsonUtils.JsonFieldType.String);
+    public static final VertxJsonUtils.JsonFieldValidator RETRIEVE_PRESENCE_OPTIONAL_FIELDS =
+            new VertxJsonUtils.JsonFieldValidator()
+                    .append(QUERY_PRESENCE_WINDOW, VertxJsonUtils.JsonFieldType.Integer)
+                    .append(QUERY_PRESENCE_STALE, VertxJsonUtils.JsonFieldType.Boolean);
+
     public static final VertxJsonUtils.JsonFieldValidator RETRIEVE_MANDATORY_FIELDS_INTERNAL = null;
     public static final VertxJsonUtils.JsonFieldValidator RETRIEVE_OPTIONAL_FIELDS_INTERNAL =
             RETRIEVE_OPTIONAL_FIELDS_EXTERNAL.copy()
@@ -125,6 +143,11 @@ public class DeviceDataService extends AbstractAcNbiCrudService{
             new JsonObject().put(AcsConstants.FIELD_NAME_ERROR, "Device Id is required for deletes");
     private static final JsonObject INVALID_CPE_ID =
             new JsonObject().put(AcsConstants.FIELD_NAME_ERROR, "Invalid Device Id!");
+    private static final JsonObject INVALID_PRESENCE_WINDOW =
+            new JsonObject().put(AcsConstants.FIELD_NAME_ERROR, "Presence window must be a positive integer!");
+    private static final JsonObject FAILED_TO_READ_PRESENCE_INDEX =
+            new JsonObject().put(AcsConstants.FIELD_NAME_ERROR,
+                    "Internal Server Error! (failed to read the presence index)");
     public static final JsonObject FAILED_TO_UPDATE_SEARCH_ENGINE =
             new JsonObject().put(AcsConstants.FIELD_NAME_ERROR,
                     "Internal Server Error! (failed to update the search engine)");
@@ -150,6 +173,20 @@ public class DeviceDataService extends AbstractAcNbiCrudService{
          * Initialize the HTTP Client for SXA JBoss API Utils
          */
         SxaJBossApiUtils.initHttpClient(vertx);
+
+        /**
+         * Seed the CPE presence index from MongoDB, and reconcile it periodically
+         */
+        CpePresenceUtils.reconcile(mongoClient, redisClient);
+        vertx.setPeriodic(
+                CpePresenceUtils.RECONCILE_INTERVAL,
+                new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        CpePresenceUtils.reconcile(mongoClient, redisClient);
+                    }
+                }
+        );
     }
 
     /**
@@ -230,6 +267,15 @@ public class DeviceDataService extends AbstractAcNbiCrudService{
                 break;
 
             case Retrieve:
+                if (isQueryPresence(nbiRequest)) {
+                    VertxJsonUtils.validateFields(
+                            nbiRequest.body,
+                            RETRIEVE_PRESENCE_MANDATORY_FIELDS,
+                            RETRIEVE_PRESENCE_OPTIONAL_FIELDS
+                    );
+                    break;
+                }
+
                 if (nbiRequest.bInternalRequest) {
                     VertxJsonUtils.validateFields(
                             nbiRequest.body,
@@ -264,6 +310,37 @@ public class DeviceDataService extends AbstractAcNbiCrudService{
         return true;
     }
 
+    /**
+     * Process HTTP URL Path parameters.
+     *
+     * The "presence" keyword is only allowed for retrievals.
+     *
+     * @param pathParams
+     * @param nbiRequest
+     */
+    @Override
+    public void processPathParameters(AcsNbiRequest nbiRequest, AcsApiCrudTypeEnum crudType, String[] pathParams)
+            throws VertxException {
+        if (pathParams.length > 3 && pathParams[3].equals(QUERY_KEYWORD_PRESENCE)) {
+            if (!crudType.equals(AcsApiCrudTypeEnum.Retrieve)) {
+                throw INVALID_URL_PATH_OR_QUERY_PARAMETERS_EXCEPTION;
+            }
+            nbiRequest.urlPathParams = new String[] {QUERY_KEYWORD_PRESENCE};
+        } else {
+            super.processPathParameters(nbiRequest, crudType, pathParams);
+        }
+    }
+
+    /**
+     * Is querying the presence index (i.e. online/offline counts or stale devices)?
+     *
+     * @param nbiRequest
+     * @return
+     */
+    public boolean isQueryPresence(AcsNbiRequest nbiRequest) {
+        return nbiRequest.urlPathParams != null && nbiRequest.urlPathParams[0].equals(QUERY_KEYWORD_PRESENCE);
+    }
+
     /**
      * Get all the supported query parameter name/type pairs.
      *
@@ -521,7 +598,9 @@ public class DeviceDataService extends AbstractAcNbiCrudService{
      */
     @Override
     public void handleRetrieve(final AcsNbiRequest nbiRequest) {
-        if (isQueryUnlinked(nbiRequest)) {
+        if (isQueryPresence(nbiRequest)) {
+            handlePresenceQuery(nbiRequest);
+        } else if (isQueryUnlinked(nbiRequest)) {
             RequestTracker reqTracker = nbiRequest.getServiceData();
             if (nbiRequest.urlPathParams != null && nbiRequest.urlPathParams[0].equals(QUERY_KEYWORD_COUNT)) {
                 reqTracker.bQueryCount = true;
@@ -561,6 +640,74 @@ public class DeviceDataService extends AbstractAcNbiCrudService{
         }
     }
 
+    /**
+     * Answer a presence query from the per-org presence index maintained by the CPE servers in Redis.
+     *
+     * By default the online/offline counts are returned. If "stale=true", the stale devices (i.e. the devices that
+     * have not informed within the window) are returned instead, with the longest-silent devices first.
+     *
+     * @param nbiRequest
+     */
+    public void handlePresenceQuery(final AcsNbiRequest nbiRequest) {
+        String orgId = nbiRequest.body.getString(AcsConstants.FIELD_NAME_ORG_ID);
+        int window = nbiRequest.body.getInteger(QUERY_PRESENCE_WINDOW, CpePresenceUtils.DEFAULT_PRESENCE_WINDOW);
+        if (window <= 0) {
+            nbiRequest.sendResponse(HttpResponseStatus.BAD_REQUEST, INVALID_PRESENCE_WINDOW);
+            return;
+        }
+
+        if (nbiRequest.body.getBoolean(QUERY_PRESENCE_STALE, false)) {
+            int limit = getQueryLimitCount(nbiRequest);
+            CpePresenceUtils.getStaleCpes(
+                    redisClient,
+                    orgId,
+                    window,
+                    getQuerySkipCount(nbiRequest),
+                    limit > 0 ? limit : -1,
+                    new Handler<JsonArray>() {
+                        @Override
+                        public void handle(JsonArray staleCpes) {
+                            if (staleCpes == null) {
+                                nbiRequest.sendResponse(
+                                        HttpResponseStatus.INTERNAL_SERVER_ERROR,
+                                        FAILED_TO_READ_PRESENCE_INDEX
+                                );
+                            } else {
+                                if (nbiRequest.httpServerRequest != null) {
+                                    nbiRequest.httpServerRequest.response()
+                                            .putHeader("Content-Type", "application/json");
+                                }
+                                nbiRequest.sendResponse(HttpResponseStatus.OK, staleCpes.encode());
+                            }
+                        }
+                    }
+            );
+        } else {
+            CpePresenceUtils.getCounts(
+                    redisClient,
+                    orgId,
+                    window,
+                    new Handler<JsonObject>() {
+                        @Override
+                        public void handle(JsonObject counts) {
+                            if (counts == null) {
+                                nbiRequest.sendResponse(
+                                        HttpResponseStatus.INTERNAL_SERVER_ERROR,
+                                        FAILED_TO_READ_PRESENCE_INDEX
+                                );
+                            } else {
+                                if (nbiRequest.httpServerRequest != null) {
+                                    nbiRequest.httpServerRequest.response()
+                                            .putHeader("Content-Type", "application/json");
+                                }
+                                nbiRequest.sendResponse(HttpResponseStatus.OK, counts);
+                            }
+                        }
+                    }
+            );
+        }
+    }
+
     /**
      * Retrieve Unlinked Devices Result Handler
      */
@@ -1004,9 +1151,18 @@ public class DeviceDataService extends AbstractAcNbiCrudService{
      * - events
      * - backup files
      *
+     * and remove it from the presence index and the cached counts.
+     *
      * @param cpe
      */
     public void cleanupRelatedCollections(JsonObject cpe) {
+        CpePresenceUtils.remove(
+                redisClient,
+                cpe.getString(AcsConstants.FIELD_NAME_ORG_ID),
+                cpe.getString(AcsConstants.FIELD_NAME_ID)
+        );
+        countCache.invalidate(cpe.getString(AcsConstants.FIELD_NAME_ORG_ID));
+
         try {
             /**
              * 1. Delete all CWMP Messages for this device
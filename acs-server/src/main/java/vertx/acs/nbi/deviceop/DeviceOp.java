@@ -58,6 +58,7 @@ public class DeviceOp extends CpeDeviceOp{
 
     public static final VertxJsonUtils.JsonFieldValidator optionalFields =
             new VertxJsonUtils.JsonFieldValidator(FIELD_NAME_GET_OPTIONS, VertxJsonUtils.JsonFieldType.JsonObject)
+                    .append(FIELD_NAME_MAX_AGE, VertxJsonUtils.JsonFieldType.Integer)
                     .append(FIELD_NAME_OBJECT_NAME, VertxJsonUtils.JsonFieldType.String)
                     .append(FIELD_NAME_PARAM_NAMES, VertxJsonUtils.JsonFieldType.JsonArray)
                     .append(FIELD_NAME_PARAM_ATTRIBUTES, VertxJsonUtils.JsonFieldType.JsonObject)
@@ -65,6 +66,7 @@ public class DeviceOp extends CpeDeviceOp{
                     .append(FIELD_NAME_SERVICES, VertxJsonUtils.JsonFieldType.JsonArray)
                     .append(FIELD_NAME_DYNAMIC_OBJECTS, VertxJsonUtils.JsonFieldType.JsonArray)
                     .append(FIELD_NAME_SERVICE_PLAN, VertxJsonUtils.JsonFieldType.JsonObject)
+                    .append(FIELD_NAME_PROFILE_ID, VertxJsonUtils.JsonFieldType.String)
                     .append(FIELD_NAME_CALLBACK_URL, VertxJsonUtils.JsonFieldType.String)
                     .append(FIELD_NAME_CORRELATION_ID, VertxJsonUtils.JsonFieldType.String)
                     .append(FIELD_NAME_DIAG_TYPE, VertxJsonUtils.JsonFieldType.String)
@@ -100,7 +102,10 @@ public class DeviceOp extends CpeDeviceOp{
             .put(Cpe.DB_FIELD_NAME_CONNREQ_URL, 1)
             .put(Cpe.DB_FIELD_NAME_CONNREQ_USERNAME, 1)
             .put(Cpe.DB_FIELD_NAME_CONNREQ_PASSWORD, 1)
-            .put(Cpe.DB_FIELD_NAME_SN, 1);
+            .put(Cpe.DB_FIELD_NAME_UDP_CONNREQ_ADDRESS, 1)
+            .put(Cpe.DB_FIELD_NAME_SN, 1)
+            .put(Cpe.DB_FIELD_NAME_PERIODIC_INFORM_INTERVAL, 1)
+            .put(Cpe.DB_FIELD_NAME_PERIODIC_INFORM_ENABLE, 1);
 
     private static final JsonObject DEFAULT_QUERY_KEYS_LIVE = new JsonObject()
             .put("_id", 1)
@@ -108,9 +113,11 @@ public class DeviceOp extends CpeDeviceOp{
             .put(Cpe.DB_FIELD_NAME_CONNREQ_URL, 1)
             .put(Cpe.DB_FIELD_NAME_CONNREQ_USERNAME, 1)
             .put(Cpe.DB_FIELD_NAME_CONNREQ_PASSWORD, 1)
+            .put(Cpe.DB_FIELD_NAME_UDP_CONNREQ_ADDRESS, 1)
             .put(Cpe.DB_FIELD_NAME_SN, 1)
             .put(Cpe.DB_FIELD_NAME_LAST_INFORM_TIME, 1)
-            .put(Cpe.DB_FIELD_NAME_PERIODIC_INFORM_INTERVAL, 1);
+            .put(Cpe.DB_FIELD_NAME_PERIODIC_INFORM_INTERVAL, 1)
+            .put(Cpe.DB_FIELD_NAME_PERIODIC_INFORM_ENABLE, 1);
 
     /**
      * Non-Static Variables 
@@ -132,8 +139,12 @@ public class DeviceOp extends CpeDeviceOp{
     public JsonObject queryKeys = DEFAULT_QUERY_KEYS_LIVE;
     public Long callbackTimer = null;
     public JsonObject cachedData = null;
+    // Fresh values from the parameter value cache (to be merged into the result read from the device)
+    public JsonObject cachedParamValues = null;
     public boolean bResponseSent = false;
     public String redisString = null;
+    // Send the conn-req via UDP (if the device has a UDPConnectionRequestAddress) as it is unreachable via HTTP
+    public boolean bPreferUdp = false;
 
     public MongoClient mongoClient;
 
@@ -9,8 +9,11 @@ import vertx.acs.nbi.AbstractAcNbiCrudService;
 import vertx.acs.nbi.model.AcsNbiRequest;
 import vertx.connreq.ConnectionRequestConstants;
 import vertx.connreq.ConnectionRequestFsm;
+import vertx.connreq.ConnectionRequestReachability;
+import vertx.connreq.ConnectionRequestUtils;
 import vertx.model.*;
 import vertx.util.AcsConstants;
+import vertx.util.CpeParamValueCacheUtils;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
@@ -22,6 +25,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Project:  cwmp ACS API
@@ -32,12 +36,18 @@ import java.util.Map;
  */
 public class DeviceOpService extends AbstractAcNbiCrudService {
     /**
-     * Event Bus Address for internal callbacks (used by "synchronous" device ops)
+     * Index of the next service instance within this JVM (one instance per ACS API vertice)
      */
-    private final String internalCallbackAddress =
-            VertxUtils.getPublicVertxEventBusAddress(AcsConstants.VERTX_ADDRESS_ACS_API_CALLBACK + "." + getServiceName());
-    private final String internalCallbackUrl =
-            VertxUtils.getVertxEventBusUrl(AcsConstants.VERTX_ADDRESS_ACS_API_CALLBACK + "." + getServiceName());
+    private static final AtomicInteger NEXT_INSTANCE_INDEX = new AtomicInteger(0);
+
+    /**
+     * Event Bus Address for internal callbacks (used by "synchronous" device ops).
+     *
+     * The SNs and the pending NBI requests are only known by this instance, so the address is unique per instance
+     * (see start()).
+     */
+    private String internalCallbackAddress;
+    private String internalCallbackUrl;
 
 
     // Async Redis Client Instance
@@ -62,6 +72,14 @@ public class DeviceOpService extends AbstractAcNbiCrudService {
     public void start(Vertx vertx) {
         super.start(vertx);
 
+        /**
+         * Build the internal callback address of this instance
+         */
+        String callbackAddress = AcsConstants.VERTX_ADDRESS_ACS_API_CALLBACK + "." + getServiceName()
+                + "." + NEXT_INSTANCE_INDEX.getAndIncrement();
+        internalCallbackAddress = VertxUtils.getPublicVertxEventBusAddress(callbackAddress);
+        internalCallbackUrl = VertxUtils.getVertxEventBusUrl(callbackAddress);
+
         /**
          * Register API Callback Handler
          */
@@ -221,7 +239,9 @@ public class DeviceOpService extends AbstractAcNbiCrudService {
                             }
                         },
                         // Keys
-                        deviceOp.queryKeys
+                        deviceOp.queryKeys,
+                        // No point querying longer than the device op itself is allowed to take
+                        deviceOp.timeout * 1000
                 );
             } catch (Exception ex) {
                 deviceOp.sendResponse(
@@ -284,30 +304,223 @@ public class DeviceOpService extends AbstractAcNbiCrudService {
             }
 
             /**
-             * Send Conn-Req Request
+             * For synchronous "GetParameterValues" with "maxAgeSeconds":
+             *
+             * Answer the values that are fresh enough from the parameter value cache, and only read the stale ones
+             * from the device.
              */
-            sendConnReq(cpeJsonObject, deviceOp);
-
-            // Start internal callback timer
-            if (deviceOp.deviceOpJsonObject.containsKey(CpeDeviceOp.FIELD_NAME_INTERNAL_SN)) {
-                // Start timer
-                deviceOp.setCallbackTimer(
-                        vertx.setTimer(
-                                // add additional timeout to allow inter process communication time
-                                (deviceOp.timeout + 3) * 1000,
-                                new Handler<Long>() {
+            Integer maxAge = deviceOp.deviceOpJsonObject.getInteger(CpeDeviceOp.FIELD_NAME_MAX_AGE);
+            if (deviceOp.operationType == CpeDeviceOpTypeEnum.GetParameterValues
+                    && maxAge != null && maxAge > 0
+                    && deviceOp.deviceOpJsonObject.containsKey(CpeDeviceOp.FIELD_NAME_INTERNAL_SN)) {
+                CpeParamValueCacheUtils.lookup(
+                        redisClient,
+                        deviceOp.cpeIdString,
+                        deviceOp.deviceOpJsonObject.getJsonArray(CpeDeviceOp.FIELD_NAME_PARAM_NAMES),
+                        System.currentTimeMillis() - maxAge * 1000L,
+                        new Handler<CpeParamValueCacheUtils.LookupResult>() {
+                            @Override
+                            public void handle(CpeParamValueCacheUtils.LookupResult lookupResult) {
+                                if (lookupResult.staleParamNames.size() == 0) {
+                                    // All fresh
+                                    mapDeviceOpToNbiRequest.remove(deviceOp.internalSn);
+                                    deviceOp.sendResponse(
+                                            HttpResponseStatus.OK,
+                                            DeviceOp.CPE_DEVICE_OP_STATE_SUCCEEDED,
+                                            null,
+                                            lookupResult.freshValues);
+                                    return;
+                                }
+
+                                if (lookupResult.freshValues.size() > 0) {
+                                    // Only read the stale ones
+                                    deviceOp.cachedParamValues = lookupResult.freshValues;
+                                    deviceOp.deviceOpJsonObject.put(
+                                            CpeDeviceOp.FIELD_NAME_PARAM_NAMES,
+                                            lookupResult.staleParamNames
+                                    );
+                                }
+                                sendToDevice(cpeJsonObject, deviceOp);
+                            }
+                        }
+                );
+                return;
+            }
+
+            sendToDevice(cpeJsonObject, deviceOp);
+        }
+    }
+
+    /**
+     * Send the device op to the device, unless the device is known to be unreachable by conn-req in which case the
+     * device op is queued for the next periodic Inform.
+     *
+     * @param cpeJsonObject
+     * @param deviceOp
+     */
+    public void sendToDevice(final JsonObject cpeJsonObject, final DeviceOp deviceOp) {
+        if (!canWaitForInform(cpeJsonObject)) {
+            doSendToDevice(cpeJsonObject, deviceOp);
+            return;
+        }
+
+        ConnectionRequestReachability.getRecord(
+                redisClient,
+                deviceOp.cpeIdString,
+                new Handler<JsonObject>() {
+                    @Override
+                    public void handle(final JsonObject reachability) {
+                        if (!ConnectionRequestReachability.isUnreachable(reachability)) {
+                            doSendToDevice(cpeJsonObject, deviceOp);
+                            return;
+                        }
+
+                        if (hasUdpConnReqAddress(cpeJsonObject)) {
+                            /**
+                             * Unreachable via HTTP, but the device may still be woken up via UDP (TR-069 Annex G)
+                             */
+                            deviceOp.bPreferUdp = true;
+                            doSendToDevice(cpeJsonObject, deviceOp);
+                            return;
+                        }
+
+                        /**
+                         * The device is unreachable, but it may have a session (or a conn-req) in progress right now
+                         */
+                        ConnectionRequestUtils.getConnReqStateByCpeId(
+                                redisClient,
+                                deviceOp.cpeIdString,
+                                new Handler<String>() {
                                     @Override
-                                    public void handle(Long timerId) {
-                                        handleFailure(
-                                                deviceOp,
-                                                HttpResponseStatus.REQUEST_TIMEOUT,
-                                                "Device Operation Timed out!"
-                                        );
+                                    public void handle(String fsmInfoString) {
+                                        String state = ConnectionRequestFsm.STATE_FAILED;
+                                        if (fsmInfoString != null) {
+                                            try {
+                                                state = new JsonObject(fsmInfoString).getString(
+                                                        ConnectionRequestConstants.STATE,
+                                                        ConnectionRequestFsm.STATE_FAILED
+                                                );
+                                            } catch (Exception ex) {
+                                                log.error(deviceOp.cpeIdString + ": Invalid conn-req info "
+                                                        + fsmInfoString);
+                                            }
+                                        }
+
+                                        if (ConnectionRequestFsm.STATE_FAILED.equals(state)) {
+                                            queueUntilInform(
+                                                    cpeJsonObject,
+                                                    deviceOp,
+                                                    ConnectionRequestReachability.isProbeDue(reachability)
+                                            );
+                                        } else {
+                                            doSendToDevice(cpeJsonObject, deviceOp);
+                                        }
                                     }
                                 }
+                        );
+                    }
+                }
+        );
+    }
+
+    /**
+     * Check if a device op can wait for the next periodic Inform of the device.
+     *
+     * @param cpeJsonObject
+     */
+    public static boolean canWaitForInform(JsonObject cpeJsonObject) {
+        int interval = cpeJsonObject.getInteger(Cpe.DB_FIELD_NAME_PERIODIC_INFORM_INTERVAL, 0);
+        return interval > 0 && cpeJsonObject.getBoolean(Cpe.DB_FIELD_NAME_PERIODIC_INFORM_ENABLE, true);
+    }
+
+    /**
+     * Check if the device has reported a UDPConnectionRequestAddress.
+     *
+     * @param cpeJsonObject
+     */
+    public static boolean hasUdpConnReqAddress(JsonObject cpeJsonObject) {
+        String udpAddress = cpeJsonObject.getString(Cpe.DB_FIELD_NAME_UDP_CONNREQ_ADDRESS);
+        return udpAddress != null && udpAddress.length() > 0;
+    }
+
+    /**
+     * Queue a device op for the next periodic Inform of an unreachable device, and respond to the client right away.
+     *
+     * @param cpeJsonObject
+     * @param deviceOp
+     * @param bProbe        Whether to also probe the device with a conn-req
+     */
+    public void queueUntilInform(final JsonObject cpeJsonObject, final DeviceOp deviceOp, boolean bProbe) {
+        log.info(deviceOp.cpeIdString + ": Device is unreachable by conn-req. Queuing the device op until the next "
+                + "Inform" + (bProbe? " (and probing the device)." : "."));
+
+        /**
+         * The client of a "synchronous" device op gets its response now, thus no internal callback is needed
+         */
+        mapDeviceOpToNbiRequest.remove(deviceOp.internalSn);
+        if (deviceOp.deviceOpJsonObject.containsKey(CpeDeviceOp.FIELD_NAME_INTERNAL_SN)) {
+            deviceOp.deviceOpJsonObject.remove(CpeDeviceOp.FIELD_NAME_INTERNAL_SN);
+            deviceOp.deviceOpJsonObject.remove(CpeDeviceOp.FIELD_NAME_CALLBACK_URL);
+        }
+
+        deviceOp.storeIntoRedisQueue(redisClient);
+        deviceOp.sendResponse(
+                HttpResponseStatus.ACCEPTED,
+                DeviceOp.CPE_DEVICE_OP_STATE_QUEUED_UNTIL_INFORM,
+                null,
+                new JsonObject()
+                        .put(CpeDeviceOp.FIELD_NAME_STATE, DeviceOp.CPE_DEVICE_OP_STATE_QUEUED_UNTIL_INFORM)
+                        .put(
+                                Cpe.DB_FIELD_NAME_PERIODIC_INFORM_INTERVAL,
+                                cpeJsonObject.getInteger(Cpe.DB_FIELD_NAME_PERIODIC_INFORM_INTERVAL)
                         )
-                );
-            }
+        );
+
+        if (bProbe) {
+            /**
+             * Fire a conn-req (with a shorter timeout) without waiting for it. If the device has become reachable, it
+             * will pick up the queued device op in the new session.
+             */
+            ConnectionRequestReachability.recordProbe(redisClient, deviceOp.cpeIdString);
+            vertx.eventBus().send(
+                    AcsConstants.VERTX_ADDRESS_ACS_CONNECTION_REQUEST,
+                    buildConnReqRequest(cpeJsonObject, deviceOp)
+                            .put(ConnectionRequestConstants.TIMEOUT, ConnectionRequestConstants.PROBE_CONN_REQ_TIMEOUT)
+            );
+        }
+    }
+
+    /**
+     * Send the device op to the device (via Conn-Req), and start the internal callback timer if applicable.
+     *
+     * @param cpeJsonObject
+     * @param deviceOp
+     */
+    public void doSendToDevice(final JsonObject cpeJsonObject, final DeviceOp deviceOp) {
+        /**
+         * Send Conn-Req Request
+         */
+        sendConnReq(cpeJsonObject, deviceOp);
+
+        // Start internal callback timer
+        if (deviceOp.deviceOpJsonObject.containsKey(CpeDeviceOp.FIELD_NAME_INTERNAL_SN)) {
+            // Start timer
+            deviceOp.setCallbackTimer(
+                    vertx.setTimer(
+                            // add additional timeout to allow inter process communication time
+                            (deviceOp.timeout + 3) * 1000,
+                            new Handler<Long>() {
+                                @Override
+                                public void handle(Long timerId) {
+                                    handleFailure(
+                                            deviceOp,
+                                            HttpResponseStatus.REQUEST_TIMEOUT,
+                                            "Device Operation Timed out!"
+                                    );
+                                }
+                            }
+                    )
+            );
         }
     }
 
@@ -361,13 +574,20 @@ public class DeviceOpService extends AbstractAcNbiCrudService {
                 responseStatus = HttpResponseStatus.BAD_REQUEST;
             }
 
+            // Merge the fresh values from the parameter value cache (if any) with the values read from the device
+            JsonObject result = callback.getJsonObject(CpeDeviceOp.FIELD_NAME_RESULT);
+            if (deviceOp.cachedParamValues != null && HttpResponseStatus.OK.equals(responseStatus) && result != null) {
+                VertxJsonUtils.merge(deviceOp.cachedParamValues, result);
+                result = deviceOp.cachedParamValues;
+            }
+
             // Send Response
             try {
                 deviceOp.sendResponse(
                         responseStatus,
                         state,
                         null,
-                        callback.getJsonObject(CpeDeviceOp.FIELD_NAME_RESULT));
+                        result);
 
                 // Update hash map
                 mapDeviceOpToNbiRequest.remove(internalSn);
@@ -382,13 +602,12 @@ public class DeviceOpService extends AbstractAcNbiCrudService {
     };
 
     /**
-     * Send connection request to CPE
+     * Build a conn-req request message (to be sent to the connection-request worker vertice).
      *
      * @param cpeJsonObject
      * @param deviceOp
      */
-    public void sendConnReq(final JsonObject cpeJsonObject, final DeviceOp deviceOp) {
-        // Build a request message
+    public JsonObject buildConnReqRequest(final JsonObject cpeJsonObject, final DeviceOp deviceOp) {
         String username = cpeJsonObject.getString(Cpe.DB_FIELD_NAME_CONNREQ_USERNAME);
         String password = cpeJsonObject.getString(Cpe.DB_FIELD_NAME_CONNREQ_PASSWORD);
         String connReqUrl = cpeJsonObject.getString(Cpe.DB_FIELD_NAME_CONNREQ_URL);
@@ -399,6 +618,18 @@ public class DeviceOpService extends AbstractAcNbiCrudService {
                 .put(ConnectionRequestConstants.USERNAME, username)
                 .put(ConnectionRequestConstants.PASSWORD, password);
 
+        /**
+         * Use UDP (TR-069 Annex G, with HTTP fallback) only if the CPE is known to be unreachable via HTTP or has no
+         * ConnectionRequestURL at all, as the HTTP conn-req is only sent after the UDP retransmissions
+         */
+        if (hasUdpConnReqAddress(cpeJsonObject)
+                && (deviceOp.bPreferUdp || connReqUrl == null || connReqUrl.length() == 0)) {
+            connReqRequest.put(
+                    ConnectionRequestConstants.UDP_ADDRESS,
+                    cpeJsonObject.getString(Cpe.DB_FIELD_NAME_UDP_CONNREQ_ADDRESS)
+            );
+        }
+
         String orgId = cpeJsonObject.getString(AcsConstants.FIELD_NAME_ORG_ID);
         if (orgId != null) {
             Organization org = organizationCache.getOrgById(orgId);
@@ -407,6 +638,19 @@ public class DeviceOpService extends AbstractAcNbiCrudService {
             }
         }
 
+        return connReqRequest;
+    }
+
+    /**
+     * Send connection request to CPE
+     *
+     * @param cpeJsonObject
+     * @param deviceOp
+     */
+    public void sendConnReq(final JsonObject cpeJsonObject, final DeviceOp deviceOp) {
+        // Build a request message
+        JsonObject connReqRequest = buildConnReqRequest(cpeJsonObject, deviceOp);
+
         // Send the request message to connection-request worker vertice
         log.info(deviceOp.cpeIdString + ": Sending new conn-req request:\n" + connReqRequest.encode());
         DeliveryOptions options = new DeliveryOptions().setSendTimeout(ConnectionRequestConstants.DEFAULT_CONN_REQ_TIMEOUT);
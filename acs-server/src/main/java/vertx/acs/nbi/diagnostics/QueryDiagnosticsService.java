@@ -0,0 +1,288 @@
+package vertx.acs.nbi.diagnostics;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
+import io.vertx.redis.RedisClient;
+import vertx.VertxException;
+import vertx.VertxMongoQueryShapes;
+import vertx.VertxMongoUtils;
+import vertx.acs.cache.CountCache;
+import vertx.acs.cache.PassiveWorkflowCache;
+import vertx.acs.nbi.AcsApiService;
+import vertx.acs.nbi.model.AcsNbiRequest;
+import vertx.cache.ConfigurationProfileCache;
+import vertx.cache.DialPlanCache;
+import vertx.cache.GroupCache;
+import vertx.cache.OrganizationCache;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Project:  cwmp
+ *
+ * Query Diagnostics Service.
+ *
+ * "GET /cc/query-diagnostics" runs "explain" (query planner only, i.e. the queries are not executed) against every
+ * distinct query shape issued by this server so far, and flags the shapes that are answered by collection scans,
+ * which usually means a missing index (see AcsMongoIndexes).
+ *
+ * The shapes are recorded per JVM, so the CPE servers have to be checked by running their queries against a server
+ * with this service (for example in a staging environment).
+ *
+ * @author: ronyang
+ */
+public class QueryDiagnosticsService implements AcsApiService {
+    /**
+     * Logger Instance
+     */
+    public Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+    /**
+     * Field Names used in the response
+     */
+    public static final String FIELD_NAME_QUERY_SHAPES = "queryShapes";
+    public static final String FIELD_NAME_NBR_OF_COLLECTION_SCANS = "nbrOfCollectionScans";
+    public static final String FIELD_NAME_COLLECTION_SCAN = "collectionScan";
+    public static final String FIELD_NAME_WINNING_PLAN = "winningPlan";
+    public static final String FIELD_NAME_ERROR = "error";
+
+    /**
+     * Query Plan Field Names
+     */
+    public static final String PLAN_FIELD_NAME_STAGE = "stage";
+    public static final String PLAN_FIELD_NAME_INDEX_NAME = "indexName";
+    public static final String PLAN_FIELD_NAME_INPUT_STAGE = "inputStage";
+    public static final String PLAN_FIELD_NAME_INPUT_STAGES = "inputStages";
+
+    /**
+     * MongoDB Client
+     */
+    public MongoClient mongoClient;
+
+    /**
+     * Start the service
+     *
+     * @param vertx
+     */
+    @Override
+    public void start(Vertx vertx) {
+
+    }
+
+    /**
+     * Stop the service
+     *
+     * @param vertx
+     */
+    @Override
+    public void stop(Vertx vertx) {
+
+    }
+
+    /**
+     * Set Organization Cache
+     */
+    public void setOrganizationCache(OrganizationCache organizationCache) {
+    }
+
+    /**
+     * Set Passive Workflow Cache
+     *
+     * @param passiveWorkflowCache
+     */
+    @Override
+    public void setPassiveWorkflowCache(PassiveWorkflowCache passiveWorkflowCache) {
+
+    }
+
+    public void setMongoClient(MongoClient mongoClient) {
+        this.mongoClient = mongoClient;
+    }
+
+    /**
+     * Set Dial Plan Cache
+     *
+     * @param dialPlanCache
+     */
+    @Override
+    public void setDialPlanCache(DialPlanCache dialPlanCache) {
+
+    }
+
+    /**
+     * Set Configuration Profile Cache
+     *
+     * @param configurationProfileCache
+     */
+    @Override
+    public void setConfigurationProfileCache(ConfigurationProfileCache configurationProfileCache) {
+
+    }
+
+    /**
+     * Set Group Cache
+     *
+     * @param groupCache
+     */
+    @Override
+    public void setGroupCache(GroupCache groupCache) {
+
+    }
+
+    /**
+     * Set Count Cache
+     *
+     * @param countCache
+     */
+    @Override
+    public void setCountCache(CountCache countCache) {
+
+    }
+
+    /**
+     * Set Redis Client
+     *
+     * @param redisClient
+     */
+    @Override
+    public void setRedisClient(RedisClient redisClient) {
+
+    }
+
+    /**
+     * Get the name of the service which is to be used to build URL Path Prefix.
+     */
+    @Override
+    public String getServiceName() {
+        return "query-diagnostics";
+    }
+
+    /**
+     * Handle a new request received via either Vert.x Event Bus or HTTP.
+     *
+     * @param nbiRequest
+     * @param urlPathParams
+     */
+    @Override
+    public void handle(final AcsNbiRequest nbiRequest, String[] urlPathParams) {
+        if (nbiRequest.httpServerRequest == null || !HttpMethod.GET.equals(nbiRequest.httpServerRequest.method())) {
+            nbiRequest.sendResponse(HttpResponseStatus.BAD_REQUEST);
+            return;
+        }
+
+        final List<VertxMongoQueryShapes.QueryShape> allShapes = VertxMongoQueryShapes.getAll();
+        final JsonArray results = new JsonArray();
+        explainNext(allShapes, 0, results, new Handler<Integer>() {
+            @Override
+            public void handle(Integer nbrOfCollectionScans) {
+                if (nbrOfCollectionScans > 0) {
+                    log.error(nbrOfCollectionScans + " out of " + allShapes.size()
+                            + " query shape(s) are answered by collection scans!");
+                }
+
+                nbiRequest.httpServerRequest.response().putHeader("Content-Type", "application/json");
+                nbiRequest.sendResponse(
+                        HttpResponseStatus.OK,
+                        new JsonObject()
+                                .put(FIELD_NAME_NBR_OF_COLLECTION_SCANS, nbrOfCollectionScans)
+                                .put(FIELD_NAME_QUERY_SHAPES, results)
+                );
+            }
+        });
+    }
+
+    /**
+     * Explain the query shapes one by one (to avoid flooding MongoDB with explain commands).
+     *
+     * @param allShapes
+     * @param index         Index of the next shape to be explained
+     * @param results
+     * @param doneHandler   Called with the # of collection scans when all shapes have been explained
+     */
+    public void explainNext(
+            final List<VertxMongoQueryShapes.QueryShape> allShapes,
+            final int index,
+            final JsonArray results,
+            final Handler<Integer> doneHandler) {
+        if (index >= allShapes.size()) {
+            int nbrOfCollectionScans = 0;
+            for (int i = 0; i < results.size(); i ++) {
+                if (results.getJsonObject(i).getBoolean(FIELD_NAME_COLLECTION_SCAN, false)) {
+                    nbrOfCollectionScans ++;
+                }
+            }
+            doneHandler.handle(nbrOfCollectionScans);
+            return;
+        }
+
+        final VertxMongoQueryShapes.QueryShape shape = allShapes.get(index);
+        final JsonObject result = shape.toJsonObject();
+        results.add(result);
+
+        Handler<JsonObject> explainHandler = new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject queryPlanner) {
+                if (queryPlanner == null) {
+                    result.put(FIELD_NAME_ERROR, "Failed to explain!");
+                } else {
+                    JsonObject winningPlan = queryPlanner.getJsonObject(FIELD_NAME_WINNING_PLAN);
+                    result.put(FIELD_NAME_COLLECTION_SCAN, VertxMongoUtils.isCollectionScan(winningPlan));
+                    result.put(FIELD_NAME_WINNING_PLAN, summarizePlan(winningPlan));
+                }
+
+                explainNext(allShapes, index + 1, results, doneHandler);
+            }
+        };
+
+        try {
+            VertxMongoUtils.explain(
+                    mongoClient,
+                    shape.collectionName,
+                    shape.sampleMatcher,
+                    shape.sampleSort,
+                    explainHandler
+            );
+        } catch (VertxException e) {
+            e.printStackTrace();
+            explainHandler.handle(null);
+        }
+    }
+
+    /**
+     * Summarize a query plan as the chain of stages (with the index names), for example
+     * "FETCH <- IXSCAN(orgId_1_serialNumber_1)".
+     *
+     * The index bounds are left out as they contain the actual values of the sample query.
+     *
+     * @param plan
+     */
+    public static String summarizePlan(JsonObject plan) {
+        if (plan == null) {
+            return null;
+        }
+
+        String summary = plan.getString(PLAN_FIELD_NAME_STAGE);
+        if (plan.containsKey(PLAN_FIELD_NAME_INDEX_NAME)) {
+            summary += "(" + plan.getString(PLAN_FIELD_NAME_INDEX_NAME) + ")";
+        }
+
+        if (plan.containsKey(PLAN_FIELD_NAME_INPUT_STAGE)) {
+            summary += " <- " + summarizePlan(plan.getJsonObject(PLAN_FIELD_NAME_INPUT_STAGE));
+        } else if (plan.containsKey(PLAN_FIELD_NAME_INPUT_STAGES)) {
+            JsonArray inputStages = plan.getJsonArray(PLAN_FIELD_NAME_INPUT_STAGES);
+            summary += " <- [";
+            for (int i = 0; i < inputStages.size(); i ++) {
+                summary += (i > 0? ", " : "") + summarizePlan(inputStages.getJsonObject(i));
+            }
+            summary += "]";
+        }
+        return summary;
+    }
+}
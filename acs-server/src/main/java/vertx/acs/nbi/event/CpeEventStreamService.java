@@ -0,0 +1,324 @@
+package vertx.acs.nbi.event;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
+import io.vertx.redis.RedisClient;
+import vertx.acs.cache.CountCache;
+import vertx.acs.cache.PassiveWorkflowCache;
+import vertx.acs.nbi.AcsApiService;
+import vertx.acs.nbi.model.AcsNbiRequest;
+import vertx.cache.ConfigurationProfileCache;
+import vertx.cache.DialPlanCache;
+import vertx.cache.GroupCache;
+import vertx.cache.OrganizationCache;
+import vertx.util.AcsConstants;
+import vertx.util.CpeEventStreamUtils;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Project:  cwmp
+ *
+ * CPE Event Stream Service.
+ *
+ * Gives the analytics/alarm consumers access to the per-org stream of Inform events (see CpeEventStreamUtils):
+ *
+ * - "GET /cc/cpe-event-stream?group={group}&from={offset}&count={count}" reads up to "count" events starting from
+ *   "from", or from the event after the committed offset of "group" if "from" is not specified;
+ * - "PUT /cc/cpe-event-stream" with {"group": ..., "offset": ...} commits the offset of the last event processed by a
+ *   consumer group.
+ *
+ * The internal requests (via Vert.x Event Bus) carry the same parameters in the request body, and are treated as
+ * commits if an "offset" is present.
+ *
+ * @author: ronyang
+ */
+public class CpeEventStreamService implements AcsApiService {
+    /**
+     * Logger Instance
+     */
+    public Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+    /**
+     * Request/Response Field Names
+     */
+    public static final String FIELD_NAME_GROUP = "group";
+    public static final String FIELD_NAME_FROM = "from";
+    public static final String FIELD_NAME_COUNT = "count";
+    public static final String FIELD_NAME_OFFSET = CpeEventStreamUtils.FIELD_NAME_OFFSET;
+    public static final String FIELD_NAME_EVENTS = "events";
+    public static final String FIELD_NAME_NEXT_OFFSET = "nextOffset";
+    public static final String FIELD_NAME_LAST_OFFSET = "lastOffset";
+
+    /**
+     * Default/Max # of events per read
+     */
+    public static final int DEFAULT_COUNT = 100;
+    public static final int MAX_COUNT = 1000;
+
+    /**
+     * Redis Client
+     */
+    public RedisClient redisClient;
+
+    /**
+     * Start the service
+     *
+     * @param vertx
+     */
+    @Override
+    public void start(Vertx vertx) {
+
+    }
+
+    /**
+     * Stop the service
+     *
+     * @param vertx
+     */
+    @Override
+    public void stop(Vertx vertx) {
+
+    }
+
+    /**
+     * Set Organization Cache
+     */
+    public void setOrganizationCache(OrganizationCache organizationCache) {
+    }
+
+    /**
+     * Set Passive Workflow Cache
+     *
+     * @param passiveWorkflowCache
+     */
+    @Override
+    public void setPassiveWorkflowCache(PassiveWorkflowCache passiveWorkflowCache) {
+
+    }
+
+    public void setMongoClient(MongoClient mongoClient) {
+    }
+
+    /**
+     * Set Dial Plan Cache
+     *
+     * @param dialPlanCache
+     */
+    @Override
+    public void setDialPlanCache(DialPlanCache dialPlanCache) {
+
+    }
+
+    /**
+     * Set Configuration Profile Cache
+     *
+     * @param configurationProfileCache
+     */
+    @Override
+    public void setConfigurationProfileCache(ConfigurationProfileCache configurationProfileCache) {
+
+    }
+
+    /**
+     * Set Group Cache
+     *
+     * @param groupCache
+     */
+    @Override
+    public void setGroupCache(GroupCache groupCache) {
+
+    }
+
+    /**
+     * Set Count Cache
+     *
+     * @param countCache
+     */
+    @Override
+    public void setCountCache(CountCache countCache) {
+
+    }
+
+    /**
+     * Set Redis Client
+     *
+     * @param redisClient
+     */
+    @Override
+    public void setRedisClient(RedisClient redisClient) {
+        this.redisClient = redisClient;
+    }
+
+    /**
+     * Get the name of the service which is to be used to build URL Path Prefix.
+     */
+    @Override
+    public String getServiceName() {
+        return AcsConstants.ACS_API_SERVICE_CPE_EVENT_STREAM;
+    }
+
+    /**
+     * Handle a new request received via either Vert.x Event Bus or HTTP.
+     *
+     * @param nbiRequest
+     * @param urlPathParams
+     */
+    @Override
+    public void handle(final AcsNbiRequest nbiRequest, String[] urlPathParams) {
+        final String orgId = nbiRequest.body.getString(AcsConstants.FIELD_NAME_ORG_ID);
+        if (orgId == null) {
+            nbiRequest.sendResponse(
+                    HttpResponseStatus.BAD_REQUEST,
+                    new JsonObject().put(AcsConstants.FIELD_NAME_ERROR, "Missing orgId!")
+            );
+            return;
+        }
+
+        final String group = getParam(nbiRequest, FIELD_NAME_GROUP);
+        final Long offset;
+        final Long from;
+        final Long count;
+        try {
+            offset = getLongParam(nbiRequest, FIELD_NAME_OFFSET);
+            from = getLongParam(nbiRequest, FIELD_NAME_FROM);
+            count = getLongParam(nbiRequest, FIELD_NAME_COUNT);
+        } catch (NumberFormatException ex) {
+            nbiRequest.sendResponse(
+                    HttpResponseStatus.BAD_REQUEST,
+                    new JsonObject().put(AcsConstants.FIELD_NAME_ERROR, "Invalid offset/from/count!")
+            );
+            return;
+        }
+
+        boolean bCommit;
+        if (nbiRequest.httpServerRequest != null) {
+            HttpMethod method = nbiRequest.httpServerRequest.method();
+            if (HttpMethod.PUT.equals(method) || HttpMethod.POST.equals(method)) {
+                bCommit = true;
+            } else if (HttpMethod.GET.equals(method)) {
+                bCommit = false;
+            } else {
+                nbiRequest.sendResponse(HttpResponseStatus.BAD_REQUEST);
+                return;
+            }
+        } else {
+            bCommit = offset != null;
+        }
+
+        if (bCommit) {
+            /**
+             * Commit the offset of a consumer group
+             */
+            if (group == null || offset == null) {
+                nbiRequest.sendResponse(
+                        HttpResponseStatus.BAD_REQUEST,
+                        new JsonObject().put(AcsConstants.FIELD_NAME_ERROR, "Both group and offset are required!")
+                );
+                return;
+            }
+
+            CpeEventStreamUtils.commitOffset(redisClient, orgId, group, offset, new Handler<JsonArray>() {
+                @Override
+                public void handle(JsonArray result) {
+                    nbiRequest.sendResponse(
+                            result == null? HttpResponseStatus.INTERNAL_SERVER_ERROR : HttpResponseStatus.OK
+                    );
+                }
+            });
+            return;
+        }
+
+        /**
+         * Read events
+         */
+        final int actualCount = count == null? DEFAULT_COUNT : (int) Math.max(1, Math.min(count, MAX_COUNT));
+        if (from != null) {
+            read(nbiRequest, orgId, from, actualCount);
+        } else if (group != null) {
+            CpeEventStreamUtils.getCommittedOffset(redisClient, orgId, group, new Handler<Long>() {
+                @Override
+                public void handle(Long committedOffset) {
+                    if (committedOffset == null) {
+                        nbiRequest.sendResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR);
+                    } else {
+                        read(nbiRequest, orgId, committedOffset + 1, actualCount);
+                    }
+                }
+            });
+        } else {
+            // From the beginning of the retained events
+            read(nbiRequest, orgId, 0, actualCount);
+        }
+    }
+
+    /**
+     * Read the events and send the response.
+     *
+     * @param nbiRequest
+     * @param orgId
+     * @param from
+     * @param count
+     */
+    public void read(final AcsNbiRequest nbiRequest, final String orgId, final long from, int count) {
+        CpeEventStreamUtils.read(redisClient, orgId, from, count, new Handler<JsonArray>() {
+            @Override
+            public void handle(final JsonArray events) {
+                if (events == null) {
+                    nbiRequest.sendResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR);
+                    return;
+                }
+
+                CpeEventStreamUtils.getLastOffset(redisClient, orgId, new Handler<Long>() {
+                    @Override
+                    public void handle(Long lastOffset) {
+                        long nextOffset = events.size() > 0?
+                                events.getJsonObject(events.size() - 1).getLong(FIELD_NAME_OFFSET) + 1 : from;
+                        JsonObject result = new JsonObject()
+                                .put(FIELD_NAME_EVENTS, events)
+                                .put(FIELD_NAME_NEXT_OFFSET, nextOffset);
+                        if (lastOffset != null) {
+                            result.put(FIELD_NAME_LAST_OFFSET, lastOffset);
+                        }
+
+                        if (nbiRequest.httpServerRequest != null) {
+                            nbiRequest.httpServerRequest.response().putHeader("Content-Type", "application/json");
+                        }
+                        nbiRequest.sendResponse(HttpResponseStatus.OK, result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Get a request parameter from the query string (HTTP) or the request body (Event Bus).
+     *
+     * @param nbiRequest
+     * @param name
+     */
+    public static String getParam(AcsNbiRequest nbiRequest, String name) {
+        if (nbiRequest.httpServerRequest != null && nbiRequest.httpServerRequest.params().contains(name)) {
+            return nbiRequest.httpServerRequest.params().get(name);
+        }
+
+        Object value = nbiRequest.body.getValue(name);
+        return value == null? null : value.toString();
+    }
+
+    /**
+     * Get a numeric request parameter.
+     *
+     * @param nbiRequest
+     * @param name
+     */
+    public static Long getLongParam(AcsNbiRequest nbiRequest, String name) throws NumberFormatException {
+        String value = getParam(nbiRequest, name);
+        return value == null? null : Long.valueOf(value);
+    }
+}
@@ -18,6 +18,7 @@ import io.vertx.core.json.JsonObject;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Project:  cwmp
@@ -44,6 +45,11 @@ public class FileService extends AbstractAcNbiCrudService{
                     .append(AcsConstants.FIELD_NAME_NAME, VertxJsonUtils.JsonFieldType.String)
                     .append(AcsFile.FIELD_NAME_TYPE, VertxJsonUtils.JsonFieldType.String);
 
+    /**
+     * The log files only need to be cleaned up by one of the service instances (one per ACS API vertice)
+     */
+    private static final AtomicBoolean bLogFileCleanupStarted = new AtomicBoolean(false);
+
     /**
      * Start the service
      */
@@ -51,6 +57,10 @@ public class FileService extends AbstractAcNbiCrudService{
     public void start(final Vertx vertx) {
         this.vertx = vertx;
 
+        if (!bLogFileCleanupStarted.compareAndSet(false, true)) {
+            return;
+        }
+
         /**
          * Cleanup log files on startup
          */
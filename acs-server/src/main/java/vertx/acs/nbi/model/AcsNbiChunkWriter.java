@@ -0,0 +1,231 @@
+package vertx.acs.nbi.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+
+/**
+ * Project:  cwmp CCNG ACS API
+ *
+ * Streaming Writer for Chunked (JSON Array) NBI Responses.
+ *
+ * The records are encoded by Jackson straight into the outgoing buffers (compact by default, pretty-printing is
+ * opt-in), instead of building one String per record and one more per chunk.
+ *
+ * Large result sets are written in batches of about BATCH_SIZE bytes. When the write queue of the HTTP connection is
+ * full, the writer stops and resumes from the drain handler, so a slow client no longer makes the whole result set
+ * pile up in memory as encoded data. If the client goes away, the pending segments are dropped.
+ *
+ * @author: ronyang
+ */
+public class AcsNbiChunkWriter {
+    private static final Logger log = LoggerFactory.getLogger(AcsNbiChunkWriter.class.getName());
+
+    /**
+     * Target Size (in bytes) of each write
+     */
+    public static final int BATCH_SIZE = 64 * 1024;
+
+    /**
+     * A portion of a result array to be written
+     */
+    static class Segment {
+        JsonArray results;
+        int next;
+        int end;
+        boolean bLast;
+
+        Segment(JsonArray results, int start, int end, boolean bLast) {
+            this.results = results;
+            this.next = start;
+            this.end = end;
+            this.bLast = bLast;
+        }
+    }
+
+    /**
+     * Output Stream that appends to a Vert.x Buffer
+     */
+    static class BufferOutputStream extends OutputStream {
+        Buffer buffer;
+
+        @Override
+        public void write(int b) throws IOException {
+            buffer.appendByte((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            buffer.appendBytes(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            // Jackson closes the target after each value. Nothing to do.
+        }
+    }
+
+    /**
+     * HTTP Response
+     */
+    HttpServerResponse response;
+
+    /**
+     * Jackson Object Mapper (compact or pretty)
+     */
+    ObjectMapper mapper;
+
+    /**
+     * Segments not written yet
+     */
+    LinkedList<Segment> pendingSegments = new LinkedList<>();
+
+    /**
+     * Has any record been written (i.e. do we need a "," before the next one)?
+     */
+    boolean bRecordWritten = false;
+
+    /**
+     * Waiting for the write queue to drain?
+     */
+    boolean bWaitingForDrain = false;
+
+    /**
+     * Has the response been ended?
+     */
+    boolean bEnded = false;
+
+    /**
+     * Has the connection been closed by the client?
+     */
+    boolean bClosed = false;
+
+    /**
+     * Reusable Output Stream
+     */
+    BufferOutputStream outputStream = new BufferOutputStream();
+
+    /**
+     * Drain Handler
+     */
+    Handler<Void> drainHandler = new Handler<Void>() {
+        @Override
+        public void handle(Void event) {
+            bWaitingForDrain = false;
+            pump();
+        }
+    };
+
+    /**
+     * Close Handler (i.e. the client has gone away)
+     */
+    Handler<Void> closeHandler = new Handler<Void>() {
+        @Override
+        public void handle(Void event) {
+            if (!bEnded) {
+                log.debug("Connection closed with " + pendingSegments.size() + " segment(s) not written.");
+                bEnded = true;
+                pendingSegments.clear();
+            }
+            bClosed = true;
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param response
+     * @param bPretty
+     */
+    public AcsNbiChunkWriter(HttpServerResponse response, boolean bPretty) {
+        this.response = response;
+        this.mapper = bPretty? Json.prettyMapper : Json.mapper;
+        response.closeHandler(closeHandler);
+    }
+
+    /**
+     * Write a portion of a result array.
+     *
+     * @param results   Optional Results
+     * @param start     Index of the first record to write
+     * @param end       Index after the last record to write
+     * @param bLast     If true, close the JSON array and end the response after this portion
+     */
+    public void write(JsonArray results, int start, int end, boolean bLast) {
+        if (bEnded) {
+            if (!bClosed) {
+                log.error("Trying to write into an ended response!");
+            }
+            return;
+        }
+
+        pendingSegments.add(new Segment(results, start, results == null? start : Math.min(end, results.size()), bLast));
+        if (!bWaitingForDrain) {
+            pump();
+        }
+    }
+
+    /**
+     * Write the pending segments until done or the write queue is full.
+     */
+    void pump() {
+        while (!bEnded && pendingSegments.size() > 0) {
+            Segment segment = pendingSegments.peek();
+
+            outputStream.buffer = Buffer.buffer(BATCH_SIZE + 1024);
+            while (segment.next < segment.end && outputStream.buffer.length() < BATCH_SIZE) {
+                JsonObject aRecord = segment.results.getJsonObject(segment.next ++);
+                int recordStart = outputStream.buffer.length();
+                if (bRecordWritten) {
+                    outputStream.buffer.appendByte((byte) ',');
+                }
+                try {
+                    mapper.writeValue(outputStream, aRecord.getMap());
+                    bRecordWritten = true;
+                } catch (Exception ex) {
+                    log.error("Failed to encode " + aRecord.encode() + "! " + ex.getMessage());
+                    // Drop the separator and whatever has been encoded of this record
+                    outputStream.buffer = outputStream.buffer.getBuffer(0, recordStart);
+                }
+            }
+
+            boolean bSegmentDone = segment.next >= segment.end;
+            if (bSegmentDone) {
+                pendingSegments.poll();
+                if (segment.bLast) {
+                    // Append the ']' to mark the end of the JSON Array
+                    outputStream.buffer.appendString("]\n");
+                }
+            }
+
+            if (outputStream.buffer.length() > 0) {
+                response.write(outputStream.buffer);
+            }
+            outputStream.buffer = null;
+
+            if (bSegmentDone && segment.bLast) {
+                // End the response if no more chunks
+                bEnded = true;
+                pendingSegments.clear();
+                response.end();
+                return;
+            }
+
+            if (response.writeQueueFull()) {
+                bWaitingForDrain = true;
+                response.drainHandler(drainHandler);
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package vertx.acs.nbi.model;
+
+import vertx.VertxException;
+import vertx.VertxJsonUtils;
+import vertx.util.AcsConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Project:  cwmp CCNG ACS API
+ *
+ * Keyset (a.k.a. seek) Pagination Token.
+ *
+ * Instead of "skip", which makes MongoDB walk all the skipped entries, a client can page through a bulk query by
+ * passing back the opaque token returned with the previous page. The token carries the sort key values (plus "_id"
+ * as the tie breaker) of the last record of the previous page, which are turned into a range predicate on the
+ * sort index, so every page costs the same from start to end.
+ *
+ * Keyset pagination is only used if the client passes a token, or opts in with "keyset=true" for the first page. The
+ * records that lack any of the sort fields (or have null values) are left out of all pages, as a range predicate
+ * can never seek past them.
+ *
+ * The token is simply the URL-safe Base64 encoding of a JSON Object such as
+ *
+ *  {"lastInformTime":{"$date":1500000000000},"_id":"000631-CXNK0012345"}
+ *
+ * @author: ronyang
+ */
+public class AcsNbiPageToken {
+    private static final Logger log = LoggerFactory.getLogger(AcsNbiPageToken.class.getName());
+
+    /**
+     * HTTP Response Header Name (and Event Bus Reply Field Name) that carries the next token
+     */
+    public static final String HTTP_HEADER_NEXT_PAGE_TOKEN = "X-Next-Page-Token";
+    public static final String FIELD_NAME_NEXT_PAGE_TOKEN = "nextPageToken";
+
+    /**
+     * Exception
+     */
+    public static final VertxException INVALID_PAGE_TOKEN = new VertxException("Invalid Page Token!");
+
+    /**
+     * Get the actual sort used for keyset pagination, i.e. the given sort with "_id" appended as the tie breaker
+     * (unless already present).
+     *
+     * The given sort is not modified.
+     *
+     * @param sort
+     */
+    public static JsonObject getSeekSort(JsonObject sort) {
+        JsonObject seekSort = sort == null? new JsonObject() : sort.copy();
+        if (!seekSort.containsKey(AcsConstants.FIELD_NAME_ID)) {
+            seekSort.put(AcsConstants.FIELD_NAME_ID, 1);
+        }
+        return seekSort;
+    }
+
+    /**
+     * Build the token of the next page from the last record of the current page.
+     *
+     * The record must be the raw MongoDB record (i.e. before converting the "$date" fields to strings).
+     *
+     * @param seekSort
+     * @param lastRecord
+     * @return  The token, or null if any of the sort fields is missing from the record.
+     */
+    public static String encode(JsonObject seekSort, JsonObject lastRecord) {
+        if (lastRecord == null) {
+            return null;
+        }
+
+        JsonObject lastKeys = new JsonObject();
+        for (String fieldName : seekSort.fieldNames()) {
+            Object value = VertxJsonUtils.deepGet(lastRecord, fieldName);
+            if (value == null) {
+                log.debug("Sort field " + fieldName + " not found in the last record. No next page token.");
+                return null;
+            }
+            lastKeys.put(fieldName, value);
+        }
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                lastKeys.encode().getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    /**
+     * Decode a token back to the sort key values of the last record of the previous page.
+     *
+     * The token must carry exactly the fields of the given sort.
+     *
+     * @param token
+     * @param seekSort
+     * @throws VertxException
+     */
+    public static JsonObject decode(String token, JsonObject seekSort) throws VertxException {
+        JsonObject lastKeys;
+        try {
+            lastKeys = new JsonObject(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+        } catch (Exception ex) {
+            log.error("Malformed page token " + token + "!");
+            throw INVALID_PAGE_TOKEN;
+        }
+
+        if (lastKeys.size() != seekSort.size()) {
+            log.error("Page token " + lastKeys.encode() + " does not match sort " + seekSort.encode() + "!");
+            throw INVALID_PAGE_TOKEN;
+        }
+        for (String fieldName : seekSort.fieldNames()) {
+            Object value = lastKeys.getValue(fieldName);
+            if (value == null || value instanceof JsonArray) {
+                log.error("Page token " + lastKeys.encode() + " does not match sort " + seekSort.encode() + "!");
+                throw INVALID_PAGE_TOKEN;
+            }
+
+            /**
+             * The values end up in the query matcher, so do not allow any query operator other than the extended
+             * JSON types MongoDB returned to us
+             */
+            if (value instanceof JsonObject) {
+                JsonObject objValue = (JsonObject) value;
+                if (objValue.size() != 1 ||
+                        !(objValue.containsKey("$date") || objValue.containsKey("$oid"))) {
+                    log.error("Illegal value in page token " + lastKeys.encode() + "!");
+                    throw INVALID_PAGE_TOKEN;
+                }
+            }
+        }
+
+        return lastKeys;
+    }
+
+    /**
+     * Build the seek predicate, i.e. "sorts after the last record of the previous page".
+     *
+     * For example with sort {a:1, b:-1, _id:1} the predicate is
+     *
+     *  {$or: [{a:{$gt:A}}, {a:A, b:{$lt:B}}, {a:A, b:B, _id:{$gt:ID}}]}
+     *
+     * @param seekSort
+     * @param lastKeys
+     */
+    public static JsonObject buildSeekMatcher(JsonObject seekSort, JsonObject lastKeys) {
+        JsonArray or = new JsonArray();
+        JsonObject equalities = new JsonObject();
+        for (String fieldName : seekSort.fieldNames()) {
+            Object value = lastKeys.getValue(fieldName);
+            String operator = isDescending(seekSort.getValue(fieldName))? "$lt" : "$gt";
+
+            or.add(equalities.copy().put(fieldName, new JsonObject().put(operator, value)));
+            equalities.put(fieldName, value);
+        }
+
+        return or.size() == 1? or.getJsonObject(0) : new JsonObject().put("$or", or);
+    }
+
+    /**
+     * Build the predicate that requires all the sort fields (other than "_id") to be present and not null.
+     *
+     * @param seekSort
+     * @return  The predicate, or an empty JSON Object if sorting by "_id" only.
+     */
+    public static JsonObject buildSortFieldsMatcher(JsonObject seekSort) {
+        JsonObject matcher = new JsonObject();
+        for (String fieldName : seekSort.fieldNames()) {
+            if (!fieldName.equals(AcsConstants.FIELD_NAME_ID)) {
+                matcher.put(fieldName, new JsonObject().putNull("$ne"));
+            }
+        }
+        return matcher;
+    }
+
+    /**
+     * Combine the original matcher with the seek predicate.
+     *
+     * @param matcher
+     * @param seekMatcher
+     */
+    public static JsonObject addSeekMatcher(JsonObject matcher, JsonObject seekMatcher) {
+        if (matcher == null || matcher.size() == 0) {
+            return seekMatcher;
+        }
+
+        return new JsonObject().put("$and", new JsonArray().add(matcher).add(seekMatcher));
+    }
+
+    /**
+     * Make sure the sort fields are returned by the query (only needed if the query keys are an inclusion
+     * projection).
+     *
+     * @param keys
+     * @param seekSort
+     */
+    public static JsonObject addSortFieldsToKeys(JsonObject keys, JsonObject seekSort) {
+        if (keys == null || keys.size() == 0) {
+            return keys;
+        }
+
+        /**
+         * "_id" alone is an inclusion projection (i.e. only returns "_id"), otherwise it does not tell
+         */
+        boolean bInclusion = keys.size() == 1
+                && keys.containsKey(AcsConstants.FIELD_NAME_ID)
+                && !isExcluded(keys.getValue(AcsConstants.FIELD_NAME_ID));
+        for (String fieldName : keys.fieldNames()) {
+            if (!fieldName.equals(AcsConstants.FIELD_NAME_ID) && !isExcluded(keys.getValue(fieldName))) {
+                bInclusion = true;
+                break;
+            }
+        }
+        if (!bInclusion) {
+            return keys;
+        }
+
+        JsonObject newKeys = keys.copy();
+        for (String fieldName : seekSort.fieldNames()) {
+            newKeys.put(fieldName, 1);
+        }
+        return newKeys;
+    }
+
+    /**
+     * Is the given sort direction descending?
+     *
+     * @param direction
+     */
+    static boolean isDescending(Object direction) {
+        return direction instanceof Number && ((Number) direction).intValue() < 0;
+    }
+
+    /**
+     * Does the given projection value exclude the field?
+     *
+     * @param value
+     */
+    static boolean isExcluded(Object value) {
+        return Boolean.FALSE.equals(value) || (value instanceof Number && ((Number) value).intValue() == 0);
+    }
+}
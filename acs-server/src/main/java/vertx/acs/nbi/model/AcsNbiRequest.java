@@ -2,6 +2,7 @@ package vertx.acs.nbi.model;
 
 import vertx.VertxUtils;
 import vertx.acs.nbi.AbstractAcNbiCrudService;
+import vertx.util.AcsConfigProperties;
 import vertx.util.AcsConstants;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.eventbus.Message;
@@ -42,6 +43,25 @@ public class AcsNbiRequest {
     // Custom Service Specific Data
     public Object serviceData = null;
 
+    /**
+     * Keyset Pagination.
+     *
+     * When paging with tokens, the opening '[' of a chunked response is deferred until the first chunk, so the token
+     * of the next page (which is only known after the query) can still be sent as an HTTP header.
+     */
+    public String nextPageToken = null;
+    public boolean bChunkStartPending = false;
+
+    /**
+     * Streaming Writer for chunked responses (created upon the first chunk)
+     */
+    public AcsNbiChunkWriter chunkWriter = null;
+
+    /**
+     * When the request was received, which is when its time budget starts
+     */
+    public final long createTime = System.currentTimeMillis();
+
     /**
      * Constructor for HTTP request
      *
@@ -231,44 +251,33 @@ public class AcsNbiRequest {
             int limit,
             boolean hasMore) {
         if (httpServerRequest != null) {
-            StringBuilder chunk = new StringBuilder();
-
-            // Build response chunk
-            if (results != null) {
-                int start = skip > 0 ? skip : 0;
-                int end = limit > 0? (skip + limit) : results.size();
-                for (int i = start; i < end; i ++) {
-                    if (i >= results.size()) {
-                        // Do not overflow the array
-                        break;
-                    }
-                    JsonObject oneElement = results.getJsonObject(i);
-                    if (i < (results.size() - 1)) {
-                        chunk.append(oneElement.encodePrettily() + ",");
-                    } else {
-                        chunk.append(oneElement.encodePrettily());
-                    }
+            if (bChunkStartPending) {
+                // Start the chunked response
+                if (nextPageToken != null) {
+                    httpServerRequest.response().putHeader(AcsNbiPageToken.HTTP_HEADER_NEXT_PAGE_TOKEN, nextPageToken);
                 }
+                httpServerRequest.response().setChunked(true);
+                httpServerRequest.response().write("[");
+                bChunkStartPending = false;
             }
 
-            if (hasMore == false) {
-                // Append the ']' to mark the end of the JSON Array
-                chunk.append("]\n");
+            if (chunkWriter == null) {
+                chunkWriter = new AcsNbiChunkWriter(httpServerRequest.response(), getQueryPretty());
             }
 
-            // Write the chunk
-            httpServerRequest.response().write(chunk.toString());
-
-            if (hasMore == false) {
-                // End the response if no more chunks
-                httpServerRequest.response().end();
-            }
+            // Write the chunk (and end the response if no more chunks)
+            int start = skip > 0 ? skip : 0;
+            int end = results == null? 0 : (limit > 0? (start + limit) : results.size());
+            chunkWriter.write(results, start, end, !hasMore);
         } else {
             // Build Vert.x Response
             JsonObject response = new JsonObject().put(AcsConstants.FIELD_NAME_STATUS_CODE, status.toString());
             if (hasMore) {
                 response.put(AcsConstants.FIELD_NAME_MORE_EXIST, true);
             }
+            if (nextPageToken != null) {
+                response.put(AcsNbiPageToken.FIELD_NAME_NEXT_PAGE_TOKEN, nextPageToken);
+            }
             if (results != null) {
                 response.put(AcsConstants.FIELD_NAME_RESULT, results);
             }
@@ -307,6 +316,29 @@ public class AcsNbiRequest {
         return intValue == null? 0 : intValue;
     }
 
+    /**
+     * Get the keyset pagination token (if any).
+     */
+    public String getQueryPageToken() {
+        return (String)getQueryParam(AbstractAcNbiCrudService.QUERY_KEYWORD_PAGE_TOKEN);
+    }
+
+    /**
+     * Get the query "keyset" value (whether the client opts in for keyset pagination from the first page).
+     */
+    public boolean getQueryKeyset() {
+        Boolean keyset = (Boolean)getQueryParam(AbstractAcNbiCrudService.QUERY_KEYWORD_KEYSET);
+        return keyset == null? false : keyset;
+    }
+
+    /**
+     * Get the query "pretty" value (pretty-print the records of chunked responses).
+     */
+    public boolean getQueryPretty() {
+        Boolean pretty = (Boolean)getQueryParam(AbstractAcNbiCrudService.QUERY_KEYWORD_PRETTY);
+        return pretty == null? false : pretty;
+    }
+
     /**
      * Get the query "brief" value.
      */
@@ -315,6 +347,24 @@ public class AcsNbiRequest {
         return brief == null? false : brief;
     }
 
+    /**
+     * Get the query "approx" value (whether an estimated count is acceptable).
+     */
+    public boolean getQueryApprox() {
+        Boolean approx = (Boolean)getQueryParam(AbstractAcNbiCrudService.QUERY_KEYWORD_APPROX);
+        return approx == null? false : approx;
+    }
+
+    /**
+     * Get the remaining time budget (in ms) of this request, to be passed on to the MongoDB queries as "maxTimeMS",
+     * so that the queries are aborted once the caller is no longer waiting for the results.
+     *
+     * The result may be 0 or negative if the budget has already run out.
+     */
+    public long getQueryTimeBudget() {
+        return AcsConfigProperties.NBI_REQUEST_TIME_BUDGET * 1000L - (System.currentTimeMillis() - createTime);
+    }
+
     /**
      * Get Service Data.
      * @param <T>
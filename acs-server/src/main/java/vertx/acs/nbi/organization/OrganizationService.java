@@ -157,7 +157,7 @@ public class OrganizationService extends AbstractAcNbiCrudService {
          * Further validation
          */
         final String orgId = nbiRequest.body.getString(AcsConstants.FIELD_NAME_ID);
-        Organization existingOrg = (Organization)organizationCache.hashMap.get(orgId);
+        Organization existingOrg = organizationCache.getOrgById(orgId);
         switch (crudType) {
             case Create:
                 if (existingOrg != null) {
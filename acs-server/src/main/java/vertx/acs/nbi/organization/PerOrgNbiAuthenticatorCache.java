@@ -26,6 +26,14 @@ public class PerOrgNbiAuthenticatorCache extends AbstractLocalCache {
         );
     }
 
+    /**
+     * The organizations contain the ACS/API credentials, which shall not be saved into local disk snapshots.
+     */
+    @Override
+    public boolean isDiskSnapshotAllowed() {
+        return false;
+    }
+
     /**
      * Build actual index String by the raw JSON Object.
      *
@@ -51,6 +59,6 @@ public class PerOrgNbiAuthenticatorCache extends AbstractLocalCache {
      * @param authString
      */
     public PerOrgNbiAuthenticator getAuthenticatorByAuthString(String authString) {
-        return (PerOrgNbiAuthenticator)hashMap.get(authString);
+        return get(authString);
     }
 }
@@ -74,7 +74,7 @@ public abstract class AbstractProfileService extends AbstractAcNbiCrudService{
                             new Handler<Long>() {
                                 @Override
                                 public void handle(Long count) {
-                                    if (childProfiles.size() != count) {
+                                    if (count == null || childProfiles.size() != count) {
                                         String error = "One or more child profile(s) do not exist!";
                                         log.error(error + " (expecting " + childProfiles.size()
                                                 + ", got " + count + ")");
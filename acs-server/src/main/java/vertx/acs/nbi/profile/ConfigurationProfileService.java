@@ -3,6 +3,7 @@ package vertx.acs.nbi.profile;
 import vertx.VertxException;
 import vertx.VertxJsonUtils;
 import vertx.VertxMongoUtils;
+import vertx.acs.cache.AcsSharedCaches;
 import vertx.acs.nbi.model.AcsNbiRequest;
 import vertx.cache.ConfigurationCategoryCache;
 import vertx.model.*;
@@ -39,14 +40,9 @@ public class ConfigurationProfileService extends AbstractProfileService{
         super.start(vertx);
 
         /**
-         * Initialize Configuration Category Cache
+         * Use the JVM-wide shared Configuration Category Cache
          */
-        configurationCategoryCache = new ConfigurationCategoryCache(
-                vertx,
-                AcsConstants.VERTX_ADDRESS_ACS_CONFIG_CATEGORY_CRUD,
-                ConfigurationCategory.DB_COLLECTION_NAME,
-                ConfigurationCategory.class.getSimpleName()
-        );
+        configurationCategoryCache = AcsSharedCaches.getConfigurationCategoryCache();
     }
 
     /**
@@ -21,7 +21,7 @@ import io.vertx.core.json.JsonObject;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.SortedMap;
 
 /**
  * Project:  844e_mvp
@@ -442,7 +442,7 @@ public class ServicePlanService extends AbstractAcNbiCrudService {
         JsonObject videoServiceProfile = null;
         JsonObject voiceServiceProfile = null;
 
-        TreeMap perOrgPassiveWorkflows = passiveWorkflowCache.getPerOrgTreeMap(orgId);
+        SortedMap<String, Object> perOrgPassiveWorkflows = passiveWorkflowCache.getPerOrgTreeMap(orgId);
         if (perOrgPassiveWorkflows != null) {
             /**
              * Look up all passive workflows in the cache to find the service profiles
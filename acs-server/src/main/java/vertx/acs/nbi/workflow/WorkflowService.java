@@ -10,9 +10,7 @@ import vertx.VertxMongoUtils;
 import vertx.acs.nbi.AbstractAcNbiCrudService;
 import vertx.acs.nbi.model.AcsNbiRequest;
 import vertx.acs.worker.workflow.ActiveWorkflowTaskWorker;
-import vertx.acs.worker.workflow.WorkflowCpeTracker;
-import vertx.cache.ConfigurationProfileCache;
-import vertx.cache.GroupCache;
+import vertx.acs.worker.workflow.WorkflowProgressCounters;
 import vertx.model.*;
 import vertx.util.AcsConstants;
 import io.netty.handler.codec.http.HttpResponseStatus;
@@ -84,26 +82,6 @@ public class WorkflowService extends AbstractAcNbiCrudService {
          */
         RedisOptions options = new RedisOptions().setHost(VertxConfigProperties.redisHost).setPort(VertxConfigProperties.redisPort);
         redisClient = RedisClient.create(vertx,options);
-
-        /**
-         * Initialize Configuration Profile Cache
-         */
-        configurationProfileCache = new ConfigurationProfileCache(
-                vertx,
-                AcsConstants.VERTX_ADDRESS_ACS_CONFIG_PROFILE_CRUD,
-                ConfigurationProfile.DB_COLLECTION_NAME,
-                ConfigurationProfile.class.getSimpleName()
-        );
-
-        /**
-         * Initialize Group Cache
-         */
-        groupCache = new GroupCache(
-                vertx,
-                AcsConstants.VERTX_ADDRESS_ACS_GROUP_CRUD,
-                CpeGroup.DB_COLLECTION_NAME,
-                CpeGroup.class.getSimpleName()
-        );
     }
 
     /**
@@ -545,35 +523,33 @@ public class WorkflowService extends AbstractAcNbiCrudService {
 
         int totalCount = 0;
 
-        // Query all matching CPEs
-        try {
-            VertxMongoUtils.count(
-                    mongoClient,
-                    Cpe.CPE_COLLECTION_NAME,
-                    workflow.getMatcher(groupCache, false),
-                    new Handler<Long>() {
-                        @Override
-                        public void handle(Long count) {
-                            if (count == null || count < 0) {
-                                nbiRequest.sendResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR,
-                                        getServerInternalErrorWithDetails());
+        // Count all matching CPEs (an exact count, which is never answered from the cache)
+        countCache.count(
+                mongoClient,
+                Cpe.CPE_COLLECTION_NAME,
+                workflow.getMatcher(groupCache, false),
+                false,
+                nbiRequest.getQueryTimeBudget(),
+                new Handler<Long>() {
+                    @Override
+                    public void handle(Long count) {
+                        if (count == null || count < 0) {
+                            nbiRequest.sendResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR,
+                                    getServerInternalErrorWithDetails());
+                        } else {
+                            if (count == 0) {
+                                nbiRequest.sendResponse(HttpResponseStatus.BAD_REQUEST, NO_MATCHING_CPE_FOUND);
                             } else {
-                                if (count == 0) {
-                                    nbiRequest.sendResponse(HttpResponseStatus.BAD_REQUEST, NO_MATCHING_CPE_FOUND);
-                                } else {
-                                    // Add total count
-                                    nbiRequest.body.put(Workflow.FIELD_NAME_TOTAL_COUNT, count);
+                                // Add total count
+                                nbiRequest.body.put(Workflow.FIELD_NAME_TOTAL_COUNT, count);
 
-                                    // Resume the CRUD Operation
-                                    postValidation(nbiRequest, crudType);
-                                }
+                                // Resume the CRUD Operation
+                                postValidation(nbiRequest, crudType);
                             }
                         }
                     }
-            );
-        } catch (VertxException e) {
-            e.printStackTrace();
-        }
+                }
+        );
     }
 
     /**
@@ -1184,6 +1160,13 @@ public class WorkflowService extends AbstractAcNbiCrudService {
             } catch (VertxException e) {
                 e.printStackTrace();
             }
+
+            /**
+             * Delete the progress counters
+             */
+            if (id != null) {
+                WorkflowProgressCounters.delete(redisClient, id);
+            }
         }
 
         return super.postDelete(nbiRequest, bSucceeded);
@@ -1258,92 +1241,88 @@ public class WorkflowService extends AbstractAcNbiCrudService {
             }
 
             /**
-             * Run additional query to get counts
+             * Read the live progress counters (and fall back to reconciling them against MongoDB if needed)
              */
-            // Query Result Handler
-            final Handler<Long> countHandler = new Handler<Long>() {
+            // Pending Count Handler
+            final Handler<Long> pendingCountHandler = new Handler<Long>() {
                 @Override
                 public void handle(Long count) {
-                    JsonObject matcher = null;
-                    if (count != null) {
-                        if (!response.containsKey(Workflow.FIELD_NAME_SUCCESS_COUNT)) {
-                            // Received success count
-                            response.put(Workflow.FIELD_NAME_SUCCESS_COUNT, count);
-                            // Query for failure count
-                            matcher = workflow.getMatcherByState(WorkflowCpeTracker.STATE_FAILED);
-                        } else if (!response.containsKey(Workflow.FIELD_NAME_FAILURE_COUNT)) {
-                            // Received failure count
-                            response.put(Workflow.FIELD_NAME_FAILURE_COUNT, count);
-                            // Query for in-progress count
-                            matcher = workflow.getMatcherByState(WorkflowCpeTracker.STATE_IN_PROGRESS);
-                        } else if (!response.containsKey(Workflow.FIELD_NAME_IN_PROGRESS_COUNT)) {
-                            // Received In-Progress count
-                            response.put(Workflow.FIELD_NAME_IN_PROGRESS_COUNT, count);
-
-                            // Try to get pending count if applicable
-                            if (workflow.isActive() && workflow.state.equals(Workflow.STATE_COMPLETED)) {
-                                /**
-                                 * Pending Count for Completed Active Workflows is 0
-                                 */
-                                response.put(Workflow.FIELD_NAME_PENDING_COUNT, 0);
-                            } else {
-                                // Query for pending count
-                                matcher = workflow.getMatcher(groupCache, true);
-                            }
-                        } else {
-                            // Received pending count
-                            response.put(Workflow.FIELD_NAME_PENDING_COUNT, count);
-                        }
+                    if (count == null) {
+                        nbiRequest.sendResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR, MONGODB_TIMED_OUT);
+                        return;
+                    }
 
-                        if (matcher != null) {
-                            // Keep querying
-                            try {
-                                VertxMongoUtils.count(
-                                        mongoClient,
-                                        Cpe.CPE_COLLECTION_NAME,
-                                        matcher,
-                                        this
-                                );
-                            } catch (VertxException e) {
-                                // This should never happen
-                                log.error("Caught exception " + e.getMessage()
-                                        + " when querying counts for workflow " + workflowId
-                                        + " with matcher " + matcher + "!");
-                                nbiRequest.sendResponse(
-                                        HttpResponseStatus.INTERNAL_SERVER_ERROR,
-                                        getServerInternalErrorWithDetails()
-                                );
-                            }
-                        } else {
-                            // Got all individual counts
-                            // Calculate total count
-                            response.put(
-                                    Workflow.FIELD_NAME_TOTAL_COUNT,
-                                    response.getLong(Workflow.FIELD_NAME_SUCCESS_COUNT)
-                                            + response.getLong(Workflow.FIELD_NAME_FAILURE_COUNT)
-                                            + response.getLong(Workflow.FIELD_NAME_IN_PROGRESS_COUNT)
-                                            + response.getLong(Workflow.FIELD_NAME_PENDING_COUNT)
+                    // Got all individual counts
+                    // Calculate total count
+                    response.put(Workflow.FIELD_NAME_PENDING_COUNT, count);
+                    response.put(
+                            Workflow.FIELD_NAME_TOTAL_COUNT,
+                            response.getLong(Workflow.FIELD_NAME_SUCCESS_COUNT)
+                                    + response.getLong(Workflow.FIELD_NAME_FAILURE_COUNT)
+                                    + response.getLong(Workflow.FIELD_NAME_IN_PROGRESS_COUNT)
+                                    + response.getLong(Workflow.FIELD_NAME_PENDING_COUNT)
+                    );
+                    nbiRequest.sendResponse(HttpResponseStatus.OK, response);
+                }
+            };
+
+            // Progress Counters Handler
+            final Handler<JsonObject> countersHandler = new Handler<JsonObject>() {
+                @Override
+                public void handle(JsonObject counters) {
+                    if (counters == null) {
+                        log.error("Failed to get progress counters for workflow " + workflowId + "!");
+                        nbiRequest.sendResponse(
+                                HttpResponseStatus.INTERNAL_SERVER_ERROR,
+                                getServerInternalErrorWithDetails()
+                        );
+                        return;
+                    }
+                    response.mergeIn(counters);
+
+                    // Try to get pending count if applicable
+                    if (workflow.isActive() && workflow.state.equals(Workflow.STATE_COMPLETED)) {
+                        /**
+                         * Pending Count for Completed Active Workflows is 0
+                         */
+                        pendingCountHandler.handle(0L);
+                    } else {
+                        // Query for pending count
+                        try {
+                            VertxMongoUtils.count(
+                                    mongoClient,
+                                    Cpe.CPE_COLLECTION_NAME,
+                                    workflow.getMatcher(groupCache, true),
+                                    pendingCountHandler
+                            );
+                        } catch (VertxException e) {
+                            // This should never happen
+                            log.error("Caught exception " + e.getMessage()
+                                    + " when querying pending count for workflow " + workflowId + "!");
+                            nbiRequest.sendResponse(
+                                    HttpResponseStatus.INTERNAL_SERVER_ERROR,
+                                    getServerInternalErrorWithDetails()
                             );
-                            nbiRequest.sendResponse(HttpResponseStatus.OK, response);
                         }
                     }
                 }
             };
 
-            // Get the first count (success)
-            try {
-                VertxMongoUtils.count(
-                        mongoClient,
-                        Cpe.CPE_COLLECTION_NAME,
-                        workflow.getMatcherByState(WorkflowCpeTracker.STATE_SUCCEEDED),
-                        countHandler
-                );
-            } catch (VertxException e) {
-                // This should never happen
-                log.error("Caught exception " + e.getMessage() + " when querying counts for workflow " + workflow.id);
-                nbiRequest.sendResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR, getServerInternalErrorWithDetails());
-                return null;
-            }
+            WorkflowProgressCounters.read(
+                    redisClient,
+                    workflowId,
+                    new Handler<JsonObject>() {
+                        @Override
+                        public void handle(JsonObject counters) {
+                            if (counters != null) {
+                                countersHandler.handle(counters);
+                            } else {
+                                // Missing (the counters are only reconciled by the workflow workers)
+                                WorkflowProgressCounters.count(mongoClient, workflow, countersHandler);
+                            }
+                        }
+                    }
+            );
 
             /**
              * Return null to delay the response
@@ -1382,6 +1361,9 @@ public class WorkflowService extends AbstractAcNbiCrudService {
             return;
         }
 
+        // A workflow may have changed from passive to active, so always record the change
+        recordCacheChange(nbiRequest);
+
         Workflow workflow = (Workflow)nbiRequest.serviceData;
         if (workflow == null || workflow.isActive()) {
             return;
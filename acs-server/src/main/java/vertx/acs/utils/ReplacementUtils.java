@@ -17,7 +17,7 @@ import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonObject;
 
-import java.util.TreeMap;
+import java.util.SortedMap;
 
 /**
  * Project:  cwmp (aka CCFG)
@@ -44,7 +44,7 @@ public class ReplacementUtils {
             final EventBus eventBus,
             final MongoClient mongoClient,
             final RedisClient redisClient,
-            final TreeMap<String, Workflow> discoveryWorkFlowHashMap,
+            final SortedMap<String, Object> discoveryWorkFlowHashMap,
             final JsonObject cpe,
             final String orgId,
             final String cpeKey,
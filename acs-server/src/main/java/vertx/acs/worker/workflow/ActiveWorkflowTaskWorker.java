@@ -203,6 +203,10 @@ public class ActiveWorkflowTaskWorker extends AbstractSxaTaskImpl{
                             log.info("Cancelling the window close timer...");
                             vertx.cancelTimer(windowCloseTimer);
                         }
+                        if (countersReconcileTimer != null) {
+                            vertx.cancelTimer(countersReconcileTimer);
+                            countersReconcileTimer = null;
+                        }
 
                         /**
                          * Leave all the CPE tracks alone for now
@@ -270,6 +274,11 @@ public class ActiveWorkflowTaskWorker extends AbstractSxaTaskImpl{
      * Window Close Timer
      */
     public Long windowCloseTimer = null;
+
+    /**
+     * Progress Counters Reconcile Timer
+     */
+    public Long countersReconcileTimer = null;
     public boolean bWindowClosed = false;
 
     /**
@@ -289,6 +298,25 @@ public class ActiveWorkflowTaskWorker extends AbstractSxaTaskImpl{
      */
     @Override
     public void run() {
+        /**
+         * Reconcile the progress counters now and periodically while running
+         */
+        WorkflowProgressCounters.reconcile(mongoClient, activeWorkflowWorkerVertice.redisClient, workflow, false);
+        countersReconcileTimer = vertx.setPeriodic(
+                WorkflowProgressCounters.RECONCILE_INTERVAL,
+                new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        WorkflowProgressCounters.reconcile(
+                                mongoClient,
+                                activeWorkflowWorkerVertice.redisClient,
+                                workflow,
+                                false
+                        );
+                    }
+                }
+        );
+
         /**
          * Schedule the task for next window if applicable
          */
@@ -679,6 +707,7 @@ public class ActiveWorkflowTaskWorker extends AbstractSxaTaskImpl{
                                         new WorkflowCpeTracker(
                                                 vertx,
                                                 mongoClient,
+                                                activeWorkflowWorkerVertice.redisClient,
                                                 aCpe,
                                                 workflow,
                                                 cpeExecResultHandler
@@ -734,6 +763,7 @@ public class ActiveWorkflowTaskWorker extends AbstractSxaTaskImpl{
                         new WorkflowCpeTracker(
                                 vertx,
                                 mongoClient,
+                                activeWorkflowWorkerVertice.redisClient,
                                 aCpe,
                                 workflow,
                                 cpeExecResultHandler
@@ -788,6 +818,10 @@ public class ActiveWorkflowTaskWorker extends AbstractSxaTaskImpl{
             vertx.cancelTimer(windowCloseTimer);
             windowCloseTimer = null;
         }
+        if (countersReconcileTimer != null) {
+            vertx.cancelTimer(countersReconcileTimer);
+            countersReconcileTimer = null;
+        }
 
         // Complete the "task" from task service perspective
         persistSucceededTask();
@@ -814,6 +848,9 @@ public class ActiveWorkflowTaskWorker extends AbstractSxaTaskImpl{
                 nextScheduledTask = null;
             }
 
+            // Reconcile the progress counters now that all CPEs are done (they expire after a while)
+            WorkflowProgressCounters.reconcile(mongoClient, activeWorkflowWorkerVertice.redisClient, workflow, true);
+
             // Update workflow status
             setWorkflowState = ALL_DONE;
             endTime = VertxMongoUtils.addTimeStamp(null, Workflow.FIELD_NAME_END);
@@ -5,9 +5,8 @@ import io.vertx.redis.RedisOptions;
 import vertx.VertxConfigProperties;
 import vertx.VertxConstants;
 import vertx.VertxUtils;
+import vertx.acs.cache.AcsSharedCaches;
 import vertx.cache.GroupCache;
-import vertx.model.CpeGroup;
-import vertx.util.AcsConstants;
 import vertx.taskmgmt.worker.WorkerVertice;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,14 +49,9 @@ public class ActiveWorkflowWorkerVertice extends WorkerVertice {
 
 
         /**
-         * Initialize Group Cache
+         * Use the JVM-wide shared Group Cache
          */
-        groupCache = new GroupCache(
-                vertx,
-                AcsConstants.VERTX_ADDRESS_ACS_GROUP_CRUD,
-                CpeGroup.DB_COLLECTION_NAME,
-                CpeGroup.class.getSimpleName()
-        );
+        groupCache = AcsSharedCaches.getGroupCache();
     }
 
     /**
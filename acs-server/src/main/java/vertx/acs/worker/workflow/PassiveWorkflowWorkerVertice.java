@@ -8,6 +8,7 @@ import vertx.VertxConfigProperties;
 import vertx.VertxException;
 import vertx.VertxConstants;
 import vertx.VertxMongoUtils;
+import vertx.acs.cache.AcsSharedCaches;
 import vertx.acs.cache.PassiveWorkflowCache;
 import vertx.acs.utils.ReplacementUtils;
 import vertx.model.*;
@@ -20,7 +21,7 @@ import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
-import java.util.TreeMap;
+import java.util.SortedMap;
 
 /**
  * Project:  cwmp
@@ -77,14 +78,9 @@ public class PassiveWorkflowWorkerVertice extends AbstractVerticle{
         mongoClient = MongoClient.createShared(vertx,VertxMongoUtils.getModMongoPersistorConfig());
 
         /**
-         * Initialize Local passive workflow cache
+         * Use the JVM-wide shared passive workflow cache
          */
-        passiveWorkflowCache = new PassiveWorkflowCache(
-                vertx,
-                AcsConstants.VERTX_ADDRESS_WORKFLOW_CRUD,
-                Workflow.DB_COLLECTION_NAME,
-                "passive-workflow"
-        );
+        passiveWorkflowCache = AcsSharedCaches.getPassiveWorkflowCache();
 
         /**
          * Start a 1-second timer to read the CPE-discovery queue from Redis
@@ -98,6 +94,24 @@ public class PassiveWorkflowWorkerVertice extends AbstractVerticle{
                     }
                 }
         );
+
+        /**
+         * Reconcile the progress counters of the in-progress passive workflows periodically
+         */
+        vertx.setPeriodic(
+                WorkflowProgressCounters.RECONCILE_INTERVAL,
+                new Handler<Long>() {
+                    @Override
+                    public void handle(Long event) {
+                        for (Object aPojo : passiveWorkflowCache.snapshot.pojos.values()) {
+                            Workflow aWorkflow = (Workflow) aPojo;
+                            if (aWorkflow != null && Workflow.STATE_IN_PROGRESS.equals(aWorkflow.state)) {
+                                WorkflowProgressCounters.reconcile(mongoClient, redisClient, aWorkflow, false);
+                            }
+                        }
+                    }
+                }
+        );
     }
 
     /**
@@ -170,7 +184,7 @@ public class PassiveWorkflowWorkerVertice extends AbstractVerticle{
                                         if (VertxMongoUtils.FIND_ONE_TIMED_OUT.equals(oldDevice)
                                                 || oldDevice == null) {
                                             // Not replacing any existing device
-                                            traverseAllWorkflows(orgId, cpeKey, cpe, null);
+                                            loadParamValuesAndTraverse(orgId, cpeKey, cpe, null);
                                         } else {
                                             outstandingDiscoverSessions --;
 
@@ -253,7 +267,7 @@ public class PassiveWorkflowWorkerVertice extends AbstractVerticle{
                      * Do not check for replacement in this case
                      */
                     log.info("Received a re-discover event for " + cpeKey);
-                    traverseAllWorkflows(orgId, cpeKey, cpe, null);
+                    loadParamValuesAndTraverse(orgId, cpeKey, cpe, null);
                 }
             } catch (Exception ex) {
                 ex.printStackTrace();
@@ -326,6 +340,67 @@ public class PassiveWorkflowWorkerVertice extends AbstractVerticle{
         }
     }
 
+    /**
+     * The CPE discovery events only carry the device id fields, so read the "paramValues" from DB first if any passive
+     * workflow of this org has a group filter on them, then traverse all passive workflows.
+     *
+     * The "paramValues" are re-read before each traversal as the previous workflow may have changed them, and are not
+     * passed on to the workflow actions.
+     *
+     * @param orgId
+     * @param cpeKey
+     * @param cpe
+     * @param skip A JSON Array that contains all workflows that have already been executed for this CPE
+     */
+    public void loadParamValuesAndTraverse(
+            final String orgId,
+            final String cpeKey,
+            final JsonObject cpe,
+            final JsonArray skip) {
+        boolean bNeedParamValues = false;
+        SortedMap<String, Object> perOrgTreeMap = passiveWorkflowCache.getPerOrgTreeMap(orgId);
+        if (perOrgTreeMap != null && !cpe.containsKey(Cpe.DB_FIELD_NAME_PARAM_VALUES)) {
+            for (Object aPojo : perOrgTreeMap.values()) {
+                if (aPojo != null && ((Workflow) aPojo).needsHeavyFields()) {
+                    bNeedParamValues = true;
+                    break;
+                }
+            }
+        }
+        if (!bNeedParamValues) {
+            traverseAllWorkflows(orgId, cpeKey, cpe, skip);
+            return;
+        }
+
+        try {
+            VertxMongoUtils.findOne(
+                    mongoClient,
+                    Cpe.CPE_COLLECTION_NAME,
+                    new JsonObject().put(AcsConstants.FIELD_NAME_ID, cpeKey),
+                    new Handler<JsonObject>() {
+                        @Override
+                        public void handle(JsonObject result) {
+                            if (result == null || VertxMongoUtils.FIND_ONE_TIMED_OUT.equals(result)) {
+                                // The workflows with "paramValues" filters will not match (see Workflow.matchCpe())
+                                log.error(cpeKey + ": Failed to read paramValues from DB!");
+                            } else {
+                                JsonObject paramValues = result.getJsonObject(Cpe.DB_FIELD_NAME_PARAM_VALUES);
+                                cpe.put(
+                                        Cpe.DB_FIELD_NAME_PARAM_VALUES,
+                                        paramValues == null ? new JsonObject() : paramValues
+                                );
+                            }
+                            traverseAllWorkflows(orgId, cpeKey, cpe, skip);
+                        }
+                    },
+                    new JsonObject().put(Cpe.DB_FIELD_NAME_PARAM_VALUES, 1)
+            );
+        } catch (VertxException e) {
+            log.error(cpeKey + ": Failed to read paramValues from DB due to " + e.getMessage() + "!");
+            traverseAllWorkflows(orgId, cpeKey, cpe, skip);
+        }
+    }
+
     /**
      * Traverse all passive workflows and execute all matching workflows
      *
@@ -335,7 +410,7 @@ public class PassiveWorkflowWorkerVertice extends AbstractVerticle{
      * @param skip A JSON Array that contains all workflows that have already been executed for this CPE
      */
     public void traverseAllWorkflows(final String orgId, final String cpeKey, final JsonObject cpe, JsonArray skip) {
-        TreeMap perOrgTreeMap = passiveWorkflowCache.getPerOrgTreeMap(orgId);
+        SortedMap<String, Object> perOrgTreeMap = passiveWorkflowCache.getPerOrgTreeMap(orgId);
         if (perOrgTreeMap != null) {
             for (Object aPojo : perOrgTreeMap.values()) {
                 Workflow aWorkflow = (Workflow) aPojo;
@@ -357,9 +432,11 @@ public class PassiveWorkflowWorkerVertice extends AbstractVerticle{
                 }
 
                 // Found a match
+                cpe.remove(Cpe.DB_FIELD_NAME_PARAM_VALUES);
                 new WorkflowCpeTracker(
                         vertx,
                         mongoClient,
+                        redisClient,
                         cpe.put(FIELD_WORKFLOW_ID, aWorkflow.id)
                                 .put(FIELD_SKIP_WORKFLOWS, skip == null ? new JsonArray() : skip.add(aWorkflow.id)),
                         aWorkflow,
@@ -433,7 +510,7 @@ public class PassiveWorkflowWorkerVertice extends AbstractVerticle{
         @Override
         public void handle(JsonObject cpeExecResult) {
             // Try to execute the next workflow
-            traverseAllWorkflows(
+            loadParamValuesAndTraverse(
                     cpeExecResult.getString(AcsConstants.FIELD_NAME_ORG_ID),
                     cpeExecResult.getString(AcsConstants.FIELD_NAME_ID),
                     cpeExecResult,
@@ -1,6 +1,7 @@
 package vertx.acs.worker.workflow;
 
 import io.vertx.ext.mongo.MongoClient;
+import io.vertx.redis.RedisClient;
 import vertx.VertxException;
 import vertx.VertxJsonUtils;
 import vertx.VertxMongoUtils;
@@ -88,10 +89,15 @@ public class WorkflowCpeTracker {
 
     public MongoClient mongoClient;
 
+    // Redis Client (for updating the workflow progress counters)
+    public RedisClient redisClient;
+
     /**
      * Constructor.
      *
      * @param vertx
+     * @param mongoClient
+     * @param redisClient
      * @param cpe
      * @param workflow
      * @param finalHandler
@@ -99,10 +105,13 @@ public class WorkflowCpeTracker {
     public WorkflowCpeTracker(
             Vertx vertx,
             MongoClient mongoClient,
+            RedisClient redisClient,
             final JsonObject cpe,
             final Workflow workflow,
             final Handler<JsonObject> finalHandler) {
         this.vertx = vertx;
+        this.mongoClient = mongoClient;
+        this.redisClient = redisClient;
         this.finalHandler = finalHandler;
         this.cpe = cpe;
         this.cpeId = cpe.getString(AcsConstants.FIELD_NAME_ID);
@@ -172,6 +181,7 @@ public class WorkflowCpeTracker {
                                 // Start execution
                                 log.info("Start executing workflow " + workflow.id + " towards CPE " + cpeId);
                                 inProgress = true;
+                                WorkflowProgressCounters.onCpeStarted(redisClient, workflow.id);
                                 doFirstAction();
                             }
                         }
@@ -379,6 +389,17 @@ public class WorkflowCpeTracker {
                                     new Handler<Long> () {
                                         @Override
                                         public void handle(Long event) {
+                                            // Update the progress counters if the CPE has reached a final state
+                                            if (event != null) {
+                                                if (!HttpResponseStatus.OK.toString().equals(finalStatusCode)) {
+                                                    WorkflowProgressCounters.onCpeCompleted(
+                                                            redisClient, workflow.id, false);
+                                                } else if (actionChain.size() == 0) {
+                                                    WorkflowProgressCounters.onCpeCompleted(
+                                                            redisClient, workflow.id, true);
+                                                }
+                                            }
+
                                             if (!HttpResponseStatus.OK.toString().equals(finalStatusCode)) {
                                                 // Failed, call the final handler with error status code
                                                 finalHandler.handle(cpe.put(AcsConstants.FIELD_NAME_STATUS_CODE, finalStatusCode));
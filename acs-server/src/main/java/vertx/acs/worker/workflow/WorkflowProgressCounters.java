@@ -0,0 +1,378 @@
+package vertx.acs.worker.workflow;
+
+import io.vertx.ext.mongo.MongoClient;
+import io.vertx.redis.RedisClient;
+import vertx.VertxException;
+import vertx.VertxMongoUtils;
+import vertx.VertxRedisUtils;
+import vertx.model.Cpe;
+import vertx.model.Workflow;
+import vertx.util.AcsConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Project:  cwmp
+ *
+ * Live Workflow Progress Counters.
+ *
+ * The workflow workers maintain one Redis Hash per workflow with the success/failure/in-progress counts, which are
+ * incremented/decremented (via HINCRBY) as the CPEs change state. The NBI reads the counts with a single HGETALL
+ * instead of counting the CPE collection by state.
+ *
+ * Since the counters can drift (for example when a worker dies in the middle of a workflow), the workflow workers
+ * periodically reconcile them against the exec logs in the CPE collection (the NBI only reads them, and counts the
+ * CPE collection itself if they are missing). A snapshot of the counters is taken before counting, and the differences
+ * between the counts and the snapshot are added atomically by a Lua script, so the increments made by the other
+ * workers while reconciling are not lost. A generation field guards against two workers correcting the same counters
+ * from the same snapshot.
+ *
+ * The counters expire COMPLETED_TTL after the workflow has completed.
+ *
+ * @author: ronyang
+ */
+public class WorkflowProgressCounters {
+    private static final Logger log = LoggerFactory.getLogger(WorkflowProgressCounters.class.getName());
+
+    /**
+     * Hash Field that holds the last reconcile time (in ms)
+     */
+    public static final String FIELD_NAME_RECONCILE_TIME = "reconcileTime";
+
+    /**
+     * Hash Field that holds the generation, which is incremented by each reconciliation
+     */
+    public static final String FIELD_NAME_GENERATION = "generation";
+
+    /**
+     * Reconcile the counters against MongoDB every 10 minutes while the workflow is running
+     */
+    public static final long RECONCILE_INTERVAL = 600000;
+
+    /**
+     * Keep the counters for 1 day after the workflow has completed
+     */
+    public static final long COMPLETED_TTL = 24 * 3600 * 1000;
+
+    /**
+     * Lua Script that applies the corrections.
+     *
+     * KEYS[1]: Hash of the counters
+     * ARGV[1]: generation of the snapshot ("" if none), ARGV[2]: reconcile time, ARGV[3]: TTL (in ms, 0 for none),
+     * ARGV[4..]: triples of counter field, delta and count (the count overwrites a counter that is not a number)
+     *
+     * Returns 1 if applied, or 0 if the generation has changed since the snapshot.
+     */
+    public static final String APPLY_CORRECTIONS_SCRIPT =
+            "if (redis.call('HGET', KEYS[1], '" + FIELD_NAME_GENERATION + "') or '') ~= ARGV[1] then\n"
+            + "  return 0\n"
+            + "end\n"
+            + "for i = 4, #ARGV, 3 do\n"
+            + "  if tonumber(redis.call('HGET', KEYS[1], ARGV[i]) or '0') then\n"
+            + "    redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1])\n"
+            + "  else\n"
+            + "    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 2])\n"
+            + "  end\n"
+            + "end\n"
+            + "redis.call('HINCRBY', KEYS[1], '" + FIELD_NAME_GENERATION + "', 1)\n"
+            + "redis.call('HSET', KEYS[1], '" + FIELD_NAME_RECONCILE_TIME + "', ARGV[2])\n"
+            + "if tonumber(ARGV[3]) > 0 then\n"
+            + "  redis.call('PEXPIRE', KEYS[1], ARGV[3])\n"
+            + "end\n"
+            + "return 1\n";
+
+    /**
+     * The counter fields, and the CPE exec states they are counting
+     */
+    public static final String[] COUNTER_FIELDS = {
+            Workflow.FIELD_NAME_SUCCESS_COUNT,
+            Workflow.FIELD_NAME_FAILURE_COUNT,
+            Workflow.FIELD_NAME_IN_PROGRESS_COUNT
+    };
+    public static final String[] COUNTER_STATES = {
+            WorkflowCpeTracker.STATE_SUCCEEDED,
+            WorkflowCpeTracker.STATE_FAILED,
+            WorkflowCpeTracker.STATE_IN_PROGRESS
+    };
+
+    /**
+     * Get the Redis Key of the counters of a workflow.
+     *
+     * @param workflowId
+     */
+    public static String getRedisKey(String workflowId) {
+        return AcsConstants.REDIS_KEY_WORKFLOW_COUNTERS_PREFIX + workflowId;
+    }
+
+    /**
+     * A CPE has started executing a workflow.
+     *
+     * @param redisClient
+     * @param workflowId
+     */
+    public static void onCpeStarted(RedisClient redisClient, String workflowId) {
+        new VertxRedisUtils.Batch(redisClient)
+                .hincrby(getRedisKey(workflowId), Workflow.FIELD_NAME_IN_PROGRESS_COUNT, 1)
+                .exec(null);
+    }
+
+    /**
+     * A CPE has completed executing a workflow (either succeeded or failed).
+     *
+     * @param redisClient
+     * @param workflowId
+     * @param bSucceeded
+     */
+    public static void onCpeCompleted(RedisClient redisClient, String workflowId, boolean bSucceeded) {
+        String key = getRedisKey(workflowId);
+        new VertxRedisUtils.Batch(redisClient)
+                .hincrby(key, Workflow.FIELD_NAME_IN_PROGRESS_COUNT, -1)
+                .hincrby(
+                        key,
+                        bSucceeded? Workflow.FIELD_NAME_SUCCESS_COUNT : Workflow.FIELD_NAME_FAILURE_COUNT,
+                        1
+                )
+                .exec(null);
+    }
+
+    /**
+     * Read the counters of a workflow.
+     *
+     * The handler is called with a JSON Object that contains the success/failure/in-progress counts, or null if the
+     * counters do not exist (or have never been reconciled, or failed to read from Redis).
+     *
+     * @param redisClient
+     * @param workflowId
+     * @param handler
+     */
+    public static void read(RedisClient redisClient, final String workflowId, final Handler<JsonObject> handler) {
+        VertxRedisUtils.hgetall(
+                redisClient,
+                getRedisKey(workflowId),
+                new Handler<JsonObject>() {
+                    @Override
+                    public void handle(JsonObject rawCounters) {
+                        if (rawCounters == null || !rawCounters.containsKey(FIELD_NAME_RECONCILE_TIME)) {
+                            handler.handle(null);
+                            return;
+                        }
+
+                        try {
+                            JsonObject counters = new JsonObject();
+                            for (String field : COUNTER_FIELDS) {
+                                long count = Long.valueOf(rawCounters.getString(field, "0"));
+                                counters.put(field, count < 0? 0 : count);
+                            }
+                            handler.handle(counters);
+                        } catch (Exception ex) {
+                            log.error(workflowId + ": Invalid counters " + rawCounters.encode() + "!");
+                            handler.handle(null);
+                        }
+                    }
+                }
+        );
+    }
+
+    /**
+     * Count the CPE exec logs of a workflow by state in MongoDB (without touching the counters in Redis).
+     *
+     * The handler is called with the counts, or null if any of the MongoDB counts failed.
+     *
+     * @param mongoClient
+     * @param workflow
+     * @param handler
+     */
+    public static void count(MongoClient mongoClient, final Workflow workflow, final Handler<JsonObject> handler) {
+        final JsonObject counters = new JsonObject();
+
+        for (int i = 0; i < COUNTER_FIELDS.length; i ++) {
+            final String field = COUNTER_FIELDS[i];
+            try {
+                VertxMongoUtils.count(
+                        mongoClient,
+                        Cpe.CPE_COLLECTION_NAME,
+                        workflow.getMatcherByState(COUNTER_STATES[i]),
+                        new Handler<Long>() {
+                            @Override
+                            public void handle(Long count) {
+                                if (counters.containsKey(AcsConstants.FIELD_NAME_ERROR)) {
+                                    // Already failed
+                                    return;
+                                }
+
+                                if (count == null || count < 0) {
+                                    log.error(workflow.id + ": Failed to count " + field + "!");
+                                    counters.put(AcsConstants.FIELD_NAME_ERROR, true);
+                                    handler.handle(null);
+                                    return;
+                                }
+
+                                counters.put(field, count);
+                                if (counters.size() == COUNTER_FIELDS.length) {
+                                    // Got all the counts
+                                    handler.handle(counters);
+                                }
+                            }
+                        }
+                );
+            } catch (VertxException e) {
+                log.error(workflow.id + ": Failed to count " + field + " due to " + e.getMessage() + "!");
+                if (!counters.containsKey(AcsConstants.FIELD_NAME_ERROR)) {
+                    counters.put(AcsConstants.FIELD_NAME_ERROR, true);
+                    handler.handle(null);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reconcile the counters of a workflow by counting the CPE exec logs in MongoDB.
+     *
+     * Called by the workflow workers only (periodically while the workflow is running, and once when it completes).
+     * The periodic runs are skipped if another worker has reconciled the same workflow within the last half interval.
+     *
+     * @param mongoClient
+     * @param redisClient
+     * @param workflow
+     * @param bCompleted    Whether the workflow has completed (the counters then expire after COMPLETED_TTL)
+     */
+    public static void reconcile(
+            final MongoClient mongoClient,
+            final RedisClient redisClient,
+            final Workflow workflow,
+            final boolean bCompleted) {
+        if (bCompleted) {
+            snapshotAndReconcile(mongoClient, redisClient, workflow, COMPLETED_TTL);
+            return;
+        }
+
+        VertxRedisUtils.set(
+                redisClient,
+                AcsConstants.REDIS_KEY_WORKFLOW_COUNTERS_LOCK_PREFIX + workflow.id,
+                String.valueOf(System.currentTimeMillis()),
+                RECONCILE_INTERVAL / 2,
+                true,
+                null,
+                new Handler<String>() {
+                    @Override
+                    public void handle(String result) {
+                        if (VertxRedisUtils.OK.equals(result)) {
+                            snapshotAndReconcile(mongoClient, redisClient, workflow, 0);
+                        }
+                    }
+                }
+        );
+    }
+
+    /**
+     * Take a snapshot of the counters, count the CPE exec logs in MongoDB, and then correct the counters by the
+     * differences between the counts and the snapshot (see APPLY_CORRECTIONS_SCRIPT).
+     *
+     * @param mongoClient
+     * @param redisClient
+     * @param workflow
+     * @param ttl           TTL of the counters in ms (0 for none)
+     */
+    static void snapshotAndReconcile(
+            final MongoClient mongoClient,
+            final RedisClient redisClient,
+            final Workflow workflow,
+            final long ttl) {
+        VertxRedisUtils.hgetall(
+                redisClient,
+                getRedisKey(workflow.id),
+                new Handler<JsonObject>() {
+                    @Override
+                    public void handle(final JsonObject snapshot) {
+                        if (snapshot == null) {
+                            log.error(workflow.id + ": Failed to read the counters! Not reconciled.");
+                            return;
+                        }
+
+                        count(
+                                mongoClient,
+                                workflow,
+                                new Handler<JsonObject>() {
+                                    @Override
+                                    public void handle(JsonObject counts) {
+                                        if (counts != null) {
+                                            applyCorrections(redisClient, workflow.id, snapshot, counts, ttl);
+                                        }
+                                    }
+                                }
+                        );
+                    }
+                }
+        );
+    }
+
+    /**
+     * Correct the counters of a workflow towards the given counts.
+     *
+     * The differences between the counts and the snapshot taken before counting are added in one Lua script, which
+     * keeps every increment made since the snapshot. The script does nothing if the generation has changed since the
+     * snapshot (i.e. another worker has reconciled the counters in the meantime).
+     *
+     * @param redisClient
+     * @param workflowId
+     * @param snapshot      The raw counters read before counting
+     * @param counts
+     * @param ttl           TTL of the counters in ms (0 for none)
+     */
+    static void applyCorrections(
+            RedisClient redisClient,
+            final String workflowId,
+            JsonObject snapshot,
+            JsonObject counts,
+            long ttl) {
+        List<String> args = new ArrayList<>();
+        args.add(snapshot.getString(FIELD_NAME_GENERATION, ""));
+        args.add(String.valueOf(System.currentTimeMillis()));
+        args.add(String.valueOf(ttl));
+        for (String field : COUNTER_FIELDS) {
+            long count = counts.getLong(field);
+            long delta;
+            try {
+                delta = count - Long.valueOf(snapshot.getString(field, "0"));
+            } catch (NumberFormatException ex) {
+                // Not a number, will be overwritten
+                delta = count;
+            }
+            args.add(field);
+            args.add(String.valueOf(delta));
+            args.add(String.valueOf(count));
+        }
+
+        redisClient.eval(
+                APPLY_CORRECTIONS_SCRIPT,
+                Collections.singletonList(getRedisKey(workflowId)),
+                args,
+                res -> {
+                    if (res.failed()) {
+                        log.error(workflowId + ": Failed to reconcile the counters! " + res.cause());
+                    } else if (res.result().getLong(0) == 0) {
+                        log.info(workflowId + ": The counters have been reconciled by another worker.");
+                    }
+                }
+        );
+    }
+
+    /**
+     * Delete the counters of a workflow (when the workflow is deleted).
+     *
+     * @param redisClient
+     * @param workflowId
+     */
+    public static void delete(RedisClient redisClient, String workflowId) {
+        new VertxRedisUtils.Batch(redisClient)
+                .del(getRedisKey(workflowId))
+                .exec(null);
+    }
+}
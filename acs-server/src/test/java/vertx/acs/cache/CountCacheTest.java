@@ -0,0 +1,85 @@
+package vertx.acs.cache;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+import vertx.model.CpeDeviceType;
+import vertx.util.AcsConstants;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit Test for {@link CountCache}.
+ *
+ * @author: ronyang
+ */
+public class CountCacheTest {
+    @Test
+    public void testGetOrgIds() {
+        assertEquals(
+                Collections.singleton("50"),
+                CountCache.getOrgIds(new JsonObject().put(AcsConstants.FIELD_NAME_ORG_ID, "50"))
+        );
+        assertEquals(
+                Collections.singleton("50"),
+                CountCache.getOrgIds(new JsonObject().put(
+                        AcsConstants.FIELD_NAME_ORG_ID,
+                        new JsonObject().put("$eq", "50")
+                ))
+        );
+        assertEquals(
+                new HashSet<>(Arrays.asList("50", "51")),
+                CountCache.getOrgIds(new JsonObject().put(
+                        AcsConstants.FIELD_NAME_ORG_ID,
+                        new JsonObject().put("$in", new JsonArray().add("50").add("51"))
+                ))
+        );
+
+        // Unknown
+        assertNull(CountCache.getOrgIds(new JsonObject()));
+        assertNull(CountCache.getOrgIds(new JsonObject().put(
+                AcsConstants.FIELD_NAME_ORG_ID,
+                new JsonObject().put("$ne", "50")
+        )));
+        assertNull(CountCache.getOrgIds(new JsonObject().put(
+                "$or",
+                new JsonArray().add(new JsonObject().put(AcsConstants.FIELD_NAME_ORG_ID, "50"))
+        )));
+    }
+
+    @Test
+    public void testGetKeyIgnoresFieldOrder() {
+        assertEquals(
+                CountCache.getKey(
+                        "CWMP-devices",
+                        new JsonObject()
+                                .put(AcsConstants.FIELD_NAME_ORG_ID, "50")
+                                .put(CpeDeviceType.FIELD_NAME_MODEL_NAME, "844E")
+                ),
+                CountCache.getKey(
+                        "CWMP-devices",
+                        new JsonObject()
+                                .put(CpeDeviceType.FIELD_NAME_MODEL_NAME, "844E")
+                                .put(AcsConstants.FIELD_NAME_ORG_ID, "50")
+                )
+        );
+    }
+
+    @Test
+    public void testGetFacetValues() {
+        assertEquals(
+                Collections.singletonMap(CpeDeviceType.FIELD_NAME_MODEL_NAME, "844E"),
+                CountCache.getFacetValues(new JsonObject()
+                        .put(AcsConstants.FIELD_NAME_ORG_ID, "50")
+                        .put(CpeDeviceType.FIELD_NAME_MODEL_NAME, "844E"))
+        );
+        assertNull(CountCache.getFacetValues(new JsonObject()
+                .put(AcsConstants.FIELD_NAME_ORG_ID, "50")
+                .put("serialNumber", "CXNK0012345")));
+    }
+}
@@ -0,0 +1,209 @@
+package vertx.acs.nbi.model;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+import vertx.VertxException;
+import vertx.util.AcsConstants;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit Test for {@link AcsNbiPageToken}.
+ *
+ * @author: ronyang
+ */
+public class AcsNbiPageTokenTest {
+    static final JsonObject SORT = new JsonObject().put("lastInformTime", -1);
+    static final JsonObject LAST_INFORM_TIME = new JsonObject().put("$date", 1500000000000L);
+
+    static JsonObject lastRecord() {
+        return new JsonObject()
+                .put(AcsConstants.FIELD_NAME_ID, "000631-CXNK0012345")
+                .put("lastInformTime", LAST_INFORM_TIME.copy())
+                .put("deviceId", new JsonObject().put("serialNumber", "CXNK0012345"));
+    }
+
+    static String toToken(JsonObject lastKeys) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                lastKeys.encode().getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    static void assertInvalid(String token, JsonObject seekSort) {
+        try {
+            AcsNbiPageToken.decode(token, seekSort);
+            fail("Token " + token + " should have been rejected!");
+        } catch (VertxException ex) {
+            assertSame(AcsNbiPageToken.INVALID_PAGE_TOKEN, ex);
+        }
+    }
+
+    @Test
+    public void testGetSeekSort() {
+        JsonObject seekSort = AcsNbiPageToken.getSeekSort(SORT);
+        assertEquals(new JsonObject().put("lastInformTime", -1).put(AcsConstants.FIELD_NAME_ID, 1), seekSort);
+
+        // The given sort is not modified
+        assertEquals(1, SORT.size());
+
+        // "_id" already present
+        JsonObject idSort = new JsonObject().put(AcsConstants.FIELD_NAME_ID, -1);
+        assertEquals(idSort, AcsNbiPageToken.getSeekSort(idSort));
+        assertEquals(new JsonObject().put(AcsConstants.FIELD_NAME_ID, 1), AcsNbiPageToken.getSeekSort(null));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        JsonObject seekSort = AcsNbiPageToken.getSeekSort(SORT);
+        String token = AcsNbiPageToken.encode(seekSort, lastRecord());
+
+        // URL-safe
+        assertEquals(-1, token.indexOf('+'));
+        assertEquals(-1, token.indexOf('/'));
+        assertEquals(-1, token.indexOf('='));
+
+        assertEquals(
+                new JsonObject()
+                        .put("lastInformTime", LAST_INFORM_TIME)
+                        .put(AcsConstants.FIELD_NAME_ID, "000631-CXNK0012345"),
+                AcsNbiPageToken.decode(token, seekSort)
+        );
+
+        // Embedded Sort Field
+        seekSort = AcsNbiPageToken.getSeekSort(new JsonObject().put("deviceId.serialNumber", 1));
+        assertEquals(
+                "CXNK0012345",
+                AcsNbiPageToken.decode(AcsNbiPageToken.encode(seekSort, lastRecord()), seekSort)
+                        .getString("deviceId.serialNumber")
+        );
+    }
+
+    @Test
+    public void testEncodeMissingSortField() {
+        JsonObject seekSort = AcsNbiPageToken.getSeekSort(new JsonObject().put("registrationId", 1));
+        assertNull(AcsNbiPageToken.encode(seekSort, lastRecord()));
+        assertNull(AcsNbiPageToken.encode(seekSort, null));
+    }
+
+    @Test
+    public void testDecodeRejectsInvalidTokens() {
+        JsonObject seekSort = AcsNbiPageToken.getSeekSort(SORT);
+        JsonObject validKeys = new JsonObject()
+                .put("lastInformTime", LAST_INFORM_TIME)
+                .put(AcsConstants.FIELD_NAME_ID, "000631-CXNK0012345");
+
+        // Malformed
+        assertInvalid("not base64!", seekSort);
+        assertInvalid(Base64.getUrlEncoder().encodeToString("[1,2]".getBytes(StandardCharsets.UTF_8)), seekSort);
+
+        // Fields not matching the sort
+        assertInvalid(toToken(new JsonObject().put(AcsConstants.FIELD_NAME_ID, "a")), seekSort);
+        assertInvalid(toToken(validKeys.copy().put("extra", 1)), seekSort);
+        assertInvalid(
+                toToken(new JsonObject().put("other", LAST_INFORM_TIME).put(AcsConstants.FIELD_NAME_ID, "a")),
+                seekSort
+        );
+        assertInvalid(toToken(validKeys.copy().putNull(AcsConstants.FIELD_NAME_ID)), seekSort);
+        assertInvalid(toToken(validKeys.copy().put(AcsConstants.FIELD_NAME_ID, new JsonArray().add("a"))), seekSort);
+
+        // Query operator injection
+        assertInvalid(
+                toToken(validKeys.copy().put(AcsConstants.FIELD_NAME_ID, new JsonObject().putNull("$ne"))),
+                seekSort
+        );
+        assertInvalid(
+                toToken(validKeys.copy().put(
+                        AcsConstants.FIELD_NAME_ID,
+                        new JsonObject().put("$where", "sleep(1000)")
+                )),
+                seekSort
+        );
+        assertInvalid(
+                toToken(validKeys.copy().put("lastInformTime", LAST_INFORM_TIME.copy().put("$gt", 0))),
+                seekSort
+        );
+    }
+
+    @Test
+    public void testDecodeAcceptsExtendedJsonTypes() throws Exception {
+        JsonObject seekSort = AcsNbiPageToken.getSeekSort(SORT);
+        JsonObject lastKeys = new JsonObject()
+                .put("lastInformTime", LAST_INFORM_TIME)
+                .put(AcsConstants.FIELD_NAME_ID, new JsonObject().put("$oid", "5968a1b2c3d4e5f6a7b8c9d0"));
+        assertEquals(lastKeys, AcsNbiPageToken.decode(toToken(lastKeys), seekSort));
+    }
+
+    @Test
+    public void testBuildSeekMatcher() {
+        JsonObject seekSort = new JsonObject().put("a", 1).put("b", -1).put(AcsConstants.FIELD_NAME_ID, 1);
+        JsonObject lastKeys = new JsonObject().put("a", "A").put("b", 5).put(AcsConstants.FIELD_NAME_ID, "ID");
+
+        assertEquals(
+                new JsonObject().put("$or", new JsonArray()
+                        .add(new JsonObject().put("a", new JsonObject().put("$gt", "A")))
+                        .add(new JsonObject().put("a", "A").put("b", new JsonObject().put("$lt", 5)))
+                        .add(new JsonObject()
+                                .put("a", "A")
+                                .put("b", 5)
+                                .put(AcsConstants.FIELD_NAME_ID, new JsonObject().put("$gt", "ID")))
+                ),
+                AcsNbiPageToken.buildSeekMatcher(seekSort, lastKeys)
+        );
+
+        // Sort by "_id" only
+        assertEquals(
+                new JsonObject().put(AcsConstants.FIELD_NAME_ID, new JsonObject().put("$lt", "ID")),
+                AcsNbiPageToken.buildSeekMatcher(
+                        new JsonObject().put(AcsConstants.FIELD_NAME_ID, -1),
+                        new JsonObject().put(AcsConstants.FIELD_NAME_ID, "ID")
+                )
+        );
+    }
+
+    @Test
+    public void testAddSeekMatcher() {
+        JsonObject seekMatcher = new JsonObject().put(AcsConstants.FIELD_NAME_ID, new JsonObject().put("$gt", "ID"));
+        assertSame(seekMatcher, AcsNbiPageToken.addSeekMatcher(null, seekMatcher));
+        assertSame(seekMatcher, AcsNbiPageToken.addSeekMatcher(new JsonObject(), seekMatcher));
+
+        JsonObject matcher = new JsonObject().put(AcsConstants.FIELD_NAME_ORG_ID, "50");
+        assertEquals(
+                new JsonObject().put("$and", new JsonArray().add(matcher).add(seekMatcher)),
+                AcsNbiPageToken.addSeekMatcher(matcher, seekMatcher)
+        );
+    }
+
+    @Test
+    public void testAddSortFieldsToKeys() {
+        JsonObject seekSort = AcsNbiPageToken.getSeekSort(SORT);
+
+        // No projection, or exclusion projection
+        assertNull(AcsNbiPageToken.addSortFieldsToKeys(null, seekSort));
+        JsonObject exclusion = new JsonObject().put("parameterValues", 0).put(AcsConstants.FIELD_NAME_ID, 0);
+        assertSame(exclusion, AcsNbiPageToken.addSortFieldsToKeys(exclusion, seekSort));
+
+        // Inclusion projection
+        JsonObject inclusion = new JsonObject().put("serialNumber", 1).put(AcsConstants.FIELD_NAME_ID, false);
+        assertEquals(
+                new JsonObject()
+                        .put("serialNumber", 1)
+                        .put(AcsConstants.FIELD_NAME_ID, 1)
+                        .put("lastInformTime", 1),
+                AcsNbiPageToken.addSortFieldsToKeys(inclusion, seekSort)
+        );
+        assertEquals(2, inclusion.size());
+
+        // "_id" only
+        assertEquals(
+                new JsonObject().put(AcsConstants.FIELD_NAME_ID, 1).put("lastInformTime", 1),
+                AcsNbiPageToken.addSortFieldsToKeys(new JsonObject().put(AcsConstants.FIELD_NAME_ID, 1), seekSort)
+        );
+    }
+}
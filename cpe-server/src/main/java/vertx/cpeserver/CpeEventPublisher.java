@@ -0,0 +1,120 @@
+package vertx.cpeserver;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.redis.RedisClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import vertx.util.CpeEventStreamUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Project:  cwmp CPE Server
+ *
+ * CPE Event Publisher.
+ *
+ * The Inform events are buffered in memory per org and appended to the per-org CPE event streams in Redis (see
+ * CpeEventStreamUtils) in batches, so that the sessions never wait for Redis. A batch is sent every
+ * CPE_EVENT_FLUSH_INTERVAL, or as soon as CPE_EVENT_MAX_BATCH_SIZE events are pending for an org.
+ *
+ * Each session vertice owns one publisher, so it is only accessed from the vertice's event loop.
+ *
+ * @author: ronyang
+ */
+public class CpeEventPublisher {
+    private static final Logger log = LoggerFactory.getLogger(CpeEventPublisher.class.getName());
+
+    /**
+     * Vert.x Instance
+     */
+    Vertx vertx;
+
+    /**
+     * Redis Client
+     */
+    RedisClient redisClient;
+
+    /**
+     * Pending Events <Org Id --> Encoded Events>
+     */
+    HashMap<String, List<String>> pendingEvents = new HashMap<>();
+
+    /**
+     * Periodic Flush Timer
+     */
+    Long flushTimerId = null;
+
+    /**
+     * Constructor.
+     *
+     * @param vertx
+     * @param redisClient
+     */
+    public CpeEventPublisher(Vertx vertx, RedisClient redisClient) {
+        this.vertx = vertx;
+        this.redisClient = redisClient;
+
+        flushTimerId = vertx.setPeriodic(
+                CpeServerConstants.CPE_EVENT_FLUSH_INTERVAL,
+                new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        flush();
+                    }
+                }
+        );
+    }
+
+    /**
+     * Publish an event.
+     *
+     * @param orgId
+     * @param event     Encoded JSON Object
+     */
+    public void publish(String orgId, String event) {
+        if (orgId == null) {
+            return;
+        }
+
+        List<String> events = pendingEvents.get(orgId);
+        if (events == null) {
+            events = new ArrayList<>();
+            pendingEvents.put(orgId, events);
+        }
+        events.add(event);
+
+        if (events.size() >= CpeServerConstants.CPE_EVENT_MAX_BATCH_SIZE) {
+            CpeEventStreamUtils.append(redisClient, orgId, events);
+            pendingEvents.remove(orgId);
+        }
+    }
+
+    /**
+     * Flush all the pending events to Redis.
+     */
+    public void flush() {
+        if (pendingEvents.size() == 0) {
+            return;
+        }
+
+        for (Map.Entry<String, List<String>> entry : pendingEvents.entrySet()) {
+            CpeEventStreamUtils.append(redisClient, entry.getKey(), entry.getValue());
+        }
+        pendingEvents = new HashMap<>();
+    }
+
+    /**
+     * Flush everything and stop the periodic timer.
+     */
+    public void stop() {
+        if (flushTimerId != null) {
+            vertx.cancelTimer(flushTimerId);
+            flushTimerId = null;
+        }
+        flush();
+    }
+}
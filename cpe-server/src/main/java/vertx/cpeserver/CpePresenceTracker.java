@@ -0,0 +1,211 @@
+package vertx.cpeserver;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
+import io.vertx.redis.RedisClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import vertx.VertxException;
+import vertx.VertxMongoUtils;
+import vertx.VertxRedisUtils;
+import vertx.model.Cpe;
+import vertx.util.CpePresenceUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Project:  cwmp CPE Server
+ *
+ * CPE Presence Tracker.
+ *
+ * Most periodic Informs result in nothing but a new "lastInformTime" for the CPE. Instead of writing every one of them
+ * through to MongoDB at the end of the session, the timestamps are kept in memory and flushed periodically as a single
+ * unordered bulk update. The bulk update uses "$max", so a late flush never moves the timestamp of a CPE backwards
+ * (for example after the CPE has informed again through another vertice or server).
+ *
+ * The same timestamps (including those of the CPEs whose records are written through) are also flushed into the
+ * per-org presence index in Redis (see CpePresenceUtils), which backs the online/offline device counts.
+ *
+ * Each session vertice owns one tracker, so it is only accessed from the vertice's event loop.
+ *
+ * @author: ronyang
+ */
+public class CpePresenceTracker {
+    private static final Logger log = LoggerFactory.getLogger(CpePresenceTracker.class.getName());
+
+    /**
+     * Vert.x Instance
+     */
+    Vertx vertx;
+
+    /**
+     * Mongo Client
+     */
+    MongoClient mongoClient;
+
+    /**
+     * Redis Client
+     */
+    RedisClient redisClient;
+
+    /**
+     * Pending Last-Inform Timestamps <CPE Key --> Inform Time in ms>
+     */
+    HashMap<String, Long> pendingInformTimes = new HashMap<>();
+
+    /**
+     * Pending Presence Index Updates <Org Id --> <CPE Key --> Inform Time in ms>>
+     */
+    HashMap<String, HashMap<String, Double>> pendingPresence = new HashMap<>();
+
+    /**
+     * Periodic Flush Timer
+     */
+    Long flushTimerId = null;
+
+    /**
+     * Constructor.
+     *
+     * @param vertx
+     * @param mongoClient   The Mongo Client of the session vertice
+     * @param redisClient
+     */
+    public CpePresenceTracker(Vertx vertx, MongoClient mongoClient, RedisClient redisClient) {
+        this.vertx = vertx;
+        this.mongoClient = mongoClient;
+        this.redisClient = redisClient;
+
+        flushTimerId = vertx.setPeriodic(
+                CpeServerConstants.PRESENCE_FLUSH_INTERVAL,
+                new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        flush();
+                    }
+                }
+        );
+    }
+
+    /**
+     * Record the last Inform time of a CPE (to be flushed later).
+     *
+     * @param cpeKey
+     * @param informTime
+     */
+    public void recordInform(String cpeKey, long informTime) {
+        pendingInformTimes.put(cpeKey, informTime);
+    }
+
+    /**
+     * Record the last Inform time of a CPE into the per-org presence index (to be flushed later).
+     *
+     * @param orgId
+     * @param cpeKey
+     * @param informTime
+     */
+    public void recordPresence(String orgId, String cpeKey, long informTime) {
+        if (orgId == null) {
+            return;
+        }
+
+        HashMap<String, Double> orgPresence = pendingPresence.get(orgId);
+        if (orgPresence == null) {
+            orgPresence = new HashMap<>();
+            pendingPresence.put(orgId, orgPresence);
+        }
+        orgPresence.put(cpeKey, (double) informTime);
+    }
+
+    /**
+     * Drop the pending timestamp of a CPE (called when the CPE record is being written through).
+     *
+     * @param cpeKey
+     */
+    public void remove(String cpeKey) {
+        pendingInformTimes.remove(cpeKey);
+    }
+
+    /**
+     * Flush all the pending timestamps to MongoDB and the presence index.
+     */
+    public void flush() {
+        flushPresence();
+
+        if (pendingInformTimes.size() == 0) {
+            return;
+        }
+
+        log.debug("Flushing last inform time for " + pendingInformTimes.size() + " CPE(s)...");
+
+        JsonArray statements = new JsonArray();
+        for (Map.Entry<String, Long> entry : pendingInformTimes.entrySet()) {
+            statements.add(
+                    VertxMongoUtils.getBulkUpdateStatement(
+                            new JsonObject().put(VertxMongoUtils.MOD_MONGO_FIELD_NAME_ID, entry.getKey()),
+                            new JsonObject().put(
+                                    VertxMongoUtils.MOD_MONGO_UPDATE_OPERATOR_MAX,
+                                    new JsonObject().put(
+                                            Cpe.DB_FIELD_NAME_LAST_INFORM_TIME,
+                                            VertxMongoUtils.getDateObject(entry.getValue())
+                                    )
+                            )
+                    )
+            );
+
+            if (statements.size() >= VertxMongoUtils.MAX_BULK_WRITE_BATCH_SIZE) {
+                sendBulkUpdate(statements);
+                statements = new JsonArray();
+            }
+        }
+        if (statements.size() > 0) {
+            sendBulkUpdate(statements);
+        }
+
+        pendingInformTimes = new HashMap<>();
+    }
+
+    /**
+     * Flush the pending presence index updates to Redis (one ZADD per org, all in one batch).
+     */
+    void flushPresence() {
+        if (pendingPresence.size() == 0) {
+            return;
+        }
+
+        VertxRedisUtils.Batch batch = new VertxRedisUtils.Batch(redisClient);
+        for (Map.Entry<String, HashMap<String, Double>> entry : pendingPresence.entrySet()) {
+            CpePresenceUtils.update(batch, entry.getKey(), entry.getValue());
+        }
+        batch.exec(null);
+
+        pendingPresence = new HashMap<>();
+    }
+
+    /**
+     * Send one batch of update statements.
+     *
+     * @param statements
+     */
+    void sendBulkUpdate(JsonArray statements) {
+        try {
+            VertxMongoUtils.bulkUpdate(mongoClient, Cpe.CPE_COLLECTION_NAME, statements, false, null);
+        } catch (VertxException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Flush everything and stop the periodic timer.
+     */
+    public void stop() {
+        if (flushTimerId != null) {
+            vertx.cancelTimer(flushTimerId);
+            flushTimerId = null;
+        }
+        flush();
+    }
+}
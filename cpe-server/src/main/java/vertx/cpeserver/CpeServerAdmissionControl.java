@@ -0,0 +1,322 @@
+package vertx.cpeserver;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import vertx.cwmp.CwmpInformEventCodes;
+import vertx.util.AcsConfigProperties;
+
+import java.util.Random;
+
+/**
+ * Project:  cwmp CPE Server
+ *
+ * Admission Control for new CWMP sessions.
+ *
+ * A new session (i.e. an authenticated request without session cookie, which carries the Inform) is only admitted
+ * if the chosen session vertice and the back-ends still have room for it. Otherwise the load balancer rejects it
+ * cheaply with "503 Service Unavailable" and a randomized "Retry-After", before forwarding it to the session vertice,
+ * so that the CPEs come back spread over time instead of all at once. The admission check runs after the digest
+ * authentication so that the challenges and the unauthenticated requests do not count against the limits.
+ *
+ * The load signals are:
+ *
+ * - the # of active sessions of each session vertice (reported by the session vertices every
+ *   ADMISSION_LOAD_REPORT_INTERVAL, plus the sessions admitted since the last report);
+ * - the average Event Bus reply latency of each session vertice for the new session requests (exponentially
+ *   weighted), as the replies to the other requests may be held back while waiting for device ops;
+ * - the MongoDB latency, measured by periodically pinging MongoDB via the same shared client (pool) as the session
+ *   vertices, so that the time spent waiting for a pooled connection is included.
+ *
+ * The latency signals shed load gradually: the rejection probability rises linearly from 0 at the threshold to
+ * ADMISSION_MAX_REJECT_PROBABILITY at twice the threshold, which keeps the server busy at its capacity during a
+ * reconnect storm instead of flapping between accepting everything and rejecting everything.
+ *
+ * As the average reply latency only gets new samples from the admitted sessions, a few sessions are always admitted
+ * as probes (i.e. the rejection probability never reaches 1), and the average decays towards 0 upon each load report
+ * if no reply has been received since the previous one, so that the shedding stops once the latency spike is over.
+ *
+ * The requests of the sessions in progress (with cookie) are never rejected, and the Informs with high priority
+ * events (BOOT, BOOTSTRAP, TRANSFER/DIAGNOSTICS COMPLETE and CONNECTION REQUEST) are only rejected once the hard
+ * session limit is reached.
+ *
+ * Each load balancer vertice owns one instance, so it is only accessed from the vertice's event loop.
+ *
+ * @author: ronyang
+ */
+public class CpeServerAdmissionControl {
+    private static final Logger log = LoggerFactory.getLogger(CpeServerAdmissionControl.class.getName());
+
+    /**
+     * Weight of the newest sample in the average reply latency
+     */
+    public static final double LATENCY_SAMPLE_WEIGHT = 0.1;
+
+    /**
+     * Inform Event Codes that bypass the soft limits
+     */
+    public static final String[] PRIORITY_EVENT_CODES = {
+            CwmpInformEventCodes.BOOT_STRAP,
+            CwmpInformEventCodes.BOOT,
+            CwmpInformEventCodes.TRANSFER_COMPLETE,
+            CwmpInformEventCodes.DIAGNOSTICS_COMPLETE,
+            CwmpInformEventCodes.AUTONOMOUS_TRANSFER_COMPLETE,
+            CwmpInformEventCodes.CONNECTION_REQUEST
+    };
+
+    /**
+     * Message Field Names of the load reports
+     */
+    public static final String FIELD_NAME_NBR_OF_SESSIONS = "nbrOfSessions";
+
+    /**
+     * Vert.x Instance
+     */
+    Vertx vertx;
+
+    /**
+     * Mongo Client (shared with the session vertices)
+     */
+    MongoClient mongoClient;
+
+    /**
+     * Per Session Vertice Load
+     */
+    int[] reportedSessions = new int[CpeServerConstants.NUMBER_OF_SESSION_VERTICES];
+    int[] admittedSinceLastReport = new int[CpeServerConstants.NUMBER_OF_SESSION_VERTICES];
+    double[] avgReplyLatency = new double[CpeServerConstants.NUMBER_OF_SESSION_VERTICES];
+    int[] repliesSinceLastReport = new int[CpeServerConstants.NUMBER_OF_SESSION_VERTICES];
+
+    /**
+     * The latest MongoDB latency, and the start time of the outstanding ping (if any)
+     */
+    long mongoLatency = 0;
+    long mongoPingStartTime = 0;
+
+    /**
+     * Counters (for logging)
+     */
+    long nbrOfAdmitted = 0;
+    long nbrOfRejected = 0;
+
+    /**
+     * Random Number Generator for the rejection probability and "Retry-After"
+     */
+    Random random = new Random();
+
+    /**
+     * Constructor.
+     *
+     * @param vertx
+     * @param mongoClient
+     */
+    public CpeServerAdmissionControl(Vertx vertx, MongoClient mongoClient) {
+        this.vertx = vertx;
+        this.mongoClient = mongoClient;
+
+        /**
+         * Receive the load reports from the session vertices
+         */
+        vertx.eventBus().localConsumer(
+                CpeServerConstants.CWMP_SESSION_VERTICE_LOAD_REPORT_ADDRESS,
+                new Handler<Message<JsonObject>>() {
+                    @Override
+                    public void handle(Message<JsonObject> report) {
+                        onLoadReport(
+                                report.body().getInteger(CpeServerConstants.FIELD_NAME_VERTICE_INDEX),
+                                report.body().getInteger(FIELD_NAME_NBR_OF_SESSIONS)
+                        );
+                    }
+                }
+        );
+
+        /**
+         * Start the periodic MongoDB pings (and the stats logging)
+         */
+        vertx.setPeriodic(
+                CpeServerConstants.ADMISSION_LOAD_REPORT_INTERVAL,
+                new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        pingMongo();
+                    }
+                }
+        );
+    }
+
+    /**
+     * Constructor without any event bus consumer or timer (for unit tests).
+     *
+     * @param random
+     */
+    CpeServerAdmissionControl(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Process a load report of a session vertice.
+     *
+     * @param sessionVerticeIndex
+     * @param nbrOfSessions
+     */
+    public void onLoadReport(int sessionVerticeIndex, int nbrOfSessions) {
+        reportedSessions[sessionVerticeIndex] = nbrOfSessions;
+        admittedSinceLastReport[sessionVerticeIndex] = 0;
+
+        // No fresh sample, let the average decay
+        if (repliesSinceLastReport[sessionVerticeIndex] == 0) {
+            avgReplyLatency[sessionVerticeIndex] *= 1 - CpeServerConstants.ADMISSION_LATENCY_DECAY;
+        }
+        repliesSinceLastReport[sessionVerticeIndex] = 0;
+    }
+
+    /**
+     * Check whether a new session can be admitted.
+     *
+     * @param sessionVerticeIndex   The session vertice the new session would be forwarded to
+     * @param body                  The request body (i.e. the Inform)
+     */
+    public boolean admitNewSession(int sessionVerticeIndex, String body) {
+        int nbrOfSessions = reportedSessions[sessionVerticeIndex] + admittedSinceLastReport[sessionVerticeIndex];
+
+        boolean bAdmit;
+        if (nbrOfSessions >= AcsConfigProperties.CPE_SERVER_MAX_SESSIONS_PER_VERTICE) {
+            /**
+             * Hard Limit
+             */
+            bAdmit = false;
+        } else if (hasPriorityEvent(body)) {
+            bAdmit = true;
+        } else {
+            /**
+             * Soft Limits
+             */
+            double rejectProbability = Math.max(
+                    getRejectProbability(
+                            avgReplyLatency[sessionVerticeIndex],
+                            CpeServerConstants.ADMISSION_REPLY_LATENCY_THRESHOLD
+                    ),
+                    getRejectProbability(
+                            getMongoLatency(),
+                            CpeServerConstants.ADMISSION_MONGO_LATENCY_THRESHOLD
+                    )
+            );
+            bAdmit = rejectProbability <= 0 || random.nextDouble() >= rejectProbability;
+        }
+
+        if (bAdmit) {
+            admittedSinceLastReport[sessionVerticeIndex] ++;
+            nbrOfAdmitted ++;
+        } else {
+            nbrOfRejected ++;
+        }
+        return bAdmit;
+    }
+
+    /**
+     * Update the average reply latency of a session vertice.
+     *
+     * @param sessionVerticeIndex
+     * @param latency               In ms
+     */
+    public void onReply(int sessionVerticeIndex, long latency) {
+        avgReplyLatency[sessionVerticeIndex] =
+                avgReplyLatency[sessionVerticeIndex] * (1 - LATENCY_SAMPLE_WEIGHT) + latency * LATENCY_SAMPLE_WEIGHT;
+        repliesSinceLastReport[sessionVerticeIndex] ++;
+    }
+
+    /**
+     * Get a randomized "Retry-After" value (in seconds).
+     */
+    public int getRetryAfter() {
+        return CpeServerConstants.ADMISSION_MIN_RETRY_AFTER + random.nextInt(
+                CpeServerConstants.ADMISSION_MAX_RETRY_AFTER - CpeServerConstants.ADMISSION_MIN_RETRY_AFTER + 1
+        );
+    }
+
+    /**
+     * Get the current MongoDB latency, which also covers a ping that is still outstanding.
+     */
+    public long getMongoLatency() {
+        if (mongoPingStartTime > 0) {
+            return Math.max(mongoLatency, System.currentTimeMillis() - mongoPingStartTime);
+        }
+        return mongoLatency;
+    }
+
+    /**
+     * Ping MongoDB (unless the previous ping is still outstanding), and log the stats if any request was rejected
+     * since the last time.
+     */
+    void pingMongo() {
+        if (nbrOfRejected > 0) {
+            log.warn("Admission Control: admitted " + nbrOfAdmitted + " and rejected " + nbrOfRejected
+                    + " new session(s). MongoDB latency: " + getMongoLatency() + "ms.");
+            nbrOfAdmitted = 0;
+            nbrOfRejected = 0;
+        }
+
+        if (mongoPingStartTime > 0) {
+            return;
+        }
+
+        mongoPingStartTime = System.currentTimeMillis();
+        mongoClient.runCommand("ping", new JsonObject().put("ping", 1), res -> {
+            mongoLatency = System.currentTimeMillis() - mongoPingStartTime;
+            mongoPingStartTime = 0;
+            if (res.failed()) {
+                log.error("Failed to ping MongoDB due to " + res.cause() + "!");
+                // Treat MongoDB as fully loaded until it is reachable again
+                mongoLatency = 2 * CpeServerConstants.ADMISSION_MONGO_LATENCY_THRESHOLD;
+            }
+        });
+    }
+
+    /**
+     * Check if an Inform has any high priority event.
+     *
+     * @param body
+     */
+    public static boolean hasPriorityEvent(String body) {
+        if (body == null) {
+            return false;
+        }
+
+        for (String eventCode : PRIORITY_EVENT_CODES) {
+            if (body.contains(">" + eventCode + "<")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the rejection probability by a latency and its threshold, which rises linearly from 0 at the threshold to
+     * ADMISSION_MAX_REJECT_PROBABILITY at twice the threshold (and stays there).
+     *
+     * @param latency
+     * @param threshold
+     */
+    public static double getRejectProbability(double latency, long threshold) {
+        return Math.min(
+                CpeServerConstants.ADMISSION_MAX_REJECT_PROBABILITY,
+                (latency - threshold) / threshold * CpeServerConstants.ADMISSION_MAX_REJECT_PROBABILITY
+        );
+    }
+
+    /**
+     * Build a load report (sent by the session vertices).
+     *
+     * @param sessionVerticeIndex
+     * @param nbrOfSessions
+     */
+    public static JsonObject buildLoadReport(int sessionVerticeIndex, int nbrOfSessions) {
+        return new JsonObject()
+                .put(CpeServerConstants.FIELD_NAME_VERTICE_INDEX, sessionVerticeIndex)
+                .put(FIELD_NAME_NBR_OF_SESSIONS, nbrOfSessions);
+    }
+}
@@ -27,12 +27,14 @@ public class CpeServerConstants {
      */
     public static final String FIELD_NAME_VERTICE_INDEX = "index";
     public static final String FIELD_NAME_ACS_HOST = "acsHostname";
+    public static final String FIELD_NAME_SOURCE_IP = "sourceIp";
     public static final String FIELD_NAME_AUTH_HEADER = "authHeader";
     public static final String FIELD_NAME_BODY = "body";
     public static final String FIELD_NAME_ZERO_TOUCH = "zeroTouch";
     public static final String FIELD_NAME_ACS_USERNAME = "acsUsername";
     public static final String FIELD_NAME_ACS_PASSWORD = "acsPassword";
     public static final String FIELD_NAME_COOKIE = "cookie";
+    public static final String FIELD_NAME_BOUND_COOKIE = "boundCookie";
     public static final String FIELD_NAME_STATUS_CODE = "statusCode";
     public static final String FIELD_NAME_AUTH_CHALLENGE = "authChallenge";
 
@@ -51,4 +53,88 @@ public class CpeServerConstants {
      * NBI Callback Timeout
      */
     public static final int CWMP_NBI_CALLBACK_TIMEOUT = 30000;
+
+    /**
+     * Interval (in ms) for flushing the coalesced "lastInformTime" updates to MongoDB
+     */
+    public static final long PRESENCE_FLUSH_INTERVAL = 5000;
+
+    /**
+     * Session Timing Wheel: tick length (in ms) and number of slots (must be a power of 2).
+     *
+     * One revolution covers 100ms * 1024 = 102.4 seconds. Longer timeouts simply go around the wheel more than once.
+     */
+    public static final long SESSION_TIMING_WHEEL_TICK = 100;
+    public static final int SESSION_TIMING_WHEEL_SIZE = 1024;
+
+    /**
+     * Interval (in ms) for polling device-op requests from Redis during a session
+     */
+    public static final long CWMP_SESSION_REDIS_POLL_INTERVAL = 1000;
+
+    /**
+     * Max # of queued device ops to be coalesced into a single GetParameterValues or SetParameterValues RPC
+     * (see DeviceOpCoalescer)
+     */
+    public static final int CWMP_SESSION_MAX_COALESCED_DEVICE_OPS = 32;
+
+    /**
+     * Admission Control (see CpeServerAdmissionControl).
+     *
+     * The session vertices report their # of sessions to this (local) address every second, and new sessions are
+     * shed gradually once the average reply latency of the session vertice exceeds 2 seconds or the MongoDB latency
+     * exceeds 500ms. The rejected CPEs are told to retry after 1 to 5 minutes. At least 5% of the new sessions are
+     * always admitted (as probes), and the average reply latency decays by 20% per report interval without replies.
+     */
+    public static final String CWMP_SESSION_VERTICE_LOAD_REPORT_ADDRESS = "cwmp-session-vertice-load-report";
+    public static final long ADMISSION_LOAD_REPORT_INTERVAL = 1000;
+    public static final long ADMISSION_REPLY_LATENCY_THRESHOLD = 2000;
+    public static final long ADMISSION_MONGO_LATENCY_THRESHOLD = 500;
+    public static final int ADMISSION_MIN_RETRY_AFTER = 60;
+    public static final int ADMISSION_MAX_RETRY_AFTER = 300;
+    public static final double ADMISSION_MAX_REJECT_PROBABILITY = 0.95;
+    public static final double ADMISSION_LATENCY_DECAY = 0.2;
+
+    /**
+     * Max # of devices to be moved into other periodic inform slots per minute per session vertice
+     * (see InformSlotBalancer)
+     */
+    public static final int INFORM_SLOT_MAX_MOVES_PER_MINUTE = 60;
+
+    /**
+     * Interval (in ms) for flushing the periodic inform arrival counts to Redis (see InformSlotBalancer)
+     */
+    public static final long INFORM_SLOT_FLUSH_INTERVAL = 5000;
+
+    /**
+     * Interval (in ms) for flushing the pending Inform events to the CPE event streams, and the max # of pending
+     * events per org before flushing right away (see CpeEventPublisher)
+     */
+    public static final long CPE_EVENT_FLUSH_INTERVAL = 1000;
+    public static final int CPE_EVENT_MAX_BATCH_SIZE = 500;
+
+    /**
+     * Bulk Data Collection (see BulkDataRequestHandler and BulkDataWriter).
+     *
+     * The pending reports are written into MongoDB every second, and the new uploads are rejected (and told to retry
+     * after 1 minute) while more than 20000 reports are pending. JSON uploads larger than 4MB are rejected. The
+     * expired daily collections are dropped every hour.
+     */
+    public static final long BULK_DATA_FLUSH_INTERVAL = 1000;
+    public static final int BULK_DATA_MAX_PENDING_REPORTS = 20000;
+    public static final int BULK_DATA_MAX_JSON_SIZE = 4 * 1024 * 1024;
+    public static final int BULK_DATA_RETRY_AFTER = 60;
+    public static final long BULK_DATA_CLEANUP_INTERVAL = 3600 * 1000;
+
+    /**
+     * Max # of configuration profiles whose compiled parameter values are cached per session vertice
+     * (see ProfileSpvCache)
+     */
+    public static final int PROFILE_SPV_CACHE_MAX_SIZE = 1000;
+
+    /**
+     * Max # of versions (i.e. different parameter values) of the same configuration profile that are cached at the
+     * same time, for the device ops built before and after a profile update (see ProfileSpvCache)
+     */
+    public static final int PROFILE_SPV_CACHE_MAX_VERSIONS = 2;
 }
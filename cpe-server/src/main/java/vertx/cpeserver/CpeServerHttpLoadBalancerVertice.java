@@ -2,9 +2,14 @@ package vertx.cpeserver;
 
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.http.HttpConnection;
 import io.vertx.core.http.HttpServerOptions;
+import io.vertx.ext.mongo.MongoClient;
+import vertx.VertxMongoUtils;
 import vertx.VertxUtils;
+import vertx.cpeserver.bulkdata.BulkDataRequestHandler;
 import vertx.cpeserver.httpauth.PerOrgAuthenticator;
+import vertx.connreq.ConnectionRequestReachability;
 import vertx.cpeserver.session.CwmpSessionCookieUtils;
 import vertx.cwmp.CwmpFaultCodes;
 import vertx.cwmp.CwmpMessage;
@@ -24,6 +29,8 @@ import io.vertx.core.http.HttpServer;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.json.JsonObject;
 
+import java.util.HashMap;
+
 /**
  * Project:  SXA CC CPE Server
  *
@@ -57,6 +64,37 @@ public class CpeServerHttpLoadBalancerVertice extends AbstractVerticle {
      */
     public FileServerRequestHandler fileServerRequestHandler;
 
+    /**
+     * Bulk Data (TR-232) Http Request Handler
+     */
+    public BulkDataRequestHandler bulkDataRequestHandler;
+
+    /**
+     * Admission Control for new sessions
+     */
+    public CpeServerAdmissionControl admissionControl;
+
+    /**
+     * Persistent HTTP Connection --> Session Binding.
+     *
+     * Once a session has been established (i.e. the session vertice has set the cookie), the keep-alive connection
+     * that carries it is bound to its session vertice and cookie, so that the follow-up requests on the same
+     * connection skip the cookie parsing, authentication and admission control. The binding is removed when the
+     * session ends, when a new Inform is received on the connection, or when the connection is closed.
+     */
+    public static class ConnectionBinding {
+        public final int sessionVerticeIndex;
+        public final String cookie;
+        public final String orgId;
+
+        public ConnectionBinding(int sessionVerticeIndex, String cookie, String orgId) {
+            this.sessionVerticeIndex = sessionVerticeIndex;
+            this.cookie = cookie;
+            this.orgId = orgId;
+        }
+    }
+    public HashMap<HttpConnection, ConnectionBinding> connectionBindings = new HashMap<>();
+
     /**
      * Frequently Used Fault CWMP Message Strings
      */
@@ -93,6 +131,19 @@ public class CpeServerHttpLoadBalancerVertice extends AbstractVerticle {
          */
         fileServerRequestHandler = new FileServerRequestHandler(vertx);
 
+        /**
+         * Initialize Admission Control
+         */
+        MongoClient mongoClient = MongoClient.createShared(vertx, VertxMongoUtils.getModMongoPersistorConfig());
+        admissionControl = new CpeServerAdmissionControl(vertx, mongoClient);
+
+        /**
+         * Initialize Bulk Data Request Handler
+         */
+        if (AcsConfigProperties.BULK_DATA_TTL > 0) {
+            bulkDataRequestHandler = new BulkDataRequestHandler(vertx, mongoClient, authenticatorCache);
+        }
+
         /**
          * Start the HTTP server
          */
@@ -103,6 +154,15 @@ public class CpeServerHttpLoadBalancerVertice extends AbstractVerticle {
         log.info(VertxUtils.highlightWithHashes("CPE Server Base URL: " + AcsConfigProperties.CPE_SERVER_BASE_URL));
     }
 
+    /**
+     * Stop the Vertice
+     */
+    public void stop() {
+        if (bulkDataRequestHandler != null) {
+            bulkDataRequestHandler.writer.stop();
+        }
+    }
+
     /**
      * Raw HTTP Request Handler
      */
@@ -117,6 +177,14 @@ public class CpeServerHttpLoadBalancerVertice extends AbstractVerticle {
                 return;
             }
 
+            /**
+             * Is it a Bulk Data Upload?
+             */
+            if (BulkDataRequestHandler.isBulkDataRequest(request)) {
+                bulkDataRequestHandler.handle(request);
+                return;
+            }
+
             /**
              * The process starts after the entire body has been received
              */
@@ -136,11 +204,46 @@ public class CpeServerHttpLoadBalancerVertice extends AbstractVerticle {
                             );
                         }
 
+                        /**
+                         * Is the connection already bound to a session?
+                         */
+                        final HttpConnection connection = request.connection();
+                        ConnectionBinding boundTo = connectionBindings.get(connection);
+                        if (boundTo != null && isInform(body.toString())) {
+                            /**
+                             * The CPE is starting a new session on the same connection, which must go through the
+                             * authentication and admission control again
+                             */
+                            unbind(connection);
+                            boundTo = null;
+                        }
+                        final ConnectionBinding binding = boundTo;
+
                         /**
                          * Check Cookie
                          */
                         String cookie = request.headers().get("Cookie");
-                        if (cookie == null) {
+                        if (binding != null) {
+                            // Follow-up request within a session on a bound keep-alive connection
+                            sessionVerticeIndex = binding.sessionVerticeIndex;
+                            message.put(AcsConstants.FIELD_NAME_ORG_ID, binding.orgId);
+                            if (cookie != null) {
+                                message.put(CpeServerConstants.FIELD_NAME_COOKIE, cookie);
+                            } else {
+                                message.put(CpeServerConstants.FIELD_NAME_BOUND_COOKIE, binding.cookie);
+                            }
+                        } else if (cookie == null) {
+                            // Pass the source IP address on (to be compared with the ConnectionRequestURL)
+                            if (request.remoteAddress() != null) {
+                                message.put(
+                                        CpeServerConstants.FIELD_NAME_SOURCE_IP,
+                                        ConnectionRequestReachability.getClientAddress(
+                                                request.remoteAddress().host(),
+                                                request.headers().get("X-Forwarded-For")
+                                        )
+                                );
+                            }
+
                             /**
                              * Rebuild the ACS URL that is used by this CPE
                              */
@@ -197,6 +300,18 @@ public class CpeServerHttpLoadBalancerVertice extends AbstractVerticle {
                                 // Add Org Id
                                 message.put(AcsConstants.FIELD_NAME_ORG_ID, authenticator.id);
 
+                                /**
+                                 * Admission Control (only the authenticated sessions count against the limits)
+                                 */
+                                if (!admissionControl.admitNewSession(nextSessionVerticeIndex, body.toString())) {
+                                    request.response().putHeader(
+                                            "Retry-After",
+                                            String.valueOf(admissionControl.getRetryAfter())
+                                    );
+                                    sendResponse(request, HttpResponseStatus.SERVICE_UNAVAILABLE, null);
+                                    return;
+                                }
+
                                 // Pick the next session vertice in a round-robin fashion
                                 sessionVerticeIndex = nextSessionVerticeIndex;
                                 nextSessionVerticeIndex = (nextSessionVerticeIndex + 1) %
@@ -235,15 +350,25 @@ public class CpeServerHttpLoadBalancerVertice extends AbstractVerticle {
                          * Send the request to Session vertice via event bus
                          */
                         DeliveryOptions options = new DeliveryOptions().setSendTimeout(DEFAULT_TIMEOUT);
+                        final int targetVerticeIndex = sessionVerticeIndex;
+                        final long sendTime = System.currentTimeMillis();
                         vertx.eventBus().send(
                                 ebAddress,
                                 message,
                                 options,
                                 ar -> {
+                                    if (binding == null && cookie == null) {
+                                        // Only the Informs are replied right away (others may wait for device ops)
+                                        admissionControl.onReply(
+                                                targetVerticeIndex,
+                                                System.currentTimeMillis() - sendTime
+                                        );
+                                    }
                                     if (ar.failed()) {
                                         log.error("Failed to receive reply from " + ebAddress
                                                 + "due to " + ar.cause() + "!");
                                         log.error("Original Request Message:\n" + message.encodePrettily());
+                                        unbind(connection);
                                         sendResponse(request, HttpResponseStatus.OK, INTERNAL_TIMEOUT);
                                         return;
                                     }
@@ -257,6 +382,12 @@ public class CpeServerHttpLoadBalancerVertice extends AbstractVerticle {
                                     String response_cookie = response.getString(CpeServerConstants.FIELD_NAME_COOKIE);
                                     if (response_cookie != null) {
                                         request.response().putHeader("Set-Cookie", response_cookie);
+                                        bind(
+                                                connection,
+                                                targetVerticeIndex,
+                                                response_cookie,
+                                                message.getString(AcsConstants.FIELD_NAME_ORG_ID)
+                                        );
                                     }
 
                                     /**
@@ -281,6 +412,9 @@ public class CpeServerHttpLoadBalancerVertice extends AbstractVerticle {
                                         } else if (statusCode == HttpResponseStatus.NO_CONTENT.code()) {
                                             request.response().putHeader("Content-Type", "text/xml; charset=\"utf-8\"");
                                             request.response().putHeader("SOAPAction", "\"\"");
+
+                                            // The session is over
+                                            unbind(connection);
                                         }
                                     }
 
@@ -299,6 +433,55 @@ public class CpeServerHttpLoadBalancerVertice extends AbstractVerticle {
         }
     };
 
+    /**
+     * Check if a request body carries an Inform (i.e. the start of a new session).
+     *
+     * @param body
+     */
+    public static boolean isInform(String body) {
+        return body != null
+                && (body.contains(":Inform>") || body.contains(":Inform ")
+                || body.contains("<Inform>") || body.contains("<Inform "));
+    }
+
+    /**
+     * Bind a keep-alive connection to a session (and remove the binding when the connection is closed).
+     *
+     * The connections stay in the map (with a null binding) after being unbound, so the close handler is only
+     * registered once per connection.
+     *
+     * @param connection
+     * @param sessionVerticeIndex
+     * @param cookie
+     * @param orgId
+     */
+    public void bind(final HttpConnection connection, int sessionVerticeIndex, String cookie, String orgId) {
+        if (connection == null) {
+            return;
+        }
+
+        if (!connectionBindings.containsKey(connection)) {
+            connection.closeHandler(new Handler<Void>() {
+                @Override
+                public void handle(Void event) {
+                    connectionBindings.remove(connection);
+                }
+            });
+        }
+        connectionBindings.put(connection, new ConnectionBinding(sessionVerticeIndex, cookie, orgId));
+    }
+
+    /**
+     * Remove the session binding of a connection (if any).
+     *
+     * @param connection
+     */
+    public void unbind(HttpConnection connection) {
+        if (connection != null && connectionBindings.get(connection) != null) {
+            connectionBindings.put(connection, null);
+        }
+    }
+
     /**
      * Send response.
      *
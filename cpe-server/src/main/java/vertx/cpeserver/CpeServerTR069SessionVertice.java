@@ -1,18 +1,25 @@
 package vertx.cpeserver;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.ext.mongo.MongoClient;
+import io.vertx.redis.RedisClient;
+import io.vertx.redis.RedisOptions;
 import vertx.VertxConfigProperties;
 import vertx.VertxHttpClientUtils;
+import vertx.VertxMongoUtils;
 import vertx.VertxUtils;
 import vertx.cache.DialPlanCache;
 import vertx.cache.OrganizationCache;
 import vertx.connreq.ConnectionRequestConstants;
 import vertx.connreq.ConnectionRequestFsm;
+import vertx.cpeserver.deviceop.ProfileSpvCache;
 import vertx.cpeserver.session.CwmpHttpRequestHandler;
 import vertx.cpeserver.session.CwmpSession;
 import vertx.cpeserver.session.CwmpSessionCookieUtils;
+import vertx.cpeserver.session.SessionTimingWheel;
 import vertx.model.CpeDeviceOp;
 import vertx.model.Organization;
+import vertx.util.AcsConfigProperties;
 import vertx.util.AcsConstants;
 import vertx.util.CpeDataModelMgmt;
 import vertx.util.sxajboss.SxaJBossApiUtils;
@@ -61,6 +68,36 @@ public class CpeServerTR069SessionVertice extends AbstractVerticle {
      */
     public DialPlanCache dialPlanCache;
 
+    /**
+     * Mongo Client shared by all sessions and helpers of this vertice
+     */
+    public MongoClient mongoClient;
+
+    /**
+     * CPE Presence Tracker (coalesces "lastInformTime" updates)
+     */
+    public CpePresenceTracker presenceTracker;
+
+    /**
+     * Inform Slot Balancer (spreads the periodic informs across the interval)
+     */
+    public InformSlotBalancer informSlotBalancer;
+
+    /**
+     * CPE Event Publisher (appends the Inform events to the per-org CPE event streams)
+     */
+    public CpeEventPublisher eventPublisher;
+
+    /**
+     * Compiled "SetParameterValues" parameter lists of the configuration profiles
+     */
+    public ProfileSpvCache profileSpvCache;
+
+    /**
+     * Timing Wheel that drives the timers of all sessions on this vertice
+     */
+    public SessionTimingWheel timingWheel;
+
     /**
      * Frequently Used JSON Object
      */
@@ -85,6 +122,11 @@ public class CpeServerTR069SessionVertice extends AbstractVerticle {
         verticeIndex = config().getInteger(CpeServerConstants.FIELD_NAME_VERTICE_INDEX);
         log.info("Starting Session Vertice " + verticeIndex + "...");
 
+        /**
+         * Initialize Mongo Client
+         */
+        mongoClient = MongoClient.createShared(vertx, VertxMongoUtils.getModMongoPersistorConfig());
+
         /**
          * Initialize Static Session Info String
          */
@@ -118,6 +160,45 @@ public class CpeServerTR069SessionVertice extends AbstractVerticle {
          */
         dialPlanCache = new DialPlanCache(vertx);
 
+        /**
+         * Create the Session Timing Wheel
+         */
+        timingWheel = new SessionTimingWheel(
+                vertx,
+                CpeServerConstants.SESSION_TIMING_WHEEL_TICK,
+                CpeServerConstants.SESSION_TIMING_WHEEL_SIZE
+        );
+
+        /**
+         * Create CPE Presence Tracker
+         */
+        RedisClient redisClient = RedisClient.create(
+                vertx,
+                new RedisOptions()
+                        .setHost(VertxConfigProperties.redisHost)
+                        .setPort(VertxConfigProperties.redisPort)
+        );
+        presenceTracker = new CpePresenceTracker(vertx, mongoClient, redisClient);
+
+        /**
+         * Create Inform Slot Balancer
+         */
+        if (AcsConfigProperties.INFORM_SLOT_BALANCING) {
+            informSlotBalancer = new InformSlotBalancer(vertx, redisClient);
+        }
+
+        /**
+         * Create CPE Event Publisher
+         */
+        if (AcsConfigProperties.CPE_EVENT_STREAM_MAX_LENGTH > 0) {
+            eventPublisher = new CpeEventPublisher(vertx, redisClient);
+        }
+
+        /**
+         * Create the cache of compiled configuration profiles
+         */
+        profileSpvCache = new ProfileSpvCache(vertx);
+
         /**
          * Initialize the Vertx HTTP Client Utils
          */
@@ -140,6 +221,22 @@ public class CpeServerTR069SessionVertice extends AbstractVerticle {
                 CpeServerConstants.CWMP_SESSION_VERTICE_ADDRESS_PREFIX + String.valueOf(verticeIndex),
                 (Handler)new CwmpHttpRequestHandler(vertx, this)
         );
+
+        /**
+         * Report the # of sessions to the HTTP Load Balancer Vertice(s) for admission control
+         */
+        vertx.setPeriodic(
+                CpeServerConstants.ADMISSION_LOAD_REPORT_INTERVAL,
+                new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        vertx.eventBus().publish(
+                                CpeServerConstants.CWMP_SESSION_VERTICE_LOAD_REPORT_ADDRESS,
+                                CpeServerAdmissionControl.buildLoadReport(verticeIndex, sessions.size())
+                        );
+                    }
+                }
+        );
     }
 
     /**
@@ -147,6 +244,34 @@ public class CpeServerTR069SessionVertice extends AbstractVerticle {
      */
     @Override
     public void stop() {
+        /**
+         * Flush the pending "lastInformTime" updates
+         */
+        if (presenceTracker != null) {
+            presenceTracker.stop();
+        }
+
+        /**
+         * Flush the pending inform slot arrivals
+         */
+        if (informSlotBalancer != null) {
+            informSlotBalancer.stop();
+        }
+
+        /**
+         * Flush the pending Inform events
+         */
+        if (eventPublisher != null) {
+            eventPublisher.stop();
+        }
+
+        /**
+         * Stop the Session Timing Wheel
+         */
+        if (timingWheel != null) {
+            timingWheel.stop();
+        }
+
         /**
          * Clean up all the sessions stored in Redis
          */
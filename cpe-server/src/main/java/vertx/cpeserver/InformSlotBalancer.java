@@ -0,0 +1,386 @@
+package vertx.cpeserver;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.redis.RedisClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import vertx.VertxRedisUtils;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Project:  cwmp CPE Server
+ *
+ * Inform Slot Balancer (a.k.a. Inform Storm Flattener).
+ *
+ * When many devices boot at the same time (for example after a power outage), they keep sending their periodic
+ * Informs in lockstep, which shows up as sharp load spikes every PeriodicInformInterval.
+ *
+ * This balancer tracks a per-org histogram of the periodic Inform arrivals, per PeriodicInformInterval, by one-minute
+ * slots within the interval (i.e. the "phase" of the device, which repeats every interval):
+ *
+ * - The arrivals are counted locally and flushed periodically into a Redis Hash per org/interval/cycle (where a
+ *   cycle is one interval long), so that the histogram covers the whole fleet across all CPE servers.
+ * - The histogram of the previous (complete) cycle is the expected arrivals of the current cycle. It is read once
+ *   per cycle (and cached locally).
+ * - A device that informs in an over-subscribed slot (more than OVERLOAD_FACTOR times the average) is moved with a
+ *   probability of (count - average) / count, i.e. only the excess is moved. The new slot is the less used one of two
+ *   random slots (so that the moved devices do not all pile up into the same empty slot), and only if it is under
+ *   the average.
+ *
+ * The move itself is a "SetParameterValues" of "ManagementServer.PeriodicInformTime" which puts the next Informs of
+ * the device into the new slot.
+ *
+ * Every periodic Inform is counted (recordPeriodicInform), while the move is only decided for the sessions that have
+ * nothing else to do (pickNewPeriodicInformTime). A moved device is counted once per cycle: its arrival leaves the
+ * old slot, and the new slot is only counted right away if it is earlier in the cycle (a later slot is counted when
+ * the device actually informs there, still within the same cycle).
+ *
+ * Each session vertice owns one balancer, so it is only accessed from the vertice's event loop.
+ *
+ * @author: ronyang
+ */
+public class InformSlotBalancer {
+    private static final Logger log = LoggerFactory.getLogger(InformSlotBalancer.class.getName());
+
+    /**
+     * Slot Length (in seconds)
+     */
+    public static final int SLOT_LENGTH = 60;
+
+    /**
+     * A slot is over-subscribed if it has more than this many times the average arrivals
+     */
+    public static final double OVERLOAD_FACTOR = 1.5;
+
+    /**
+     * Ignore the slots with fewer arrivals than this (not worth a round trip)
+     */
+    public static final int MIN_ARRIVALS_PER_SLOT = 10;
+
+    /**
+     * Redis Key Prefix
+     */
+    public static final String REDIS_KEY_PREFIX = "cwmp:inform-slots:";
+
+    /**
+     * Vert.x Instance
+     */
+    Vertx vertx;
+
+    /**
+     * Redis Client
+     */
+    RedisClient redisClient;
+
+    /**
+     * Pending Arrival Counts <Redis Key --> <Slot --> Count>>
+     */
+    HashMap<String, HashMap<String, Long>> pendingArrivals = new HashMap<>();
+
+    /**
+     * Expected Arrivals (i.e. the histograms of the previous cycles) <Redis Key --> Counts by Slot>
+     */
+    HashMap<String, int[]> expectedArrivals = new HashMap<>();
+
+    /**
+     * The histograms that are being read from Redis
+     */
+    HashSet<String> pendingReads = new HashSet<>();
+
+    /**
+     * # of moves in the current minute (the budget is per session vertice)
+     */
+    int nbrOfMoves = 0;
+    long currentMinute = 0;
+
+    /**
+     * Periodic Flush Timer
+     */
+    Long flushTimerId = null;
+
+    /**
+     * Random Number Generator
+     */
+    Random random = new Random();
+
+    /**
+     * Constructor.
+     *
+     * @param vertx
+     * @param redisClient
+     */
+    public InformSlotBalancer(Vertx vertx, RedisClient redisClient) {
+        this.vertx = vertx;
+        this.redisClient = redisClient;
+
+        flushTimerId = vertx.setPeriodic(
+                CpeServerConstants.INFORM_SLOT_FLUSH_INTERVAL,
+                new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        flush();
+                    }
+                }
+        );
+    }
+
+    /**
+     * Record a periodic Inform.
+     *
+     * @param orgId
+     * @param interval      PeriodicInformInterval (in seconds)
+     * @param informTime    In ms
+     */
+    public void recordPeriodicInform(String orgId, int interval, long informTime) {
+        int nbrOfSlots = interval / SLOT_LENGTH;
+        if (orgId == null || nbrOfSlots < 2) {
+            return;
+        }
+
+        long informTimeInSeconds = informTime / 1000;
+        addArrivals(getRedisKey(orgId, interval, informTimeInSeconds / interval), getSlot(interval, informTime), 1);
+    }
+
+    /**
+     * Check whether a device (whose periodic Inform has been recorded) shall be moved into another slot.
+     *
+     * @param orgId
+     * @param interval      PeriodicInformInterval (in seconds)
+     * @param informTime    In ms
+     *
+     * @return  The new PeriodicInformTime (in ms) if the device shall be moved, or null.
+     */
+    public Long pickNewPeriodicInformTime(String orgId, int interval, long informTime) {
+        int nbrOfSlots = interval / SLOT_LENGTH;
+        if (orgId == null || nbrOfSlots < 2) {
+            return null;
+        }
+
+        long informTimeInSeconds = informTime / 1000;
+        long cycle = informTimeInSeconds / interval;
+        int slot = getSlot(interval, informTime);
+
+        /**
+         * Check the budget
+         */
+        long minute = informTime / 60000;
+        if (minute != currentMinute) {
+            currentMinute = minute;
+            nbrOfMoves = 0;
+        }
+        if (nbrOfMoves >= CpeServerConstants.INFORM_SLOT_MAX_MOVES_PER_MINUTE) {
+            return null;
+        }
+
+        /**
+         * Expected arrivals of this cycle
+         */
+        final String previousKey = getRedisKey(orgId, interval, cycle - 1);
+        int[] slots = expectedArrivals.get(previousKey);
+        if (slots == null) {
+            readExpectedArrivals(previousKey, nbrOfSlots);
+            return null;
+        }
+
+        long total = 0;
+        for (int count : slots) {
+            total += count;
+        }
+        double average = (double) total / nbrOfSlots;
+        int count = slots[slot];
+        if (count < MIN_ARRIVALS_PER_SLOT || count <= average * OVERLOAD_FACTOR) {
+            return null;
+        }
+
+        /**
+         * Only move the excess
+         */
+        if (random.nextDouble() >= (count - average) / count) {
+            return null;
+        }
+
+        /**
+         * Pick the less used one of two random slots
+         */
+        int candidate1 = random.nextInt(nbrOfSlots);
+        int candidate2 = random.nextInt(nbrOfSlots);
+        int newSlot = slots[candidate1] <= slots[candidate2]? candidate1 : candidate2;
+        if (slots[newSlot] >= average) {
+            return null;
+        }
+
+        /**
+         * Update the local copy of the histogram so that the following moves see this one
+         */
+        slots[slot] --;
+        slots[newSlot] ++;
+        nbrOfMoves ++;
+
+        /**
+         * The device informs in the new slot from now on (otherwise the old slot would still look over-subscribed in
+         * the next cycle). A later slot is counted when the device informs there again within this cycle, while an
+         * earlier one is only reached in the next cycle and hence counted right away.
+         */
+        String currentKey = getRedisKey(orgId, interval, cycle);
+        addArrivals(currentKey, slot, -1);
+        if (newSlot < slot) {
+            addArrivals(currentKey, newSlot, 1);
+        }
+
+        return (cycle * interval + newSlot * SLOT_LENGTH + random.nextInt(SLOT_LENGTH)) * 1000;
+    }
+
+    /**
+     * Get the slot of an Inform within its cycle.
+     *
+     * @param interval      PeriodicInformInterval (in seconds)
+     * @param informTime    In ms
+     */
+    static int getSlot(int interval, long informTime) {
+        int nbrOfSlots = interval / SLOT_LENGTH;
+        int slot = (int) (((informTime / 1000) % interval) / SLOT_LENGTH);
+        if (slot >= nbrOfSlots) {
+            // The last partial slot (if the interval is not a multiple of the slot length)
+            slot = nbrOfSlots - 1;
+        }
+        return slot;
+    }
+
+    /**
+     * Add to the pending arrival count of a slot.
+     *
+     * @param key
+     * @param slot
+     * @param delta
+     */
+    void addArrivals(String key, int slot, long delta) {
+        HashMap<String, Long> pendingCounts = pendingArrivals.get(key);
+        if (pendingCounts == null) {
+            pendingCounts = new HashMap<>();
+            pendingArrivals.put(key, pendingCounts);
+        }
+        Long pendingCount = pendingCounts.get(String.valueOf(slot));
+        pendingCounts.put(String.valueOf(slot), pendingCount == null? delta : pendingCount + delta);
+    }
+
+    /**
+     * Read the histogram of a complete cycle from Redis.
+     *
+     * @param key
+     * @param nbrOfSlots
+     */
+    void readExpectedArrivals(final String key, final int nbrOfSlots) {
+        if (pendingReads.contains(key)) {
+            return;
+        }
+        pendingReads.add(key);
+
+        VertxRedisUtils.hgetall(
+                redisClient,
+                key,
+                new Handler<JsonObject>() {
+                    @Override
+                    public void handle(JsonObject histogram) {
+                        pendingReads.remove(key);
+                        if (histogram == null) {
+                            return;
+                        }
+
+                        int[] slots = new int[nbrOfSlots];
+                        for (String slot : histogram.fieldNames()) {
+                            try {
+                                int index = Integer.valueOf(slot);
+                                if (index >= 0 && index < nbrOfSlots) {
+                                    // Negative if more devices moved away than informed there
+                                    slots[index] = Math.max(0, Integer.valueOf(histogram.getString(slot)));
+                                }
+                            } catch (NumberFormatException ex) {
+                                log.error("Invalid inform slot " + slot + " in " + key + "!");
+                            }
+                        }
+                        expectedArrivals.put(key, slots);
+                    }
+                }
+        );
+    }
+
+    /**
+     * Flush the pending arrival counts to Redis, and forget the histograms of the older cycles.
+     */
+    public void flush() {
+        if (pendingArrivals.size() == 0) {
+            return;
+        }
+
+        VertxRedisUtils.Batch batch = new VertxRedisUtils.Batch(redisClient);
+        for (Map.Entry<String, HashMap<String, Long>> entry : pendingArrivals.entrySet()) {
+            for (Map.Entry<String, Long> slotCount : entry.getValue().entrySet()) {
+                batch.hincrby(entry.getKey(), slotCount.getKey(), slotCount.getValue());
+            }
+
+            // Keep each cycle for two more cycles (i.e. while it can still be the previous cycle)
+            batch.pexpire(entry.getKey(), getInterval(entry.getKey()) * 2000L);
+
+            // The histograms of the cycles before the previous one are no longer needed
+            expectedArrivals.keySet().removeIf(key -> isOlderCycle(key, entry.getKey()));
+        }
+        batch.exec(null);
+
+        pendingArrivals = new HashMap<>();
+    }
+
+    /**
+     * Flush everything and stop the periodic timer.
+     */
+    public void stop() {
+        if (flushTimerId != null) {
+            vertx.cancelTimer(flushTimerId);
+            flushTimerId = null;
+        }
+        flush();
+    }
+
+    /**
+     * Build the Redis Key of a histogram.
+     *
+     * @param orgId
+     * @param interval
+     * @param cycle
+     */
+    public static String getRedisKey(String orgId, int interval, long cycle) {
+        return REDIS_KEY_PREFIX + orgId + ":" + interval + ":" + cycle;
+    }
+
+    /**
+     * Extract the interval from a Redis Key.
+     *
+     * @param key
+     */
+    static int getInterval(String key) {
+        String[] parts = key.substring(REDIS_KEY_PREFIX.length()).split(":");
+        return Integer.valueOf(parts[parts.length - 2]);
+    }
+
+    /**
+     * Check if a histogram key is for an older cycle than the previous cycle of the current key (of the same org and
+     * interval).
+     *
+     * @param key
+     * @param currentKey
+     */
+    static boolean isOlderCycle(String key, String currentKey) {
+        int keyCycleIndex = key.lastIndexOf(':');
+        int currentCycleIndex = currentKey.lastIndexOf(':');
+        if (!key.substring(0, keyCycleIndex).equals(currentKey.substring(0, currentCycleIndex))) {
+            return false;
+        }
+        return Long.valueOf(key.substring(keyCycleIndex + 1))
+                < Long.valueOf(currentKey.substring(currentCycleIndex + 1)) - 1;
+    }
+}
@@ -30,6 +30,14 @@ public class PerOrgAuthenticatorCache extends AbstractLocalCache {
         );
     }
 
+    /**
+     * The organizations contain the ACS/API credentials, which shall not be saved into local disk snapshots.
+     */
+    @Override
+    public boolean isDiskSnapshotAllowed() {
+        return false;
+    }
+
     /**
      * Build actual index String by the raw JSON Object.
      *
@@ -62,6 +70,6 @@ public class PerOrgAuthenticatorCache extends AbstractLocalCache {
      * @return
      */
     public PerOrgAuthenticator getAuthenticatorByAcsUrl(String url) {
-        return (PerOrgAuthenticator)hashMap.get(url);
+        return get(url);
     }
 }
@@ -0,0 +1,292 @@
+package vertx.cpeserver.bulkdata;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import vertx.VertxException;
+
+import javax.xml.bind.DatatypeConverter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Project:  cwmp CPE Server
+ *
+ * Bulk Data Report Parser (TR-232 HTTP JSON and CSV encodings).
+ *
+ * JSON Encoding (both "ObjectHierarchy" and "NameValuePair" report formats):
+ *
+ *      {"Report": [{"CollectionTime": 1364529149, "Device.MoCA.Interface.1.Stats.BytesSent": 7824, ...}, ...]}
+ *      {"Report": [{"CollectionTime": 1364529149, "Device": {"MoCA": {"Interface": {"1": {...}}}}}, ...]}
+ *
+ * CSV Encoding ("ParameterPerRow" and "ParameterPerColumn" report formats):
+ *
+ *      ReportTimestamp,ParameterName,ParameterValue,ParameterType
+ *      1364529149,Device.MoCA.Interface.1.Stats.BytesSent,7824,unsignedInt
+ *
+ *      ReportTimestamp,Device.MoCA.Interface.1.Stats.BytesSent,Device.MoCA.Interface.1.Stats.BytesReceived
+ *      1364529149,7824,8456
+ *
+ * The CSV reports are parsed line by line as the upload is being received (see CsvParser).
+ *
+ * @author: ronyang
+ */
+public class BulkDataParser {
+    private static final Logger log = LoggerFactory.getLogger(BulkDataParser.class.getName());
+
+    /**
+     * TR-232 Names
+     */
+    public static final String JSON_REPORT = "Report";
+    public static final String JSON_COLLECTION_TIME = "CollectionTime";
+    public static final String CSV_REPORT_TIMESTAMP = "ReportTimestamp";
+    public static final String CSV_PARAMETER_NAME = "ParameterName";
+    public static final String CSV_PARAMETER_VALUE = "ParameterValue";
+
+    /**
+     * A single report (i.e. the parameter values collected at one point in time)
+     */
+    public static class Report {
+        // Collection Time in ms
+        public long collectionTime;
+        // <Parameter Name --> Value>
+        public JsonObject values = new JsonObject();
+
+        public Report(long collectionTime) {
+            this.collectionTime = collectionTime;
+        }
+    }
+
+    /**
+     * Parse a JSON encoded upload.
+     *
+     * @param body
+     * @param receivedTime  Used as the collection time of the reports without timestamp (in ms)
+     * @throws VertxException
+     */
+    public static List<Report> parseJson(String body, long receivedTime) throws VertxException {
+        JsonArray rawReports;
+        try {
+            rawReports = new JsonObject(body).getJsonArray(JSON_REPORT);
+        } catch (Exception ex) {
+            throw new VertxException("Invalid JSON Payload!");
+        }
+        if (rawReports == null) {
+            throw new VertxException("No \"" + JSON_REPORT + "\" found in JSON Payload!");
+        }
+
+        List<Report> reports = new ArrayList<>();
+        for (int i = 0; i < rawReports.size(); i ++) {
+            Object rawReport = rawReports.getValue(i);
+            if (!(rawReport instanceof JsonObject)) {
+                throw new VertxException("Invalid \"" + JSON_REPORT + "\" entry!");
+            }
+
+            JsonObject reportObject = (JsonObject) rawReport;
+            Report report = new Report(parseTimestamp(reportObject.getValue(JSON_COLLECTION_TIME), receivedTime));
+            for (String name : reportObject.fieldNames()) {
+                if (!name.equals(JSON_COLLECTION_TIME)) {
+                    flatten(name, reportObject.getValue(name), report.values);
+                }
+            }
+            reports.add(report);
+        }
+        return reports;
+    }
+
+    /**
+     * Flatten a (nested) JSON value into "<Parameter Name> --> Value" pairs.
+     *
+     * @param name
+     * @param value
+     * @param values
+     */
+    static void flatten(String name, Object value, JsonObject values) {
+        if (value instanceof JsonObject) {
+            JsonObject object = (JsonObject) value;
+            for (String childName : object.fieldNames()) {
+                flatten(name + "." + childName, object.getValue(childName), values);
+            }
+        } else if (value instanceof JsonArray) {
+            // Multi-instance objects may be encoded as arrays (instance numbers starting from 1)
+            JsonArray array = (JsonArray) value;
+            for (int i = 0; i < array.size(); i ++) {
+                flatten(name + "." + (i + 1), array.getValue(i), values);
+            }
+        } else {
+            values.put(name, value == null? null : value.toString());
+        }
+    }
+
+    /**
+     * Parse a report timestamp (Unix Epoch in seconds or ISO-8601), or return the default value if absent/invalid.
+     *
+     * @param timestamp
+     * @param defaultValue
+     */
+    public static long parseTimestamp(Object timestamp, long defaultValue) {
+        if (timestamp == null) {
+            return defaultValue;
+        }
+        if (timestamp instanceof Number) {
+            return ((Number) timestamp).longValue() * 1000;
+        }
+
+        String timestampString = timestamp.toString().trim();
+        if (timestampString.length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Long.valueOf(timestampString) * 1000;
+        } catch (NumberFormatException ex) {
+            // Try ISO-8601 next
+        }
+        try {
+            return DatatypeConverter.parseDateTime(timestampString).getTimeInMillis();
+        } catch (IllegalArgumentException ex) {
+            log.debug("Invalid report timestamp " + timestampString);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Split a CSV line (with optional double quotes around the values).
+     *
+     * @param line
+     */
+    public static List<String> splitCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean bInQuotes = false;
+        for (int i = 0; i < line.length(); i ++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (bInQuotes && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    // Escaped Quote
+                    value.append('"');
+                    i ++;
+                } else {
+                    bInQuotes = !bInQuotes;
+                }
+            } else if (c == ',' && !bInQuotes) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    /**
+     * Streaming CSV Parser.
+     *
+     * The lines are fed one by one (without the line separators), and each report is passed on to the report handler
+     * as soon as it is complete.
+     */
+    public static class CsvParser {
+        // Report Handler
+        Handler<Report> reportHandler;
+        // Used as the collection time of the reports without timestamp (in ms)
+        long receivedTime;
+        // Header (i.e. Column Names)
+        List<String> header = null;
+        // "ParameterPerRow" or "ParameterPerColumn"?
+        boolean bParameterPerRow;
+        int timestampIndex;
+        int nameIndex;
+        int valueIndex;
+        // The current "ParameterPerRow" report (i.e. the rows with the same timestamp)
+        Report currentReport = null;
+        String currentTimestamp = null;
+        // # of reports parsed so far
+        public int nbrOfReports = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param receivedTime
+         * @param reportHandler
+         */
+        public CsvParser(long receivedTime, Handler<Report> reportHandler) {
+            this.receivedTime = receivedTime;
+            this.reportHandler = reportHandler;
+        }
+
+        /**
+         * Parse the next line.
+         *
+         * @param line
+         * @throws VertxException
+         */
+        public void handleLine(String line) throws VertxException {
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            if (line.trim().length() == 0) {
+                return;
+            }
+
+            List<String> columns = splitCsvLine(line);
+            if (header == null) {
+                header = columns;
+                timestampIndex = header.indexOf(CSV_REPORT_TIMESTAMP);
+                nameIndex = header.indexOf(CSV_PARAMETER_NAME);
+                valueIndex = header.indexOf(CSV_PARAMETER_VALUE);
+                bParameterPerRow = nameIndex >= 0 && valueIndex >= 0;
+                return;
+            }
+
+            if (bParameterPerRow) {
+                if (columns.size() <= Math.max(nameIndex, valueIndex)) {
+                    throw new VertxException("Malformed CSV row: " + line);
+                }
+                String timestamp = timestampIndex >= 0 && timestampIndex < columns.size()?
+                        columns.get(timestampIndex) : "";
+                if (currentReport == null || !timestamp.equals(currentTimestamp)) {
+                    end();
+                    currentReport = new Report(parseTimestamp(timestamp, receivedTime));
+                    currentTimestamp = timestamp;
+                }
+                currentReport.values.put(columns.get(nameIndex), columns.get(valueIndex));
+            } else {
+                if (columns.size() != header.size()) {
+                    throw new VertxException("Malformed CSV row: " + line);
+                }
+                Report report = new Report(
+                        timestampIndex >= 0? parseTimestamp(columns.get(timestampIndex), receivedTime) : receivedTime
+                );
+                for (int i = 0; i < columns.size(); i ++) {
+                    if (i != timestampIndex) {
+                        report.values.put(header.get(i), columns.get(i));
+                    }
+                }
+                emit(report);
+            }
+        }
+
+        /**
+         * Pass the last "ParameterPerRow" report on (if any).
+         */
+        public void end() {
+            if (currentReport != null) {
+                emit(currentReport);
+                currentReport = null;
+                currentTimestamp = null;
+            }
+        }
+
+        /**
+         * Pass a report on to the report handler.
+         *
+         * @param report
+         */
+        void emit(Report report) {
+            nbrOfReports ++;
+            reportHandler.handle(report);
+        }
+    }
+}
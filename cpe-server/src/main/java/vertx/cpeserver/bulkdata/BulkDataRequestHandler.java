@@ -0,0 +1,299 @@
+package vertx.cpeserver.bulkdata;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.parsetools.RecordParser;
+import io.vertx.ext.mongo.MongoClient;
+import org.apache.http.auth.AUTH;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import vertx.VertxException;
+import vertx.VertxUtils;
+import vertx.cpeserver.CpeServerConstants;
+import vertx.cpeserver.PerOrgAuthenticatorCache;
+import vertx.cpeserver.httpauth.PerOrgAuthenticator;
+import vertx.model.BulkDataReport;
+import vertx.model.Cpe;
+import vertx.util.AcsConfigProperties;
+
+import java.util.List;
+
+/**
+ * Project:  cwmp CPE Server
+ *
+ * Bulk Data Collection (TR-232) HTTP Request Handler.
+ *
+ * The CPEs upload their bulk data reports via HTTP POST to "{CPE Server Base URL}/bulkdata{ACS URL Path}", i.e. the
+ * org is identified by the ACS URL in the same way as the CWMP requests, and the uploads are authenticated with the
+ * same per-org credentials. The device is identified by the "oui" and "sn" query parameters, which are expected to be
+ * configured via "BulkData.Profile.{i}.HTTP.RequestURIParameter.{i}." (with "Device.DeviceInfo.ManufacturerOUI" and
+ * "Device.DeviceInfo.SerialNumber").
+ *
+ * The uploads are handled entirely within the HTTP Load Balancer Vertice (i.e. without any CWMP session), and the
+ * reports are handed over to the BulkDataWriter which writes them into MongoDB in batches:
+ *
+ * - CSV uploads are parsed line by line as they are being received;
+ * - JSON uploads are parsed once received (up to BULK_DATA_MAX_JSON_SIZE).
+ *
+ * @author: ronyang
+ */
+public class BulkDataRequestHandler {
+    private static final Logger log = LoggerFactory.getLogger(BulkDataRequestHandler.class.getName());
+
+    /**
+     * Query Parameter Names
+     */
+    public static final String QUERY_PARAM_OUI = "oui";
+    public static final String QUERY_PARAM_SN = "sn";
+
+    /**
+     * Content Types
+     */
+    public static final String CONTENT_TYPE_JSON = "application/json";
+    public static final String CONTENT_TYPE_CSV = "text/csv";
+
+    /**
+     * Per-Org Authenticator Cache (shared with the HTTP Load Balancer Vertice)
+     */
+    PerOrgAuthenticatorCache authenticatorCache;
+
+    /**
+     * Bulk Data Writer
+     */
+    public BulkDataWriter writer;
+
+    /**
+     * Constructor.
+     *
+     * @param vertx
+     * @param mongoClient
+     * @param authenticatorCache
+     */
+    public BulkDataRequestHandler(Vertx vertx, MongoClient mongoClient, PerOrgAuthenticatorCache authenticatorCache) {
+        this.authenticatorCache = authenticatorCache;
+        writer = new BulkDataWriter(vertx, mongoClient);
+    }
+
+    /**
+     * Check if the given HTTP Server Request is a Bulk Data Upload.
+     *
+     * @param request
+     */
+    public static boolean isBulkDataRequest(HttpServerRequest request) {
+        return AcsConfigProperties.BULK_DATA_TTL > 0
+                && request.path() != null
+                && request.path().startsWith(AcsConfigProperties.BULK_DATA_URL_ROOT)
+                && HttpMethod.POST.equals(request.method());
+    }
+
+    /**
+     * Handle a Bulk Data Upload.
+     *
+     * @param request
+     */
+    public void handle(final HttpServerRequest request) {
+        final long receivedTime = System.currentTimeMillis();
+
+        /**
+         * Rebuild the ACS URL that is used by this CPE
+         */
+        String acsUrlPath = request.path().substring(AcsConfigProperties.BULK_DATA_URL_ROOT.length());
+        if (acsUrlPath.equals("")) {
+            // Add a trailing "/
+            acsUrlPath = "/";
+        }
+        String acsUrl = CpeServerConstants.ACS_URL_PROTOCOL_PREFIX + request.headers().get("HOST") + acsUrlPath;
+
+        /**
+         * Do Authentication
+         */
+        // Get per-Org Authenticator Instance by ACS URL
+        PerOrgAuthenticator authenticator = authenticatorCache.getAuthenticatorByAcsUrl(acsUrl);
+        if (authenticator == null) {
+            // Try again with just the URL path for compatibility
+            authenticator = authenticatorCache.getAuthenticatorByAcsUrl(acsUrlPath);
+        }
+        if (authenticator == null) {
+            log.error("Received bulk data upload on unexpected URL path " + acsUrl + "!");
+            VertxUtils.responseWithStatusCode(HttpResponseStatus.FORBIDDEN, request);
+            return;
+        }
+        String authHeader = request.headers().get(AUTH.WWW_AUTH_RESP);
+        if (authHeader == null) {
+            // Send Auth Challenge
+            request.response().putHeader(AUTH.WWW_AUTH, authenticator.getChallengeString());
+            VertxUtils.responseWithStatusCode(HttpResponseStatus.UNAUTHORIZED, request);
+            return;
+        } else if (!authenticator.verifyAuthHeader(authHeader)) {
+            VertxUtils.responseWithStatusCode(HttpResponseStatus.UNAUTHORIZED, request);
+            return;
+        }
+        final String orgId = authenticator.id;
+
+        /**
+         * Identify the device
+         */
+        final String oui = request.getParam(QUERY_PARAM_OUI);
+        final String sn = request.getParam(QUERY_PARAM_SN);
+        if (oui == null || sn == null) {
+            VertxUtils.responseWithStatusCode(
+                    HttpResponseStatus.BAD_REQUEST,
+                    request,
+                    "Both \"" + QUERY_PARAM_OUI + "\" and \"" + QUERY_PARAM_SN + "\" query parameters are required!"
+            );
+            return;
+        }
+        final String cpeKey = Cpe.getCpeKey(orgId, oui, sn);
+
+        /**
+         * Back off if the writes cannot keep up
+         */
+        if (writer.isOverloaded()) {
+            request.response().putHeader("Retry-After", String.valueOf(CpeServerConstants.BULK_DATA_RETRY_AFTER));
+            VertxUtils.responseWithStatusCode(HttpResponseStatus.SERVICE_UNAVAILABLE, request);
+            return;
+        }
+
+        /**
+         * Parse the reports by Content Type
+         */
+        String contentType = request.headers().get("Content-Type");
+        if (contentType != null && contentType.toLowerCase().startsWith(CONTENT_TYPE_CSV)) {
+            handleCsv(request, orgId, cpeKey, oui, sn, receivedTime);
+        } else if (contentType != null && contentType.toLowerCase().startsWith(CONTENT_TYPE_JSON)) {
+            handleJson(request, orgId, cpeKey, oui, sn, receivedTime);
+        } else {
+            log.error(cpeKey + ": Unsupported bulk data content type " + contentType + "!");
+            VertxUtils.responseWithStatusCode(HttpResponseStatus.UNSUPPORTED_MEDIA_TYPE, request);
+        }
+    }
+
+    /**
+     * Handle a CSV encoded upload (line by line as it is being received).
+     *
+     * If a malformed line is found, the rest of the upload is discarded (but the reports parsed so far are kept).
+     */
+    public void handleCsv(
+            final HttpServerRequest request,
+            final String orgId,
+            final String cpeKey,
+            final String oui,
+            final String sn,
+            final long receivedTime) {
+        final BulkDataParser.CsvParser csvParser = new BulkDataParser.CsvParser(
+                receivedTime,
+                new Handler<BulkDataParser.Report>() {
+                    @Override
+                    public void handle(BulkDataParser.Report report) {
+                        addReport(orgId, cpeKey, oui, sn, receivedTime, report);
+                    }
+                }
+        );
+
+        final String[] error = new String[] {null};
+        request.handler(RecordParser.newDelimited("\n", new Handler<Buffer>() {
+            @Override
+            public void handle(Buffer line) {
+                if (error[0] != null) {
+                    return;
+                }
+                try {
+                    csvParser.handleLine(line.toString());
+                } catch (VertxException ex) {
+                    error[0] = ex.getMessage();
+                }
+            }
+        }));
+        request.endHandler(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                if (error[0] != null) {
+                    log.error(cpeKey + ": " + error[0]);
+                    VertxUtils.responseWithStatusCode(HttpResponseStatus.BAD_REQUEST, request, error[0]);
+                    return;
+                }
+
+                // The last line may have no line separator
+                csvParser.end();
+                log.debug(cpeKey + ": Received " + csvParser.nbrOfReports + " bulk data report(s) (CSV).");
+                VertxUtils.responseWithStatusCode(HttpResponseStatus.OK, request);
+            }
+        });
+    }
+
+    /**
+     * Handle a JSON encoded upload (once the entire body has been received).
+     */
+    public void handleJson(
+            final HttpServerRequest request,
+            final String orgId,
+            final String cpeKey,
+            final String oui,
+            final String sn,
+            final long receivedTime) {
+        final Buffer body = Buffer.buffer();
+        final boolean[] bTooLarge = new boolean[] {false};
+        request.handler(new Handler<Buffer>() {
+            @Override
+            public void handle(Buffer chunk) {
+                if (bTooLarge[0]) {
+                    return;
+                }
+                if (body.length() + chunk.length() > CpeServerConstants.BULK_DATA_MAX_JSON_SIZE) {
+                    bTooLarge[0] = true;
+                    return;
+                }
+                body.appendBuffer(chunk);
+            }
+        });
+        request.endHandler(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                if (bTooLarge[0]) {
+                    log.error(cpeKey + ": Bulk data upload exceeds " + CpeServerConstants.BULK_DATA_MAX_JSON_SIZE
+                            + " bytes!");
+                    VertxUtils.responseWithStatusCode(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE, request);
+                    return;
+                }
+
+                List<BulkDataParser.Report> reports;
+                try {
+                    reports = BulkDataParser.parseJson(body.toString(), receivedTime);
+                } catch (VertxException ex) {
+                    log.error(cpeKey + ": " + ex.getMessage());
+                    VertxUtils.responseWithStatusCode(HttpResponseStatus.BAD_REQUEST, request, ex.getMessage());
+                    return;
+                }
+
+                for (BulkDataParser.Report report : reports) {
+                    addReport(orgId, cpeKey, oui, sn, receivedTime, report);
+                }
+                log.debug(cpeKey + ": Received " + reports.size() + " bulk data report(s) (JSON).");
+                VertxUtils.responseWithStatusCode(HttpResponseStatus.OK, request);
+            }
+        });
+    }
+
+    /**
+     * Hand a parsed report over to the writer.
+     */
+    void addReport(
+            String orgId,
+            String cpeKey,
+            String oui,
+            String sn,
+            long receivedTime,
+            BulkDataParser.Report report) {
+        if (report.values.size() == 0) {
+            return;
+        }
+        writer.add(
+                receivedTime,
+                BulkDataReport.toDocument(orgId, cpeKey, oui, sn, report.collectionTime, report.values)
+        );
+    }
+}
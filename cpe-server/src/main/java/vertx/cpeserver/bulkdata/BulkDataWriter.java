@@ -0,0 +1,241 @@
+package vertx.cpeserver.bulkdata;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import vertx.VertxException;
+import vertx.VertxMongoUtils;
+import vertx.cpeserver.CpeServerConstants;
+import vertx.model.BulkDataReport;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Project:  cwmp CPE Server
+ *
+ * Bulk Data Report Writer.
+ *
+ * The reports are buffered in memory per daily collection and written into MongoDB as unordered bulk inserts (up to
+ * MAX_BULK_WRITE_BATCH_SIZE documents per insert), either every BULK_DATA_FLUSH_INTERVAL or as soon as a full batch
+ * is pending. The indexes of each daily collection are ensured upon its first write, and the daily collections
+ * whose reports have all expired are dropped every BULK_DATA_CLEANUP_INTERVAL.
+ *
+ * The writer is considered overloaded (i.e. the new uploads shall be rejected) while more than
+ * BULK_DATA_MAX_PENDING_REPORTS reports are buffered or being written.
+ *
+ * Each HTTP load balancer vertice owns one writer, so it is only accessed from the vertice's event loop.
+ *
+ * @author: ronyang
+ */
+public class BulkDataWriter {
+    private static final Logger log = LoggerFactory.getLogger(BulkDataWriter.class.getName());
+
+    /**
+     * Vert.x Instance
+     */
+    Vertx vertx;
+
+    /**
+     * Mongo Client
+     */
+    MongoClient mongoClient;
+
+    /**
+     * Pending Reports <Collection Name --> Documents>
+     */
+    HashMap<String, JsonArray> pendingReports = new HashMap<>();
+
+    /**
+     * # of reports that are buffered or being written
+     */
+    int nbrOfPendingReports = 0;
+
+    /**
+     * The collections whose indexes have been ensured
+     */
+    HashSet<String> indexedCollections = new HashSet<>();
+
+    /**
+     * Periodic Flush Timer
+     */
+    Long flushTimerId = null;
+
+    /**
+     * Periodic Cleanup Timer
+     */
+    Long cleanupTimerId = null;
+
+    /**
+     * Constructor.
+     *
+     * @param vertx
+     * @param mongoClient
+     */
+    public BulkDataWriter(Vertx vertx, MongoClient mongoClient) {
+        this.vertx = vertx;
+        this.mongoClient = mongoClient;
+
+        flushTimerId = vertx.setPeriodic(
+                CpeServerConstants.BULK_DATA_FLUSH_INTERVAL,
+                new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        flush();
+                    }
+                }
+        );
+
+        dropExpiredCollections();
+        cleanupTimerId = vertx.setPeriodic(
+                CpeServerConstants.BULK_DATA_CLEANUP_INTERVAL,
+                new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        dropExpiredCollections();
+                    }
+                }
+        );
+    }
+
+    /**
+     * Check if too many reports are pending.
+     */
+    public boolean isOverloaded() {
+        return nbrOfPendingReports >= CpeServerConstants.BULK_DATA_MAX_PENDING_REPORTS;
+    }
+
+    /**
+     * Add a report (to be written later).
+     *
+     * @param receivedTime  In ms
+     * @param document
+     */
+    public void add(long receivedTime, JsonObject document) {
+        String collectionName = BulkDataReport.getCollectionName(receivedTime);
+        JsonArray documents = pendingReports.get(collectionName);
+        if (documents == null) {
+            documents = new JsonArray();
+            pendingReports.put(collectionName, documents);
+        }
+        documents.add(document);
+        nbrOfPendingReports ++;
+
+        if (documents.size() >= VertxMongoUtils.MAX_BULK_WRITE_BATCH_SIZE) {
+            pendingReports.remove(collectionName);
+            write(collectionName, documents);
+        }
+    }
+
+    /**
+     * Write all the pending reports to MongoDB.
+     */
+    public void flush() {
+        if (pendingReports.size() == 0) {
+            return;
+        }
+
+        for (Map.Entry<String, JsonArray> entry : pendingReports.entrySet()) {
+            write(entry.getKey(), entry.getValue());
+        }
+        pendingReports = new HashMap<>();
+    }
+
+    /**
+     * Write a batch of reports into a daily collection.
+     *
+     * @param collectionName
+     * @param documents
+     */
+    void write(final String collectionName, final JsonArray documents) {
+        if (!indexedCollections.contains(collectionName)) {
+            // Only the recent days are written, so the older ones can be forgotten
+            if (indexedCollections.size() >= 8) {
+                indexedCollections.clear();
+            }
+            indexedCollections.add(collectionName);
+            try {
+                VertxMongoUtils.createIndexes(mongoClient, collectionName, BulkDataReport.DB_INDEXES, null);
+            } catch (VertxException e) {
+                log.error(collectionName + ": Failed to create indexes due to " + e.getMessage() + "!");
+            }
+        }
+
+        try {
+            VertxMongoUtils.bulkInsert(
+                    mongoClient,
+                    collectionName,
+                    documents,
+                    false,
+                    new Handler<Long>() {
+                        @Override
+                        public void handle(Long nbrOfInserted) {
+                            nbrOfPendingReports -= documents.size();
+                            if (nbrOfInserted == null) {
+                                log.error(collectionName + ": Failed to write " + documents.size() + " report(s)!");
+                            }
+                        }
+                    }
+            );
+        } catch (VertxException e) {
+            log.error(collectionName + ": Failed to write " + documents.size() + " report(s) due to "
+                    + e.getMessage() + "!");
+            nbrOfPendingReports -= documents.size();
+        }
+    }
+
+    /**
+     * Drop the daily collections whose reports have all expired.
+     *
+     * All the load balancer vertices do the same, so a collection may already have been dropped by another one.
+     */
+    void dropExpiredCollections() {
+        mongoClient.getCollections(new Handler<AsyncResult<List<String>>>() {
+            @Override
+            public void handle(AsyncResult<List<String>> result) {
+                if (result.failed()) {
+                    log.error("Failed to list the bulk data collections due to " + result.cause() + "!");
+                    return;
+                }
+
+                for (final String collectionName : result.result()) {
+                    if (!BulkDataReport.isExpiredCollection(collectionName)) {
+                        continue;
+                    }
+
+                    log.info("Dropping expired bulk data collection " + collectionName + "...");
+                    mongoClient.dropCollection(collectionName, new Handler<AsyncResult<Void>>() {
+                        @Override
+                        public void handle(AsyncResult<Void> dropResult) {
+                            if (dropResult.failed()) {
+                                log.debug(collectionName + ": Not dropped due to " + dropResult.cause());
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Flush everything and stop the periodic timer.
+     */
+    public void stop() {
+        if (flushTimerId != null) {
+            vertx.cancelTimer(flushTimerId);
+            flushTimerId = null;
+        }
+        if (cleanupTimerId != null) {
+            vertx.cancelTimer(cleanupTimerId);
+            cleanupTimerId = null;
+        }
+        flush();
+    }
+}
@@ -0,0 +1,310 @@
+package vertx.cpeserver.deviceop;
+
+import vertx.CcException;
+import vertx.cpeserver.CpeServerConstants;
+import vertx.cpeserver.session.CwmpRequest;
+import vertx.cpeserver.session.CwmpSession;
+import vertx.cwmp.CwmpException;
+import vertx.model.CpeDeviceOp;
+import vertx.model.CpeDeviceOpTypeEnum;
+import dslforumOrgCwmp12.FaultDocument;
+import dslforumOrgCwmp12.ParameterValueList;
+import dslforumOrgCwmp12.ParameterValueStruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Project:  cwmp CPE Server
+ *
+ * Device Op Coalescer.
+ *
+ * When a session pops all the pending device ops of the CPE from Redis at once, the consecutive "GetParameterValues"
+ * device ops are coalesced into a single "GetParameterValues" RPC (with the union of their parameter names), and the
+ * consecutive "SetParameterValues" device ops that do not set the same parameter to different values are coalesced
+ * into a single "SetParameterValues" RPC. The response is then demultiplexed back to the callback of each device op.
+ *
+ * Only consecutive device ops are coalesced so that the CPE still sees the reads and the writes in the original
+ * order. All the other device ops are enqueued one by one as before.
+ *
+ * @author: ronyang
+ */
+public class DeviceOpCoalescer {
+    private static final Logger log = LoggerFactory.getLogger(DeviceOpCoalescer.class.getName());
+
+    /**
+     * Enqueue a list of device ops (in order), with the compatible ones coalesced.
+     *
+     * The device ops have already been removed from Redis, so a device op that cannot be enqueued is called back with
+     * an invalid-request result and does not affect the others.
+     *
+     * @param deviceOps
+     * @param session
+     */
+    public static void enqueueDeviceOps(List<JsonObject> deviceOps, CwmpSession session) {
+        /**
+         * The current run of coalescible device ops (of the same type)
+         */
+        CpeDeviceOpTypeEnum runType = CpeDeviceOpTypeEnum.Invalid;
+        List<JsonObject> run = new ArrayList<>();
+        List<ParameterValueList> runParamValueLists = new ArrayList<>();
+        HashMap<String, String> runParamValues = new HashMap<>();
+
+        for (JsonObject deviceOp : deviceOps) {
+            CpeDeviceOpTypeEnum opType;
+            try {
+                opType = getCoalescibleType(deviceOp);
+            } catch (Exception ex) {
+                opType = CpeDeviceOpTypeEnum.Invalid;
+            }
+
+            ParameterValueList paramValueList = null;
+            if (opType.equals(CpeDeviceOpTypeEnum.SetParameterValues)) {
+                paramValueList = toParameterValueList(deviceOp, session);
+                if (paramValueList == null) {
+                    // Let the regular path report the error
+                    opType = CpeDeviceOpTypeEnum.Invalid;
+                }
+            }
+
+            /**
+             * Close the current run?
+             */
+            if (!opType.equals(runType)
+                    || run.size() >= CpeServerConstants.CWMP_SESSION_MAX_COALESCED_DEVICE_OPS
+                    || (paramValueList != null && isConflicting(paramValueList, runParamValues))) {
+                flush(runType, run, runParamValueLists, session);
+                run = new ArrayList<>();
+                runParamValueLists = new ArrayList<>();
+                runParamValues = new HashMap<>();
+            }
+            runType = opType;
+
+            if (opType.equals(CpeDeviceOpTypeEnum.Invalid)) {
+                enqueueSingle(deviceOp, session);
+                continue;
+            }
+
+            run.add(deviceOp);
+            if (paramValueList != null) {
+                runParamValueLists.add(paramValueList);
+                for (ParameterValueStruct valueStruct : paramValueList.getParameterValueStructArray()) {
+                    runParamValues.put(valueStruct.getName(), getStringValue(valueStruct));
+                }
+            }
+        }
+
+        flush(runType, run, runParamValueLists, session);
+    }
+
+    /**
+     * Enqueue a run of coalescible device ops.
+     *
+     * @param runType
+     * @param run
+     * @param runParamValueLists
+     * @param session
+     */
+    static void flush(
+            CpeDeviceOpTypeEnum runType,
+            List<JsonObject> run,
+            List<ParameterValueList> runParamValueLists,
+            CwmpSession session) {
+        if (run.size() == 0) {
+            return;
+        }
+
+        if (run.size() == 1) {
+            enqueueSingle(run.get(0), session);
+            return;
+        }
+
+        try {
+            if (runType.equals(CpeDeviceOpTypeEnum.GetParameterValues)) {
+                GetParameterValuesNbi.startCoalesced(run, session);
+            } else {
+                SetParameterValuesNbi.startCoalesced(run, runParamValueLists, session);
+            }
+        } catch (Exception ex) {
+            log.error(session.cpeKey + ": Failed to enqueue " + run.size() + " coalesced device ops due to "
+                    + ex.getMessage());
+            for (JsonObject deviceOp : run) {
+                DeviceOpUtils.callbackInvalidReq(session, deviceOp, "Failed to enqueue device op!");
+            }
+        }
+    }
+
+    /**
+     * Enqueue a single device op, or call it back with an invalid-request result if it cannot be enqueued.
+     *
+     * @param deviceOp
+     * @param session
+     */
+    static void enqueueSingle(JsonObject deviceOp, CwmpSession session) {
+        try {
+            DeviceOpUtils.enqueueDeviceOp(deviceOp, session);
+        } catch (Exception ex) {
+            log.error(session.cpeKey + ": Failed to enqueue deviceOp due to " + ex.getMessage());
+            DeviceOpUtils.callbackInvalidReq(session, deviceOp, "Failed to enqueue device op!");
+        }
+    }
+
+    /**
+     * Get the type of a device op if it can be coalesced, or "Invalid" if it cannot.
+     *
+     * @param deviceOp
+     */
+    public static CpeDeviceOpTypeEnum getCoalescibleType(JsonObject deviceOp) {
+        if (CpeDeviceOp.CPE_DEVICE_OP_STATE_IN_PROGRESS.equals(deviceOp.getString(CpeDeviceOp.FIELD_NAME_STATE))) {
+            return CpeDeviceOpTypeEnum.Invalid;
+        }
+
+        CpeDeviceOpTypeEnum opType;
+        try {
+            opType = CpeDeviceOp.getOperationType(deviceOp);
+        } catch (CcException e) {
+            return CpeDeviceOpTypeEnum.Invalid;
+        }
+
+        switch (opType) {
+            case GetParameterValues:
+                if (GetParameterValuesNbi.canBeCoalesced(deviceOp)) {
+                    return opType;
+                }
+                break;
+
+            case SetParameterValues:
+                if (SetParameterValuesNbi.canBeCoalesced(deviceOp)) {
+                    return opType;
+                }
+                break;
+        }
+        return CpeDeviceOpTypeEnum.Invalid;
+    }
+
+    /**
+     * Convert the parameter values of a "SetParameterValues" device op, or return null if the conversion failed.
+     *
+     * @param deviceOp
+     * @param session
+     */
+    static ParameterValueList toParameterValueList(JsonObject deviceOp, CwmpSession session) {
+        try {
+            return session.sessionVertice.profileSpvCache.getParameterValueList(session.cpe, deviceOp);
+        } catch (Exception ex) {
+            log.error(session.cpeKey + ": Failed to convert parameter values due to " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Check if a list of parameter values sets any parameter of the current run to a different value.
+     *
+     * @param paramValueList
+     * @param runParamValues    <Parameter Name --> Value> of the current run
+     */
+    static boolean isConflicting(ParameterValueList paramValueList, HashMap<String, String> runParamValues) {
+        for (ParameterValueStruct valueStruct : paramValueList.getParameterValueStructArray()) {
+            String name = valueStruct.getName();
+            if (runParamValues.containsKey(name)
+                    && !Objects.equals(runParamValues.get(name), getStringValue(valueStruct))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the string value of a ParameterValueStruct (if any).
+     *
+     * @param valueStruct
+     */
+    static String getStringValue(ParameterValueStruct valueStruct) {
+        return valueStruct.getValue() == null? null : valueStruct.getValue().getStringValue();
+    }
+
+    /**
+     * Base Response Handler of the requests that coalesce multiple device ops.
+     *
+     * The timeouts and drains are passed on to the regular handler of each device op. A fault causes the device ops
+     * to be retried one by one (ahead of the other queued requests), so that each device op gets its own result.
+     */
+    public static abstract class CoalescedResponseHandler implements CwmpRequest.Handlers {
+        List<JsonObject> deviceOps;
+        List<DeviceOpUtils.NbiDeviceOpResponseHandler> handlers = new ArrayList<>();
+
+        /**
+         * Constructor.
+         *
+         * @param deviceOps
+         */
+        public CoalescedResponseHandler(List<JsonObject> deviceOps) {
+            this.deviceOps = deviceOps;
+        }
+
+        /**
+         * Enqueue a single device op (as part of the retry).
+         *
+         * @param session
+         * @param index     Index of the device op
+         */
+        public abstract void startSingle(CwmpSession session, int index);
+
+        /**
+         * Retry the device ops one by one.
+         *
+         * @param session
+         * @param request
+         * @param cwmpFault
+         */
+        @Override
+        public void faultHandler(CwmpSession session, CwmpRequest request, FaultDocument.Fault cwmpFault)
+                throws CwmpException {
+            log.info(session.cpeKey + ": Received fault response for a coalesced " + request.methodName
+                    + " request! Retrying the " + deviceOps.size() + " device ops one by one.");
+
+            int queueSize = session.cwmpRequestQueue.size();
+            for (int i = 0; i < deviceOps.size(); i ++) {
+                startSingle(session, i);
+            }
+
+            /**
+             * Move the retries (which have been appended to the queue) to the head of the queue
+             */
+            for (int i = session.cwmpRequestQueue.size() - queueSize; i > 0; i --) {
+                session.cwmpRequestQueue.addFirst(session.cwmpRequestQueue.pollLast());
+            }
+        }
+
+        /**
+         * Pass the timeout on to each device op.
+         *
+         * @param session
+         * @param request
+         */
+        @Override
+        public void timeoutHandler(CwmpSession session, CwmpRequest request) throws CwmpException {
+            for (DeviceOpUtils.NbiDeviceOpResponseHandler handler : handlers) {
+                handler.timeoutHandler(session, request);
+            }
+        }
+
+        /**
+         * Pass the drain on to each device op.
+         *
+         * @param session
+         * @param request
+         */
+        @Override
+        public void drainHandler(CwmpSession session, CwmpRequest request) throws CwmpException {
+            for (DeviceOpUtils.NbiDeviceOpResponseHandler handler : handlers) {
+                handler.drainHandler(session, request);
+            }
+        }
+    }
+}
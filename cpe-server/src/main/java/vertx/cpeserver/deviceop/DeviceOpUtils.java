@@ -283,8 +283,9 @@ public class DeviceOpUtils {
          */
         String callbackUrl = deviceOp.getString(CpeDeviceOp.FIELD_NAME_CALLBACK_URL);
         if (callbackUrl == null) {
-            log.error(session.cpeKey + ": Callback URL is null! deviceOp internalSn: "
-                    + deviceOp.getString(CpeDeviceOp.FIELD_NAME_INTERNAL_SN));
+            // i.e. a "synchronous" device op that was queued until Inform (the client already got its response)
+            log.info(session.cpeKey + ": No callback URL for " + deviceOp.getString(CpeDeviceOp.FIELD_NAME_OPERATION)
+                    + " device op (state: " + state + ").");
             return;
         }
 
@@ -298,6 +299,7 @@ public class DeviceOpUtils {
          */
         if (!session.multiSessionOpType.equals(CpeDeviceOpTypeEnum.Invalid)) {
             log.debug(session.cpeKey + ": Multi Session Op Callback " + session.multiSessionOpType.name());
+            // The actual callback (and the pending callback count) is done once the session info has been updated
             multiSessionOpCallback(
                     session,
                     deviceOp,
@@ -307,6 +309,11 @@ public class DeviceOpUtils {
             return;
         }
 
+        /**
+         * Also wait for all the other callbacks if multiple device ops have been coalesced into one RPC
+         */
+        session.nbrOfPendingNbiCallbacks ++;
+
         /**
          * Build a new Object that contains the deviceOp and the state/result
          */
@@ -367,7 +374,7 @@ public class DeviceOpUtils {
                             /**
                              * Resume the session either way
                              */
-                            CwmpSessionFsm.transit(session, CwmpSessionFsmEventEnum.NbiCallbackComplete);
+                            nbiCallbackComplete(session);
                         }
                     };
 
@@ -399,7 +406,7 @@ public class DeviceOpUtils {
                     }
 
                     // Resume the CWMP Session
-                    CwmpSessionFsm.transit(session, CwmpSessionFsmEventEnum.NbiCallbackComplete);
+                    nbiCallbackComplete(session);
                 }
             };
             Handler<HttpClientResponse> responseHandler = new Handler<HttpClientResponse>() {
@@ -423,14 +430,15 @@ public class DeviceOpUtils {
                                         enqueueDeviceOp(nextOp, session);
                                     }
                                 } catch (Exception ex) {
-                                    exceptionHandler.handle(ex);
+                                    // The session is resumed below
+                                    log.info("Caught exception " + ex.getMessage() + "!");
                                 }
                             }
 
                             /**
                              * Resume the session either way
                              */
-                            CwmpSessionFsm.transit(session, CwmpSessionFsmEventEnum.NbiCallbackComplete);
+                            nbiCallbackComplete(session);
                         }
                     });
                 }
@@ -456,6 +464,20 @@ public class DeviceOpUtils {
         }
     }
 
+    /**
+     * Resume the session once all the outstanding NBI callbacks are done.
+     *
+     * @param session
+     */
+    public static void nbiCallbackComplete(CwmpSession session) {
+        if (session.nbrOfPendingNbiCallbacks > 0) {
+            session.nbrOfPendingNbiCallbacks --;
+        }
+        if (session.nbrOfPendingNbiCallbacks == 0) {
+            CwmpSessionFsm.transit(session, CwmpSessionFsmEventEnum.NbiCallbackComplete);
+        }
+    }
+
     /**
      * Get the TR Object Instance # by the Object Partial Path.
      *
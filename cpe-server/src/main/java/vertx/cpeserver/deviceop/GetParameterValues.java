@@ -6,6 +6,7 @@ import vertx.cwmp.CwmpException;
 import vertx.cwmp.CwmpFaultCodes;
 import vertx.cwmp.CwmpMessage;
 import vertx.cwmp.CwmpMessageTypeEnum;
+import vertx.util.CpeParamValueCacheUtils;
 import dslforumOrgCwmp12.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -130,6 +131,18 @@ public class GetParameterValues {
             for (ParameterValueStruct valueStruct : response.getParameterList().getParameterValueStructArray()) {
                 session.cpe.addParamValueStructToSets(valueStruct, CwmpMessageTypeEnum.GET_PARAMETER_VALUES);
             }
+
+            /**
+             * Cache the values for the NBI, along with the partial paths that have been read entirely
+             */
+            ParameterNames requestedNames =
+                    request.rpcMessage.soapEnv.getBody().getGetParameterValues().getParameterNames();
+            CpeParamValueCacheUtils.update(
+                    session.redisClient,
+                    session.cpe.getCpeKey(),
+                    response.getParameterList().getParameterValueStructArray(),
+                    requestedNames == null? null : requestedNames.getStringArray()
+            );
         }
 
         /**
@@ -16,6 +16,10 @@ import org.slf4j.LoggerFactory;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
 /**
  * Project:  cwmp-parent
  *
@@ -41,11 +45,7 @@ public class GetParameterValuesNbi extends GetParameterValues {
             DeviceOpUtils.callbackInvalidReq(session, deviceOp, error);
         } else {
             ParameterNames paramNames = ParameterNames.Factory.newInstance();
-            for (int i=0; i < rawParameterNames.size(); i ++) {
-                String paramName = rawParameterNames.getString(i);
-                if (CWMPTr098ModelExtensions.containCWMPAbstractName(paramName)) {
-                    paramName = CWMPTr098ModelExtensions.convertCWMPAbstractNameToActualName(session.cpe, paramName);
-                }
+            for (String paramName : getActualParamNames(deviceOp, session)) {
                 paramNames.addString(paramName);
             }
 
@@ -56,6 +56,67 @@ public class GetParameterValuesNbi extends GetParameterValues {
         }
     }
 
+    /**
+     * Enqueue multiple device ops as a single "GetParameterValues" request with the union of their parameter names.
+     *
+     * @param deviceOps     The device ops (which must all have valid parameter names)
+     * @param session
+     */
+    public static void startCoalesced(List<JsonObject> deviceOps, CwmpSession session) {
+        List<List<String>> actualParamNames = new ArrayList<>();
+        LinkedHashSet<String> allParamNames = new LinkedHashSet<>();
+        for (JsonObject deviceOp : deviceOps) {
+            List<String> paramNames = getActualParamNames(deviceOp, session);
+            actualParamNames.add(paramNames);
+            allParamNames.addAll(paramNames);
+        }
+
+        ParameterNames paramNames = ParameterNames.Factory.newInstance();
+        for (String paramName : allParamNames) {
+            paramNames.addString(paramName);
+        }
+
+        log.info(session.cpeKey + ": Coalesced " + deviceOps.size() + " GetParameterValues device ops into one RPC ("
+                + allParamNames.size() + " parameter names).");
+        start(session,
+                paramNames,
+                new CoalescedGetParameterValuesNbiResponseHandler(deviceOps, actualParamNames),
+                CwmpRequest.CWMP_REQUESTER_ACS);
+    }
+
+    /**
+     * Can a device op be coalesced with other "GetParameterValues" device ops?
+     *
+     * The deep discover requests are not, as their results are not extracted per parameter.
+     *
+     * @param deviceOp
+     */
+    public static boolean canBeCoalesced(JsonObject deviceOp) {
+        JsonArray rawParameterNames = deviceOp.getJsonArray(CpeDeviceOp.FIELD_NAME_PARAM_NAMES);
+        return rawParameterNames != null
+                && rawParameterNames.size() > 0
+                && !rawParameterNames.contains(DEEP_DISCOVER_PARAM_NAME);
+    }
+
+    /**
+     * Get the actual parameter names of a device op (with the abstract names converted).
+     *
+     * @param deviceOp
+     * @param session
+     */
+    public static List<String> getActualParamNames(JsonObject deviceOp, CwmpSession session) {
+        JsonArray rawParameterNames = deviceOp.getJsonArray(CpeDeviceOp.FIELD_NAME_PARAM_NAMES);
+        List<String> paramNames = new ArrayList<>();
+        for (int i=0; i < rawParameterNames.size(); i ++) {
+            String paramName = rawParameterNames.getString(i);
+            if (CWMPTr098ModelExtensions.containCWMPAbstractName(paramName)) {
+                paramName = CWMPTr098ModelExtensions.convertCWMPAbstractNameToActualName(session.cpe, paramName);
+            }
+            paramNames.add(paramName);
+        }
+        return paramNames;
+    }
+
     /**
      * Custom Response Handler that publishes results on Redis
      */
@@ -94,6 +155,15 @@ public class GetParameterValuesNbi extends GetParameterValues {
                 extractParamValues(responseMessage);
             }
 
+            sendResult(session);
+        }
+
+        /**
+         * Send the extracted parameter values to the callback URL.
+         *
+         * @param session
+         */
+        public void sendResult(CwmpSession session) {
             /**
              * Add the actual path at top level for all the abstract paths in the request
              */
@@ -138,6 +208,92 @@ public class GetParameterValuesNbi extends GetParameterValues {
         }
     }
 
+    /**
+     * Response Handler of a "GetParameterValues" request that coalesces multiple device ops.
+     *
+     * The response is demultiplexed by the parameter names of each device op. If the CPE faults the coalesced request
+     * (for example because one of the device ops has an invalid parameter name), the device ops are retried one by one
+     * (ahead of the other queued requests) so that only the invalid one gets the fault.
+     */
+    public static class CoalescedGetParameterValuesNbiResponseHandler
+            extends DeviceOpCoalescer.CoalescedResponseHandler {
+        List<List<String>> actualParamNames;
+
+        /**
+         * Constructor.
+         *
+         * @param deviceOps
+         * @param actualParamNames  The actual parameter names of each device op
+         */
+        public CoalescedGetParameterValuesNbiResponseHandler(
+                List<JsonObject> deviceOps,
+                List<List<String>> actualParamNames) {
+            super(deviceOps);
+            this.actualParamNames = actualParamNames;
+            for (JsonObject deviceOp : deviceOps) {
+                handlers.add(new CpeGetParameterValuesNbiResponseHandler(deviceOp));
+            }
+        }
+
+        /**
+         * Demultiplex the response to the device ops.
+         *
+         * @param responseMessage
+         */
+        @Override
+        public void responseHandler(CwmpSession session, CwmpRequest request, CwmpMessage responseMessage)
+                throws CwmpException {
+            /**
+             * Perform the default/standard actions (once for all)
+             */
+            GetParameterValues.defaultHandler.responseHandler(session, request, responseMessage);
+
+            ParameterValueStruct[] parameterValueStructs = responseMessage.soapEnv.getBody()
+                    .getGetParameterValuesResponse().getParameterList().getParameterValueStructArray();
+            for (int i = 0; i < handlers.size(); i ++) {
+                CpeGetParameterValuesNbiResponseHandler handler =
+                        (CpeGetParameterValuesNbiResponseHandler) handlers.get(i);
+                handler.paramValues = parameterValueStructsToJsonObject(
+                        filterParameterValueStructs(parameterValueStructs, actualParamNames.get(i))
+                );
+                handler.sendResult(session);
+            }
+        }
+
+        /**
+         * Retry a device op on its own.
+         *
+         * @param session
+         * @param index     Index of the device op
+         */
+        @Override
+        public void startSingle(CwmpSession session, int index) {
+            GetParameterValuesNbi.start(deviceOps.get(index), session);
+        }
+    }
+
+    /**
+     * Filter the given ParameterValueStruct Array by parameter names (which may be partial paths ending with ".").
+     *
+     * @param parameterValueStructs
+     * @param paramNames
+     */
+    public static ParameterValueStruct[] filterParameterValueStructs(
+            ParameterValueStruct[] parameterValueStructs,
+            List<String> paramNames) {
+        List<ParameterValueStruct> filtered = new ArrayList<>();
+        for (ParameterValueStruct parameterValue : parameterValueStructs) {
+            String name = parameterValue.getName();
+            for (String paramName : paramNames) {
+                if (name.equals(paramName) || (paramName.endsWith(".") && name.startsWith(paramName))) {
+                    filtered.add(parameterValue);
+                    break;
+                }
+            }
+        }
+        return filtered.toArray(new ParameterValueStruct[filtered.size()]);
+    }
+
     /**
      * Convert the given ParameterValueStruct Array to a JSON Object.
      *
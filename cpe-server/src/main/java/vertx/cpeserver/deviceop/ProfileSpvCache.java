@@ -0,0 +1,249 @@
+package vertx.cpeserver.deviceop;
+
+import dslforumOrgCwmp12.ParameterValueList;
+import dslforumOrgCwmp12.ParameterValueStruct;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import org.apache.xmlbeans.SchemaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import vertx.cpeserver.CpeServerConstants;
+import vertx.model.CWMPTr098ModelExtensions;
+import vertx.model.Cpe;
+import vertx.model.CpeDeviceDataModel;
+import vertx.model.CpeDeviceOp;
+import vertx.util.AcsConstants;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Project:  cwmp CPE Server
+ *
+ * Cache of the precompiled "SetParameterValues" parameter lists of the configuration profiles.
+ *
+ * Converting the parameter values of a profile into a ParameterValueList (see
+ * SetParameterValues.jsonObjToParameterValuesList()) walks the entire profile and looks up the schema type of each
+ * parameter in the CPE data model, although all the devices with the same data model get the same result. So the
+ * profile is compiled once per (profile, data model) into a flat list of names/values/schema types, and each device
+ * only has to resolve the parameters that contain device-specific abstract names (see CWMPTr098ModelExtensions).
+ *
+ * The compiled profiles are keyed by the profile id (carried by the device ops built from "Apply Configuration
+ * Profile" workflow actions) and the hash of the parameter values, and are dropped when the profile is updated or
+ * deleted. As the device ops may have been built before the profile was updated, up to
+ * PROFILE_SPV_CACHE_MAX_VERSIONS versions of the parameter values are kept per profile, so the devices with the old
+ * and the new values do not keep evicting each other. Each version holds a copy of the parameter values, as the
+ * device op's JSON Object may be modified afterwards.
+ *
+ * Each session vertice owns one cache, so it is only accessed from the vertice's event loop.
+ *
+ * @author: ronyang
+ */
+public class ProfileSpvCache {
+    private static final Logger log = LoggerFactory.getLogger(ProfileSpvCache.class.getName());
+
+    /**
+     * A single compiled parameter
+     */
+    public static class CompiledParameter {
+        public String name;
+        public String value;
+        // Null if the name contains abstract names (i.e. the type can only be found per device)
+        public SchemaType schemaType;
+        public boolean bAbstractName;
+        public boolean bAbstractValue;
+    }
+
+    /**
+     * A compiled profile (i.e. the parameter values and the compiled parameter lists per data model)
+     */
+    public static class CompiledProfile {
+        public int paramValuesHash;
+        public JsonObject paramValues;
+        public HashMap<CpeDeviceDataModel, List<CompiledParameter>> parametersByDataModel = new HashMap<>();
+
+        public CompiledProfile(JsonObject paramValues) {
+            this.paramValuesHash = paramValues.hashCode();
+            this.paramValues = paramValues.copy();
+        }
+
+        /**
+         * Check if this version was compiled from the given parameter values.
+         *
+         * @param paramValuesHash
+         * @param paramValues
+         */
+        public boolean matches(int paramValuesHash, JsonObject paramValues) {
+            return this.paramValuesHash == paramValuesHash && this.paramValues.equals(paramValues);
+        }
+    }
+
+    /**
+     * Compiled Profiles <Profile Id --> Compiled Versions (most recently used first)>
+     */
+    HashMap<String, LinkedList<CompiledProfile>> compiledProfiles = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param vertx
+     */
+    public ProfileSpvCache(Vertx vertx) {
+        /**
+         * Drop the compiled profile upon profile CRUD events
+         */
+        vertx.eventBus().consumer(
+                AcsConstants.VERTX_ADDRESS_ACS_CONFIG_PROFILE_CRUD,
+                new Handler<Message<JsonObject>>() {
+                    @Override
+                    public void handle(Message<JsonObject> crudEvent) {
+                        String profileId = crudEvent.body().getString(AcsConstants.FIELD_NAME_ID);
+                        if (profileId != null && compiledProfiles.remove(profileId) != null) {
+                            log.debug("Dropped the compiled parameter values of profile " + profileId + ".");
+                        }
+                    }
+                }
+        );
+    }
+
+    /**
+     * Get the ParameterValueList of a "SetParameterValues" device op.
+     *
+     * The device ops without a profile id are converted the usual way.
+     *
+     * @param cpe
+     * @param deviceOp
+     */
+    public ParameterValueList getParameterValueList(Cpe cpe, JsonObject deviceOp) {
+        JsonObject paramValues = deviceOp.getJsonObject(CpeDeviceOp.FIELD_NAME_PARAM_VALUES);
+        String profileId = deviceOp.getString(CpeDeviceOp.FIELD_NAME_PROFILE_ID);
+        if (profileId == null || cpe.dataModel == null) {
+            return SetParameterValues.jsonObjToParameterValuesList(cpe, paramValues, null, "");
+        }
+
+        /**
+         * Look up the compiled profile
+         */
+        CompiledProfile compiledProfile = getCompiledProfile(profileId, paramValues);
+        List<CompiledParameter> parameters = compiledProfile.parametersByDataModel.get(cpe.dataModel);
+        if (parameters == null) {
+            parameters = compile(
+                    cpe.dataModel.cwmpDataModel,
+                    compiledProfile.paramValues,
+                    "",
+                    new ArrayList<CompiledParameter>()
+            );
+            compiledProfile.parametersByDataModel.put(cpe.dataModel, parameters);
+            log.debug("Compiled " + parameters.size() + " parameter(s) of profile " + profileId + ".");
+        }
+
+        /**
+         * Fill in the device-specific names/values
+         */
+        ParameterValueList paramList = ParameterValueList.Factory.newInstance();
+        for (CompiledParameter parameter : parameters) {
+            ParameterValueStruct valueStruct = paramList.addNewParameterValueStruct();
+
+            String paramName = parameter.name;
+            if (parameter.bAbstractName) {
+                paramName = CWMPTr098ModelExtensions.convertCWMPAbstractNameToActualName(cpe, paramName);
+            }
+            valueStruct.setName(paramName);
+
+            if (parameter.value != null) {
+                valueStruct.addNewValue().setStringValue(
+                        parameter.bAbstractValue?
+                                CWMPTr098ModelExtensions.convertCWMPAbstractNameToActualName(cpe, parameter.value)
+                                : parameter.value
+                );
+            } else {
+                valueStruct.setValue(null);
+            }
+
+            valueStruct.getValue().changeType(
+                    parameter.schemaType != null?
+                            parameter.schemaType
+                            : SetParameterValues.getSchemaType(cpe.dataModel.cwmpDataModel, paramName)
+            );
+        }
+        return paramList;
+    }
+
+    /**
+     * Get the compiled version of a profile with the given parameter values, or create one if not found.
+     *
+     * @param profileId
+     * @param paramValues
+     */
+    CompiledProfile getCompiledProfile(String profileId, JsonObject paramValues) {
+        int paramValuesHash = paramValues.hashCode();
+        LinkedList<CompiledProfile> versions = compiledProfiles.get(profileId);
+        if (versions == null) {
+            if (compiledProfiles.size() >= CpeServerConstants.PROFILE_SPV_CACHE_MAX_SIZE) {
+                compiledProfiles.clear();
+            }
+            versions = new LinkedList<>();
+            compiledProfiles.put(profileId, versions);
+        } else {
+            for (CompiledProfile version : versions) {
+                if (version.matches(paramValuesHash, paramValues)) {
+                    if (version != versions.getFirst()) {
+                        // Most recently used first
+                        versions.remove(version);
+                        versions.addFirst(version);
+                    }
+                    return version;
+                }
+            }
+        }
+
+        /**
+         * New version (evict the least recently used one if needed)
+         */
+        CompiledProfile compiledProfile = new CompiledProfile(paramValues);
+        versions.addFirst(compiledProfile);
+        while (versions.size() > CpeServerConstants.PROFILE_SPV_CACHE_MAX_VERSIONS) {
+            versions.removeLast();
+        }
+        return compiledProfile;
+    }
+
+    /**
+     * Compile the parameter values (in the same way as SetParameterValues.jsonObjToParameterValuesList()).
+     *
+     * @param cwmpDataModel
+     * @param paramValues
+     * @param prefix
+     * @param parameters
+     */
+    public static List<CompiledParameter> compile(
+            broadbandForumOrgCwmpDatamodel14.Model cwmpDataModel,
+            JsonObject paramValues,
+            String prefix,
+            List<CompiledParameter> parameters) {
+        for (String fieldName : paramValues.fieldNames()) {
+            Object rawValue = paramValues.getValue(fieldName);
+            if (rawValue instanceof JsonObject) {
+                // The field is a JSON Object, dig in
+                compile(cwmpDataModel, (JsonObject) rawValue, prefix + fieldName + ".", parameters);
+            } else {
+                CompiledParameter parameter = new CompiledParameter();
+                parameter.name = prefix + fieldName;
+                parameter.bAbstractName = CWMPTr098ModelExtensions.containCWMPAbstractName(parameter.name);
+                if (rawValue != null) {
+                    parameter.value = rawValue.toString();
+                    parameter.bAbstractValue = CWMPTr098ModelExtensions.containCWMPAbstractName(parameter.value);
+                }
+                if (!parameter.bAbstractName) {
+                    parameter.schemaType = SetParameterValues.getSchemaType(cwmpDataModel, parameter.name);
+                }
+                parameters.add(parameter);
+            }
+        }
+        return parameters;
+    }
+}
@@ -9,6 +9,7 @@ import vertx.cwmp.CwmpUtils;
 import vertx.model.Cpe;
 import vertx.model.CWMPTr098ModelExtensions;
 import vertx.util.CpeDataModelMgmt;
+import vertx.util.CpeParamValueCacheUtils;
 import dslforumOrgCwmp12.FaultDocument;
 import dslforumOrgCwmp12.ParameterValueList;
 import dslforumOrgCwmp12.ParameterValueStruct;
@@ -133,6 +134,14 @@ public class SetParameterValues {
             for (ParameterValueStruct valueStruct : parameterValueList.getParameterValueStructArray()) {
                 session.cpe.addParamValueStructToSets(valueStruct, CwmpMessageTypeEnum.SET_PARAMETER_VALUES);
             }
+
+            // The new values are also the latest values for the NBI
+            CpeParamValueCacheUtils.update(
+                    session.redisClient,
+                    session.cpe.getCpeKey(),
+                    parameterValueList.getParameterValueStructArray(),
+                    null
+            );
         }
 
         /**
@@ -243,17 +252,23 @@ public class SetParameterValues {
                 /**
                  * Figure out the parameter's type based on data model
                  */
-                if (paramName.contains("{i}")) {
-                    paramName = paramName.replace("{i}", "1");
-                }
-                SchemaType schemaType = CpeDataModelMgmt.getParamSchemaType(
-                        cwmpDataModel,
-                        paramName
-                );
-                valueStruct.getValue().changeType(schemaType);
+                valueStruct.getValue().changeType(getSchemaType(cwmpDataModel, paramName));
             }
         }
 
         return paramList;
     }
+
+    /**
+     * Get the schema type of a parameter (the instance placeholders are treated as instance 1).
+     *
+     * @param cwmpDataModel
+     * @param paramName
+     */
+    public static SchemaType getSchemaType(broadbandForumOrgCwmpDatamodel14.Model cwmpDataModel, String paramName) {
+        if (paramName.contains("{i}")) {
+            paramName = paramName.replace("{i}", "1");
+        }
+        return CpeDataModelMgmt.getParamSchemaType(cwmpDataModel, paramName);
+    }
 }
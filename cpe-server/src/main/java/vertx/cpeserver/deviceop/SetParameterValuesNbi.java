@@ -11,9 +11,13 @@ import dslforumOrgCwmp12.ParameterValueList;
 import dslforumOrgCwmp12.ParameterValueStruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import io.vertx.core.Handler;
 import io.vertx.core.json.JsonObject;
 import org.xmlsoap.schemas.soap.envelope.Body;
 
+import java.util.HashSet;
+import java.util.List;
+
 /**
  * Project:  cwmp-parent
  *
@@ -30,7 +34,7 @@ public class SetParameterValuesNbi extends SetParameterValues {
      * @param session
      * @
      */
-    public static void startDeviceOp(JsonObject deviceOp, CwmpSession session)
+    public static void startDeviceOp(final JsonObject deviceOp, CwmpSession session)
             throws CwmpException {
         log.debug("SetParameterValues deviceOp: " + deviceOp);
 
@@ -40,9 +44,10 @@ public class SetParameterValuesNbi extends SetParameterValues {
         JsonObject rawParameterValues = deviceOp.getJsonObject(CpeDeviceOp.FIELD_NAME_PARAM_VALUES);
         if (rawParameterValues != null && rawParameterValues.size() > 0) {
             /**
-             * Convert to ParameterValueList
+             * Convert to ParameterValueList (precompiled if applying a configuration profile)
              */
-            ParameterValueList paramValueList = jsonObjToParameterValuesList(session.cpe, rawParameterValues, null, "");
+            ParameterValueList paramValueList =
+                    session.sessionVertice.profileSpvCache.getParameterValueList(session.cpe, deviceOp);
             start(session,
                     paramValueList,
                     new CpeSetParameterValuesNbiResponseHandler(deviceOp),
@@ -63,9 +68,31 @@ public class SetParameterValuesNbi extends SetParameterValues {
                  */
                 if (deviceOp.containsKey(CpeDeviceOp.FIELD_NAME_SERVICES)) {
                     /**
-                     * Process WAN Services
+                     * Process WAN Services (after the heavy CPE sub-documents have been loaded)
                      */
-                    WanService.start(deviceOp, session);
+                    final CwmpSession finalSession = session;
+                    session.cpe.loadHeavyFields(
+                            session.mongoClient,
+                            new Handler<Boolean>() {
+                                @Override
+                                public void handle(Boolean bSucceeded) {
+                                    if (finalSession.isTerminated()) {
+                                        DeviceOpUtils.callbackDueToSessionTermination(finalSession, deviceOp);
+                                    } else if (!bSucceeded) {
+                                        DeviceOpUtils.callbackInternalError(
+                                                finalSession,
+                                                deviceOp,
+                                                new JsonObject().put(
+                                                        CpeDeviceOp.FIELD_NAME_ERROR,
+                                                        "Failed to read the CPE parameter values from DB!"
+                                                )
+                                        );
+                                    } else {
+                                        WanService.start(deviceOp, finalSession);
+                                    }
+                                }
+                            }
+                    );
                 } else {
                     String error = CpeDeviceOp.FIELD_NAME_PARAM_VALUES + " not found or empty!\n"
                             + deviceOp.encodePrettily();
@@ -75,6 +102,55 @@ public class SetParameterValuesNbi extends SetParameterValues {
         }
     }
 
+    /**
+     * Enqueue multiple device ops as a single "SetParameterValues" request.
+     *
+     * The caller must make sure that the device ops do not set the same parameter to different values.
+     *
+     * @param deviceOps
+     * @param paramValueLists   The converted parameter values of each device op
+     * @param session
+     */
+    public static void startCoalesced(
+            List<JsonObject> deviceOps,
+            List<ParameterValueList> paramValueLists,
+            CwmpSession session) {
+        ParameterValueList mergedList = ParameterValueList.Factory.newInstance();
+        HashSet<String> paramNames = new HashSet<>();
+        for (ParameterValueList paramValueList : paramValueLists) {
+            for (ParameterValueStruct valueStruct : paramValueList.getParameterValueStructArray()) {
+                // A parameter may only appear once in the same request
+                if (paramNames.add(valueStruct.getName())) {
+                    mergedList.addNewParameterValueStruct().set(valueStruct);
+                }
+            }
+        }
+
+        log.info(session.cpeKey + ": Coalesced " + deviceOps.size() + " SetParameterValues device ops into one RPC ("
+                + paramNames.size() + " parameters).");
+        start(session,
+                mergedList,
+                new CoalescedSetParameterValuesNbiResponseHandler(deviceOps, paramValueLists),
+                CwmpRequest.CWMP_REQUESTER_ACS
+        );
+    }
+
+    /**
+     * Can a device op be coalesced with other "SetParameterValues" device ops?
+     *
+     * Only the plain ones are, as the dynamic objects and WAN services need more RPCs after the parameter values
+     * have been set.
+     *
+     * @param deviceOp
+     */
+    public static boolean canBeCoalesced(JsonObject deviceOp) {
+        JsonObject rawParameterValues = deviceOp.getJsonObject(CpeDeviceOp.FIELD_NAME_PARAM_VALUES);
+        return rawParameterValues != null
+                && rawParameterValues.size() > 0
+                && !deviceOp.containsKey(CpeDeviceOp.FIELD_NAME_DYNAMIC_OBJECTS)
+                && !deviceOp.containsKey(CpeDeviceOp.FIELD_NAME_SERVICES);
+    }
+
     /**
      * Enqueue/Start an NBI provisioning request.
      *
@@ -191,6 +267,72 @@ public class SetParameterValuesNbi extends SetParameterValues {
         }
     }
 
+    /**
+     * Response Handler of a "SetParameterValues" request that coalesces multiple device ops.
+     *
+     * As the CPE applies a "SetParameterValues" request either entirely or not at all, a fault means that none of the
+     * device ops has been applied, in which case they are retried one by one (ahead of the other queued requests) so
+     * that each of them gets its own result.
+     */
+    public static class CoalescedSetParameterValuesNbiResponseHandler
+            extends DeviceOpCoalescer.CoalescedResponseHandler {
+        List<ParameterValueList> paramValueLists;
+
+        /**
+         * Constructor.
+         *
+         * @param deviceOps
+         * @param paramValueLists   The converted parameter values of each device op
+         */
+        public CoalescedSetParameterValuesNbiResponseHandler(
+                List<JsonObject> deviceOps,
+                List<ParameterValueList> paramValueLists) {
+            super(deviceOps);
+            this.paramValueLists = paramValueLists;
+            for (JsonObject deviceOp : deviceOps) {
+                handlers.add(new CpeSetParameterValuesNbiResponseHandler(deviceOp));
+            }
+        }
+
+        /**
+         * All the device ops have succeeded.
+         *
+         * @param responseMessage
+         */
+        @Override
+        public void responseHandler(CwmpSession session, CwmpRequest request, CwmpMessage responseMessage)
+                throws CwmpException {
+            /**
+             * Perform the default/standard actions (once for all)
+             */
+            SetParameterValues.defaultHandler.responseHandler(session, request, responseMessage);
+
+            for (JsonObject deviceOp : deviceOps) {
+                DeviceOpUtils.callback(
+                        session,
+                        deviceOp,
+                        CpeDeviceOp.CPE_DEVICE_OP_STATE_SUCCEEDED,
+                        null
+                );
+            }
+        }
+
+        /**
+         * Retry a device op on its own.
+         *
+         * @param session
+         * @param index     Index of the device op
+         */
+        @Override
+        public void startSingle(CwmpSession session, int index) {
+            start(session,
+                    paramValueLists.get(index),
+                    new CpeSetParameterValuesNbiResponseHandler(deviceOps.get(index)),
+                    CwmpRequest.CWMP_REQUESTER_ACS
+            );
+        }
+    }
+
     /**
      * Dynamic Path Handler that processes various type of response messages received during dynamic path process.
      */
@@ -0,0 +1,53 @@
+package vertx.cpeserver.deviceop;
+
+import vertx.VertxJsonUtils;
+import vertx.cpeserver.session.CwmpRequest;
+import vertx.cpeserver.session.CwmpSession;
+import dslforumOrgCwmp12.ParameterValueList;
+import dslforumOrgCwmp12.ParameterValueStruct;
+import org.apache.xmlbeans.XmlDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Project:  cwmp
+ *
+ * Move the periodic informs of a CPE into another time slot (see InformSlotBalancer), by setting a new
+ * "ManagementServer.PeriodicInformTime".
+ *
+ * The interval is not changed. The CPE simply informs at PeriodicInformTime + N * PeriodicInformInterval from now on.
+ *
+ * @author: ronyang
+ */
+public class SpreadPeriodicInform {
+    private static final Logger log = LoggerFactory.getLogger(SpreadPeriodicInform.class.getName());
+
+    /**
+     * Parameter Name (without the root object name)
+     */
+    public static final String PERIODIC_INFORM_TIME_PARAM_NAME = ".ManagementServer.PeriodicInformTime";
+
+    /**
+     * Enqueue the request.
+     *
+     * @param session
+     * @param periodicInformTime    The new PeriodicInformTime (in ms)
+     */
+    public static void start(CwmpSession session, long periodicInformTime) {
+        String dateTime = VertxJsonUtils.getIso8601DateString(periodicInformTime);
+        log.info(session.cpeKey + ": moving the periodic informs to " + dateTime + ".");
+
+        ParameterValueList list = ParameterValueList.Factory.newInstance();
+        ParameterValueStruct valueStruct = list.addNewParameterValueStruct();
+        valueStruct.setName(session.cpe.rootObjectName + PERIODIC_INFORM_TIME_PARAM_NAME);
+        valueStruct.addNewValue().setStringValue(dateTime);
+        valueStruct.getValue().changeType(XmlDateTime.type);
+
+        SetParameterValues.start(
+                session,
+                list,
+                SetParameterValues.defaultHandler,
+                CwmpRequest.CWMP_REQUESTER_LOCAL
+        );
+    }
+}
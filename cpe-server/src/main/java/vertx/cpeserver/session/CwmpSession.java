@@ -4,6 +4,7 @@ import io.vertx.core.eventbus.Message;
 import io.vertx.ext.mongo.MongoClient;
 import io.vertx.redis.RedisClient;
 import vertx.*;
+import vertx.connreq.ConnectionRequestReachability;
 import vertx.connreq.ConnectionRequestUtils;
 import vertx.cpeserver.CpeServerConstants;
 import vertx.cpeserver.CpeServerTR069SessionVertice;
@@ -20,9 +21,13 @@ import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.json.JsonArray;
 import redis.clients.jedis.Jedis;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
 
 /**
  * Project:  cwmp CPE Server
@@ -67,14 +72,27 @@ public class CwmpSession {
     public JsonObject subscriberServicePlan = null;
     public JsonObject serviceParameterValues = null;
 
-    // Timers (for tracking CPE activities)
-    public Long inactiveTimerId = null;
-    public Long redisTimerId = null;
+    // Timers (for tracking CPE activities), driven by the timing wheel of the session vertice
+    public SessionInactiveTimeout inactiveTimeout = new SessionInactiveTimeout(this);
+    public SessionTimingWheel.Timeout redisTimeout = new SessionTimingWheel.Timeout() {
+        @Override
+        public void expire() {
+            if (!isTerminated()) {
+                popDeviceOpFromRedis();
+            }
+        }
+    };
 
     // Copy of the original "Inform" request which started this session
     public InformDocument.Inform informRequest;
     public String[] informEventCodes = null;
 
+    // Whether the periodic informs of this CPE may be moved once the session is idle (see InformSlotBalancer)
+    public boolean bMayMovePeriodicInform = false;
+
+    // Whether the device ops queued in Redis for the next Inform have been checked (see popQueuedDeviceOps)
+    public boolean bQueuedDeviceOpsChecked = false;
+
     public CwmpMessage receivedCpeMessage;
 
     // Current HTTP Server Request Message (received from the HTTP Load Balancer Vertice)
@@ -100,6 +118,9 @@ public class CwmpSession {
     // Boolean indicator that indicates whether the session info was stored into Redis
     public boolean bSessionInfoStoredInRedis = false;
 
+    // # of NBI callbacks still waiting for their replies (the session is resumed when all of them are done)
+    public int nbrOfPendingNbiCallbacks = 0;
+
     // Boolean indicator that there is a multi-session device op in progress
     public CpeDeviceOpTypeEnum multiSessionOpType = CpeDeviceOpTypeEnum.Invalid;
 
@@ -153,7 +174,7 @@ public class CwmpSession {
 
         // Save the Vert.X Event Bus
         this.eventBus = vertx.eventBus();
-        this.mongoClient = MongoClient.createShared(vertx, VertxMongoUtils.getModMongoPersistorConfig());
+        this.mongoClient = sessionVertice.mongoClient;
 
         // Save the Redis Client
         this.redisClient = redisClient;
@@ -242,6 +263,8 @@ public class CwmpSession {
             } else {
                 // Received Inform from an existing (created via API or auto-discovered) CPE
                 session.cpe = new Cpe(cpeJsonObject);
+                // The CPE was read without the heavy sub-documents
+                session.cpe.bHeavyFieldsLoaded = false;
 
                 if (!cpeJsonObject.containsKey(Cpe.DB_FIELD_NAME_CONNREQ_URL)) {
                     log.info(session.cpeKey + ": Received Inform from a pre-provisioned CPE");
@@ -283,23 +306,44 @@ public class CwmpSession {
     }
 
     /**
-     * Process a raw Device Op JSON Object String
-     * @param deviceOpRawString
+     * Process all the raw Device Op JSON Object Strings popped from Redis at once.
+     *
+     * The compatible device ops are coalesced into a single RPC (see DeviceOpCoalescer).
+     *
+     * @param deviceOpRawStrings
      */
-    public void processRawDeviceOpString(String deviceOpRawString) {
-        if (deviceOpRawString == null) {
+    public void processRawDeviceOpStrings(JsonArray deviceOpRawStrings) {
+        if (deviceOpRawStrings == null || deviceOpRawStrings.size() == 0) {
             return;
         }
 
-        JsonObject aDeviceOp = null;
-        try {
-            aDeviceOp = new JsonObject(deviceOpRawString);
-        } catch (Exception ex) {
-            log.error("Received malformed device op from Redis!" + deviceOpRawString);
+        List<JsonObject> deviceOps = new ArrayList<>();
+        for (int i = 0; i < deviceOpRawStrings.size(); i ++) {
+            String deviceOpRawString = deviceOpRawStrings.getString(i);
+            try {
+                deviceOps.add(new JsonObject(deviceOpRawString));
+            } catch (Exception ex) {
+                log.error("Received malformed device op from Redis!" + deviceOpRawString);
+            }
+        }
+
+        if (isTerminated()) {
+            // Only proceed if session is still up
+            for (JsonObject aDeviceOp : deviceOps) {
+                DeviceOpUtils.callbackDueToSessionTermination(this, aDeviceOp);
+            }
             return;
         }
 
-        processRawDeviceOp(aDeviceOp);
+        if (deviceOps.size() > 0) {
+            // Each device op that cannot be enqueued is called back by the coalescer
+            try {
+                DeviceOpCoalescer.enqueueDeviceOps(deviceOps, this);
+                CwmpSessionFsm.transit(this, CwmpSessionFsmEventEnum.NewNbiRequest);
+            } catch (Exception e) {
+                log.error("Failed to enqueue deviceOps due to " + e.getMessage());
+            }
+        }
     }
 
     /**
@@ -330,7 +374,7 @@ public class CwmpSession {
     /**
      * Terminate the session with a custom handler which is to be called after removing session info from Redis
      */
-    public void terminate(VertxRedisUtils.ResultHandler handler) {
+    public void terminate(final VertxRedisUtils.ResultHandler handler) {
         if (state.equals(CwmpSessionFsmStateEnum.Terminated)) {
             return;
         }
@@ -343,10 +387,15 @@ public class CwmpSession {
         // Set proper state
         state = CwmpSessionFsmStateEnum.Terminated;
 
+        /**
+         * All the end-of-session Redis writes are sent as one batch
+         */
+        VertxRedisUtils.Batch redisBatch = new VertxRedisUtils.Batch(redisClient);
+
         /**
          * Remove Session Key from Redis
          */
-        removeSessionInfoFromRedis(handler);
+        final int sessionInfoDelIndex = removeSessionInfoFromRedis(redisBatch);
 
         /**
          * Persist CPE Updates if any
@@ -404,7 +453,22 @@ public class CwmpSession {
                 /**
                  * Enqueue an auto backup task for this device
                  */
-                AutoBackupUtils.addToQueue(redisClient, cpe.toBasicJsonObjectForConnReq());
+                AutoBackupUtils.addToQueue(redisBatch, cpe.toBasicJsonObjectForConnReq());
+            }
+
+            /**
+             * Update the per-org presence index
+             */
+            sessionVertice.presenceTracker.recordPresence(cpe.getOrgId(), cpe.key, cpe.informTime);
+
+            /**
+             * Coalesce routine "lastInformTime"-only updates, and write everything else through immediately
+             */
+            if (cpe.hasLastInformTimeUpdateOnly()) {
+                sessionVertice.presenceTracker.recordInform(cpe.key, cpe.informTime);
+                cpe.sets = null;
+            } else {
+                sessionVertice.presenceTracker.remove(cpe.key);
             }
 
             /**
@@ -433,6 +497,23 @@ public class CwmpSession {
             );
         }
 
+        /**
+         * Send the Redis batch, and call the custom handler (if any) once the session info has been removed
+         */
+        redisBatch.exec(
+                (handler == null || sessionInfoDelIndex < 0)?
+                        null
+                        :
+                        new Handler<JsonArray>() {
+                            @Override
+                            public void handle(JsonArray results) {
+                                handler.customLongHandler.handle(
+                                        results == null? null : results.getLong(sessionInfoDelIndex)
+                                );
+                            }
+                        }
+        );
+
         // Delete session from HashMap
         sessionVertice.delSession(this);
 
@@ -462,25 +543,13 @@ public class CwmpSession {
         }
     }
 
-    /**
-     * CPE Timeout Handler
-     */
-    public Handler<Long> sessionInactiveTimerHandler = null;
-
     /**
      * Start Inactive Timer
      *
      * @param timeout
      */
     public void startInactiveTimer(long timeout) {
-        if (inactiveTimerId != null) {
-            vertx.cancelTimer(inactiveTimerId);
-        }
-
-        if (sessionInactiveTimerHandler == null) {
-            sessionInactiveTimerHandler = new SessionInactiveTimeoutHandler(this);
-        }
-        inactiveTimerId = vertx.setTimer(timeout, sessionInactiveTimerHandler);
+        sessionVertice.timingWheel.schedule(inactiveTimeout, timeout);
     }
 
     /**
@@ -489,41 +558,21 @@ public class CwmpSession {
      * @param timeout
      */
     public void startRedisTimer(long timeout) {
-        if (redisTimerId != null) {
-            vertx.cancelTimer(redisTimerId);
-        }
-
-        if (redisTimerHandler == null) {
-            redisTimerHandler = new Handler<Long>() {
-                @Override
-                public void handle(Long timerId) {
-                    if (!isTerminated()) {
-                        popDeviceOpFromRedis();
-                    }
-                }
-            };
-        }
-        redisTimerId = vertx.setTimer(timeout, redisTimerHandler);
+        sessionVertice.timingWheel.schedule(redisTimeout, timeout);
     }
 
     /**
      * Cancel Inactive Timer and Redis Timer
      */
     public void cancelTimers() {
-        if (inactiveTimerId != null) {
-            vertx.cancelTimer(inactiveTimerId);
-            inactiveTimerId = null;
-        }
-        if (redisTimerId != null) {
-            vertx.cancelTimer(redisTimerId);
-            redisTimerId = null;
-        }
+        sessionVertice.timingWheel.cancel(inactiveTimeout);
+        sessionVertice.timingWheel.cancel(redisTimeout);
     }
 
     /**
-     * Inner Timeout Handler Class
+     * Inner Inactive Timeout Class
      */
-    public static class SessionInactiveTimeoutHandler implements Handler<Long> {
+    public static class SessionInactiveTimeout extends SessionTimingWheel.Timeout {
         CwmpSession session;
 
         /**
@@ -531,13 +580,13 @@ public class CwmpSession {
          *
          * @param session
          */
-        public SessionInactiveTimeoutHandler(CwmpSession session) {
+        public SessionInactiveTimeout(CwmpSession session) {
             this.session = session;
         }
 
         @Override
-        public void handle(Long timerID) {
-            log.debug(session.cpeKey + ": timed out! (timerId: " + timerID + ")");
+        public void expire() {
+            log.debug(session.cpeKey + ": timed out!");
 
             // Drain all requests in the queue
             CwmpRequest pendingRequest = null;
@@ -557,19 +606,15 @@ public class CwmpSession {
         }
     }
 
-    /**
-     * Timer Handler for reading from Redis Periodically
-     */
-    public Handler<Long> redisTimerHandler = null;
     /**
      * Time Length (in # of seconds) that NBI remains inactive
      */
     public long lastNbiRequestCompletionTime = 0;
 
     /**
-     * Handler that handles the Redis lpop result which may contain a new device op request string or null
+     * Handler that handles the Redis pop result which may contain all the new device op request strings or null
      */
-    public static class PopDeviceOpFromRedisQueueHandler implements Handler<String> {
+    public static class PopDeviceOpFromRedisQueueHandler implements Handler<JsonArray> {
         CwmpSession session;
 
         public PopDeviceOpFromRedisQueueHandler(CwmpSession session) {
@@ -577,14 +622,11 @@ public class CwmpSession {
         }
 
         @Override
-        public void handle(String deviceOpRawString) {
-            // Do we have a valid device-op?
-            if (deviceOpRawString != null) {
-                // Got a valid device-op, process it
-                session.processRawDeviceOpString(deviceOpRawString);
-
-                // Continue reading till the queue is empty
-                session.popDeviceOpFromRedis();
+        public void handle(JsonArray deviceOpRawStrings) {
+            // Do we have any device-op?
+            if (deviceOpRawStrings != null && deviceOpRawStrings.size() > 0) {
+                // Got the whole queue, process it
+                session.processRawDeviceOpStrings(deviceOpRawStrings);
             } else if (session.cwmpRequestQueue.size() == 0 && session.outstandingRequest == null) {
                 // no valid device-op from queue
                 //log.debug(cpeKey + ": No device op request received from Redis.");
@@ -602,26 +644,78 @@ public class CwmpSession {
 
             // Try to read again in 1 second
             if (!session.isTerminated()) {
-                session.startRedisTimer(1000);
+                session.startRedisTimer(CpeServerConstants.CWMP_SESSION_REDIS_POLL_INTERVAL);
             }
         }
     }
-    public Handler<String> popDeviceOpFromRedisQueueHandler = new PopDeviceOpFromRedisQueueHandler(this);
+    public Handler<JsonArray> popDeviceOpFromRedisQueueHandler = new PopDeviceOpFromRedisQueueHandler(this);
 
     /**
-     * Get the next device op from Redis via blocking POP
+     * Get all the pending device ops from Redis at once
      */
     public void popDeviceOpFromRedis() {
         //log.info(cpe.getCpeKey() + ": checking next device op request if any...");
 
         // Hold the session up for a few more seconds in case the FE client has more requests
-        VertxRedisUtils.lpop(
+        VertxRedisUtils.popAll(
                 redisClient,
                 CpeDeviceOp.getDeviceOpsRedisListKeyByCpeId(cpe.getCpeKey()),
                 popDeviceOpFromRedisQueueHandler
         );
     }
 
+    /**
+     * Get the device ops that have been queued in Redis for the next Inform (i.e. while the CPE was unreachable by
+     * conn-req), once the local queue of a session that is not triggered by conn-req is drained.
+     *
+     * The session is terminated if there is nothing else to do (after moving the periodic informs of the CPE into
+     * another slot if applicable).
+     */
+    public void popQueuedDeviceOps() {
+        bQueuedDeviceOpsChecked = true;
+        final CwmpSession session = this;
+        VertxRedisUtils.popAll(
+                redisClient,
+                CpeDeviceOp.getDeviceOpsRedisListKeyByCpeId(cpe.getCpeKey()),
+                new Handler<JsonArray>() {
+                    @Override
+                    public void handle(JsonArray deviceOpRawStrings) {
+                        if (deviceOpRawStrings != null && deviceOpRawStrings.size() > 0) {
+                            session.bMayMovePeriodicInform = false;
+                            session.processRawDeviceOpStrings(deviceOpRawStrings);
+                        } else if (!session.isTerminated() && !session.movePeriodicInform()) {
+                            session.terminate();
+                        }
+                    }
+                }
+        );
+    }
+
+    /**
+     * Move the periodic informs of the CPE into another slot if the balancer says so (see InformSlotBalancer).
+     *
+     * @return  Whether a "SetParameterValues" has been sent for the move
+     */
+    public boolean movePeriodicInform() {
+        if (!bMayMovePeriodicInform) {
+            return false;
+        }
+        bMayMovePeriodicInform = false;
+
+        Long periodicInformTime = sessionVertice.informSlotBalancer.pickNewPeriodicInformTime(
+                cpe.getOrgId(),
+                cpe.deviceId.informInterval,
+                cpe.informTime
+        );
+        if (periodicInformTime == null) {
+            return false;
+        }
+
+        SpreadPeriodicInform.start(this, periodicInformTime);
+        CwmpSessionFsm.transit(this, CwmpSessionFsmEventEnum.NewNbiRequest);
+        return true;
+    }
+
     /**
      * Static Inner Class to handle redis read result which contains the current in-progress device op for this session
      */
@@ -833,6 +927,24 @@ public class CwmpSession {
         }
     }
 
+    /**
+     * Remove Session Info from Redis as part of a Redis batch.
+     *
+     * Called when terminating session.
+     *
+     * @param batch
+     * @return  The index of the DEL result within the batch results, or -1 if there was nothing to remove.
+     */
+    public int removeSessionInfoFromRedis(VertxRedisUtils.Batch batch) {
+        if (bSessionInfoStoredInRedis) {
+            bSessionInfoStoredInRedis = false;
+            int index = batch.size();
+            batch.del(ConnectionRequestUtils.getConnReqRedisKeyByCpeId(cpe.getCpeKey()));
+            return index;
+        }
+        return -1;
+    }
+
     /**
      * Remove Session Info from Redis using non-blocking call (mod-redis) with a custom handler.
      *
@@ -947,6 +1059,12 @@ public class CwmpSession {
          * Retrieve HTTP session cookie from request header
          */
         String cookie = request.getString(CpeServerConstants.FIELD_NAME_COOKIE);
+        if (cookie == null && (cwmpMessage == null || !cwmpMessage.rpcMessageName.equals("Inform"))) {
+            /**
+             * Follow-up request on a keep-alive connection that is bound to a session (by the load balancer)
+             */
+            cookie = request.getString(CpeServerConstants.FIELD_NAME_BOUND_COOKIE);
+        }
         if (cookie == null) {
             /**
              * No cookie found.
@@ -1139,7 +1257,7 @@ public class CwmpSession {
                          */
 
                         /**
-                         * TODO: Publish event onto Vert.x event bus
+                         * The changed values are published along with the "Inform" event (see below)
                          */
                         break;
                 }
@@ -1167,6 +1285,22 @@ public class CwmpSession {
                 cpe.addParamValueStructToSets(paramValueStruct, CwmpMessageTypeEnum.INFORM);
             }
 
+            // Cache the reported values (including the VALUE CHANGE ones) for the NBI
+            CpeParamValueCacheUtils.update(
+                    redisClient,
+                    cpe.getCpeKey(),
+                    parameterList.getParameterValueStructArray(),
+                    null
+            );
+
+            // Track whether the Informs come from the same address as the ConnectionRequestURL (i.e. not behind NAT)
+            ConnectionRequestReachability.recordInformSource(
+                    redisClient,
+                    cpe.getCpeKey(),
+                    httpRequest.getString(CpeServerConstants.FIELD_NAME_SOURCE_IP),
+                    cpe.deviceId.connRequestUrl
+            );
+
             // Check for SW Upgrades and WAN IP Changes
             if (cpe.sets != null) {
                 if (cpe.sets.containsKey(Cpe.DeviceId.FIELD_NAME_SW_VER)) {
@@ -1185,8 +1319,20 @@ public class CwmpSession {
         }
 
         /**
-         * TODO: Publish "Inform" event
+         * Publish "Inform" event (with the reported values if "4 VALUE CHANGE")
          */
+        if (sessionVertice.eventPublisher != null) {
+            boolean bValueChange = parameterList != null
+                    && Arrays.asList(informEventCodes).contains(CwmpInformEventCodes.VALUE_CHANGE);
+            sessionVertice.eventPublisher.publish(
+                    cpe.getOrgId(),
+                    CpeEventStreamUtils.buildInformEvent(
+                            cpe,
+                            informEventCodes,
+                            bValueChange? parameterList.getParameterValueStructArray() : null
+                    ).encode()
+            );
+        }
 
         /**
          * Is it a new CPE?
@@ -1231,6 +1377,30 @@ public class CwmpSession {
                     EnableNotifOnChangeCounter.start(this);
                 }
             }
+
+            /**
+             * Spread the periodic informs across the interval.
+             *
+             * Every periodic inform is counted, but the devices are only moved in the sessions that have nothing else
+             * to do (i.e. plain periodic informs, with no device op queued in Redis either), to keep the extra cost
+             * down to one "SetParameterValues" round trip. The move is decided once the session turns out to be idle
+             * (see popQueuedDeviceOps).
+             */
+            if (sessionVertice.informSlotBalancer != null
+                    && Arrays.asList(informEventCodes).contains(CwmpInformEventCodes.PERIODIC)
+                    && cpe.deviceId.bPeriodicInformEnabled
+                    && cpe.deviceId.informInterval > 0) {
+                sessionVertice.informSlotBalancer.recordPeriodicInform(
+                        cpe.getOrgId(),
+                        cpe.deviceId.informInterval,
+                        cpe.informTime
+                );
+                bMayMovePeriodicInform = informEventCodes.length == 1
+                        && !cpe.bNeedReDiscovery
+                        && !cpeWanIpInfoChanged
+                        && !cpeUpgraded
+                        && !bZeroTouchActivation;
+            }
         }
 
         if (bZeroTouchActivation) {
@@ -186,8 +186,8 @@ public class CwmpSessionFsm {
                                     session,
                                     session.orgId,
                                     session.informRequest.getDeviceId()),
-                            // Keys
-                            null
+                            // Keys (heavy sub-documents are loaded lazily if ever needed)
+                            Cpe.QUERY_KEYS_NO_HEAVY_FIELDS
                     );
                 } catch (VertxException e) {
                     // This should never happen though
@@ -665,6 +665,10 @@ public class CwmpSessionFsm {
                 // Wait for more NBI requests
                 session.state = CwmpSessionFsmStateEnum.WaitingForNewNbiRequest;
                 //session.startInactiveTimer(CpeServerConstants.CWMP_SESSION_NBI_INACTIVE_TIMEOUT);
+            } else if (!session.bQueuedDeviceOpsChecked && session.cpe != null) {
+                // Pick up the device ops queued for the next Inform (if any) before terminating the session
+                session.state = CwmpSessionFsmStateEnum.WaitingForNewNbiRequest;
+                session.popQueuedDeviceOps();
             } else {
                 // Terminate session
                 session.terminate();
@@ -0,0 +1,219 @@
+package vertx.cpeserver.session;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+
+/**
+ * Project:  cwmp CPE Server
+ *
+ * Hashed Timing Wheel for CWMP Session Timers.
+ *
+ * Instead of having every session arm/cancel its own Vert.x timers (the Redis polling timer alone is re-armed every
+ * second), each session vertice owns one wheel driven by a single periodic Vert.x timer. Every timeout is an object
+ * embedded in a doubly-linked list of its slot, so both scheduling and cancelling are O(1) and no new handler objects
+ * are created when re-arming.
+ *
+ * Timeouts longer than one revolution carry a "remaining rounds" counter.
+ *
+ * The wheel is only accessed from the event loop of the session vertice that owns it.
+ *
+ * @author: ronyang
+ */
+public class SessionTimingWheel {
+    private static final Logger log = LoggerFactory.getLogger(SessionTimingWheel.class.getName());
+
+    /**
+     * Timeout Entry.
+     *
+     * Each session keeps one instance per timer type and re-schedules the same instance.
+     */
+    public static abstract class Timeout {
+        // Slot index (or -1 if not scheduled)
+        int slot = -1;
+        // Number of full revolutions to wait before expiring
+        long remainingRounds = 0;
+        // Linked list pointers within the slot
+        Timeout prev = null;
+        Timeout next = null;
+        // Set when the entry is removed from its slot for expiring, and cleared if cancelled/rescheduled meanwhile
+        boolean bExpiring = false;
+
+        /**
+         * Is this timeout currently scheduled?
+         */
+        public boolean isScheduled() {
+            return slot >= 0 || bExpiring;
+        }
+
+        /**
+         * Called when the timeout expires.
+         */
+        public abstract void expire();
+    }
+
+    /**
+     * Vert.x Instance
+     */
+    Vertx vertx;
+
+    /**
+     * Tick length in ms
+     */
+    long tick;
+
+    /**
+     * Slots (each slot holds the head of a doubly-linked list)
+     */
+    Timeout[] slots;
+    int mask;
+
+    /**
+     * Current slot index
+     */
+    int cursor = 0;
+
+    /**
+     * The Periodic Vert.x Timer
+     */
+    Long tickTimerId = null;
+
+    /**
+     * Constructor.
+     *
+     * @param vertx
+     * @param tick      Tick length in ms
+     * @param size      Number of slots (must be a power of 2)
+     */
+    public SessionTimingWheel(Vertx vertx, long tick, int size) {
+        if (size <= 0 || (size & (size - 1)) != 0) {
+            throw new IllegalArgumentException("Timing wheel size must be a power of 2!");
+        }
+
+        this.vertx = vertx;
+        this.tick = tick;
+        this.slots = new Timeout[size];
+        this.mask = size - 1;
+
+        tickTimerId = vertx.setPeriodic(
+                tick,
+                new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        onTick();
+                    }
+                }
+        );
+    }
+
+    /**
+     * Schedule (or re-schedule) a timeout.
+     *
+     * @param timeout
+     * @param delay     Delay in ms
+     */
+    public void schedule(Timeout timeout, long delay) {
+        cancel(timeout);
+
+        long ticks = Math.max(1, (delay + tick - 1) / tick);
+        timeout.remainingRounds = (ticks - 1) / slots.length;
+        timeout.slot = (int) ((cursor + ticks) & mask);
+
+        // Insert at head
+        timeout.prev = null;
+        timeout.next = slots[timeout.slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        slots[timeout.slot] = timeout;
+    }
+
+    /**
+     * Cancel a timeout (no-op if not scheduled).
+     *
+     * @param timeout
+     */
+    public void cancel(Timeout timeout) {
+        timeout.bExpiring = false;
+        if (timeout.slot < 0) {
+            return;
+        }
+
+        unlink(timeout);
+    }
+
+    /**
+     * Remove a timeout from its slot.
+     *
+     * @param timeout
+     */
+    void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = -1;
+    }
+
+    /**
+     * Advance the wheel by one tick and expire the due timeouts.
+     */
+    void onTick() {
+        cursor = (cursor + 1) & mask;
+
+        /**
+         * Detach the due timeouts first, since expiring one may schedule/cancel others
+         */
+        ArrayList<Timeout> expired = null;
+        Timeout timeout = slots[cursor];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+            } else {
+                unlink(timeout);
+                timeout.bExpiring = true;
+                if (expired == null) {
+                    expired = new ArrayList<>();
+                }
+                expired.add(timeout);
+            }
+            timeout = next;
+        }
+
+        if (expired != null) {
+            for (Timeout anExpiredTimeout : expired) {
+                // Skip the ones that have been cancelled/rescheduled by the previous ones
+                if (anExpiredTimeout.bExpiring) {
+                    anExpiredTimeout.bExpiring = false;
+                    try {
+                        anExpiredTimeout.expire();
+                    } catch (Exception ex) {
+                        log.error("Caught exception while expiring a session timer!");
+                        ex.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the wheel.
+     */
+    public void stop() {
+        if (tickTimerId != null) {
+            vertx.cancelTimer(tickTimerId);
+            tickTimerId = null;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package vertx.cpeserver;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit Test for {@link CpeServerAdmissionControl}.
+ *
+ * @author: ronyang
+ */
+public class CpeServerAdmissionControlTest {
+    static final String PERIODIC_INFORM = "<cwmp:Inform><Event><EventStruct><EventCode>2 PERIODIC</EventCode>"
+            + "</EventStruct></Event></cwmp:Inform>";
+
+    /**
+     * Admit a number of periodic informs and return the number of admitted ones.
+     */
+    static int admit(CpeServerAdmissionControl admissionControl, int nbrOfInforms) {
+        int nbrOfAdmitted = 0;
+        for (int i = 0; i < nbrOfInforms; i ++) {
+            if (admissionControl.admitNewSession(0, PERIODIC_INFORM)) {
+                nbrOfAdmitted ++;
+            }
+        }
+        // Do not let the hard limit kick in
+        admissionControl.admittedSinceLastReport[0] = 0;
+        return nbrOfAdmitted;
+    }
+
+    @Test
+    public void testRejectProbability() {
+        assertTrue(CpeServerAdmissionControl.getRejectProbability(1000, 2000) <= 0);
+        assertEquals(0.0, CpeServerAdmissionControl.getRejectProbability(2000, 2000), 0.0001);
+        assertEquals(
+                CpeServerConstants.ADMISSION_MAX_REJECT_PROBABILITY / 2,
+                CpeServerAdmissionControl.getRejectProbability(3000, 2000),
+                0.0001
+        );
+        assertEquals(
+                CpeServerConstants.ADMISSION_MAX_REJECT_PROBABILITY,
+                CpeServerAdmissionControl.getRejectProbability(4000, 2000),
+                0.0001
+        );
+        assertEquals(
+                CpeServerConstants.ADMISSION_MAX_REJECT_PROBABILITY,
+                CpeServerAdmissionControl.getRejectProbability(100000, 2000),
+                0.0001
+        );
+        assertTrue(CpeServerConstants.ADMISSION_MAX_REJECT_PROBABILITY < 1.0);
+    }
+
+    @Test
+    public void testRecoveryAfterLatencySpike() {
+        CpeServerAdmissionControl admissionControl = new CpeServerAdmissionControl(new Random(1));
+
+        // No latency, everything is admitted
+        assertEquals(1000, admit(admissionControl, 1000));
+
+        // Latency spike
+        for (int i = 0; i < 100; i ++) {
+            admissionControl.onReply(0, 10 * CpeServerConstants.ADMISSION_REPLY_LATENCY_THRESHOLD);
+        }
+        admissionControl.onLoadReport(0, 0);
+
+        // Mostly rejected, but the probes still get through
+        int nbrOfAdmitted = admit(admissionControl, 1000);
+        assertTrue(nbrOfAdmitted > 0);
+        assertTrue(nbrOfAdmitted < 200);
+
+        // No more replies, the average decays with the load reports until everything is admitted again
+        for (int i = 0; i < 50; i ++) {
+            admissionControl.onLoadReport(0, 0);
+        }
+        assertTrue(admissionControl.avgReplyLatency[0] < CpeServerConstants.ADMISSION_REPLY_LATENCY_THRESHOLD);
+        assertEquals(1000, admit(admissionControl, 1000));
+    }
+
+    @Test
+    public void testNoDecayWithFreshSamples() {
+        CpeServerAdmissionControl admissionControl = new CpeServerAdmissionControl(new Random(1));
+
+        for (int i = 0; i < 100; i ++) {
+            admissionControl.onReply(0, 3 * CpeServerConstants.ADMISSION_REPLY_LATENCY_THRESHOLD);
+        }
+        double avgReplyLatency = admissionControl.avgReplyLatency[0];
+        admissionControl.onLoadReport(0, 0);
+        assertEquals(avgReplyLatency, admissionControl.avgReplyLatency[0], 0.0001);
+    }
+}
@@ -0,0 +1,127 @@
+package vertx.cpeserver;
+
+import io.vertx.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit Test for {@link InformSlotBalancer}.
+ *
+ * @author: ronyang
+ */
+public class InformSlotBalancerTest {
+    static final String ORG_ID = "50";
+    static final int INTERVAL = 3600;
+    static final long CYCLE = 100000;
+
+    Vertx vertx;
+    InformSlotBalancer balancer;
+
+    /**
+     * Random Number Generator that always moves the device into the given slot
+     */
+    static class FixedRandom extends Random {
+        int slot;
+
+        FixedRandom(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public double nextDouble() {
+            return 0;
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            return slot % bound;
+        }
+    }
+
+    /**
+     * Get the inform time (in ms) of a slot in the current cycle.
+     */
+    static long informTime(int slot) {
+        return (CYCLE * INTERVAL + slot * InformSlotBalancer.SLOT_LENGTH + 30) * 1000;
+    }
+
+    static String currentKey() {
+        return InformSlotBalancer.getRedisKey(ORG_ID, INTERVAL, CYCLE);
+    }
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        balancer = new InformSlotBalancer(vertx, null);
+
+        // Slot 5 has all the arrivals of the previous cycle
+        int[] slots = new int[INTERVAL / InformSlotBalancer.SLOT_LENGTH];
+        slots[5] = 100;
+        balancer.expectedArrivals.put(InformSlotBalancer.getRedisKey(ORG_ID, INTERVAL, CYCLE - 1), slots);
+    }
+
+    @After
+    public void tearDown() {
+        balancer.pendingArrivals = new HashMap<>();
+        balancer.stop();
+        vertx.close();
+    }
+
+    long pendingCount(int slot) {
+        Long count = balancer.pendingArrivals.get(currentKey()).get(String.valueOf(slot));
+        return count == null? 0 : count;
+    }
+
+    @Test
+    public void testGetSlot() {
+        assertEquals(0, InformSlotBalancer.getSlot(INTERVAL, informTime(0)));
+        assertEquals(5, InformSlotBalancer.getSlot(INTERVAL, informTime(5)));
+        assertEquals(59, InformSlotBalancer.getSlot(INTERVAL, informTime(59)));
+
+        // The last partial slot is merged into the previous one
+        assertEquals(1, InformSlotBalancer.getSlot(150, 149000));
+    }
+
+    @Test
+    public void testMoveToLaterSlotIsCountedOnce() {
+        balancer.random = new FixedRandom(20);
+        balancer.recordPeriodicInform(ORG_ID, INTERVAL, informTime(5));
+        Long periodicInformTime = balancer.pickNewPeriodicInformTime(ORG_ID, INTERVAL, informTime(5));
+        assertNotNull(periodicInformTime);
+        assertEquals(20, InformSlotBalancer.getSlot(INTERVAL, periodicInformTime));
+
+        // Not counted in the new slot until the device informs there
+        assertEquals(0, pendingCount(5));
+        assertEquals(0, pendingCount(20));
+
+        balancer.recordPeriodicInform(ORG_ID, INTERVAL, informTime(20));
+        assertEquals(1, pendingCount(20));
+    }
+
+    @Test
+    public void testMoveToEarlierSlot() {
+        balancer.random = new FixedRandom(2);
+        balancer.recordPeriodicInform(ORG_ID, INTERVAL, informTime(5));
+        assertNotNull(balancer.pickNewPeriodicInformTime(ORG_ID, INTERVAL, informTime(5)));
+
+        // The device only informs in the new slot in the next cycle
+        assertEquals(0, pendingCount(5));
+        assertEquals(1, pendingCount(2));
+    }
+
+    @Test
+    public void testNoMoveFromUnderSubscribedSlot() {
+        balancer.random = new FixedRandom(20);
+        balancer.recordPeriodicInform(ORG_ID, INTERVAL, informTime(6));
+        assertNull(balancer.pickNewPeriodicInformTime(ORG_ID, INTERVAL, informTime(6)));
+        assertEquals(1, pendingCount(6));
+    }
+}
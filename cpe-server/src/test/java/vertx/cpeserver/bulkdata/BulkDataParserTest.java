@@ -0,0 +1,191 @@
+package vertx.cpeserver.bulkdata;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+import vertx.VertxException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit Test for {@link BulkDataParser}.
+ *
+ * @author: ronyang
+ */
+public class BulkDataParserTest {
+    static final long RECEIVED_TIME = 1500000000000L;
+
+    static void assertInvalidJson(String body) {
+        try {
+            BulkDataParser.parseJson(body, RECEIVED_TIME);
+            fail("JSON payload " + body + " should have been rejected!");
+        } catch (VertxException ex) {
+            // Expected
+        }
+    }
+
+    /**
+     * Feed the given lines into a CSV Parser and collect the reports.
+     */
+    static List<BulkDataParser.Report> parseCsv(String... lines) throws VertxException {
+        final List<BulkDataParser.Report> reports = new ArrayList<>();
+        BulkDataParser.CsvParser parser = new BulkDataParser.CsvParser(
+                RECEIVED_TIME,
+                new Handler<BulkDataParser.Report>() {
+                    @Override
+                    public void handle(BulkDataParser.Report report) {
+                        reports.add(report);
+                    }
+                }
+        );
+        for (String line : lines) {
+            parser.handleLine(line);
+        }
+        parser.end();
+        assertEquals(reports.size(), parser.nbrOfReports);
+        return reports;
+    }
+
+    @Test
+    public void testParseJsonNameValuePair() throws Exception {
+        List<BulkDataParser.Report> reports = BulkDataParser.parseJson(
+                "{\"Report\": ["
+                        + "{\"CollectionTime\": 1364529149,"
+                        + " \"Device.MoCA.Interface.1.Stats.BytesSent\": 7824,"
+                        + " \"Device.MoCA.Interface.1.Status\": \"Up\"},"
+                        + "{\"Device.MoCA.Interface.1.Stats.BytesSent\": 7900}"
+                        + "]}",
+                RECEIVED_TIME
+        );
+
+        assertEquals(2, reports.size());
+        assertEquals(1364529149000L, reports.get(0).collectionTime);
+        assertEquals(
+                new JsonObject()
+                        .put("Device.MoCA.Interface.1.Stats.BytesSent", "7824")
+                        .put("Device.MoCA.Interface.1.Status", "Up"),
+                reports.get(0).values
+        );
+
+        // No Collection Time
+        assertEquals(RECEIVED_TIME, reports.get(1).collectionTime);
+    }
+
+    @Test
+    public void testParseJsonObjectHierarchy() throws Exception {
+        List<BulkDataParser.Report> reports = BulkDataParser.parseJson(
+                "{\"Report\": [{\"CollectionTime\": 1364529149, \"Device\": {\"MoCA\": {\"Interface\": ["
+                        + "{\"Stats\": {\"BytesSent\": 7824}},"
+                        + "{\"Stats\": {\"BytesSent\": 0}, \"Alias\": null}"
+                        + "]}}}]}",
+                RECEIVED_TIME
+        );
+
+        assertEquals(1, reports.size());
+        assertEquals(
+                new JsonObject()
+                        .put("Device.MoCA.Interface.1.Stats.BytesSent", "7824")
+                        .put("Device.MoCA.Interface.2.Stats.BytesSent", "0")
+                        .putNull("Device.MoCA.Interface.2.Alias"),
+                reports.get(0).values
+        );
+    }
+
+    @Test
+    public void testParseJsonInvalid() {
+        assertInvalidJson("not json");
+        assertInvalidJson("[]");
+        assertInvalidJson("{\"Reports\": []}");
+        assertInvalidJson("{\"Report\": {}}");
+        assertInvalidJson("{\"Report\": [1364529149]}");
+    }
+
+    @Test
+    public void testParseTimestamp() {
+        assertEquals(1364529149000L, BulkDataParser.parseTimestamp(1364529149, RECEIVED_TIME));
+        assertEquals(1364529149000L, BulkDataParser.parseTimestamp(" 1364529149 ", RECEIVED_TIME));
+        assertEquals(1364529149000L, BulkDataParser.parseTimestamp("2013-03-29T03:52:29Z", RECEIVED_TIME));
+        assertEquals(1364529149000L, BulkDataParser.parseTimestamp("2013-03-29T04:52:29+01:00", RECEIVED_TIME));
+
+        // Absent/Invalid
+        assertEquals(RECEIVED_TIME, BulkDataParser.parseTimestamp(null, RECEIVED_TIME));
+        assertEquals(RECEIVED_TIME, BulkDataParser.parseTimestamp("", RECEIVED_TIME));
+        assertEquals(RECEIVED_TIME, BulkDataParser.parseTimestamp("yesterday", RECEIVED_TIME));
+    }
+
+    @Test
+    public void testSplitCsvLine() {
+        assertEquals(Arrays.asList("a", "b", "c"), BulkDataParser.splitCsvLine("a,b,c"));
+        assertEquals(Arrays.asList("a", "", ""), BulkDataParser.splitCsvLine("a,,"));
+        assertEquals(Arrays.asList("a,b", "c"), BulkDataParser.splitCsvLine("\"a,b\",c"));
+        assertEquals(Arrays.asList("say \"hi\"", "c"), BulkDataParser.splitCsvLine("\"say \"\"hi\"\"\",c"));
+        assertEquals(Arrays.asList(""), BulkDataParser.splitCsvLine(""));
+    }
+
+    @Test
+    public void testCsvParameterPerRow() throws Exception {
+        List<BulkDataParser.Report> reports = parseCsv(
+                "ReportTimestamp,ParameterName,ParameterValue,ParameterType\r",
+                "1364529149,Device.MoCA.Interface.1.Stats.BytesSent,7824,unsignedInt\r",
+                "1364529149,Device.MoCA.Interface.1.Status,Up,string\r",
+                "",
+                "1364529209,Device.MoCA.Interface.1.Stats.BytesSent,7900,unsignedInt\r"
+        );
+
+        assertEquals(2, reports.size());
+        assertEquals(1364529149000L, reports.get(0).collectionTime);
+        assertEquals(
+                new JsonObject()
+                        .put("Device.MoCA.Interface.1.Stats.BytesSent", "7824")
+                        .put("Device.MoCA.Interface.1.Status", "Up"),
+                reports.get(0).values
+        );
+        assertEquals(1364529209000L, reports.get(1).collectionTime);
+        assertEquals(
+                new JsonObject().put("Device.MoCA.Interface.1.Stats.BytesSent", "7900"),
+                reports.get(1).values
+        );
+    }
+
+    @Test
+    public void testCsvParameterPerColumn() throws Exception {
+        List<BulkDataParser.Report> reports = parseCsv(
+                "ReportTimestamp,Device.MoCA.Interface.1.Stats.BytesSent,Device.MoCA.Interface.1.Stats.BytesReceived",
+                "1364529149,7824,8456",
+                ",7900,8500"
+        );
+
+        assertEquals(2, reports.size());
+        assertEquals(1364529149000L, reports.get(0).collectionTime);
+        assertEquals(
+                new JsonObject()
+                        .put("Device.MoCA.Interface.1.Stats.BytesSent", "7824")
+                        .put("Device.MoCA.Interface.1.Stats.BytesReceived", "8456"),
+                reports.get(0).values
+        );
+
+        // No Timestamp
+        assertEquals(RECEIVED_TIME, reports.get(1).collectionTime);
+    }
+
+    @Test(expected = VertxException.class)
+    public void testCsvParameterPerRowMalformed() throws Exception {
+        parseCsv(
+                "ReportTimestamp,ParameterName,ParameterValue,ParameterType",
+                "1364529149,Device.MoCA.Interface.1.Stats.BytesSent"
+        );
+    }
+
+    @Test(expected = VertxException.class)
+    public void testCsvParameterPerColumnMalformed() throws Exception {
+        parseCsv(
+                "ReportTimestamp,Device.MoCA.Interface.1.Stats.BytesSent",
+                "1364529149,7824,8456"
+        );
+    }
+}
@@ -0,0 +1,126 @@
+package vertx.cpeserver.deviceop;
+
+import broadbandForumOrgCwmpDatamodel14.DocumentDocument;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import vertx.cpeserver.CpeServerConstants;
+import vertx.model.CWMPTr098ModelExtensions;
+import vertx.model.Cpe;
+import vertx.model.CpeDeviceDataModel;
+import vertx.model.CpeDeviceOp;
+import vertx.model.CpeDeviceType;
+
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit Test for {@link ProfileSpvCache}.
+ *
+ * @author: ronyang
+ */
+public class ProfileSpvCacheTest {
+    static final String PROFILE_ID = "profile-1";
+    static final String WAN_IP_CONNECTION_PATH =
+            "InternetGatewayDevice.WANDevice.1.WANConnectionDevice.1.WANIPConnection.1";
+
+    Vertx vertx;
+    ProfileSpvCache cache;
+
+    static JsonObject paramValues(int interval) {
+        return new JsonObject()
+                .put("InternetGatewayDevice", new JsonObject()
+                        .put("ManagementServer", new JsonObject()
+                                .put("PeriodicInformEnable", true)
+                                .put("PeriodicInformInterval", interval))
+                        .put("Time", new JsonObject()
+                                .put("NTPServer1", "pool.ntp.org"))
+                        .put("Layer3Forwarding", new JsonObject()
+                                .put("DefaultConnectionService", CWMPTr098ModelExtensions.WAN_IP_CONNECTION_PATH))
+                )
+                .put(CWMPTr098ModelExtensions.WAN_IP_CONNECTION_PATH + ".Enable", true);
+    }
+
+    static JsonObject deviceOp(JsonObject paramValues) {
+        return new JsonObject()
+                .put(CpeDeviceOp.FIELD_NAME_PROFILE_ID, PROFILE_ID)
+                .put(CpeDeviceOp.FIELD_NAME_PARAM_VALUES, paramValues);
+    }
+
+    static Cpe newCpe() throws Exception {
+        Cpe cpe = new Cpe("50", "Calix", "000631", "844E", "844E-1", "1.0", "12.1", "CXNK0012345");
+        cpe.deviceId.wanIpConnectionPath = WAN_IP_CONNECTION_PATH;
+        cpe.dataModel = new CpeDeviceDataModel(new CpeDeviceType(
+                "50", "Calix", "000631", "844E", "844E-1", null, null
+        ));
+        try (InputStream xml = ProfileSpvCacheTest.class.getResourceAsStream("/tr_data_models/tr-098-1-7-full.xml")) {
+            cpe.dataModel.cwmpDataModel = DocumentDocument.Factory.parse(xml).getDocument().getModelArray(0);
+        }
+        return cpe;
+    }
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        cache = new ProfileSpvCache(vertx);
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void testSameAsJsonObjToParameterValuesList() throws Exception {
+        Cpe cpe = newCpe();
+        JsonObject paramValues = paramValues(3600);
+
+        String expected = SetParameterValues.jsonObjToParameterValuesList(cpe, paramValues, null, "").xmlText();
+
+        // Compiled, then served from the cache
+        assertEquals(expected, cache.getParameterValueList(cpe, deviceOp(paramValues)).xmlText());
+        assertEquals(expected, cache.getParameterValueList(cpe, deviceOp(paramValues(3600))).xmlText());
+    }
+
+    @Test
+    public void testKeepsTwoVersions() {
+        ProfileSpvCache.CompiledProfile v1 = cache.getCompiledProfile(PROFILE_ID, paramValues(3600));
+        ProfileSpvCache.CompiledProfile v2 = cache.getCompiledProfile(PROFILE_ID, paramValues(600));
+
+        // Alternating between the old and new values does not recompile
+        assertSame(v1, cache.getCompiledProfile(PROFILE_ID, paramValues(3600)));
+        assertSame(v2, cache.getCompiledProfile(PROFILE_ID, paramValues(600)));
+        assertEquals(
+                CpeServerConstants.PROFILE_SPV_CACHE_MAX_VERSIONS,
+                cache.compiledProfiles.get(PROFILE_ID).size()
+        );
+
+        // A 3rd version evicts the least recently used one
+        ProfileSpvCache.CompiledProfile v3 = cache.getCompiledProfile(PROFILE_ID, paramValues(60));
+        assertEquals(
+                CpeServerConstants.PROFILE_SPV_CACHE_MAX_VERSIONS,
+                cache.compiledProfiles.get(PROFILE_ID).size()
+        );
+        assertSame(v2, cache.getCompiledProfile(PROFILE_ID, paramValues(600)));
+        assertSame(v3, cache.getCompiledProfile(PROFILE_ID, paramValues(60)));
+        assertNotSame(v1, cache.getCompiledProfile(PROFILE_ID, paramValues(3600)));
+    }
+
+    @Test
+    public void testStoresCopy() {
+        JsonObject paramValues = paramValues(3600);
+        ProfileSpvCache.CompiledProfile v1 = cache.getCompiledProfile(PROFILE_ID, paramValues);
+
+        // Modifying the device op afterwards does not change the cached version
+        paramValues.getJsonObject("InternetGatewayDevice").getJsonObject("ManagementServer")
+                .put("PeriodicInformInterval", 600);
+        assertEquals(paramValues(3600), v1.paramValues);
+        assertNotSame(v1, cache.getCompiledProfile(PROFILE_ID, paramValues));
+        assertSame(v1, cache.getCompiledProfile(PROFILE_ID, paramValues(3600)));
+    }
+}
@@ -492,6 +492,9 @@ public class CpeSession {
         parameterValueStruct.setName("InternetGatewayDevice.ManagementServer.ConnectionRequestURL");
         parameterValueStruct.addNewValue().setStringValue(getStringValueByPath("InternetGatewayDevice.ManagementServer.ConnectionRequestURL"));
         parameterValueStruct = parameterValueList.addNewParameterValueStruct();
+        parameterValueStruct.setName("InternetGatewayDevice.ManagementServer.UDPConnectionRequestAddress");
+        parameterValueStruct.addNewValue().setStringValue(getStringValueByPath("InternetGatewayDevice.ManagementServer.UDPConnectionRequestAddress"));
+        parameterValueStruct = parameterValueList.addNewParameterValueStruct();
         parameterValueStruct.setName("InternetGatewayDevice.WANDevice.5.WANConnectionDevice.1.WANIPConnection.3.ExternalIPAddress");
         parameterValueStruct.addNewValue().setStringValue(CpeSimUtils.snToIpAddress(Long.decode("0x" + sn)));
 //        parameterValueStruct = parameterValueList.addNewParameterValueStruct();
@@ -977,6 +980,8 @@ public class CpeSession {
             return sn;
         } else if (path.equals("InternetGatewayDevice.ManagementServer.ConnectionRequestURL")) {
             return CpeSimUtils.getConnReqUrl(cpe.getCpeKey());
+        } else if (path.equals("InternetGatewayDevice.ManagementServer.UDPConnectionRequestAddress")) {
+            return CpeSimUtils.getUdpConnReqAddress(cpe.getCpeKey());
         } else {
             return cpe.getParamValue(path);
         }
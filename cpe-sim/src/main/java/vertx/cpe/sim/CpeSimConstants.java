@@ -18,6 +18,11 @@ public class CpeSimConstants {
      */
     public static final int HTTP_SERVICE_REQ_PORT = 30005;
 
+    /**
+     * UDP Connection Request Port
+     */
+    public static final int UDP_CONN_REQ_PORT = 30006;
+
     /**
      * MongoDB Collection Name
      */
@@ -1,7 +1,11 @@
 package vertx.cpe.sim;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
 import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.datagram.DatagramSocket;
+import io.vertx.core.datagram.DatagramSocketOptions;
 import io.vertx.ext.mongo.MongoClient;
 import vertx.VertxMongoUtils;
 import vertx.VertxUtils;
@@ -80,5 +84,24 @@ public class CpeSimMainVertice extends AbstractVerticle {
         HttpServer server = vertx.createHttpServer();
         server.requestHandler(new HttpRequestHandler(vertx,mongoClient));
         server.listen(CpeSimConstants.HTTP_SERVICE_REQ_PORT);
+
+        /**
+         * Start the UDP conn-req listener
+         */
+        DatagramSocket udpSocket = vertx.createDatagramSocket(new DatagramSocketOptions());
+        udpSocket.handler(new UdpConnReqHandler(vertx, mongoClient));
+        udpSocket.listen(
+                CpeSimConstants.UDP_CONN_REQ_PORT,
+                "0.0.0.0",
+                new Handler<AsyncResult<DatagramSocket>>() {
+                    @Override
+                    public void handle(AsyncResult<DatagramSocket> result) {
+                        if (result.failed()) {
+                            log.error("Failed to listen on UDP port " + CpeSimConstants.UDP_CONN_REQ_PORT
+                                    + " due to " + result.cause() + "!");
+                        }
+                    }
+                }
+        );
     }
 }
\ No newline at end of file
@@ -87,6 +87,20 @@ public class CpeSimUtils {
                 + cpeKey.replace("-", "/");
     }
 
+    /**
+     * Get the UDP connection request address for a CPE.
+     *
+     * All the simulated CPEs share the same UDP port, so the conn-req path is appended to "host:port" to tell them
+     * apart (the ACS keeps it in the request URI).
+     *
+     * @param cpeKey
+     * @return
+     */
+    public static String getUdpConnReqAddress(String cpeKey) {
+        return VertxUtils.getLocalHostname() + ":" + CpeSimConstants.UDP_CONN_REQ_PORT + "/connreq/"
+                + cpeKey.replace("-", "/");
+    }
+
     /**
      * get HTTP Basic Auth String
      */
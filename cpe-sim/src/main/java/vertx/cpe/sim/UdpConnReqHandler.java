@@ -0,0 +1,150 @@
+package vertx.cpe.sim;
+
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.vertx.ext.mongo.MongoClient;
+import vertx.connreq.UdpConnectionRequest;
+import vertx.cwmp.CwmpInformEventCodes;
+import vertx.model.Cpe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.datagram.DatagramPacket;
+import io.vertx.core.json.JsonObject;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Project:  cwmp CPE Simulator
+ *
+ * UDP Connection Request (TR-069 Annex G) Handler.
+ *
+ * Expecting datagrams like:
+ *
+ *      GET http://{host}:{port}/connreq/{orgId}/{OUI}/{SN}?ts=&id=&un=&cn=&sig= HTTP/1.1
+ *
+ * The ACS sends each message up to 3 times, so the messages with an already seen (or older) "ts"/"id" are discarded
+ * as required by Annex G. Like the HTTP conn-req handler, the credentials (i.e. "sig") are not verified.
+ *
+ * @author: ronyang
+ */
+public class UdpConnReqHandler implements Handler<DatagramPacket> {
+    private static final Logger log = LoggerFactory.getLogger(UdpConnReqHandler.class.getName());
+
+    /**
+     * Vertx
+     */
+    Vertx vertx;
+
+    MongoClient mongoClient;
+
+    /**
+     * The last "ts"/"id" received by each CPE <CPE Key --> [ts, id]>
+     */
+    Map<String, long[]> lastMessages = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param vertx
+     * @param mongoClient
+     */
+    public UdpConnReqHandler(Vertx vertx, MongoClient mongoClient) {
+        this.vertx = vertx;
+        this.mongoClient = mongoClient;
+    }
+
+    /**
+     * Handler Body
+     *
+     * @param packet
+     */
+    @Override
+    public void handle(DatagramPacket packet) {
+        /**
+         * Parse the request line
+         */
+        String requestLine = packet.data().toString().split("\r\n")[0];
+        String[] tokens = requestLine.split(" ");
+        if (tokens.length != 3 || !tokens[0].equals("GET")) {
+            log.error("Invalid UDP conn-req from " + packet.sender() + ": " + requestLine);
+            return;
+        }
+
+        String uri = tokens[1];
+        if (uri.startsWith("http://")) {
+            int pathIndex = uri.indexOf('/', "http://".length());
+            uri = pathIndex < 0? "/" : uri.substring(pathIndex);
+        }
+        QueryStringDecoder decoder = new QueryStringDecoder(uri);
+        Map<String, List<String>> params = decoder.parameters();
+        for (String param : new String[] {
+                UdpConnectionRequest.PARAM_TIMESTAMP,
+                UdpConnectionRequest.PARAM_ID,
+                UdpConnectionRequest.PARAM_USERNAME,
+                UdpConnectionRequest.PARAM_CNONCE,
+                UdpConnectionRequest.PARAM_SIGNATURE}) {
+            if (!params.containsKey(param)) {
+                log.error("Missing \"" + param + "\" in UDP conn-req from " + packet.sender() + ": " + requestLine);
+                return;
+            }
+        }
+
+        /**
+         * Expecting "/connreq/{orgId}/{OUI}/{SN}"
+         */
+        String[] pathParams = decoder.path().substring(1).split("/");
+        if (pathParams.length != 4 || !pathParams[0].equals("connreq")) {
+            log.error("Invalid UDP conn-req path " + decoder.path() + "!");
+            return;
+        }
+        final String orgId = pathParams[1];
+        final long sn;
+        final long ts;
+        final long id;
+        try {
+            sn = Long.decode("0x" + pathParams[3]);
+            ts = Long.valueOf(params.get(UdpConnectionRequest.PARAM_TIMESTAMP).get(0));
+            id = Long.valueOf(params.get(UdpConnectionRequest.PARAM_ID).get(0));
+        } catch (NumberFormatException ex) {
+            log.error("Invalid UDP conn-req " + requestLine + "!");
+            return;
+        }
+        String cpeKey = Cpe.getCpeKey(orgId, pathParams[2], pathParams[3]);
+
+        /**
+         * Discard the retransmissions and the stale messages
+         */
+        long[] lastMessage = lastMessages.get(cpeKey);
+        if (lastMessage != null && (ts < lastMessage[0] || id == lastMessage[1])) {
+            log.debug(cpeKey + ": Discarding duplicate UDP conn-req (id " + id + ").");
+            return;
+        }
+        lastMessages.put(cpeKey, new long[] {ts, id});
+
+        log.info("Simulating a " + CwmpInformEventCodes.CONNECTION_REQUEST + " event (via UDP) for CPE " + cpeKey);
+
+        /**
+         * Query the DB and start a new session
+         */
+        CpeSimUtils.findCpeById(
+                mongoClient,
+                cpeKey,
+                new Handler<JsonObject>() {
+                    @Override
+                    public void handle(JsonObject queryResult) {
+                        JsonObject message = new JsonObject()
+                                .put("orgId", orgId)
+                                .put("sn", sn)
+                                .put("eventCode", CwmpInformEventCodes.CONNECTION_REQUEST);
+                        if (queryResult != null) {
+                            message.put("queryResult", queryResult);
+                        }
+                        vertx.eventBus().send(CpeSimConstants.VERTX_ADDRESS_NEW_SESSION, message);
+                    }
+                }
+        );
+    }
+}
@@ -39,6 +39,14 @@ public class VertxConfigProperties {
     public static final String mongoDbName = VertxUtils.initStringProp(mongoDbNameSysEnvVar, defaultMongoDbName);
     public static final String mongoSeeds = VertxUtils.initStringProp(mongoSeedsSysEnvVar, defaultMongoSeeds);
 
+    /**
+     * Queries that take longer than this threshold (in ms) are logged (sampled) as slow queries
+     */
+    public static final int defaultMongoSlowQueryThreshold = 1000;
+    public static final String mongoSlowQueryThresholdSysEnvVar = "CWMP_MONGO_SLOW_QUERY_THRESHOLD";
+    public static final int mongoSlowQueryThreshold =
+            VertxUtils.initIntegerProp(mongoSlowQueryThresholdSysEnvVar, defaultMongoSlowQueryThreshold);
+
     /**
      * Default REDIS Server Hostname/Port/Timeout/DB_Index
      */
@@ -98,6 +98,26 @@ public class VertxHttpClientUtils {
         return vertxInstance.createHttpClient(options);
     }
 
+    /**
+     * Create a new HTTP Client by URL String, with a TCP connect timeout.
+     *
+     * @param vertxInstance
+     * @param urlString
+     * @param connectTimeout    In ms
+     *
+     * @return
+     * @throws java.net.MalformedURLException
+     */
+    public static HttpClient createHttpClient(Vertx vertxInstance, String urlString, int connectTimeout)
+            throws MalformedURLException {
+        URL url = new URL(urlString);
+        HttpClientOptions options = new HttpClientOptions()
+                .setDefaultHost(url.getHost())
+                .setDefaultPort(url.getPort())
+                .setConnectTimeout(connectTimeout);
+        return vertxInstance.createHttpClient(options);
+    }
+
     public static HttpClient createHttpClient(Vertx vertxInstance, String host, int port) {
         /**
          * Convert to URL by String
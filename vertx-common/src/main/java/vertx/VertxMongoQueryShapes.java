@@ -0,0 +1,281 @@
+package vertx;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Project:  cwmp
+ *
+ * Registry of the MongoDB Query Shapes issued by this JVM.
+ *
+ * A query shape is the collection name plus the matcher (and sort) with all the values replaced by 1, i.e. only the
+ * field names and the query operators are kept. VertxMongoUtils records every find/findOne/count when it completes,
+ * along with a redacted sample matcher (i.e. with placeholders of the same types instead of the actual values, which
+ * may be subscriber data), so that:
+ *
+ * - the diagnostics can later run "explain" against each distinct shape and flag the ones that are answered by
+ *   collection scans;
+ * - each shape carries its own metrics (# of queries, total/max duration, # of slow or timed out queries, and the #
+ *   of returned documents);
+ * - the slow queries are logged, at most once per SLOW_QUERY_LOG_INTERVAL per shape.
+ *
+ * @author: ronyang
+ */
+public class VertxMongoQueryShapes {
+    private static final Logger log = LoggerFactory.getLogger(VertxMongoQueryShapes.class.getName());
+
+    /**
+     * Max # of distinct shapes to record
+     */
+    public static final int MAX_NBR_OF_SHAPES = 1000;
+
+    /**
+     * Log the slow queries of the same shape at most every 10 seconds
+     */
+    public static final long SLOW_QUERY_LOG_INTERVAL = 10000;
+
+    /**
+     * Field Names
+     */
+    public static final String FIELD_NAME_COLLECTION = "collection";
+    public static final String FIELD_NAME_MATCHER = "matcher";
+    public static final String FIELD_NAME_SORT = "sort";
+    public static final String FIELD_NAME_COUNT = "count";
+    public static final String FIELD_NAME_TOTAL_TIME = "totalTime";
+    public static final String FIELD_NAME_MAX_TIME = "maxTime";
+    public static final String FIELD_NAME_SLOW_COUNT = "slowCount";
+    public static final String FIELD_NAME_TIMEOUT_COUNT = "timeoutCount";
+    public static final String FIELD_NAME_DOC_COUNT = "docCount";
+
+    /**
+     * The query operators whose values are kept in the sample matchers, as they are part of the query structure (and
+     * a placeholder could make the query invalid)
+     */
+    public static final Set<String> STRUCTURAL_OPERATORS = new HashSet<>(Arrays.asList(
+            "$exists", "$type", "$size", "$mod", "$options"
+    ));
+
+    /**
+     * Placeholders of the redacted values
+     */
+    public static final String REDACTED_STRING = "?";
+    public static final String REDACTED_DATE = "1970-01-01T00:00:00.000Z";
+    public static final String REDACTED_OBJECT_ID = "000000000000000000000000";
+
+    /**
+     * A Recorded Query Shape
+     */
+    public static class QueryShape {
+        public final String collectionName;
+        public final JsonObject matcherShape;
+        public final JsonObject sortShape;
+
+        /**
+         * Metrics
+         */
+        public final AtomicLong count = new AtomicLong(0);
+        public final AtomicLong totalTime = new AtomicLong(0);
+        public final AtomicLong maxTime = new AtomicLong(0);
+        public final AtomicLong slowCount = new AtomicLong(0);
+        public final AtomicLong timeoutCount = new AtomicLong(0);
+        public final AtomicLong docCount = new AtomicLong(0);
+        public final AtomicLong lastSlowQueryLogTime = new AtomicLong(0);
+
+        /**
+         * A sample matcher (redacted) and sort with this shape, for "explain"
+         */
+        public volatile JsonObject sampleMatcher;
+        public volatile JsonObject sampleSort;
+
+        public QueryShape(String collectionName, JsonObject matcherShape, JsonObject sortShape) {
+            this.collectionName = collectionName;
+            this.matcherShape = matcherShape;
+            this.sortShape = sortShape;
+        }
+
+        /**
+         * Convert to JSON Object (without the sample values).
+         */
+        public JsonObject toJsonObject() {
+            JsonObject jsonObject = new JsonObject()
+                    .put(FIELD_NAME_COLLECTION, collectionName)
+                    .put(FIELD_NAME_MATCHER, matcherShape)
+                    .put(FIELD_NAME_COUNT, count.get())
+                    .put(FIELD_NAME_TOTAL_TIME, totalTime.get())
+                    .put(FIELD_NAME_MAX_TIME, maxTime.get())
+                    .put(FIELD_NAME_SLOW_COUNT, slowCount.get())
+                    .put(FIELD_NAME_TIMEOUT_COUNT, timeoutCount.get())
+                    .put(FIELD_NAME_DOC_COUNT, docCount.get());
+            if (sortShape != null) {
+                jsonObject.put(FIELD_NAME_SORT, sortShape);
+            }
+            return jsonObject;
+        }
+    }
+
+    /**
+     * All the recorded shapes by key
+     */
+    private static final ConcurrentHashMap<String, QueryShape> allShapes = new ConcurrentHashMap<>();
+
+    /**
+     * Record a completed (or failed) query.
+     *
+     * @param collectionName
+     * @param matcher
+     * @param sort
+     * @param duration      Duration in ms
+     * @param nbrOfDocs     # of returned documents (or the count for count queries)
+     * @param bTimedOut     Whether the query was aborted because its time budget ran out
+     */
+    public static void record(
+            String collectionName,
+            JsonObject matcher,
+            JsonObject sort,
+            long duration,
+            long nbrOfDocs,
+            boolean bTimedOut) {
+        if (collectionName == null || matcher == null) {
+            return;
+        }
+
+        JsonObject matcherShape = (JsonObject) getShape(matcher);
+        String key = collectionName + ":" + matcherShape.encode() + (sort == null? "" : ":" + sort.encode());
+        QueryShape shape = allShapes.get(key);
+        if (shape == null) {
+            if (allShapes.size() >= MAX_NBR_OF_SHAPES) {
+                return;
+            }
+            shape = new QueryShape(collectionName, matcherShape, sort);
+            shape.sampleMatcher = (JsonObject) redact(matcher);
+            shape.sampleSort = sort;
+            QueryShape existing = allShapes.putIfAbsent(key, shape);
+            if (existing != null) {
+                shape = existing;
+            }
+        }
+
+        shape.count.incrementAndGet();
+        shape.totalTime.addAndGet(duration);
+        shape.docCount.addAndGet(nbrOfDocs);
+        long maxTime = shape.maxTime.get();
+        while (duration > maxTime && !shape.maxTime.compareAndSet(maxTime, duration)) {
+            maxTime = shape.maxTime.get();
+        }
+        if (bTimedOut) {
+            shape.timeoutCount.incrementAndGet();
+        }
+
+        if (bTimedOut || duration >= VertxConfigProperties.mongoSlowQueryThreshold) {
+            shape.slowCount.incrementAndGet();
+
+            /**
+             * Sampling
+             */
+            long now = System.currentTimeMillis();
+            long lastLogTime = shape.lastSlowQueryLogTime.get();
+            if (now - lastLogTime >= SLOW_QUERY_LOG_INTERVAL
+                    && shape.lastSlowQueryLogTime.compareAndSet(lastLogTime, now)) {
+                log.warn((bTimedOut? "Timed out" : "Slow") + " query on " + collectionName
+                        + ": " + matcherShape.encode() + (sort == null? "" : " sort " + sort.encode())
+                        + " took " + duration + "ms and returned " + nbrOfDocs + " doc(s) ("
+                        + shape.slowCount.get() + " slow out of " + shape.count.get() + " so far).");
+            }
+        }
+    }
+
+    /**
+     * Get all the recorded shapes.
+     */
+    public static List<QueryShape> getAll() {
+        return new ArrayList<>(allShapes.values());
+    }
+
+    /**
+     * Forget all the recorded shapes.
+     */
+    public static void clear() {
+        allShapes.clear();
+    }
+
+    /**
+     * Redact a matcher, i.e. replace all the values by placeholders of the same types, but keep the field names, the
+     * query operators, the sub matchers and the values of the structural operators.
+     *
+     * The MongoDB extended JSON values ("$date" and "$oid") are replaced by placeholders of the same types.
+     *
+     * @param value
+     */
+    static Object redact(Object value) {
+        if (value instanceof JsonObject) {
+            JsonObject jsonObject = (JsonObject) value;
+            JsonObject redacted = new JsonObject();
+            for (String field : jsonObject.fieldNames()) {
+                Object fieldValue = jsonObject.getValue(field);
+                if (STRUCTURAL_OPERATORS.contains(field)) {
+                    redacted.put(field, fieldValue);
+                } else if ("$date".equals(field)) {
+                    redacted.put(field, REDACTED_DATE);
+                } else if ("$oid".equals(field)) {
+                    redacted.put(field, REDACTED_OBJECT_ID);
+                } else {
+                    redacted.put(field, redact(fieldValue));
+                }
+            }
+            return redacted;
+        } else if (value instanceof JsonArray) {
+            JsonArray redacted = new JsonArray();
+            for (Object element : (JsonArray) value) {
+                redacted.add(redact(element));
+            }
+            return redacted;
+        } else if (value instanceof String) {
+            return REDACTED_STRING;
+        } else if (value instanceof Number) {
+            return 0;
+        }
+
+        // Booleans and nulls
+        return value;
+    }
+
+    /**
+     * Get the shape of a JSON value, i.e. keep the field names and the query operators (sorted by name) but replace
+     * all the values by 1.
+     *
+     * The elements of "$and"/"$or"/"$nor" arrays are kept as they are sub matchers.
+     *
+     * @param value
+     */
+    static Object getShape(Object value) {
+        if (value instanceof JsonObject) {
+            JsonObject shape = new JsonObject();
+            for (String field : new TreeMap<>(((JsonObject) value).getMap()).keySet()) {
+                Object fieldValue = ((JsonObject) value).getValue(field);
+                if (fieldValue instanceof JsonArray
+                        && (field.equals("$and") || field.equals("$or") || field.equals("$nor"))) {
+                    JsonArray subShapes = new JsonArray();
+                    for (Object subMatcher : (JsonArray) fieldValue) {
+                        subShapes.add(getShape(subMatcher));
+                    }
+                    shape.put(field, subShapes);
+                } else {
+                    shape.put(field, getShape(fieldValue));
+                }
+            }
+            return shape;
+        }
+        return 1;
+    }
+}
@@ -1,5 +1,8 @@
 package vertx;
 
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoExecutionTimeoutException;
+import io.vertx.core.AsyncResult;
 import io.vertx.core.Vertx;
 import io.vertx.ext.mongo.FindOptions;
 import io.vertx.ext.mongo.MongoClient;
@@ -14,7 +17,9 @@ import io.vertx.core.json.JsonObject;
 import java.security.Timestamp;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.TimeZone;
 import java.util.UUID;
 
@@ -36,6 +41,31 @@ public class VertxMongoUtils {
             new JsonObject().put("error", "MongoDB Timed Out!");
     public static final JsonArray FIND_TIMED_OUT = new JsonArray().add(FIND_ONE_TIMED_OUT);
 
+    /**
+     * Read Preference used with the replica sets (i.e. when "seeds" are configured).
+     *
+     * The queries with a server-side time budget are sent as commands, which carry it as "$readPreference".
+     */
+    public static final String READ_PREFERENCE_PRIMARY_PREFERRED = "primaryPreferred";
+    public static final String MOD_MONGO_FIELD_NAME_READ_PREFERENCE = "$readPreference";
+
+    /**
+     * MongoDB Error Code "ExceededTimeLimit"
+     */
+    public static final int MONGO_ERROR_CODE_EXCEEDED_TIME_LIMIT = 50;
+
+    /**
+     * MongoDB Error Codes "IndexOptionsConflict" and "IndexKeySpecsConflict", i.e. an equivalent index already exists
+     * with a different name or different options
+     */
+    public static final int MONGO_ERROR_CODE_INDEX_OPTIONS_CONFLICT = 85;
+    public static final int MONGO_ERROR_CODE_INDEX_KEY_SPECS_CONFLICT = 86;
+
+    /**
+     * Pseudo Error Code for the failures without a MongoDB error code
+     */
+    public static final int MONGO_ERROR_CODE_UNKNOWN = -1;
+
     /**
      * MAX # of instances of mod-mongo-persistor
      */
@@ -69,6 +99,9 @@ public class VertxMongoUtils {
     // Count
     public static final String MOD_MONGO_FIELD_NAME_COUNT = "count";
 
+    // Aggregate
+    public static final int AGGREGATE_BATCH_SIZE = 10000;
+
     // find-and-modify
     public static final String MOD_MONGO_FIELD_NAME_FIND_MODIFY_UPDATE = "update";
 
@@ -87,6 +120,17 @@ public class VertxMongoUtils {
     public static final String MOD_MONGO_FIELD_NAME_SORT = "sort";
     public static final String MOD_MONGO_FIELD_NAME_SKIP = "skip";
     public static final String MOD_MONGO_FIELD_NAME_LIMIT = "limit";
+    public static final String MOD_MONGO_FIELD_NAME_MAX_TIME_MS = "maxTimeMS";
+
+    // Query Commands/Cursors
+    public static final String MOD_MONGO_FIELD_NAME_FILTER = "filter";
+    public static final String MOD_MONGO_FIELD_NAME_PROJECTION = "projection";
+    public static final String MOD_MONGO_FIELD_NAME_CURSOR = "cursor";
+    public static final String MOD_MONGO_FIELD_NAME_CURSOR_ID = "id";
+    public static final String MOD_MONGO_FIELD_NAME_FIRST_BATCH = "firstBatch";
+    public static final String MOD_MONGO_FIELD_NAME_NEXT_BATCH = "nextBatch";
+    public static final String MOD_MONGO_COMMAND_GET_MORE = "getMore";
+    public static final String MOD_MONGO_COMMAND_KILL_CURSORS = "killCursors";
 
     // MongoDB Query Operators
     public static final String MOD_MONGO_QUERY_OPERATOR_IN = "$in";
@@ -97,6 +141,7 @@ public class VertxMongoUtils {
     public static final String MOD_MONGO_QUERY_OPERATOR_GREATER_THAN_AND_EQUAL = "$gte";
     public static final String MOD_MONGO_QUERY_OPERATOR_LESS_THAN = "$lt";
     public static final String MOD_MONGO_QUERY_OPERATOR_LESS_THAN_AND_EQUAL = "$lte";
+    public static final String MOD_MONGO_QUERY_OPERATOR_EQUAL = "$eq";
     public static final String MOD_MONGO_QUERY_OPERATOR_NOT_EQUAL = "$ne";
     public static final String MOD_MONGO_QUERY_OPERATOR_EXISTS = "$exists";
     public static final JsonObject EXISTS = new JsonObject().put(MOD_MONGO_QUERY_OPERATOR_EXISTS, true);
@@ -110,6 +155,7 @@ public class VertxMongoUtils {
     public static final String MOD_MONGO_UPDATE_OPERATOR_PUSH = "$push";
     public static final String MOD_MONGO_UPDATE_OPERATOR_PULL = "$pull";
     public static final String MOD_MONGO_UPDATE_OPERATOR_SET = "$set";
+    public static final String MOD_MONGO_UPDATE_OPERATOR_MAX = "$max";
     public static final String MOD_MONGO_UPDATE_OPERATOR_UNSET = "$unset";
     public static final String MOD_MONGO_UPDATE_OPERATOR_CURRENT_DATE = "$currentDate";
 
@@ -155,7 +201,7 @@ public class VertxMongoUtils {
 
             if (seedsArray.size() > 0) {
                 config.put("seeds", seedsArray)
-                        .put("read_preference ", "primaryPreferred");
+                        .put("read_preference ", READ_PREFERENCE_PRIMARY_PREFERRED);
             } else {
                 config.put("host", VertxConfigProperties.mongoHost)
                         .put("port", VertxConfigProperties.mongoPort);
@@ -280,9 +326,9 @@ public class VertxMongoUtils {
              * Mandatory Args
              */
             MongoClient mongoClient,
-            String collectionName,
-            JsonObject matcher,
-            JsonObject sort,
+            final String collectionName,
+            final JsonObject matcher,
+            final JsonObject sort,
             int skip,
             int limit,
             final Handler handler,
@@ -314,16 +360,245 @@ public class VertxMongoUtils {
             options.setFields(keys);
         }
 
+        final long startTime = System.currentTimeMillis();
         mongoClient.findWithOptions(collectionName,matcher,options,res->{
+            long duration = System.currentTimeMillis() - startTime;
             if (res.succeeded()) {
+                VertxMongoQueryShapes.record(collectionName, matcher, sort, duration, res.result().size(), false);
                 handler.handle(res.result());
             } else {
                 res.cause().printStackTrace();
+                VertxMongoQueryShapes.record(collectionName, matcher, sort, duration, 0, false);
                 handler.handle(null);
             }
         });
     }
 
+    /**
+     * Query MongoDB with "skip", "limit" and a server-side time budget.
+     *
+     * Only meant for the queries that must not outlive their callers (for example the NBI retrievals), as all the
+     * other overloads have no time budget.
+     *
+     * The query (including all the subsequent "getMore"s) is aborted by MongoDB once the budget runs out, in which
+     * case the handler is called with null (just like any other failure). A budget that has already run out fails
+     * the query right away without sending it.
+     *
+     * @param mongoClient
+     * @param collectionName
+     * @param matcher
+     * @param sort
+     * @param skip              A number which determines the number of documents to skip.
+     * @param limit             A number which determines the maximum total number of documents to return.
+     * @param handler           Called with a List of JsonObjects, or null if failed/timed out
+     * @param keys
+     * @param batchSize
+     * @param bDebugPrint
+     * @param maxTimeMs         Time budget in ms
+     * @throws VertxException
+     */
+    public static void find(
+            /**
+             * Mandatory Args
+             */
+            final MongoClient mongoClient,
+            final String collectionName,
+            final JsonObject matcher,
+            final JsonObject sort,
+            int skip,
+            int limit,
+            final Handler handler,
+            /**
+             * Optional Args
+             */
+            JsonObject keys,
+            final Number batchSize,
+            boolean bDebugPrint,
+            final long maxTimeMs
+    ) throws VertxException {
+        /**
+         * Validate the mandatory arguments
+         */
+        if (mongoClient == null || collectionName == null || matcher == null || handler == null) {
+            throw new VertxException("Null Pointer(s)!");
+        }
+
+        if (maxTimeMs <= 0) {
+            log.error(collectionName + ": query budget ran out before the query was sent!");
+            VertxMongoQueryShapes.record(collectionName, matcher, sort, 0, 0, true);
+            handler.handle(null);
+            return;
+        }
+
+        /**
+         * Build the "find" command
+         */
+        JsonObject command = new JsonObject()
+                .put(MOD_MONGO_FIELD_NAME_ACTION_FIND, collectionName)
+                .put(MOD_MONGO_FIELD_NAME_FILTER, matcher)
+                .put(MOD_MONGO_FIELD_NAME_MAX_TIME_MS, maxTimeMs);
+        if (sort != null) {
+            command.put(MOD_MONGO_FIELD_NAME_SORT, sort);
+        }
+        if (skip > 0) {
+            command.put(MOD_MONGO_FIELD_NAME_SKIP, skip);
+        }
+        if (limit > 0) {
+            command.put(MOD_MONGO_FIELD_NAME_LIMIT, limit);
+        }
+        if (keys != null) {
+            command.put(MOD_MONGO_FIELD_NAME_PROJECTION, keys);
+        }
+        if (batchSize != null && batchSize.intValue() > 0) {
+            command.put("batchSize", batchSize.intValue());
+        }
+        addReadPreference(command);
+
+        final long startTime = System.currentTimeMillis();
+        final List<JsonObject> results = new ArrayList<>();
+        mongoClient.runCommand(MOD_MONGO_FIELD_NAME_ACTION_FIND, command, res->{
+            handleCursorResult(
+                    mongoClient,
+                    collectionName,
+                    matcher,
+                    sort,
+                    batchSize,
+                    startTime,
+                    maxTimeMs,
+                    results,
+                    res,
+                    handler
+            );
+        });
+    }
+
+    /**
+     * Handle the result of a "find" or "getMore" command, and keep fetching the next batch (with the remaining time
+     * budget) until the cursor is exhausted.
+     *
+     * @param mongoClient
+     * @param collectionName
+     * @param matcher
+     * @param sort
+     * @param batchSize
+     * @param startTime
+     * @param maxTimeMs
+     * @param results       The documents received so far
+     * @param res
+     * @param handler
+     */
+    private static void handleCursorResult(
+            final MongoClient mongoClient,
+            final String collectionName,
+            final JsonObject matcher,
+            final JsonObject sort,
+            final Number batchSize,
+            final long startTime,
+            final long maxTimeMs,
+            final List<JsonObject> results,
+            AsyncResult<JsonObject> res,
+            final Handler handler) {
+        long duration = System.currentTimeMillis() - startTime;
+        if (res.failed()) {
+            boolean bTimedOut = isTimedOut(res.cause());
+            if (bTimedOut) {
+                log.error(collectionName + ": query exceeded its time budget of " + maxTimeMs + "ms!");
+            } else {
+                res.cause().printStackTrace();
+            }
+            VertxMongoQueryShapes.record(collectionName, matcher, sort, duration, results.size(), bTimedOut);
+            handler.handle(null);
+            return;
+        }
+
+        JsonObject cursor = res.result().getJsonObject(MOD_MONGO_FIELD_NAME_CURSOR);
+        JsonArray batch = cursor.containsKey(MOD_MONGO_FIELD_NAME_FIRST_BATCH)?
+                cursor.getJsonArray(MOD_MONGO_FIELD_NAME_FIRST_BATCH)
+                : cursor.getJsonArray(MOD_MONGO_FIELD_NAME_NEXT_BATCH);
+        if (batch != null) {
+            for (int i = 0; i < batch.size(); i ++) {
+                results.add(batch.getJsonObject(i));
+            }
+        }
+
+        long cursorId = ((Number) cursor.getValue(MOD_MONGO_FIELD_NAME_CURSOR_ID)).longValue();
+        if (cursorId == 0) {
+            /**
+             * All Done
+             */
+            VertxMongoQueryShapes.record(collectionName, matcher, sort, duration, results.size(), false);
+            handler.handle(results);
+            return;
+        }
+
+        long remainingTime = maxTimeMs - duration;
+        if (remainingTime <= 0) {
+            /**
+             * Out of budget between two batches. Free the cursor on the server side.
+             */
+            log.error(collectionName + ": query exceeded its time budget of " + maxTimeMs + "ms!");
+            mongoClient.runCommand(
+                    MOD_MONGO_COMMAND_KILL_CURSORS,
+                    new JsonObject()
+                            .put(MOD_MONGO_COMMAND_KILL_CURSORS, collectionName)
+                            .put("cursors", new JsonArray().add(cursorId)),
+                    killResult -> {}
+            );
+            VertxMongoQueryShapes.record(collectionName, matcher, sort, duration, results.size(), true);
+            handler.handle(null);
+            return;
+        }
+
+        JsonObject getMore = new JsonObject()
+                .put(MOD_MONGO_COMMAND_GET_MORE, cursorId)
+                .put(MOD_MONGO_FIELD_NAME_COLLECTION, collectionName)
+                .put(MOD_MONGO_FIELD_NAME_MAX_TIME_MS, remainingTime);
+        if (batchSize != null && batchSize.intValue() > 0) {
+            getMore.put("batchSize", batchSize.intValue());
+        }
+        addReadPreference(getMore);
+        mongoClient.runCommand(MOD_MONGO_COMMAND_GET_MORE, getMore, nextRes->{
+            handleCursorResult(
+                    mongoClient,
+                    collectionName,
+                    matcher,
+                    sort,
+                    batchSize,
+                    startTime,
+                    maxTimeMs,
+                    results,
+                    nextRes,
+                    handler
+            );
+        });
+    }
+
+    /**
+     * Add the read preference (if any) to a read command, since the commands sent via runCommand() do not pick up the
+     * read preference of the client.
+     *
+     * @param command
+     */
+    public static void addReadPreference(JsonObject command) {
+        if (VertxConfigProperties.mongoSeeds != null) {
+            command.put(
+                    MOD_MONGO_FIELD_NAME_READ_PREFERENCE,
+                    new JsonObject().put("mode", READ_PREFERENCE_PRIMARY_PREFERRED)
+            );
+        }
+    }
+
+    /**
+     * Check if a failure was caused by MongoDB aborting the operation for exceeding its "maxTimeMS".
+     *
+     * @param cause
+     */
+    public static boolean isTimedOut(Throwable cause) {
+        return cause instanceof MongoExecutionTimeoutException
+                || (cause instanceof MongoCommandException
+                && ((MongoCommandException) cause).getErrorCode() == MONGO_ERROR_CODE_EXCEEDED_TIME_LIMIT);
+    }
+
     /**
      * Query MongoDB and return the first matching record.
      *
@@ -341,8 +616,8 @@ public class VertxMongoUtils {
              * Mandatory Args
              */
             MongoClient mongoClient,
-            String collectionName,
-            JsonObject matcher,
+            final String collectionName,
+            final JsonObject matcher,
             final Handler handler,
             /**
              * Optional Arg(s)
@@ -356,18 +631,98 @@ public class VertxMongoUtils {
             throw new VertxException("Null Pointer(s)!");
         }
 
-        /**
-         * Build the find message
-         */
+        final long startTime = System.currentTimeMillis();
         mongoClient.findOne(collectionName,matcher,keys,res->{
+            long duration = System.currentTimeMillis() - startTime;
             if (res.succeeded()) {
+                VertxMongoQueryShapes.record(
+                        collectionName, matcher, null, duration, res.result() == null? 0 : 1, false
+                );
                 handler.handle(res.result());
             } else {
                 res.cause().printStackTrace();
+                VertxMongoQueryShapes.record(collectionName, matcher, null, duration, 0, false);
                 handler.handle(null);
             }
         });
+    }
+
+    /**
+     * Query MongoDB and return the first matching record, with a server-side time budget.
+     *
+     * The handler is called with null if not found, failed or timed out.
+     *
+     * @param mongoClient
+     * @param collectionName
+     * @param matcher
+     * @param handler
+     * @param keys
+     * @param maxTimeMs         Time budget in ms
+     * @throws VertxException
+     */
+    public static void findOne(
+            /**
+             * Mandatory Args
+             */
+            MongoClient mongoClient,
+            final String collectionName,
+            final JsonObject matcher,
+            final Handler handler,
+            /**
+             * Optional Arg(s)
+             */
+            JsonObject keys,
+            final long maxTimeMs
+    ) throws VertxException {
+        /**
+         * Validate the mandatory arguments
+         */
+        if (mongoClient == null || collectionName == null || matcher == null || handler == null) {
+            throw new VertxException("Null Pointer(s)!");
+        }
+
+        if (maxTimeMs <= 0) {
+            log.error(collectionName + ": query budget ran out before the query was sent!");
+            VertxMongoQueryShapes.record(collectionName, matcher, null, 0, 0, true);
+            handler.handle(null);
+            return;
+        }
 
+        /**
+         * Build the "find" command (single batch of one document)
+         */
+        JsonObject command = new JsonObject()
+                .put(MOD_MONGO_FIELD_NAME_ACTION_FIND, collectionName)
+                .put(MOD_MONGO_FIELD_NAME_FILTER, matcher)
+                .put(MOD_MONGO_FIELD_NAME_LIMIT, 1)
+                .put("singleBatch", true)
+                .put(MOD_MONGO_FIELD_NAME_MAX_TIME_MS, maxTimeMs);
+        if (keys != null) {
+            command.put(MOD_MONGO_FIELD_NAME_PROJECTION, keys);
+        }
+        addReadPreference(command);
+
+        final long startTime = System.currentTimeMillis();
+        mongoClient.runCommand(MOD_MONGO_FIELD_NAME_ACTION_FIND, command, res->{
+            long duration = System.currentTimeMillis() - startTime;
+            if (res.succeeded()) {
+                JsonArray firstBatch = res.result()
+                        .getJsonObject(MOD_MONGO_FIELD_NAME_CURSOR)
+                        .getJsonArray(MOD_MONGO_FIELD_NAME_FIRST_BATCH);
+                JsonObject document = firstBatch == null || firstBatch.size() == 0? null : firstBatch.getJsonObject(0);
+                VertxMongoQueryShapes.record(collectionName, matcher, null, duration, document == null? 0 : 1, false);
+                handler.handle(document);
+            } else {
+                boolean bTimedOut = isTimedOut(res.cause());
+                if (bTimedOut) {
+                    log.error(collectionName + ": query exceeded its time budget of " + maxTimeMs + "ms!");
+                } else {
+                    res.cause().printStackTrace();
+                }
+                VertxMongoQueryShapes.record(collectionName, matcher, null, duration, 0, bTimedOut);
+                handler.handle(null);
+            }
+        });
     }
 
     /**
@@ -574,6 +929,133 @@ public class VertxMongoUtils {
         });
     }
 
+    /**
+     * Max # of update statements per bulk "update" command
+     */
+    public static final int MAX_BULK_WRITE_BATCH_SIZE = 1000;
+
+    /**
+     * Build a single update statement for bulkUpdate().
+     *
+     * @param matcher
+     * @param update
+     * @return
+     */
+    public static JsonObject getBulkUpdateStatement(JsonObject matcher, JsonObject update) {
+        return new JsonObject()
+                .put("q", matcher)
+                .put("u", update)
+                .put(MOD_MONGO_FIELD_NAME_MULTI, !matcher.containsKey(MOD_MONGO_FIELD_NAME_ID));
+    }
+
+    /**
+     * Send a list of update statements (built by getBulkUpdateStatement()) to MongoDB as one "update" command.
+     *
+     * With "ordered" set to false, MongoDB keeps applying the remaining statements after a failed one.
+     *
+     * @param mongoClient
+     * @param collectionName
+     * @param statements
+     * @param ordered
+     * @param customHandler     Optional handler that receives the total # of matched documents (or null if failed)
+     * @throws VertxException
+     */
+    public static void bulkUpdate(
+            /**
+             * Mandatory Args
+             */
+            MongoClient mongoClient,
+            String collectionName,
+            JsonArray statements,
+            boolean ordered,
+            /**
+             * Optional Custom Handler
+             */
+            Handler<Long> customHandler
+    ) throws VertxException {
+        /**
+         * Validate the mandatory arguments
+         */
+        if (mongoClient == null || collectionName == null || statements == null) {
+            throw new VertxException("Null Pointer(s)!");
+        }
+
+        JsonObject command = new JsonObject()
+                .put(MOD_MONGO_FIELD_NAME_ACTION_UPDATE, collectionName)
+                .put("updates", statements)
+                .put("ordered", ordered);
+        mongoClient.runCommand(MOD_MONGO_FIELD_NAME_ACTION_UPDATE, command, res->{
+            if (res.succeeded()) {
+                if (res.result().containsKey("writeErrors")) {
+                    log.error(collectionName + ": bulk update returned write errors: "
+                            + res.result().getJsonArray("writeErrors").encode());
+                }
+                if(customHandler!=null){
+                    customHandler.handle(res.result().getLong("n", 0L));
+                }
+            } else {
+                log.error(collectionName + ": bulk update failed! " + res.cause().getMessage());
+                if(customHandler!=null){
+                    customHandler.handle(null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Insert a list of documents into MongoDB with one "insert" command.
+     *
+     * With "ordered" set to false, MongoDB keeps inserting the remaining documents after a failed one.
+     *
+     * @param mongoClient
+     * @param collectionName
+     * @param documents
+     * @param ordered
+     * @param customHandler     Optional handler that receives the # of inserted documents (or null if failed)
+     * @throws VertxException
+     */
+    public static void bulkInsert(
+            /**
+             * Mandatory Args
+             */
+            MongoClient mongoClient,
+            String collectionName,
+            JsonArray documents,
+            boolean ordered,
+            /**
+             * Optional Custom Handler
+             */
+            Handler<Long> customHandler
+    ) throws VertxException {
+        /**
+         * Validate the mandatory arguments
+         */
+        if (mongoClient == null || collectionName == null || documents == null) {
+            throw new VertxException("Null Pointer(s)!");
+        }
+
+        JsonObject command = new JsonObject()
+                .put("insert", collectionName)
+                .put("documents", documents)
+                .put("ordered", ordered);
+        mongoClient.runCommand("insert", command, res->{
+            if (res.succeeded()) {
+                if (res.result().containsKey("writeErrors")) {
+                    log.error(collectionName + ": bulk insert returned write errors: "
+                            + res.result().getJsonArray("writeErrors").encode());
+                }
+                if(customHandler!=null){
+                    customHandler.handle(res.result().getLong("n", 0L));
+                }
+            } else {
+                log.error(collectionName + ": bulk insert failed! " + res.cause().getMessage());
+                if(customHandler!=null){
+                    customHandler.handle(null);
+                }
+            }
+        });
+    }
+
     /**
      * Delete one existing document by id.
      *
@@ -670,7 +1152,7 @@ public class VertxMongoUtils {
             /**
              * Optional Custom Handler
              */
-            Handler<Long> customHandler
+            final Handler<Long> customHandler
     ) throws VertxException {
         /**
          * Validate the mandatory arguments
@@ -679,20 +1161,352 @@ public class VertxMongoUtils {
             throw new VertxException("Null Pointer(s)!");
         }
 
-        /**
-         * Build the delete message
-         */
+        final long startTime = System.currentTimeMillis();
         mongoClient.count(collectionName,matcher,res->{
+            long duration = System.currentTimeMillis() - startTime;
             if (res.succeeded()) {
+                VertxMongoQueryShapes.record(collectionName, matcher, null, duration, res.result(), false);
                 if(customHandler!=null){
                     customHandler.handle(res.result());
                 }
             } else {
                 res.cause().printStackTrace();
+                VertxMongoQueryShapes.record(collectionName, matcher, null, duration, 0, false);
+                if(customHandler!=null){
+                    customHandler.handle(null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Get count by matcher, with a server-side time budget.
+     *
+     * The handler (if any) is called with null if failed or timed out.
+     *
+     * @param mongoClient
+     * @param collectionName
+     * @param matcher
+     * @param customHandler
+     * @param maxTimeMs         Time budget in ms
+     * @throws VertxException
+     */
+    public static void count(
+            /**
+             * Mandatory Args
+             */
+            MongoClient mongoClient,
+            final String collectionName,
+            final JsonObject matcher,
+            /**
+             * Optional Custom Handler
+             */
+            final Handler<Long> customHandler,
+            final long maxTimeMs
+    ) throws VertxException {
+        /**
+         * Validate the mandatory arguments
+         */
+        if (mongoClient == null || collectionName == null || matcher == null) {
+            throw new VertxException("Null Pointer(s)!");
+        }
+
+        if (maxTimeMs <= 0) {
+            log.error(collectionName + ": query budget ran out before the query was sent!");
+            VertxMongoQueryShapes.record(collectionName, matcher, null, 0, 0, true);
+            if(customHandler!=null){
+                customHandler.handle(null);
+            }
+            return;
+        }
+
+        /**
+         * Build the "count" command
+         */
+        JsonObject command = new JsonObject()
+                .put(MOD_MONGO_FIELD_NAME_ACTION_COUNT, collectionName)
+                .put("query", matcher)
+                .put(MOD_MONGO_FIELD_NAME_MAX_TIME_MS, maxTimeMs);
+        addReadPreference(command);
+
+        final long startTime = System.currentTimeMillis();
+        mongoClient.runCommand(MOD_MONGO_FIELD_NAME_ACTION_COUNT, command, res->{
+            long duration = System.currentTimeMillis() - startTime;
+            if (res.succeeded()) {
+                Number count = (Number) res.result().getValue("n");
+                VertxMongoQueryShapes.record(
+                        collectionName, matcher, null, duration, count == null? 0 : count.longValue(), false
+                );
+                if(customHandler!=null){
+                    customHandler.handle(count == null? null : count.longValue());
+                }
+            } else {
+                boolean bTimedOut = isTimedOut(res.cause());
+                if (bTimedOut) {
+                    log.error(collectionName + ": count exceeded its time budget of " + maxTimeMs + "ms!");
+                } else {
+                    res.cause().printStackTrace();
+                }
+                VertxMongoQueryShapes.record(collectionName, matcher, null, duration, 0, bTimedOut);
+                if(customHandler!=null){
+                    customHandler.handle(null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the estimated # of documents of a whole collection.
+     *
+     * A "count" command without any query is answered by the collection metadata (instead of scanning an index),
+     * so the result may be slightly off (for example after an unclean shutdown).
+     *
+     * The handler is called with null if failed.
+     *
+     * @param mongoClient
+     * @param collectionName
+     * @param customHandler
+     * @throws VertxException
+     */
+    public static void estimatedCount(
+            MongoClient mongoClient,
+            String collectionName,
+            Handler<Long> customHandler
+    ) throws VertxException {
+        /**
+         * Validate the mandatory arguments
+         */
+        if (mongoClient == null || collectionName == null || customHandler == null) {
+            throw new VertxException("Null Pointer(s)!");
+        }
+
+        JsonObject command = new JsonObject()
+                .put(MOD_MONGO_FIELD_NAME_ACTION_COUNT, collectionName);
+        addReadPreference(command);
+        mongoClient.runCommand(MOD_MONGO_FIELD_NAME_ACTION_COUNT, command, res->{
+            if (res.succeeded()) {
+                Number count = (Number) res.result().getValue("n");
+                customHandler.handle(count == null? null : count.longValue());
+            } else {
+                res.cause().printStackTrace();
+                customHandler.handle(null);
             }
         });
     }
 
+    /**
+     * Run an aggregation pipeline, and return the first batch of the results.
+     *
+     * Only meant for pipelines with small results (for example "$group" by a few fields), as the subsequent batches
+     * (if any) are not fetched. The handler is called with null if failed or if the results did not fit in one batch.
+     *
+     * @param mongoClient
+     * @param collectionName
+     * @param pipeline
+     * @param customHandler
+     * @throws VertxException
+     */
+    public static void aggregate(
+            MongoClient mongoClient,
+            String collectionName,
+            JsonArray pipeline,
+            Handler<JsonArray> customHandler
+    ) throws VertxException {
+        /**
+         * Validate the mandatory arguments
+         */
+        if (mongoClient == null || collectionName == null || pipeline == null || customHandler == null) {
+            throw new VertxException("Null Pointer(s)!");
+        }
+
+        JsonObject command = new JsonObject()
+                .put("aggregate", collectionName)
+                .put("pipeline", pipeline)
+                .put("cursor", new JsonObject().put("batchSize", AGGREGATE_BATCH_SIZE));
+        addReadPreference(command);
+        mongoClient.runCommand("aggregate", command, res->{
+            if (res.succeeded()) {
+                JsonObject cursor = res.result().getJsonObject("cursor");
+                Number cursorId = cursor == null? null : (Number) cursor.getValue("id");
+                if (cursorId == null || cursorId.longValue() != 0) {
+                    log.error(collectionName + ": aggregation results did not fit in one batch!");
+                    customHandler.handle(null);
+                } else {
+                    customHandler.handle(cursor.getJsonArray("firstBatch"));
+                }
+            } else {
+                res.cause().printStackTrace();
+                customHandler.handle(null);
+            }
+        });
+    }
+
+    /**
+     * Create indexes (if not exist yet).
+     *
+     * Creating an index that already exists with the same keys and options is a no-op. The handler (if any) is
+     * called with true if succeeded.
+     *
+     * @param mongoClient
+     * @param collectionName
+     * @param indexes           Array of "{key, name, ...options}"
+     * @param customHandler
+     * @throws VertxException
+     */
+    public static void createIndexes(
+            MongoClient mongoClient,
+            String collectionName,
+            JsonArray indexes,
+            Handler<Boolean> customHandler
+    ) throws VertxException {
+        /**
+         * Validate the mandatory arguments
+         */
+        if (mongoClient == null || collectionName == null || indexes == null) {
+            throw new VertxException("Null Pointer(s)!");
+        }
+
+        JsonObject command = new JsonObject()
+                .put("createIndexes", collectionName)
+                .put("indexes", indexes);
+        mongoClient.runCommand("createIndexes", command, res->{
+            if (res.succeeded()) {
+                if(customHandler!=null){
+                    customHandler.handle(true);
+                }
+            } else {
+                log.error(collectionName + ": failed to create indexes! " + res.cause().getMessage());
+                if(customHandler!=null){
+                    customHandler.handle(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Create a single index (if not exist yet).
+     *
+     * Unlike createIndexes() with multiple indexes, a conflict with an existing index does not prevent the other
+     * indexes of the collection from being created. The handler (if any) is called with 0 if succeeded, or with the
+     * MongoDB error code (MONGO_ERROR_CODE_UNKNOWN if none).
+     *
+     * @param mongoClient
+     * @param collectionName
+     * @param index             "{key, name, ...options}"
+     * @param customHandler
+     * @throws VertxException
+     */
+    public static void createIndex(
+            MongoClient mongoClient,
+            String collectionName,
+            JsonObject index,
+            Handler<Integer> customHandler
+    ) throws VertxException {
+        /**
+         * Validate the mandatory arguments
+         */
+        if (mongoClient == null || collectionName == null || index == null) {
+            throw new VertxException("Null Pointer(s)!");
+        }
+
+        JsonObject command = new JsonObject()
+                .put("createIndexes", collectionName)
+                .put("indexes", new JsonArray().add(index));
+        mongoClient.runCommand("createIndexes", command, res->{
+            int errorCode = 0;
+            if (res.failed()) {
+                log.error(collectionName + ": failed to create index " + index.getString("name") + "! "
+                        + res.cause().getMessage());
+                errorCode = res.cause() instanceof MongoCommandException?
+                        ((MongoCommandException) res.cause()).getErrorCode() : MONGO_ERROR_CODE_UNKNOWN;
+            }
+            if (customHandler != null) {
+                customHandler.handle(errorCode);
+            }
+        });
+    }
+
+    /**
+     * Check if a MongoDB error code means that an equivalent index already exists with a different name/options.
+     *
+     * @param errorCode
+     */
+    public static boolean isIndexConflict(int errorCode) {
+        return errorCode == MONGO_ERROR_CODE_INDEX_OPTIONS_CONFLICT
+                || errorCode == MONGO_ERROR_CODE_INDEX_KEY_SPECS_CONFLICT;
+    }
+
+    /**
+     * Explain a query (without executing it).
+     *
+     * The handler is called with the "queryPlanner" section of the explain result, or null if failed.
+     *
+     * @param mongoClient
+     * @param collectionName
+     * @param matcher
+     * @param sort
+     * @param customHandler
+     * @throws VertxException
+     */
+    public static void explain(
+            MongoClient mongoClient,
+            String collectionName,
+            JsonObject matcher,
+            JsonObject sort,
+            Handler<JsonObject> customHandler
+    ) throws VertxException {
+        /**
+         * Validate the mandatory arguments
+         */
+        if (mongoClient == null || collectionName == null || matcher == null || customHandler == null) {
+            throw new VertxException("Null Pointer(s)!");
+        }
+
+        JsonObject find = new JsonObject()
+                .put(MOD_MONGO_FIELD_NAME_ACTION_FIND, collectionName)
+                .put("filter", matcher);
+        if (sort != null) {
+            find.put(MOD_MONGO_FIELD_NAME_SORT, sort);
+        }
+        JsonObject command = new JsonObject()
+                .put("explain", find)
+                .put("verbosity", "queryPlanner");
+        mongoClient.runCommand("explain", command, res->{
+            if (res.succeeded()) {
+                customHandler.handle(res.result().getJsonObject("queryPlanner"));
+            } else {
+                res.cause().printStackTrace();
+                customHandler.handle(null);
+            }
+        });
+    }
+
+    /**
+     * Check if a query plan (or any of its input stages) is a collection scan.
+     *
+     * @param plan  The "winningPlan" of an explain result
+     */
+    public static boolean isCollectionScan(JsonObject plan) {
+        if (plan == null) {
+            return false;
+        }
+        if ("COLLSCAN".equals(plan.getString("stage"))) {
+            return true;
+        }
+        if (isCollectionScan(plan.getJsonObject("inputStage"))) {
+            return true;
+        }
+        JsonArray inputStages = plan.getJsonArray("inputStages");
+        if (inputStages != null) {
+            for (int i = 0; i < inputStages.size(); i ++) {
+                if (isCollectionScan(inputStages.getJsonObject(i))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Atomic Find-and-Modify.
      *
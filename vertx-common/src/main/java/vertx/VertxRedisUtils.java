@@ -2,6 +2,7 @@ package vertx;
 
 import io.vertx.core.AsyncResult;
 import io.vertx.redis.RedisClient;
+import io.vertx.redis.RedisTransaction;
 import io.vertx.redis.op.RangeLimitOptions;
 import io.vertx.redis.op.SetOptions;
 import org.slf4j.Logger;
@@ -11,6 +12,10 @@ import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Project:  cwmp
  *
@@ -149,6 +154,185 @@ public class VertxRedisUtils {
         }
     }
 
+    /**
+     * Result Handler for the individual commands within a transaction (which only returns "QUEUED").
+     */
+    public static final Handler<AsyncResult<String>> QUEUED_RESULT_HANDLER = res->{
+        if (res.failed()) {
+            log.error("Failed to queue Redis command! " + res.cause());
+        }
+    };
+
+    /**
+     * A batch of Redis commands that are sent as a single MULTI/EXEC transaction, with a single completion handler.
+     *
+     * The commands are buffered until exec() is called, so an empty batch costs no Redis round trip at all.
+     *
+     * The completion handler is called with the results of all the commands (in the order they were added), or
+     * null if the transaction failed.
+     */
+    public static class Batch {
+        // Redis Client
+        RedisClient redisClient;
+        // Buffered Commands
+        List<Handler<RedisTransaction>> commands = new ArrayList<>();
+
+        // Constructor
+        public Batch(RedisClient redisClient) {
+            this.redisClient = redisClient;
+        }
+
+        /**
+         * Get the number of buffered commands (which is also the result index of the next command).
+         */
+        public int size() {
+            return commands.size();
+        }
+
+        /**
+         * Delete a key.
+         *
+         * @param key
+         */
+        public Batch del(final String key) {
+            commands.add(transaction -> transaction.del(key, QUEUED_RESULT_HANDLER));
+            return this;
+        }
+
+        /**
+         * Set a String value with an optional expiration (in # of milli seconds).
+         *
+         * @param key
+         * @param value
+         * @param expiration
+         */
+        public Batch set(final String key, final String value, final long expiration) {
+            if (expiration > 0) {
+                commands.add(transaction ->
+                        transaction.setWithOptions(
+                                key,
+                                value,
+                                new SetOptions().setPX(expiration),
+                                QUEUED_RESULT_HANDLER
+                        )
+                );
+            } else {
+                commands.add(transaction -> transaction.set(key, value, QUEUED_RESULT_HANDLER));
+            }
+            return this;
+        }
+
+        /**
+         * Append a String value to a Redis List.
+         *
+         * @param key
+         * @param value
+         */
+        public Batch rpush(final String key, final String value) {
+            commands.add(transaction -> transaction.rpush(key, value, QUEUED_RESULT_HANDLER));
+            return this;
+        }
+
+        /**
+         * Add a new member (with a score) to a Redis Sorted Set.
+         *
+         * @param key
+         * @param score
+         * @param value
+         */
+        public Batch zadd(final String key, final long score, final String value) {
+            commands.add(transaction -> transaction.zadd(key, score, value, QUEUED_RESULT_HANDLER));
+            return this;
+        }
+
+        /**
+         * Add (or update the scores of) multiple members to a Redis Sorted Set.
+         *
+         * @param key
+         * @param members       <Member --> Score>
+         */
+        public Batch zaddMany(final String key, final Map<String, Double> members) {
+            commands.add(transaction -> transaction.zaddMany(key, members, QUEUED_RESULT_HANDLER));
+            return this;
+        }
+
+        /**
+         * Get a range of elements of a Redis List.
+         *
+         * @param key
+         * @param start
+         * @param stop
+         */
+        public Batch lrange(final String key, final long start, final long stop) {
+            commands.add(transaction -> transaction.lrange(key, start, stop, QUEUED_RESULT_HANDLER));
+            return this;
+        }
+
+        /**
+         * Increment the integer value of a hash field.
+         *
+         * @param key
+         * @param field
+         * @param increment
+         */
+        public Batch hincrby(final String key, final String field, final long increment) {
+            commands.add(transaction -> transaction.hincrby(key, field, increment, QUEUED_RESULT_HANDLER));
+            return this;
+        }
+
+        /**
+         * Set the expiration (in # of milli seconds) of a key.
+         *
+         * @param key
+         * @param expiration
+         */
+        public Batch pexpire(final String key, final long expiration) {
+            commands.add(transaction -> transaction.pexpire(key, expiration, QUEUED_RESULT_HANDLER));
+            return this;
+        }
+
+        /**
+         * Set multiple hash fields.
+         *
+         * @param key
+         * @param values
+         */
+        public Batch hmset(final String key, final JsonObject values) {
+            commands.add(transaction -> transaction.hmset(key, values, QUEUED_RESULT_HANDLER));
+            return this;
+        }
+
+        /**
+         * Send all the buffered commands in one transaction.
+         *
+         * @param handler   Optional Completion Handler
+         */
+        public void exec(final Handler<JsonArray> handler) {
+            if (commands.size() == 0) {
+                if (handler != null) {
+                    handler.handle(new JsonArray());
+                }
+                return;
+            }
+
+            RedisTransaction transaction = redisClient.transaction();
+            transaction.multi(QUEUED_RESULT_HANDLER);
+            for (Handler<RedisTransaction> command : commands) {
+                command.handle(transaction);
+            }
+            commands = new ArrayList<>();
+
+            transaction.exec(res->{
+                if (res.failed()) {
+                    log.error("Failed to execute Redis transaction! " + res.cause());
+                }
+                if (handler != null) {
+                    handler.handle(res.succeeded()? res.result() : null);
+                }
+            });
+        }
+    }
+
     /**
      * Get a String value by key name.
      *
@@ -375,6 +559,27 @@ public class VertxRedisUtils {
         );
     }
 
+    /**
+     * Pop all the elements of a Redis List at once (in one transaction so that no element pushed in between is lost).
+     *
+     * The handler is called with the elements (oldest first), or null if the transaction failed.
+     *
+     * @param redisClient
+     * @param key
+     * @param handler
+     */
+    public static void popAll(
+            RedisClient redisClient,
+            String key,
+            final Handler<JsonArray> handler) {
+        new Batch(redisClient)
+                .lrange(key, 0, -1)
+                .del(key)
+                .exec(results -> {
+                    handler.handle(results == null? null : results.getJsonArray(0));
+                });
+    }
+
     /**
      * Add a new String element into tail of a Redis List.
      *
@@ -445,6 +650,28 @@ public class VertxRedisUtils {
         );
     }
 
+    /**
+     * Get all the fields and values of a Redis Hash.
+     *
+     * The result is a JSON Object (with String values), which will be empty if the key does not exist, or null if
+     * failed to read from Redis.
+     *
+     * @param redisClient
+     * @param key
+     * @param handler
+     */
+    public static void hgetall(
+            RedisClient redisClient,
+            String key,
+            Handler<JsonObject> handler) {
+        redisClient.hgetall(
+                key,
+                res->{
+                    handler.handle(res.succeeded()? res.result() : null);
+                }
+        );
+    }
+
     /**
      * Add a new member (with a score) to a Redis Sorted Set.
      *
@@ -471,6 +698,78 @@ public class VertxRedisUtils {
         );
     }
 
+    /**
+     * Add (or update the scores of) multiple members to a Redis Sorted Set in a single command.
+     *
+     * The result will be the number of new members added (i.e. not including the updated ones).
+     *
+     * @param redisClient
+     * @param key
+     * @param members       <Member --> Score>
+     * @param handler
+     */
+    public static void zaddMany(
+            RedisClient redisClient,
+            String key,
+            Map<String, Double> members,
+            Handler<Long> handler) {
+        redisClient.zaddMany(
+                key,
+                members,
+                res->{
+                    if (handler != null) {
+                        handler.handle(res.result());
+                    }
+                }
+        );
+    }
+
+    /**
+     * Get the number of members in a Redis Sorted Set.
+     *
+     * The result will be 0 if the key does not exist.
+     *
+     * @param redisClient
+     * @param key
+     * @param handler
+     */
+    public static void zcard(
+            RedisClient redisClient,
+            String key,
+            Handler<Long> handler) {
+        redisClient.zcard(
+                key,
+                res->{
+                    handler.handle(res.result());
+                }
+        );
+    }
+
+    /**
+     * Count the members of a Redis Sorted Set with scores within the given range (inclusive).
+     *
+     * @param redisClient
+     * @param key
+     * @param minScore
+     * @param maxScore
+     * @param handler
+     */
+    public static void zcount(
+            RedisClient redisClient,
+            String key,
+            long minScore,
+            long maxScore,
+            Handler<Long> handler) {
+        redisClient.zcount(
+                key,
+                minScore,
+                maxScore,
+                res->{
+                    handler.handle(res.result());
+                }
+        );
+    }
+
     /**
      * Read a Redis Sorted Set with range of scores plus offset/count.
      *